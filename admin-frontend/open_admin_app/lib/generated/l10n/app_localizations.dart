@@ -3434,6 +3434,12 @@ abstract class AppLocalizations {
   /// **'Please provide a valid IP or CIDR address'**
   String get strategyAttrValNotCidr;
 
+  /// Validation: attribute contradicts another attribute in the same strategy
+  ///
+  /// In en, this message translates to:
+  /// **'This rule can never match together with the other rules of this strategy'**
+  String get strategyAttrUnmatchable;
+
   /// Validation: unknown strategy error
   ///
   /// In en, this message translates to:
@@ -1910,6 +1910,10 @@ class AppLocalizationsEn extends AppLocalizations {
   String get strategyAttrValNotCidr =>
       'Please provide a valid IP or CIDR address';
 
+  @override
+  String get strategyAttrUnmatchable =>
+      'This rule can never match together with the other rules of this strategy';
+
   @override
   String get strategyAttrUnknownFailure =>
       'There was an unknown strategy validation error';
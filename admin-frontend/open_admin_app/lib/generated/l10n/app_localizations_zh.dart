@@ -1828,6 +1828,9 @@ class AppLocalizationsZh extends AppLocalizations {
   @override
   String get strategyAttrValNotCidr => '请提供有效的 IP 或 CIDR 地址';
 
+  @override
+  String get strategyAttrUnmatchable => '此规则与该策略的其他规则永远无法同时匹配';
+
   @override
   String get strategyAttrUnknownFailure => '出现未知策略验证错误';
 
@@ -37,6 +37,8 @@ extension MapNamesForRolloutStrategyViolations on RolloutStrategyViolationType {
         return l10n.strategyAttrValNotDateTime;
       case RolloutStrategyViolationType.attrValNotCidr:
         return l10n.strategyAttrValNotCidr;
+      case RolloutStrategyViolationType.attrUnmatchable:
+        return l10n.strategyAttrUnmatchable;
       case RolloutStrategyViolationType.attrUnknownFailure:
         return l10n.strategyAttrUnknownFailure;
     }
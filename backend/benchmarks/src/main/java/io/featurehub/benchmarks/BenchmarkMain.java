@@ -0,0 +1,32 @@
+package io.featurehub.benchmarks;
+
+import org.openjdk.jmh.Main;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Runs the benchmarks the same as the JMH main, except the GC profiler is always on unless other profilers are
+ * asked for - the allocation rate (gc.alloc.rate.norm) of the evaluation path matters as much as its throughput.
+ * All the usual JMH options are supported, e.g. java -jar benchmarks.jar ApplyFeature -p mix=USERS
+ */
+public class BenchmarkMain {
+  private static final List<String> NOT_RUNNING = List.of("-h", "-l", "-lp", "-lprof", "-lrf");
+
+  public static void main(String[] args) throws Exception {
+    List<String> arguments = Arrays.asList(args);
+
+    if (arguments.contains("-prof") || arguments.stream().anyMatch(NOT_RUNNING::contains)) {
+      Main.main(args);
+      return;
+    }
+
+    CommandLineOptions commandLine = new CommandLineOptions(args);
+
+    new Runner(new OptionsBuilder().parent(commandLine).addProfiler(GCProfiler.class).build()).run();
+  }
+}
@@ -0,0 +1,228 @@
+package io.featurehub.benchmarks.data;
+
+import io.featurehub.dacha.model.CacheEnvironmentFeature;
+import io.featurehub.dacha.model.CacheFeature;
+import io.featurehub.dacha.model.CacheFeatureValue;
+import io.featurehub.dacha.model.CacheRolloutStrategy;
+import io.featurehub.dacha.model.CacheRolloutStrategyAttribute;
+import io.featurehub.mr.model.FeatureValueType;
+import io.featurehub.mr.model.RolloutStrategyAttributeConditional;
+import io.featurehub.mr.model.RolloutStrategyFieldType;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+
+/**
+ * Generates environments and client contexts that look like the ones we see in production - a mix of feature
+ * types, most features having no strategies, the rest having a handful of strategies that target user ids,
+ * countries, versions, email domains and IP ranges. Everything is generated from a fixed seed so runs are
+ * comparable.
+ */
+public final class Datasets {
+  private static final String[] COUNTRIES = {"nz", "au", "us", "gb", "de", "fr", "jp", "br", "in", "za"};
+  private static final String[] PLATFORMS = {"android", "ios", "web", "macos", "windows", "linux"};
+  private static final String[] DOMAINS = {"gmail.com", "outlook.com", "featurehub.io", "example.co.nz"};
+
+  /**
+   * The kind of attributes the strategies are built from.
+   */
+  public enum Mix {
+    // user id lists and country lists, the most common case
+    USERS,
+    // email regexes and CIDR ranges, the most expensive matchers
+    REGEX_AND_CIDR,
+    // a bit of everything including percentage rollouts and semantic versions
+    MIXED
+  }
+
+  private Datasets() {}
+
+  /**
+   * @param featureCount - the number of features in the environment
+   * @param strategiesPerFeature - the number of strategies on each feature that has strategies
+   * @param valuesPerAttribute - how many values each strategy attribute lists
+   * @param mix - what the strategies target
+   */
+  public static List<CacheEnvironmentFeature> environment(int featureCount, int strategiesPerFeature,
+                                                          int valuesPerAttribute, Mix mix) {
+    Random random = new Random(featureCount * 31L + strategiesPerFeature);
+    List<CacheEnvironmentFeature> features = new ArrayList<>(featureCount);
+
+    for (int count = 0; count < featureCount; count++) {
+      FeatureValueType type = FeatureValueType.values()[count % FeatureValueType.values().length];
+      String key = "feature-" + count;
+      CacheFeature feature = new CacheFeature().id(new UUID(count, 0)).key(key).valueType(type).version(1L);
+      CacheFeatureValue value = new CacheFeatureValue().id(new UUID(count, featureCount)).key(key).locked(false)
+        .version(1L).value(value(type, random));
+
+      // roughly a third of features have strategies, which is generous
+      if (strategiesPerFeature > 0 && count % 3 == 0) {
+        List<CacheRolloutStrategy> strategies = new ArrayList<>(strategiesPerFeature);
+
+        for (int strategy = 0; strategy < strategiesPerFeature; strategy++) {
+          strategies.add(strategy(count + "-" + strategy, strategy, valuesPerAttribute, mix, type, random));
+        }
+
+        value.rolloutStrategies(strategies);
+      }
+
+      features.add(new CacheEnvironmentFeature().feature(feature).value(value));
+    }
+
+    return features;
+  }
+
+  private static Object value(FeatureValueType type, Random random) {
+    switch (type) {
+      case BOOLEAN:
+        return random.nextBoolean();
+      case STRING:
+        return PLATFORMS[random.nextInt(PLATFORMS.length)];
+      case NUMBER:
+        return random.nextInt(1000);
+      default:
+        return "{\"colour\":\"" + COUNTRIES[random.nextInt(COUNTRIES.length)] + "\",\"size\":" + random.nextInt(20) + "}";
+    }
+  }
+
+  private static CacheRolloutStrategy strategy(String id, int position, int valuesPerAttribute, Mix mix,
+                                               FeatureValueType type, Random random) {
+    CacheRolloutStrategy strategy = new CacheRolloutStrategy().id(id).value(value(type, random));
+    List<CacheRolloutStrategyAttribute> attributes = new ArrayList<>();
+
+    switch (mix) {
+      case USERS:
+        attributes.add(attribute("userkey", RolloutStrategyFieldType.STRING,
+          RolloutStrategyAttributeConditional.EQUALS, users(valuesPerAttribute, random)));
+        attributes.add(attribute("country", RolloutStrategyFieldType.STRING,
+          RolloutStrategyAttributeConditional.INCLUDES, countries(valuesPerAttribute, random)));
+        break;
+      case REGEX_AND_CIDR:
+        attributes.add(attribute("email", RolloutStrategyFieldType.STRING,
+          RolloutStrategyAttributeConditional.REGEX, emailPatterns(valuesPerAttribute, random)));
+        attributes.add(attribute("ip", RolloutStrategyFieldType.IP_ADDRESS,
+          RolloutStrategyAttributeConditional.INCLUDES, cidrs(valuesPerAttribute, random)));
+        break;
+      case MIXED:
+        switch (position % 4) {
+          case 0:
+            attributes.add(attribute("userkey", RolloutStrategyFieldType.STRING,
+              RolloutStrategyAttributeConditional.EQUALS, users(valuesPerAttribute, random)));
+            break;
+          case 1:
+            attributes.add(attribute("version", RolloutStrategyFieldType.SEMANTIC_VERSION,
+              RolloutStrategyAttributeConditional.GREATER_EQUALS, List.of("2." + random.nextInt(10) + ".0")));
+            attributes.add(attribute("platform", RolloutStrategyFieldType.STRING,
+              RolloutStrategyAttributeConditional.INCLUDES, List.of(PLATFORMS[random.nextInt(PLATFORMS.length)])));
+            break;
+          case 2:
+            attributes.add(attribute("ip", RolloutStrategyFieldType.IP_ADDRESS,
+              RolloutStrategyAttributeConditional.INCLUDES, cidrs(valuesPerAttribute, random)));
+            attributes.add(attribute("email", RolloutStrategyFieldType.STRING,
+              RolloutStrategyAttributeConditional.ENDS_WITH, List.of("@" + DOMAINS[random.nextInt(DOMAINS.length)])));
+            break;
+          default:
+            strategy.percentage(50000 + random.nextInt(100000));
+            attributes.add(attribute("country", RolloutStrategyFieldType.STRING,
+              RolloutStrategyAttributeConditional.INCLUDES, countries(valuesPerAttribute, random)));
+            break;
+        }
+        break;
+    }
+
+    return strategy.attributes(attributes);
+  }
+
+  private static CacheRolloutStrategyAttribute attribute(String fieldName, RolloutStrategyFieldType type,
+                                                         RolloutStrategyAttributeConditional conditional,
+                                                         List<Object> values) {
+    return new CacheRolloutStrategyAttribute().fieldName(fieldName).type(type).conditional(conditional).values(values);
+  }
+
+  private static List<Object> users(int count, Random random) {
+    List<Object> users = new ArrayList<>(count);
+
+    for (int i = 0; i < count; i++) {
+      users.add("user-" + random.nextInt(1_000_000));
+    }
+
+    return users;
+  }
+
+  private static List<Object> countries(int count, Random random) {
+    List<Object> countries = new ArrayList<>();
+
+    for (int i = 0; i < Math.min(count, COUNTRIES.length); i++) {
+      countries.add(COUNTRIES[random.nextInt(COUNTRIES.length)]);
+    }
+
+    return countries;
+  }
+
+  private static List<Object> emailPatterns(int count, Random random) {
+    List<Object> patterns = new ArrayList<>(count);
+
+    for (int i = 0; i < count; i++) {
+      patterns.add("^[a-z.]+" + random.nextInt(100) + "@" + DOMAINS[random.nextInt(DOMAINS.length)].replace(".", "\\.") + "$");
+    }
+
+    return patterns;
+  }
+
+  private static List<Object> cidrs(int count, Random random) {
+    List<Object> cidrs = new ArrayList<>(count);
+
+    for (int i = 0; i < count; i++) {
+      switch (i % 3) {
+        case 0:
+          cidrs.add(String.format("10.%d.%d.0/24", random.nextInt(256), random.nextInt(256)));
+          break;
+        case 1:
+          cidrs.add(String.format("192.168.%d.%d", random.nextInt(256), random.nextInt(256)));
+          break;
+        default:
+          cidrs.add(String.format("2001:db8:%x::/48", random.nextInt(65536)));
+          break;
+      }
+    }
+
+    return cidrs;
+  }
+
+  /**
+   * x-featurehub headers for a population of users, each with the given number of attributes (at most 8 are
+   * meaningful to the generated strategies, the rest are noise as real SDKs send).
+   */
+  public static List<String> contexts(int count, int attributeCount) {
+    Random random = new Random(count * 17L + attributeCount);
+    List<String> contexts = new ArrayList<>(count);
+
+    for (int i = 0; i < count; i++) {
+      String[] attributes = {
+        "userkey=user-" + random.nextInt(1_000_000),
+        "country=" + COUNTRIES[random.nextInt(COUNTRIES.length)],
+        "platform=" + PLATFORMS[random.nextInt(PLATFORMS.length)],
+        "version=2." + random.nextInt(10) + "." + random.nextInt(20),
+        "email=first.last" + random.nextInt(100) + "%40" + DOMAINS[random.nextInt(DOMAINS.length)],
+        "ip=10." + random.nextInt(256) + "." + random.nextInt(256) + "." + random.nextInt(256),
+        "session=" + new UUID(random.nextLong(), random.nextLong()),
+        "tier=" + (random.nextBoolean() ? "free" : "paid"),
+      };
+
+      StringBuilder header = new StringBuilder();
+      for (int attr = 0; attr < attributeCount; attr++) {
+        if (attr > 0) {
+          header.append(',');
+        }
+
+        header.append(attr < attributes.length ? attributes[attr] : "custom" + attr + "=value" + random.nextInt(1000));
+      }
+
+      contexts.add(header.toString());
+    }
+
+    return contexts;
+  }
+}
@@ -0,0 +1,51 @@
+package io.featurehub.benchmarks.edge;
+
+import io.featurehub.benchmarks.data.Datasets;
+import io.featurehub.edge.KeyParts;
+import io.featurehub.edge.strategies.ClientContext;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decoding the x-featurehub header, which happens on every GET and every SSE connection.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ClientContextBenchmark {
+  private static final int POPULATION = 1024;
+
+  @Param({"2", "8", "30"})
+  public int attributeCount;
+
+  private final List<KeyParts> keys = List.of(new KeyParts("default", UUID.randomUUID(), "server-key"));
+  private List<String>[] headers;
+  private int next;
+
+  @SuppressWarnings("unchecked")
+  @Setup
+  public void setup() {
+    headers = Datasets.contexts(POPULATION, attributeCount).stream().map(List::of).toArray(List[]::new);
+  }
+
+  @Benchmark
+  public ClientContext decode() {
+    return ClientContext.decode(headers[next++ & (POPULATION - 1)], keys);
+  }
+}
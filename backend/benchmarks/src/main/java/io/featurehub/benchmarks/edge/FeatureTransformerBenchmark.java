@@ -0,0 +1,80 @@
+package io.featurehub.benchmarks.edge;
+
+import io.featurehub.benchmarks.data.Datasets;
+import io.featurehub.dacha.model.CacheEnvironmentFeature;
+import io.featurehub.edge.FeatureTransformerUtils;
+import io.featurehub.edge.KeyParts;
+import io.featurehub.edge.strategies.ClientContext;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Transforming a whole environment for a request - the work a GET (or an SSE connection) does once Dacha has
+ * answered. The plan cache is warm as it is in a running edge.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class FeatureTransformerBenchmark {
+  private static final int POPULATION = 256;
+
+  @Param({"10", "100", "500"})
+  public int featureCount;
+
+  @Param({"0", "3"})
+  public int strategiesPerFeature;
+
+  @Param({"USERS", "MIXED"})
+  public Datasets.Mix mix;
+
+  private final FeatureTransformerUtils transformer = new FeatureTransformerUtils();
+  private List<CacheEnvironmentFeature> features;
+  private ClientContext[] contexts;
+  private ClientContext clientEvaluated;
+  private int next;
+
+  @Setup
+  public void setup() {
+    features = Datasets.environment(featureCount, strategiesPerFeature, 10, mix);
+
+    List<KeyParts> keys = List.of(new KeyParts("default", UUID.randomUUID(), "server-key"));
+    contexts = Datasets.contexts(POPULATION, 8).stream()
+      .map(header -> ClientContext.decode(List.of(header), keys))
+      .collect(Collectors.toList())
+      .toArray(new ClientContext[0]);
+    clientEvaluated = ClientContext.decode(null, List.of(new KeyParts("default", UUID.randomUUID(), "client*key")));
+  }
+
+  @Benchmark
+  public void serverEvaluated(Blackhole bh) {
+    bh.consume(transformer.transform(features, contexts[next++ & (POPULATION - 1)], false));
+  }
+
+  @Benchmark
+  public void clientEvaluated(Blackhole bh) {
+    bh.consume(transformer.transform(features, clientEvaluated, false));
+  }
+
+  @Benchmark
+  public void batchEvaluate(Blackhole bh) {
+    bh.consume(transformer.evaluate(features, contexts[next++ & (POPULATION - 1)]));
+  }
+}
@@ -0,0 +1,171 @@
+package io.featurehub.benchmarks.edge;
+
+import io.featurehub.benchmarks.data.Datasets;
+import io.featurehub.dacha.api.DachaApiKeyService;
+import io.featurehub.dacha.api.DachaClientServiceRegistry;
+import io.featurehub.dacha.api.DachaEnvironmentService;
+import io.featurehub.dacha.model.CacheEnvironmentFeature;
+import io.featurehub.dacha.model.DachaKeyDetailsResponse;
+import io.featurehub.edge.FeatureTransformerUtils;
+import io.featurehub.edge.KeyParts;
+import io.featurehub.edge.features.DachaBulkKeyBatcher;
+import io.featurehub.edge.features.DachaRequestOrchestrator;
+import io.featurehub.edge.features.EtagStructureHolder;
+import io.featurehub.edge.features.LruEncodedResponseCache;
+import io.featurehub.edge.features.LruEvaluatedFeatureCache;
+import io.featurehub.edge.features.NearKeyDetailsCache;
+import io.featurehub.edge.strategies.ClientContext;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.lang.reflect.Proxy;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The time it takes to answer a burst of concurrent polls when Dacha takes a few milliseconds to respond. The
+ * blocking model is how GETs used to be handled, each poll holding one of a fixed number of request threads until
+ * its features came back. The non-blocking model is the current one, where the request thread is handed back
+ * straight away and the response is resumed when Dacha answers. Both share the same coalescing of requests for the
+ * same key and the same pool of threads talking to Dacha.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PollPipelineBenchmark {
+  private static final int POPULATION = 256;
+
+  @Param({"20000"})
+  public int polls;
+
+  @Param({"1000"})
+  public int environments;
+
+  @Param({"5"})
+  public int dachaLatencyMs;
+
+  // the number of request threads available to the blocking model (Grizzly workers or the managed async pool)
+  @Param({"200"})
+  public int requestThreads;
+
+  @Param({"32"})
+  public int dachaThreads;
+
+  private ExecutorService requestPool;
+  private ExecutorService dachaPool;
+  private DachaRequestOrchestrator orchestrator;
+  private KeyParts[] keys;
+  private ClientContext[] contexts;
+  private final EtagStructureHolder noEtags = new EtagStructureHolder(Map.of(), "0", false);
+
+  @Setup
+  public void setup() {
+    requestPool = Executors.newFixedThreadPool(requestThreads);
+    dachaPool = Executors.newFixedThreadPool(dachaThreads);
+
+    List<CacheEnvironmentFeature> features = Datasets.environment(20, 2, 10, Datasets.Mix.MIXED);
+    DachaKeyDetailsResponse details = new DachaKeyDetailsResponse().etag("e1").features(features);
+
+    DachaApiKeyService slowDacha = (DachaApiKeyService) Proxy.newProxyInstance(
+      DachaApiKeyService.class.getClassLoader(), new Class<?>[]{DachaApiKeyService.class},
+      (proxy, method, args) -> {
+        if (!method.getName().equals("getApiKeyDetails")) {
+          throw new UnsupportedOperationException(method.getName());
+        }
+
+        Thread.sleep(dachaLatencyMs);
+        return details;
+      });
+
+    DachaClientServiceRegistry registry = new DachaClientServiceRegistry() {
+      @Nullable
+      @Override
+      public DachaEnvironmentService getEnvironmentService(@NotNull String cache) {
+        return null;
+      }
+
+      @NotNull
+      @Override
+      public DachaApiKeyService getApiKeyService(@NotNull String cache) {
+        return slowDacha;
+      }
+
+      @Override
+      public void registerApiKeyService(@NotNull String cache, @NotNull DachaApiKeyService apiKeyService) {
+      }
+    };
+
+    orchestrator = new DachaRequestOrchestrator(new FeatureTransformerUtils(), registry, dachaPool::execute,
+      new LruEvaluatedFeatureCache(), new LruEncodedResponseCache(), new NearKeyDetailsCache(),
+      new DachaBulkKeyBatcher(registry, dachaPool::execute));
+
+    keys = new KeyParts[environments];
+    for (int count = 0; count < environments; count++) {
+      keys[count] = new KeyParts("default", UUID.randomUUID(), "server-key");
+    }
+
+    contexts = Datasets.contexts(POPULATION, 8).stream()
+      .map(header -> ClientContext.decode(List.of(header), List.of(keys[0])))
+      .toArray(ClientContext[]::new);
+  }
+
+  @TearDown
+  public void tearDown() {
+    requestPool.shutdownNow();
+    dachaPool.shutdownNow();
+  }
+
+  @Benchmark
+  public void blocking(Blackhole bh) throws InterruptedException {
+    CountDownLatch answered = new CountDownLatch(polls);
+
+    for (int count = 0; count < polls; count++) {
+      final int poll = count;
+      requestPool.execute(() -> {
+        bh.consume(orchestrator.request(List.of(keys[poll % environments]), contexts[poll & (POPULATION - 1)],
+          noEtags));
+        answered.countDown();
+      });
+    }
+
+    answered.await();
+  }
+
+  @Benchmark
+  public void nonBlocking(Blackhole bh) throws InterruptedException {
+    CountDownLatch answered = new CountDownLatch(polls);
+
+    for (int count = 0; count < polls; count++) {
+      final int poll = count;
+      requestPool.execute(() ->
+        orchestrator.requestAsync(List.of(keys[poll % environments]), contexts[poll & (POPULATION - 1)], noEtags)
+          .whenComplete((environments, failure) -> {
+            bh.consume(environments);
+            answered.countDown();
+          }));
+    }
+
+    answered.await();
+  }
+}
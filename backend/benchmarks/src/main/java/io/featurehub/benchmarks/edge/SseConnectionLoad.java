@@ -0,0 +1,254 @@
+package io.featurehub.benchmarks.edge;
+
+import io.featurehub.benchmarks.data.Datasets;
+import io.featurehub.dacha.model.CacheEnvironmentFeature;
+import io.featurehub.dacha.model.PublishAction;
+import io.featurehub.dacha.model.PublishFeatureValue;
+import io.featurehub.dacha.model.PublishFeatureValues;
+import io.featurehub.edge.FeatureTransformer;
+import io.featurehub.edge.FeatureTransformerUtils;
+import io.featurehub.edge.KeyParts;
+import io.featurehub.edge.StreamingFeatureSource;
+import io.featurehub.edge.bucket.BucketService;
+import io.featurehub.edge.client.ClientConnection;
+import io.featurehub.edge.client.EventOutputHolder;
+import io.featurehub.edge.client.TimedBucketClientConnection;
+import io.featurehub.edge.client.TimedBucketClientFactoryImpl;
+import io.featurehub.edge.features.DachaFeatureRequestSubmitter;
+import io.featurehub.edge.features.EtagStructureHolder;
+import io.featurehub.edge.features.FeatureRequestResponse;
+import io.featurehub.edge.features.FeatureRequestSuccess;
+import io.featurehub.edge.features.FeatureRequester;
+import io.featurehub.edge.features.IdlePollIntervalAdvisor;
+import io.featurehub.edge.features.NearKeyDetailsCache;
+import io.featurehub.edge.rest.AdmissionPermit;
+import io.featurehub.edge.stats.StatRecorder;
+import io.featurehub.edge.strategies.ClientContext;
+import io.featurehub.sse.model.FeatureEnvironmentCollection;
+import io.featurehub.sse.model.FeatureState;
+import io.featurehub.sse.stats.model.EdgeHitResultType;
+import io.featurehub.sse.stats.model.EdgeHitSourceType;
+import jakarta.ws.rs.core.MediaType;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Opens a lot of SSE connections inside the one process, through the same factory and streaming source Edge uses,
+ * against a stub Dacha that answers straight away, and reports how much heap each one holds once they have all been
+ * sent their features. Then sends an update to one feature in every environment and reports how long it takes to
+ * reach them all. It is not a JMH benchmark as it is the memory that matters, run it with
+ *
+ * java -Xmx4g -cp target/benchmarks.jar io.featurehub.benchmarks.edge.SseConnectionLoad [connections] [environments]
+ *
+ * Jersey's EventOutput isn't included (the connections write to an output that throws the messages away), nor are
+ * the timing wheels, so this is the cost of Edge's own state for a connection.
+ */
+public class SseConnectionLoad {
+  private static final int FEATURES = 20;
+  private static final int CONTEXTS = 256;
+
+  public static void main(String[] args) throws Exception {
+    final int connections = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+    final int environments = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+
+    FeatureTransformer featureTransformer = new FeatureTransformerUtils();
+    List<CacheEnvironmentFeature> features = Datasets.environment(FEATURES, 2, 10, Datasets.Mix.MIXED);
+    StubDacha dacha = new StubDacha(featureTransformer.transform(features, new ClientContext(true), false));
+
+    StreamingFeatureSource source = new StreamingFeatureSource(dacha, new NearKeyDetailsCache(),
+      new IdlePollIntervalAdvisor(), featureTransformer);
+    TimedBucketClientFactoryImpl factory = new TimedBucketClientFactoryImpl(featureTransformer, new NoBuckets(),
+      new NoStats());
+
+    UUID[] environmentIds = new UUID[environments];
+    for (int count = 0; count < environments; count++) {
+      environmentIds[count] = UUID.randomUUID();
+    }
+
+    List<String> contexts = Datasets.contexts(CONTEXTS, 8);
+
+    CountDownLatch sentFeatures = new CountDownLatch(connections);
+    List<ClientConnection> open = new ArrayList<>(connections);
+
+    long heapBefore = usedHeap();
+    long started = System.nanoTime();
+
+    for (int count = 0; count < connections; count++) {
+      // a new key and header for each, as they would be if they had come off the wire
+      KeyParts key = new KeyParts("default", environmentIds[count % environments],
+        "server-key-" + (count % environments));
+      List<String> header = List.of(new String(contexts.get(count % CONTEXTS)));
+
+      TimedBucketClientConnection connection = factory.createBucket(new DiscardingOutput(sentFeatures), key,
+        header, null, null);
+
+      connection.discovery();
+      source.requestFeatures(connection, NO_PERMIT);
+      open.add(connection);
+    }
+
+    if (!sentFeatures.await(5, TimeUnit.MINUTES)) {
+      System.out.printf("only %d of %d connections were sent their features%n",
+        connections - sentFeatures.getCount(), connections);
+    }
+
+    long opened = System.nanoTime() - started;
+    long heapAfter = usedHeap();
+
+    System.out.printf("%d connections across %d environments opened in %d ms%n", connections, environments,
+      TimeUnit.NANOSECONDS.toMillis(opened));
+    System.out.printf("heap per connection: %d bytes (%d MB in total)%n", (heapAfter - heapBefore) / connections,
+      (heapAfter - heapBefore) / (1024 * 1024));
+
+    // one feature changes in every environment
+    long writesBefore = DiscardingOutput.writes.get();
+    started = System.nanoTime();
+
+    for (UUID environmentId : environmentIds) {
+      source.updateFeatures(new PublishFeatureValues().features(List.of(new PublishFeatureValue()
+        .action(PublishAction.UPDATE).environmentId(environmentId).feature(features.get(0)))));
+    }
+
+    while (DiscardingOutput.writes.get() - writesBefore < connections &&
+      System.nanoTime() - started < TimeUnit.MINUTES.toNanos(1)) {
+      Thread.sleep(1);
+    }
+
+    System.out.printf("an update to every environment reached %d connections in %d ms%n",
+      DiscardingOutput.writes.get() - writesBefore, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
+
+    open.forEach(c -> c.close(false));
+    System.exit(0);
+  }
+
+  private static long usedHeap() throws InterruptedException {
+    for (int count = 0; count < 5; count++) {
+      System.gc();
+      Thread.sleep(200);
+    }
+
+    return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+  }
+
+  private static final AdmissionPermit NO_PERMIT = new AdmissionPermit() {
+    @Override
+    public void success() {
+    }
+
+    @Override
+    public void dropped() {
+    }
+
+    @Override
+    public void ignore() {
+    }
+  };
+
+  /**
+   * Counts what would have been written and throws it away. The first "features" message is the one that tells us the
+   * connection has been answered.
+   */
+  static class DiscardingOutput implements EventOutputHolder {
+    static final AtomicLong writes = new AtomicLong();
+    private final CountDownLatch sentFeatures;
+    private boolean closed;
+
+    DiscardingOutput(CountDownLatch sentFeatures) {
+      this.sentFeatures = sentFeatures;
+    }
+
+    @Override
+    public void write(@NotNull String name, @NotNull MediaType mediaType, @Nullable String etags,
+                      @NotNull String data) {
+      if (name.equals("features")) {
+        sentFeatures.countDown();
+      } else if (name.equals("feature")) {
+        writes.incrementAndGet();
+      }
+    }
+
+    @Override
+    public boolean isClosed() {
+      return closed;
+    }
+
+    @Override
+    public void close() {
+      closed = true;
+    }
+  }
+
+  /**
+   * Every key is known and every environment has the same features.
+   */
+  static class StubDacha implements DachaFeatureRequestSubmitter {
+    private final List<FeatureState> features;
+
+    StubDacha(List<FeatureState> features) {
+      this.features = features;
+    }
+
+    @Override
+    public void requestForKeyComplete(@NotNull KeyParts key, @Nullable String etag) {
+    }
+
+    @NotNull
+    @Override
+    public List<FeatureRequestResponse> request(@NotNull List<KeyParts> keys, @NotNull ClientContext context,
+                                                @NotNull EtagStructureHolder etags) {
+      return keys.stream().map(key -> new FeatureRequestResponse(
+        new FeatureEnvironmentCollection().id(key.getEnvironmentId()).features(features),
+        FeatureRequestSuccess.SUCCESS, key, "1", null, false)).toList();
+    }
+
+    @NotNull
+    @Override
+    public CompletableFuture<List<FeatureRequestResponse>> requestAsync(@NotNull List<KeyParts> keys,
+                                                                        @NotNull ClientContext context,
+                                                                        @NotNull EtagStructureHolder etags) {
+      return CompletableFuture.completedFuture(request(keys, context, etags));
+    }
+
+    @NotNull
+    @Override
+    public CompletableFuture<List<FeatureRequestResponse>> requestAsync(@NotNull List<KeyParts> keys,
+                                                                        @NotNull ClientContext context,
+                                                                        @NotNull EtagStructureHolder etags,
+                                                                        @Nullable Duration timeout) {
+      return requestAsync(keys, context, etags);
+    }
+
+    @NotNull
+    @Override
+    public CompletableFuture<FeatureRequester> requestDetails(@NotNull KeyParts key, @Nullable Duration timeout) {
+      throw new UnsupportedOperationException("SSE connections only ask for features");
+    }
+  }
+
+  static class NoBuckets implements BucketService {
+    @Override
+    public void putInBucket(ClientConnection b) {
+    }
+
+    @Override
+    public void dachaIsUnavailable(ClientConnection b) {
+    }
+  }
+
+  static class NoStats implements StatRecorder {
+    @Override
+    public void recordHit(@NotNull KeyParts apiKey, @NotNull EdgeHitResultType resultType,
+                          @NotNull EdgeHitSourceType hitSourceType) {
+    }
+  }
+}
@@ -0,0 +1,182 @@
+package io.featurehub.benchmarks.matchers;
+
+import io.featurehub.benchmarks.matchers.legacy.LegacyDateArrayMatcher;
+import io.featurehub.benchmarks.matchers.legacy.LegacyIpAddressArrayMatcher;
+import io.featurehub.benchmarks.matchers.legacy.LegacySemanticVersionArrayMatcher;
+import io.featurehub.benchmarks.matchers.legacy.LegacyStringArrayMatcher;
+import io.featurehub.mr.model.RolloutStrategyAttributeConditional;
+import io.featurehub.mr.model.RolloutStrategyFieldType;
+import io.featurehub.sse.model.FeatureRolloutStrategyAttribute;
+import io.featurehub.strategies.matchers.CompiledMatcher;
+import io.featurehub.strategies.matchers.MatcherRegistry;
+import io.featurehub.strategies.matchers.MatcherRepository;
+import io.featurehub.strategies.matchers.StrategyMatcher;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Compares matching a single supplied value using the matchers as they were (a new matcher per match that parses
+ * the attribute values each time) against the pre-compiled matchers that the edge holds in its evaluation plans.
+ * Every matcher type is covered.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MatcherBenchmark {
+  public enum Kind {
+    STRING_EQUALS(RolloutStrategyFieldType.STRING, RolloutStrategyAttributeConditional.EQUALS,
+      LegacyStringArrayMatcher::new),
+    STRING_STARTS_WITH(RolloutStrategyFieldType.STRING, RolloutStrategyAttributeConditional.STARTS_WITH,
+      LegacyStringArrayMatcher::new),
+    STRING_REGEX(RolloutStrategyFieldType.STRING, RolloutStrategyAttributeConditional.REGEX,
+      LegacyStringArrayMatcher::new),
+    SEMANTIC_VERSION(RolloutStrategyFieldType.SEMANTIC_VERSION, RolloutStrategyAttributeConditional.GREATER_EQUALS,
+      LegacySemanticVersionArrayMatcher::new),
+    DATE(RolloutStrategyFieldType.DATE, RolloutStrategyAttributeConditional.LESS,
+      LegacyDateArrayMatcher::new),
+    DATE_TIME(RolloutStrategyFieldType.DATETIME, RolloutStrategyAttributeConditional.GREATER, null),
+    NUMBER(RolloutStrategyFieldType.NUMBER, RolloutStrategyAttributeConditional.EQUALS, null),
+    BOOLEAN(RolloutStrategyFieldType.BOOLEAN, RolloutStrategyAttributeConditional.EQUALS, null),
+    IP_ADDRESS(RolloutStrategyFieldType.IP_ADDRESS, RolloutStrategyAttributeConditional.INCLUDES,
+      LegacyIpAddressArrayMatcher::new),
+    // a mix of addresses, IPv4 ranges and IPv6 ranges with an IPv6 address supplied
+    IP_ADDRESS_MIXED(RolloutStrategyFieldType.IP_ADDRESS, RolloutStrategyAttributeConditional.INCLUDES,
+      LegacyIpAddressArrayMatcher::new);
+
+    final RolloutStrategyFieldType type;
+    final RolloutStrategyAttributeConditional conditional;
+    // null where the matcher didn't change, the per call match of the current matcher is used instead
+    final Supplier<StrategyMatcher> legacy;
+
+    Kind(RolloutStrategyFieldType type, RolloutStrategyAttributeConditional conditional,
+         Supplier<StrategyMatcher> legacy) {
+      this.type = type;
+      this.conditional = conditional;
+      this.legacy = legacy;
+    }
+  }
+
+  @Param
+  public Kind kind;
+
+  @Param({"1", "10", "1000"})
+  public int valueCount;
+
+  private FeatureRolloutStrategyAttribute attr;
+  private String suppliedValue;
+  private CompiledMatcher compiled;
+  private StrategyMatcher perCall;
+  private final MatcherRepository matcherRepository = new MatcherRegistry();
+
+  @Setup
+  public void setup() {
+    List<Object> values = new ArrayList<>();
+
+    for (int count = 0; count < valueCount; count++) {
+      switch (kind) {
+        case STRING_EQUALS:
+        case STRING_STARTS_WITH:
+          values.add("customer-" + count);
+          break;
+        case STRING_REGEX:
+          values.add("^(org|team)-" + count + "-[a-z]+$");
+          break;
+        case SEMANTIC_VERSION:
+          values.add("2." + count + ".0-RC1");
+          break;
+        case DATE:
+          values.add(LocalDate.of(2020, 1, 1).plusMonths(count).toString());
+          break;
+        case DATE_TIME:
+          values.add(LocalDate.of(2020, 1, 1).plusDays(count) + "T10:15:30Z");
+          break;
+        case NUMBER:
+          values.add(count * 7.5);
+          break;
+        case BOOLEAN:
+          values.add(count % 2 == 0);
+          break;
+        case IP_ADDRESS:
+          values.add(String.format("10.%d.%d.0/24", count / 256, count % 256));
+          break;
+        case IP_ADDRESS_MIXED:
+          switch (count % 3) {
+            case 0:
+              values.add(String.format("10.%d.%d.0/24", count / 256, count % 256));
+              break;
+            case 1:
+              values.add(String.format("192.168.%d.%d", count / 256, count % 256));
+              break;
+            default:
+              values.add(String.format("2001:db8:%x::/48", count));
+              break;
+          }
+          break;
+      }
+    }
+
+    attr = new FeatureRolloutStrategyAttribute().fieldName("f").type(kind.type).conditional(kind.conditional)
+      .values(values);
+
+    // a supplied value that fails every value in the list, which is the worst case for all of the matchers
+    switch (kind) {
+      case STRING_EQUALS:
+      case STRING_STARTS_WITH:
+      case STRING_REGEX:
+        suppliedValue = "org-x-nomatch";
+        break;
+      case SEMANTIC_VERSION:
+        suppliedValue = "1.4.7";
+        break;
+      case DATE:
+        suppliedValue = "2030-06-01";
+        break;
+      case DATE_TIME:
+        suppliedValue = "2019-06-01T00:00:00Z";
+        break;
+      case NUMBER:
+        suppliedValue = "3.25";
+        break;
+      case BOOLEAN:
+        suppliedValue = "false";
+        break;
+      case IP_ADDRESS:
+        suppliedValue = "192.168.86.75";
+        break;
+      case IP_ADDRESS_MIXED:
+        suppliedValue = "2001:db9::8a2e:370:7334";
+        break;
+    }
+
+    perCall = kind.legacy == null ? matcherRepository.findMatcher(attr) : null;
+    compiled = matcherRepository.compile(attr);
+  }
+
+  @Benchmark
+  public boolean legacyPerCall() {
+    return (perCall == null ? kind.legacy.get() : perCall).match(suppliedValue, attr);
+  }
+
+  @Benchmark
+  public boolean compiled() {
+    return compiled.match(suppliedValue);
+  }
+}
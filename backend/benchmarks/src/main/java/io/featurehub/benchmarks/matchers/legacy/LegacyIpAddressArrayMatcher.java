@@ -0,0 +1,46 @@
+package io.featurehub.benchmarks.matchers.legacy;
+
+
+import io.featurehub.sse.model.FeatureRolloutStrategyAttribute;
+import io.featurehub.strategies.matchers.CIDRMatch;
+import io.featurehub.strategies.matchers.StrategyMatcher;
+
+import java.net.InetAddress;
+
+/**
+ * The matcher as it was before operands were pre-parsed, kept only as a benchmark baseline.
+ */
+public class LegacyIpAddressArrayMatcher implements StrategyMatcher {
+  @Override
+  public boolean match(String suppliedValue, FeatureRolloutStrategyAttribute attr) {
+    try {
+      InetAddress suppliedAddress = CIDRMatch.suppliedAddress(suppliedValue);
+
+      switch(attr.getConditional()) {
+        case EQUALS:
+        case INCLUDES:
+          return attr.getValues().stream().anyMatch(val -> CIDRMatch.cidrMatch(val.toString(), suppliedAddress));
+        case ENDS_WITH:
+          break;
+        case STARTS_WITH:
+          break;
+        case GREATER:
+          break;
+        case GREATER_EQUALS:
+          break;
+        case LESS:
+          break;
+        case LESS_EQUALS:
+          break;
+        case NOT_EQUALS:
+        case EXCLUDES:
+          return attr.getValues().stream().noneMatch(val -> CIDRMatch.cidrMatch(val.toString(), suppliedAddress));
+        case REGEX:
+          break;
+      }
+
+    } catch (Exception ignored) {
+    }
+    return false;
+  }
+}
@@ -0,0 +1,95 @@
+package io.featurehub.benchmarks.strategies;
+
+import io.featurehub.benchmarks.data.Datasets;
+import io.featurehub.dacha.model.CacheEnvironmentFeature;
+import io.featurehub.dacha.model.CacheFeatureValue;
+import io.featurehub.edge.KeyParts;
+import io.featurehub.edge.strategies.ApplyFeature;
+import io.featurehub.edge.strategies.ClientContext;
+import io.featurehub.edge.strategies.FeatureEvaluationPlan;
+import io.featurehub.edge.strategies.FeatureEvaluationPlanCache;
+import io.featurehub.sse.model.FeatureRolloutStrategy;
+import io.featurehub.strategies.matchers.MatcherRegistry;
+import io.featurehub.strategies.percentage.PercentageMumurCalculator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Evaluates a single feature with strategies for a rotating population of users, both through the cached plan
+ * (as the edge does) and by compiling the strategies on every call (as anything holding only the strategy list
+ * does).
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ApplyFeatureBenchmark {
+  private static final int POPULATION = 1024;
+
+  @Param({"1", "5", "20"})
+  public int strategiesPerFeature;
+
+  @Param({"1", "100"})
+  public int valuesPerAttribute;
+
+  @Param
+  public Datasets.Mix mix;
+
+  private final MatcherRegistry matcherRegistry = new MatcherRegistry();
+  private final ApplyFeature applyFeature = new ApplyFeature(new PercentageMumurCalculator(), matcherRegistry);
+  private final FeatureEvaluationPlanCache planCache = new FeatureEvaluationPlanCache(matcherRegistry);
+
+  private CacheFeatureValue value;
+  private String featureKey;
+  private String featureValueId;
+  private List<FeatureRolloutStrategy> strategies;
+  private ClientContext[] contexts;
+  private int next;
+
+  @Setup
+  public void setup() {
+    CacheEnvironmentFeature feature = Datasets.environment(1, strategiesPerFeature, valuesPerAttribute, mix).get(0);
+    value = feature.getValue();
+    featureKey = feature.getFeature().getKey();
+    featureValueId = value.getId().toString();
+    strategies = planCache.plan(value).getStrategies();
+
+    List<KeyParts> keys = List.of(new KeyParts("default", UUID.randomUUID(), "server-key"));
+    contexts = Datasets.contexts(POPULATION, 8).stream()
+      .map(header -> ClientContext.decode(List.of(header), keys))
+      .collect(Collectors.toList())
+      .toArray(new ClientContext[0]);
+  }
+
+  private ClientContext nextContext() {
+    return contexts[next++ & (POPULATION - 1)];
+  }
+
+  @Benchmark
+  public void cachedPlan(Blackhole bh) {
+    FeatureEvaluationPlan plan = planCache.plan(value);
+    bh.consume(applyFeature.applyFeature(plan, featureKey, featureValueId, nextContext()));
+  }
+
+  @Benchmark
+  public void compiledPerCall(Blackhole bh) {
+    bh.consume(applyFeature.applyFeature(strategies, featureKey, featureValueId, nextContext()));
+  }
+}
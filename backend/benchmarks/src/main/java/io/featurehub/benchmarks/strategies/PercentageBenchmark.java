@@ -0,0 +1,67 @@
+package io.featurehub.benchmarks.strategies;
+
+import io.featurehub.strategies.percentage.PercentageMumurCalculator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The percentage bucket calculation for the kinds of keys SDKs send - session/user UUIDs, email addresses and
+ * user names that aren't ASCII.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PercentageBenchmark {
+  private static final int POPULATION = 1024;
+
+  public enum KeyKind { UUID, EMAIL, NON_ASCII }
+
+  @Param
+  public KeyKind keyKind;
+
+  private final PercentageMumurCalculator calculator = new PercentageMumurCalculator();
+  private final String featureValueId = UUID.randomUUID().toString();
+  private String[] keys;
+  private int next;
+
+  @Setup
+  public void setup() {
+    Random random = new Random(POPULATION);
+    keys = new String[POPULATION];
+
+    for (int i = 0; i < POPULATION; i++) {
+      switch (keyKind) {
+        case UUID:
+          keys[i] = new UUID(random.nextLong(), random.nextLong()).toString();
+          break;
+        case EMAIL:
+          keys[i] = "first.last" + random.nextInt(100_000) + "@example.com";
+          break;
+        case NON_ASCII:
+          keys[i] = "Zoë-Ōtautahi-" + random.nextInt(100_000) + "-用户";
+          break;
+      }
+    }
+  }
+
+  @Benchmark
+  public int determineClientPercentage() {
+    return calculator.determineClientPercentage(keys[next++ & (POPULATION - 1)], featureValueId);
+  }
+}
@@ -0,0 +1,43 @@
+package io.featurehub.dacha.api
+
+import io.featurehub.dacha.model.DachaFeatureChange
+import io.featurehub.utils.FallbackPropertyConfig
+import java.util.*
+
+/**
+ * The most recent changes to an environment's features. Each is recorded against the etag the features had before
+ * it, so someone holding an older etag can be told which features have changed since. Only the last
+ * dacha.delta.journal-size changes are kept. Both Dacha and Dacha2 keep one for each environment.
+ */
+class FeatureChangeJournal(private val maximumSize: Int = journalSize) {
+  private val changes = ArrayDeque<DachaFeatureChange>()
+
+  @Synchronized
+  fun record(etagBefore: String, featureId: UUID) {
+    if (maximumSize <= 0) {
+      return
+    }
+
+    changes.addLast(DachaFeatureChange().etag(etagBefore).featureId(featureId))
+
+    while (changes.size > maximumSize) {
+      changes.removeFirst()
+    }
+  }
+
+  /**
+   * the changes, oldest first, with the suffix the etag is given when sent to edge. Null if none are kept.
+   */
+  @Synchronized
+  fun changes(etagSuffix: String): List<DachaFeatureChange>? {
+    if (maximumSize <= 0) {
+      return null
+    }
+
+    return changes.map { DachaFeatureChange().etag(it.etag + etagSuffix).featureId(it.featureId) }
+  }
+
+  companion object {
+    val journalSize = FallbackPropertyConfig.getConfig("dacha.delta.journal-size", "20").toInt()
+  }
+}
@@ -6,6 +6,8 @@ import cd.connect.jersey.common.LoggingConfiguration
 import cd.connect.openapi.support.ApiClient
 import io.featurehub.dacha.api.impl.DachaApiKeyServiceServiceImpl
 import io.featurehub.dacha.api.impl.DachaEnvironmentServiceServiceImpl
+import io.featurehub.dacha.model.DachaKeyDetailsBulkRequest
+import io.featurehub.dacha.model.DachaKeyDetailsBulkResponse
 import io.featurehub.dacha.model.DachaKeyDetailsResponse
 import io.featurehub.dacha.model.DachaPermissionResponse
 import io.featurehub.jersey.config.CommonConfiguration
@@ -18,14 +20,22 @@ import jakarta.ws.rs.client.Client
 import jakarta.ws.rs.client.ClientBuilder
 import org.glassfish.jersey.client.ClientProperties
 import org.slf4j.LoggerFactory
+import java.net.http.HttpClient
+import java.time.Duration
 import java.util.*
 import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
 
 class NoSuchCacheDachaClient : DachaApiKeyService {
-  override fun getApiKeyDetails(eId: UUID, serviceAccountKey: String, excludeRetired: Boolean?): DachaKeyDetailsResponse {
+  override fun getApiKeyDetails(eId: UUID, serviceAccountKey: String, excludeRetired: Boolean?, etag: String?): DachaKeyDetailsResponse {
     throw NotFoundException()
   }
 
+  override fun getApiKeyDetailsBulk(dachaKeyDetailsBulkRequest: DachaKeyDetailsBulkRequest): DachaKeyDetailsBulkResponse {
+    return keyDetailsOneAtATime(dachaKeyDetailsBulkRequest)
+  }
+
   override fun getApiKeyPermissions(eId: UUID, serviceAccountKey: String, featureKey: String): DachaPermissionResponse {
     throw NotFoundException()
   }
@@ -72,6 +82,45 @@ class DachaClientRegistry @Inject constructor(private val backupDachaFactory: Ba
   @ConfigKey("dacha.timeout.read")
   var readTimeout: Int? = 4000
 
+  @ConfigKey("dacha.client.async")
+  var asyncClient: Boolean? = false
+
+  @ConfigKey("dacha.client.http2")
+  var http2: Boolean? = true
+
+  @ConfigKey("dacha.client.threads")
+  var asyncThreads: Int? = 4
+
+  @ConfigKey("dacha.client.pool-size")
+  var poolSize: Int? = 0
+
+  @ConfigKey("dacha.client.keep-alive-seconds")
+  var keepAliveSeconds: Int? = 0
+
+  @ConfigKey("dacha.client.hedge-after-ms")
+  var hedgeAfter: Long? = 0
+
+  private val asyncExecutor: ExecutorService by lazy {
+    Executors.newFixedThreadPool(asyncThreads!!) { r -> Thread(r, "dacha-client").apply { isDaemon = true } }
+  }
+
+  private val asyncHttpClient: HttpClient by lazy {
+    // the JDK client only reads its pool settings once, so these apply if nothing else has created one first
+    if (poolSize!! > 0) {
+      System.getProperties().putIfAbsent("jdk.httpclient.connectionPoolSize", poolSize.toString())
+    }
+
+    if (keepAliveSeconds!! > 0) {
+      System.getProperties().putIfAbsent("jdk.httpclient.keepalive.timeout", keepAliveSeconds.toString())
+    }
+
+    HttpClient.newBuilder()
+      .version(if (http2 == true) HttpClient.Version.HTTP_2 else HttpClient.Version.HTTP_1_1)
+      .connectTimeout(Duration.ofMillis(connectTimeout!!.toLong()))
+      .executor(asyncExecutor)
+      .build()
+  }
+
   init {
     DeclaredConfigResolver.resolve(this)
     client = ClientBuilder.newClient()
@@ -81,6 +130,25 @@ class DachaClientRegistry @Inject constructor(private val backupDachaFactory: Ba
     client.property(ClientProperties.READ_TIMEOUT, readTimeout)
   }
 
+  /**
+   * dacha.url.<cache> can list more than one replica, separated by commas. Only the async client uses the others.
+   */
+  private fun replicas(url: String): List<String> {
+    return url.split(",").map { it.trim().trimEnd('/') }.filter { it.isNotEmpty() }
+  }
+
+  private fun apiKeyService(url: String): DachaApiKeyService {
+    val replicas = replicas(url)
+    val jersey = DachaApiKeyServiceServiceImpl(ApiClient(client, replicas[0]))
+
+    if (asyncClient != true) {
+      return jersey
+    }
+
+    return HttpDachaApiKeyService(asyncHttpClient, replicas, Duration.ofMillis(readTimeout!!.toLong()),
+      Duration.ofMillis(hedgeAfter!!), asyncExecutor, jersey)
+  }
+
   private fun url(cache: String): String? {
     return FallbackPropertyConfig.getConfig("$DACHA_URL$cache")
   }
@@ -98,7 +166,7 @@ class DachaClientRegistry @Inject constructor(private val backupDachaFactory: Ba
       val url = url(cacheName)
 
       if (url != null) {
-        service = DachaApiKeyServiceServiceImpl(ApiClient(client, url))
+        service = apiKeyService(url)
         apiServiceMap[cacheName] = service
       } else if (noCacheConfigurationReferences() && backupDachaFactory.supportsNATS() ) {
         log.info("Cache {} is not configured by REST definition, resorting back to NATS Request/Reply", cacheName)
@@ -132,7 +200,7 @@ class DachaClientRegistry @Inject constructor(private val backupDachaFactory: Ba
     if (service == null) {
       val url = url(cacheName)
       if (url != null) {
-        service = DachaEnvironmentServiceServiceImpl(ApiClient(client, url))
+        service = DachaEnvironmentServiceServiceImpl(ApiClient(client, replicas(url)[0]))
         environmentServiceMap[cacheName] = service
       }
     }
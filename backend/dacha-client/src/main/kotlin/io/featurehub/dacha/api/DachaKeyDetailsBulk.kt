@@ -0,0 +1,23 @@
+package io.featurehub.dacha.api
+
+import io.featurehub.dacha.model.DachaKeyDetailsBulkRequest
+import io.featurehub.dacha.model.DachaKeyDetailsBulkResponse
+import io.featurehub.dacha.model.DachaKeyDetailsResult
+import jakarta.ws.rs.WebApplicationException
+
+/**
+ * Answers a bulk request by asking for each key in turn, for services that have no cheaper way of doing it.
+ */
+fun DachaApiKeyService.keyDetailsOneAtATime(request: DachaKeyDetailsBulkRequest): DachaKeyDetailsBulkResponse {
+  return DachaKeyDetailsBulkResponse().results(request.keys.map { key ->
+    val result = DachaKeyDetailsResult().eId(key.eId).serviceAccountKey(key.serviceAccountKey)
+
+    try {
+      val details = getApiKeyDetails(key.eId, key.serviceAccountKey, request.excludeRetired, key.etag)
+
+      if (details == null) result.status(404) else result.status(200).details(details)
+    } catch (e: WebApplicationException) {
+      result.status(e.response?.status ?: 500)
+    }
+  })
+}
@@ -0,0 +1,209 @@
+package io.featurehub.dacha.api
+
+import io.featurehub.dacha.model.DachaKeyDetailsBulkRequest
+import io.featurehub.dacha.model.DachaKeyDetailsBulkResponse
+import io.featurehub.dacha.model.DachaKeyDetailsResponse
+import io.featurehub.dacha.model.DachaPermissionResponse
+import io.featurehub.jersey.config.CacheJsonMapper
+import io.prometheus.client.Counter
+import io.prometheus.client.Gauge
+import io.prometheus.client.Histogram
+import jakarta.ws.rs.ProcessingException
+import jakarta.ws.rs.WebApplicationException
+import jakarta.ws.rs.core.Response
+import java.net.ConnectException
+import java.net.SocketTimeoutException
+import java.net.URI
+import java.net.URLEncoder
+import java.net.http.HttpClient
+import java.net.http.HttpConnectTimeoutException
+import java.net.http.HttpRequest
+import java.net.http.HttpResponse
+import java.net.http.HttpTimeoutException
+import java.nio.charset.StandardCharsets
+import java.time.Duration
+import java.util.*
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.CompletionException
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.Executor
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicBoolean
+import java.util.concurrent.atomic.AtomicInteger
+
+/**
+ * Asks Dacha for a key's details without holding a thread while it waits.
+ */
+interface AsyncDachaApiKeyService {
+  /**
+   * As DachaApiKeyService.getApiKeyDetails. The timeout is how long the caller is prepared to wait, if it is null or
+   * longer than the client's own read timeout, the read timeout is used. Failures are the same as the Jersey client
+   * would give, a WebApplicationException for a status other than 200 and a ProcessingException if Dacha couldn't be
+   * reached in time.
+   */
+  fun getApiKeyDetailsAsync(
+    eId: UUID,
+    serviceAccountKey: String,
+    excludeRetired: Boolean?,
+    etag: String?,
+    timeout: Duration?
+  ): CompletableFuture<DachaKeyDetailsResponse>
+}
+
+/**
+ * Talks to one or more replicas of a Dacha cache using the JDK HTTP client, which multiplexes requests over a
+ * single HTTP/2 connection where Dacha supports it and otherwise pools HTTP/1.1 connections. Requests start on the
+ * first replica in turn and, if there is more than one and hedgeAfter is set, one that hasn't answered by then (or
+ * that fails) is also sent to the next replica and whichever answers first wins.
+ *
+ * Only the key details are asked for this way as they are what every poll needs, the rest go through the generated
+ * Jersey client for the first replica.
+ */
+class HttpDachaApiKeyService(
+  private val client: HttpClient,
+  private val urls: List<String>,
+  private val readTimeout: Duration,
+  private val hedgeAfter: Duration,
+  private val hedgeExecutor: Executor,
+  private val delegate: DachaApiKeyService
+) : DachaApiKeyService, AsyncDachaApiKeyService {
+  private val nextReplica = AtomicInteger()
+
+  override fun getApiKeyDetailsAsync(
+    eId: UUID,
+    serviceAccountKey: String,
+    excludeRetired: Boolean?,
+    etag: String?,
+    timeout: Duration?
+  ): CompletableFuture<DachaKeyDetailsResponse> {
+    val query = StringBuilder()
+    excludeRetired?.let { query.append("&excludeRetired=").append(it) }
+    etag?.let { query.append("&etag=").append(encode(it)) }
+
+    val path = "/v2/environment/$eId/${encode(serviceAccountKey)}" +
+      (if (query.isEmpty()) "" else "?" + query.substring(1))
+    val deadline = if (timeout == null || timeout > readTimeout) readTimeout else timeout
+
+    return hedged { url -> get(url + path, deadline) }
+      .thenApply { response -> CacheJsonMapper.mapper.readValue(response.body(), DachaKeyDetailsResponse::class.java) }
+  }
+
+  override fun getApiKeyDetails(
+    eId: UUID,
+    serviceAccountKey: String,
+    excludeRetired: Boolean?,
+    etag: String?
+  ): DachaKeyDetailsResponse {
+    try {
+      return getApiKeyDetailsAsync(eId, serviceAccountKey, excludeRetired, etag, null).get()
+    } catch (e: ExecutionException) {
+      throw e.cause ?: e
+    }
+  }
+
+  override fun getApiKeyDetailsBulk(dachaKeyDetailsBulkRequest: DachaKeyDetailsBulkRequest): DachaKeyDetailsBulkResponse {
+    return delegate.getApiKeyDetailsBulk(dachaKeyDetailsBulkRequest)
+  }
+
+  override fun getApiKeyPermissions(eId: UUID, serviceAccountKey: String, featureKey: String): DachaPermissionResponse {
+    return delegate.getApiKeyPermissions(eId, serviceAccountKey, featureKey)
+  }
+
+  private fun hedged(attempt: (String) -> CompletableFuture<HttpResponse<ByteArray>>): CompletableFuture<HttpResponse<ByteArray>> {
+    val primary = (nextReplica.getAndIncrement() and Int.MAX_VALUE) % urls.size
+    val first = attempt(urls[primary])
+
+    if (urls.size == 1 || hedgeAfter.isZero) {
+      return first
+    }
+
+    val result = CompletableFuture<HttpResponse<ByteArray>>()
+    val outstanding = AtomicInteger(2)
+    val hedgeStarted = AtomicBoolean(false)
+
+    // any answer from Dacha, even a 404, is the answer. Only failing to get one leaves it to the other replica
+    val finish: (HttpResponse<ByteArray>?, Throwable?) -> Unit = { response, failure ->
+      if (failure == null) {
+        result.complete(response)
+      } else if (answered(failure) || outstanding.decrementAndGet() == 0) {
+        result.completeExceptionally(failure)
+      }
+    }
+
+    val hedge = Runnable {
+      if (!result.isDone && hedgeStarted.compareAndSet(false, true)) {
+        hedgeCounter.inc()
+        attempt(urls[(primary + 1) % urls.size]).whenComplete { response, failure -> finish(response, failure) }
+      }
+    }
+
+    first.whenComplete { response, failure ->
+      // a replica that can't be reached is hedged straight away rather than waiting
+      if (failure != null && !answered(failure)) {
+        hedge.run()
+      }
+
+      finish(response, failure)
+    }
+
+    CompletableFuture.delayedExecutor(hedgeAfter.toMillis(), TimeUnit.MILLISECONDS, hedgeExecutor).execute(hedge)
+
+    return result
+  }
+
+  private fun get(url: String, timeout: Duration): CompletableFuture<HttpResponse<ByteArray>> {
+    val request = HttpRequest.newBuilder(URI.create(url))
+      .timeout(timeout)
+      .header("Accept", "application/json")
+      .GET()
+      .build()
+
+    inflightGauge.inc()
+    val timer = requestHistogram.startTimer()
+
+    return client.sendAsync(request, HttpResponse.BodyHandlers.ofByteArray())
+      .handle { response, failure ->
+        inflightGauge.dec()
+        timer.observeDuration()
+
+        if (failure != null) {
+          throw translate(failure)
+        }
+
+        if (response.statusCode() != 200) {
+          throw WebApplicationException(Response.status(response.statusCode()).build())
+        }
+
+        response
+      }
+  }
+
+  companion object {
+    val inflightGauge: Gauge = Gauge.build("dacha_client_inflight_requests", "Requests to Dacha waiting for an answer")
+      .register()
+    val requestHistogram: Histogram = Histogram.build("dacha_client_request_time", "How long Dacha takes to answer a " +
+      "request for key details").register()
+    val hedgeCounter: Counter = Counter.build("dacha_client_hedged_requests", "Requests for key details also sent " +
+      "to another replica of Dacha").register()
+
+    private fun answered(failure: Throwable): Boolean = unwrap(failure) is WebApplicationException
+
+    fun unwrap(failure: Throwable): Throwable =
+      if (failure is CompletionException && failure.cause != null) failure.cause!! else failure
+
+    private fun encode(value: String): String = URLEncoder.encode(value, StandardCharsets.UTF_8).replace("+", "%20")
+
+    /**
+     * match the failures the Jersey client gives so callers can tell if Dacha wasn't there
+     */
+    private fun translate(failure: Throwable): RuntimeException {
+      return when (val cause = unwrap(failure)) {
+        is HttpConnectTimeoutException -> ProcessingException(ConnectException(cause.message))
+        is HttpTimeoutException -> ProcessingException(SocketTimeoutException(cause.message))
+        is ConnectException -> ProcessingException(cause)
+        is RuntimeException -> cause
+        else -> ProcessingException(cause)
+      }
+    }
+  }
+}
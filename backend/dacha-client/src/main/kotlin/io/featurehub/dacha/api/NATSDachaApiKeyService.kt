@@ -1,5 +1,7 @@
 package io.featurehub.dacha.api
 
+import io.featurehub.dacha.model.DachaKeyDetailsBulkRequest
+import io.featurehub.dacha.model.DachaKeyDetailsBulkResponse
 import io.featurehub.dacha.model.DachaKeyDetailsResponse
 import io.featurehub.dacha.model.DachaPermissionResponse
 import io.featurehub.jersey.config.CacheJsonMapper
@@ -23,7 +25,7 @@ class NATSDachaApiKeyService constructor(private val nats: NATSSource, val cache
   private val log: Logger = LoggerFactory.getLogger(NATSDachaApiKeyService::class.java)
   private val subjectName: String = ChannelNames.cache(cacheName, ChannelConstants.EDGE_CACHE_CHANNEL)
 
-  override fun getApiKeyDetails(eId: UUID, serviceAccountKey: String, excludeRetired: Boolean?): DachaKeyDetailsResponse {
+  override fun getApiKeyDetails(eId: UUID, serviceAccountKey: String, excludeRetired: Boolean?, etag: String?): DachaKeyDetailsResponse {
     try {
       val msg = nats.connection.request(
           subjectName,
@@ -31,7 +33,7 @@ class NATSDachaApiKeyService constructor(private val nats: NATSSource, val cache
             DachaNATSRequest().featuresRequest(
               DachaKeyDetailsRequest().serviceAccountKey(
                 serviceAccountKey
-              ).eId(eId).excludeRetired(excludeRetired ?: false)
+              ).eId(eId).excludeRetired(excludeRetired ?: false).etag(etag)
             )
           ),
           Duration.of(connectionTimeout, ChronoUnit.MILLIS)
@@ -52,6 +54,11 @@ class NATSDachaApiKeyService constructor(private val nats: NATSSource, val cache
     }
   }
 
+  // NATS request/reply has no bulk message, so this is each key in turn
+  override fun getApiKeyDetailsBulk(dachaKeyDetailsBulkRequest: DachaKeyDetailsBulkRequest): DachaKeyDetailsBulkResponse {
+    return keyDetailsOneAtATime(dachaKeyDetailsBulkRequest)
+  }
+
   override fun getApiKeyPermissions(eId: UUID, serviceAccountKey: String, featureKey: String): DachaPermissionResponse {
     try {
       val msg = nats.connection.request(
@@ -1,5 +1,6 @@
 package io.featurehub.dacha
 
+import io.featurehub.dacha.api.FeatureChangeJournal
 import io.featurehub.dacha.model.CacheEnvironmentFeature
 import io.featurehub.dacha.model.PublishEnvironment
 import jakarta.validation.Valid
@@ -35,6 +36,9 @@ class EnvironmentFeatures(override val environment: PublishEnvironment) : Intern
   private val _features: MutableMap<UUID, CacheEnvironmentFeature>
   private var _etag: String
 
+  // what has changed recently, so edge can send clients just the changes
+  val journal = FeatureChangeJournal()
+
   init {
     this._features = ConcurrentHashMap<UUID, CacheEnvironmentFeature>(
       environment.getFeatureValues().stream()
@@ -58,6 +62,7 @@ class EnvironmentFeatures(override val environment: PublishEnvironment) : Intern
   }
 
   fun set(feature: CacheEnvironmentFeature) {
+    journal.record(_etag, feature.getFeature().getId())
     _features.put(feature.getFeature().getId(), feature)
 
     // modify the copy so no sync issues
@@ -73,6 +78,7 @@ class EnvironmentFeatures(override val environment: PublishEnvironment) : Intern
   }
 
   fun remove(id: UUID) {
+    journal.record(_etag, id)
     _features.remove(id)
 
     val featureValues = environment.featureValues.toMutableList()
@@ -15,7 +15,7 @@ class DacheEdgeNATSAdapterService @Inject constructor(private val apiKeyResource
     if (request.featuresRequest != null) {
       try {
         val featuresRequest = request.featuresRequest!!
-        val response = apiKeyResource.getApiKeyDetails(featuresRequest.geteId(), featuresRequest.serviceAccountKey, featuresRequest.excludeRetired)
+        val response = apiKeyResource.getApiKeyDetails(featuresRequest.geteId(), featuresRequest.serviceAccountKey, featuresRequest.excludeRetired, featuresRequest.etag)
 
         return DachaNATSResponse().status(200).featuresResponse(response)
       } catch (e: WebApplicationException) {
@@ -7,10 +7,13 @@ import io.featurehub.dacha.model.CacheEnvironment
 import io.featurehub.dacha.model.CacheEnvironmentFeature
 import io.featurehub.dacha.model.CacheFeature
 import io.featurehub.dacha.model.CacheServiceAccountPermission
+import io.featurehub.dacha.model.DachaApiKey
+import io.featurehub.dacha.model.DachaKeyDetailsBulkRequest
 import io.featurehub.dacha.model.PublishEnvironment
 import io.featurehub.dacha.model.PublishAction
 import io.featurehub.mr.model.RoleType
 import jakarta.ws.rs.NotFoundException
+import jakarta.ws.rs.WebApplicationException
 import spock.lang.Specification
 
 class DachaApiKeyResourceSpec extends Specification {
@@ -123,4 +126,36 @@ class DachaApiKeyResourceSpec extends Specification {
       details.applicationId == fc.features.environment.applicationId
       details.serviceKeyId == fc.serviceAccountId
   }
+
+  def "a bulk request answers each key with the status it would have had on its own"() {
+    given: "one key exists and one doesn't"
+      cache.cacheComplete() >> true
+      def found = UUID.randomUUID()
+      def missing = UUID.randomUUID()
+      def fc = randomCollection()
+      cache.getFeaturesByEnvironmentAndServiceAccount(found, "key") >> fc
+      cache.getFeaturesByEnvironmentAndServiceAccount(missing, "key") >> null
+    when:
+      def response = resource.getApiKeyDetailsBulk(new DachaKeyDetailsBulkRequest().excludeRetired(true).keys([
+        new DachaApiKey().eId(found).serviceAccountKey("key"),
+        new DachaApiKey().eId(missing).serviceAccountKey("key"),
+      ]))
+    then:
+      response.results.collect { it.eId } == [found, missing]
+      response.results[0].status == 200
+      response.results[0].details.serviceKeyId == fc.serviceAccountId
+      response.results[1].status == 404
+      response.results[1].details == null
+  }
+
+  def "a bulk request while the cache is still loading is rejected as a whole"() {
+    given:
+      cache.cacheComplete() >> false
+    when:
+      resource.getApiKeyDetailsBulk(new DachaKeyDetailsBulkRequest().keys([
+        new DachaApiKey().eId(UUID.randomUUID()).serviceAccountKey("key")]))
+    then:
+      def e = thrown(WebApplicationException)
+      e.response.status == 503
+  }
 }
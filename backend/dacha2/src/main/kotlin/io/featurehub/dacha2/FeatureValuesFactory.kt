@@ -1,5 +1,6 @@
 package io.featurehub.dacha2
 
+import io.featurehub.dacha.api.FeatureChangeJournal
 import io.featurehub.dacha.model.CacheEnvironmentFeature
 import io.featurehub.dacha.model.PublishEnvironment
 import io.featurehub.utils.FallbackPropertyConfig
@@ -45,6 +46,9 @@ class EnvironmentFeatures(val env: PublishEnvironment) : FeatureValues {
   private val featureValues =
     ConcurrentSkipListSet<CacheEnvironmentFeature> { t1, t2 -> t1.feature.id.compareTo(t2.feature.id) }
 
+  // what has changed recently, so edge can send clients just the changes
+  val journal = FeatureChangeJournal()
+
   init {
 //    if (log.isTraceEnabled) {
       val uniqueUuid = env.featureValues.map { it.feature.id }.distinct()
@@ -103,6 +107,7 @@ class EnvironmentFeatures(val env: PublishEnvironment) : FeatureValues {
     }
 
     env.featureValues = featureValues.toList()
+    journal.record(etag, id)
     calculateEtag()
   }
 
@@ -123,6 +128,7 @@ class EnvironmentFeatures(val env: PublishEnvironment) : FeatureValues {
 
       env.featureValues = featureValues.toList()
 
+      journal.record(etag, id)
       calculateEtag()
     }
   }
@@ -2,24 +2,27 @@ package io.featurehub.dacha2.resource
 
 import io.featurehub.dacha.api.DachaApiKeyService
 import io.featurehub.dacha.model.CacheEnvironmentFeature
+import io.featurehub.dacha.model.DachaKeyDetailsBulkRequest
+import io.featurehub.dacha.model.DachaKeyDetailsBulkResponse
 import io.featurehub.dacha.model.DachaKeyDetailsResponse
+import io.featurehub.dacha.model.DachaKeyDetailsResult
 import io.featurehub.dacha.model.DachaPermissionResponse
 import io.featurehub.dacha2.Dacha2Cache
+import io.featurehub.dacha2.EnvironmentFeatures
 import io.featurehub.mr.model.RoleType
 import jakarta.inject.Inject
 import jakarta.ws.rs.NotFoundException
+import jakarta.ws.rs.WebApplicationException
 import java.util.*
 
 class DachaApiKeyResource @Inject constructor(private val cache: Dacha2Cache) : DachaApiKeyService {
 
-  override fun getApiKeyDetails(eId: UUID, serviceAccountKey: String, excludeRetired: Boolean?): DachaKeyDetailsResponse {
+  override fun getApiKeyDetails(eId: UUID, serviceAccountKey: String, excludeRetired: Boolean?, etag: String?): DachaKeyDetailsResponse {
     val collection = cache.getFeatureCollection(eId, serviceAccountKey) ?: throw NotFoundException()
 
     val allowedFeatureProperties = collection.perms.permissions.contains(RoleType.EXTENDED_DATA)
     val environment = collection.features.environment
-    val pureFeatureList = collection.features.getFeatures()
-    val filteredList = if (excludeRetired == true) pureFeatureList.filter { it.value?.retired != true } else pureFeatureList
-    return DachaKeyDetailsResponse()
+    val details = DachaKeyDetailsResponse()
       .organizationId(environment.organizationId)
       .portfolioId(environment.portfolioId)
       .applicationId(environment.applicationId)
@@ -27,9 +30,37 @@ class DachaApiKeyResource @Inject constructor(private val cache: Dacha2Cache) :
       .etag(collection.features.getEtag()+ (if (allowedFeatureProperties) "1" else "0")) // we do this to break the etag if the service account permission changes
       .environmentInfo(environment.environment.environmentInfo)
       .extendedDataAllowed(allowedFeatureProperties)
+
+    // the caller already has these features, so don't send them again
+    if (etag != null && etag == details.etag) {
+      return details.notModified(true)
+    }
+
+    // a filtered set of features has its own etag, which the journal knows nothing about
+    (collection.features as? EnvironmentFeatures)?.let { features ->
+      details.journal(features.journal.changes(if (allowedFeatureProperties) "1" else "0"))
+    }
+
+    val pureFeatureList = collection.features.getFeatures()
+    val filteredList = if (excludeRetired == true) pureFeatureList.filter { it.value?.retired != true } else pureFeatureList
+    return details
       .features(if (allowedFeatureProperties) filteredList.toList() else stripExtendedData(filteredList))
   }
 
+  override fun getApiKeyDetailsBulk(dachaKeyDetailsBulkRequest: DachaKeyDetailsBulkRequest): DachaKeyDetailsBulkResponse {
+    val excludeRetired = dachaKeyDetailsBulkRequest.excludeRetired
+
+    return DachaKeyDetailsBulkResponse().results(dachaKeyDetailsBulkRequest.keys.map { key ->
+      val result = DachaKeyDetailsResult().eId(key.eId).serviceAccountKey(key.serviceAccountKey)
+
+      try {
+        result.status(200).details(getApiKeyDetails(key.eId, key.serviceAccountKey, excludeRetired, key.etag))
+      } catch (e: WebApplicationException) {
+        result.status(e.response.status)
+      }
+    })
+  }
+
   private fun stripExtendedData(filteredList: Collection<CacheEnvironmentFeature>): List<CacheEnvironmentFeature> {
     return filteredList.map { ef -> if (ef.featureProperties?.isNotEmpty() == true) stripFeatureProperties(ef) else ef }.toList()
   }
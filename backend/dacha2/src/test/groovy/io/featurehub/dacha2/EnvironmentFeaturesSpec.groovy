@@ -1,5 +1,6 @@
 package io.featurehub.dacha2
 
+import io.featurehub.dacha.api.FeatureChangeJournal
 import io.featurehub.dacha.model.CacheEnvironmentFeature
 import io.featurehub.dacha.model.CacheFeature
 import io.featurehub.dacha.model.CacheFeatureValue
@@ -47,4 +48,29 @@ class EnvironmentFeaturesSpec extends Specification {
     then:
       etag != "5e3eafc18a57bba2080e6ce87b059b78"
   }
+
+  def "each change is journalled against the etag from before it"() {
+    given: "an environment with a feature"
+      def feature = new CacheEnvironmentFeature().feature(new CacheFeature().version(1).id(UUID.randomUUID()))
+        .value(new CacheFeatureValue().version(1))
+      def env = new EnvironmentFeatures(new PublishEnvironment().featureValues([feature]))
+      def original = env.etag
+    when: "the value changes and then the feature is removed"
+      env.setFeatureValue(new CacheEnvironmentFeature().feature(feature.feature).value(new CacheFeatureValue().version(2)))
+      def updated = env.etag
+      env.remove(feature.feature.id)
+    then:
+      env.journal.changes("1")*.etag == [original + "1", updated + "1"]
+      env.journal.changes("1")*.featureId == [feature.feature.id, feature.feature.id]
+  }
+
+  def "only the most recent changes are kept"() {
+    given:
+      def journal = new FeatureChangeJournal(2)
+    when:
+      (1..3).each { journal.record("e${it}".toString(), UUID.randomUUID()) }
+    then:
+      journal.changes("")*.etag == ["e2", "e3"]
+      new FeatureChangeJournal(0).changes("") == null
+  }
 }
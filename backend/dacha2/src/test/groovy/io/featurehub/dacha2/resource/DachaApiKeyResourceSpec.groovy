@@ -5,6 +5,8 @@ import io.featurehub.dacha.model.CacheEnvironmentFeature
 import io.featurehub.dacha.model.CacheFeature
 import io.featurehub.dacha.model.CacheFeatureValue
 import io.featurehub.dacha.model.CacheServiceAccountPermission
+import io.featurehub.dacha.model.DachaApiKey
+import io.featurehub.dacha.model.DachaKeyDetailsBulkRequest
 import io.featurehub.dacha.model.PublishAction
 import io.featurehub.dacha.model.PublishEnvironment
 import io.featurehub.dacha2.Dacha2Cache
@@ -39,7 +41,7 @@ class DachaApiKeyResourceSpec extends Specification {
 
   def "getApiKeyDetails: if there is no match i get a not found exception"() {
     when:
-      resource.getApiKeyDetails(envId, apiKey, true)
+      resource.getApiKeyDetails(envId, apiKey, true, null)
     then:
       1 * cache.getFeatureCollection(envId, apiKey, true) >> null
       thrown(NotFoundException)
@@ -69,9 +71,9 @@ class DachaApiKeyResourceSpec extends Specification {
     given: "we have the data"
       def fc = featureCollection()
     when: "i call to get the data"
-      def result1 = resource.getApiKeyDetails(envId, apiKey, true)
+      def result1 = resource.getApiKeyDetails(envId, apiKey, true, null)
     and: "i ask for retired false"
-      def result2 = resource.getApiKeyDetails(envId, apiKey, false)
+      def result2 = resource.getApiKeyDetails(envId, apiKey, false, null)
     then:
       2 * cache.getFeatureCollection(envId, apiKey, true) >> fc
       result1.organizationId == orgId
@@ -84,6 +86,59 @@ class DachaApiKeyResourceSpec extends Specification {
       result2.features.size() == 2
   }
 
+  def "getApiKeyDetails: if the caller already has the current etag, the features are left out"() {
+    given: "we have the data"
+      def fc = featureCollection()
+    when: "i ask with the current etag"
+      def current = resource.getApiKeyDetails(envId, apiKey, true, fc.features.etag + '0')
+    and: "i ask with an old one"
+      def old = resource.getApiKeyDetails(envId, apiKey, true, "old")
+    then:
+      2 * cache.getFeatureCollection(envId, apiKey, true) >> fc
+      current.notModified
+      current.features == null
+      current.etag == ( fc.features.etag + '0' )
+      current.serviceKeyId == serviceAccountId
+      current.environmentInfo == envInfo
+      old.notModified == null
+      old.features.size() == 1
+  }
+
+  def "getApiKeyDetails: recent changes are sent with the etags they would have been given"() {
+    given: "we have the data and change a feature"
+      def fc = featureCollection()
+      def before = fc.features.etag
+      def feature = fc.features.getFeatures().find { it.feature.key == "x" }
+      fc.features.setFeatureValue(new CacheEnvironmentFeature().feature(feature.feature).value(new CacheFeatureValue().version(2)))
+    when:
+      def result = resource.getApiKeyDetails(envId, apiKey, true, null)
+    then:
+      1 * cache.getFeatureCollection(envId, apiKey, true) >> fc
+      result.journal*.etag == [before + '0']
+      result.journal*.featureId == [feature.feature.id]
+  }
+
+  def "getApiKeyDetailsBulk: each key gets its own details or status"() {
+    given:
+      def missing = UUID.randomUUID()
+    when:
+      def response = resource.getApiKeyDetailsBulk(new DachaKeyDetailsBulkRequest().excludeRetired(true).keys([
+        new DachaApiKey().eId(envId).serviceAccountKey(apiKey),
+        new DachaApiKey().eId(missing).serviceAccountKey(apiKey),
+      ]))
+    then:
+      1 * cache.getFeatureCollection(envId, apiKey, true) >> featureCollection()
+      1 * cache.getFeatureCollection(missing, apiKey, true) >> null
+      response.results.size() == 2
+      response.results[0].eId == envId
+      response.results[0].status == 200
+      response.results[0].details.serviceKeyId == serviceAccountId
+      response.results[0].details.features.size() == 1
+      response.results[1].eId == missing
+      response.results[1].status == 404
+      response.results[1].details == null
+  }
+
   def "getApiKeyPermissions: not environment = 404"() {
     when:
       resource.getApiKeyPermissions(envId, apiKey, "x")
@@ -2,6 +2,7 @@ package io.featurehub.edge;
 
 import io.featurehub.dacha.model.CacheEnvironmentFeature;
 import io.featurehub.edge.strategies.ClientContext;
+import io.featurehub.sse.model.FeatureBatchContextResult;
 import io.featurehub.sse.model.FeatureState;
 
 import java.util.List;
@@ -9,4 +10,14 @@ import java.util.List;
 public interface FeatureTransformer {
   List<FeatureState> transform(List<CacheEnvironmentFeature> features, ClientContext clientAttributes, boolean allowExtendedProperties);
   FeatureState transform(CacheEnvironmentFeature rf, ClientContext clientAttributes, boolean allowExtendedProperties);
+  /**
+   * Evaluates every feature against a server evaluated context, returning only the values (and the strategies that
+   * matched) keyed by feature key. Used by the batch API which evaluates the same features for many contexts.
+   */
+  FeatureBatchContextResult evaluate(List<CacheEnvironmentFeature> features, ClientContext clientAttributes);
+  /**
+   * Do any of the features have a strategy that matches on the current date or time? Their evaluated values can
+   * change while the features themselves stay the same, so they can't be held.
+   */
+  boolean evaluatesAgainstNow(List<CacheEnvironmentFeature> features);
 }
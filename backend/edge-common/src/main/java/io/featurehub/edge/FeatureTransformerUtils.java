@@ -1,13 +1,14 @@
 package io.featurehub.edge;
 
 import io.featurehub.dacha.model.CacheEnvironmentFeature;
-import io.featurehub.dacha.model.CacheRolloutStrategy;
-import io.featurehub.dacha.model.CacheRolloutStrategyAttribute;
+import io.featurehub.dacha.model.CacheFeatureValue;
 import io.featurehub.edge.strategies.Applied;
 import io.featurehub.edge.strategies.ApplyFeature;
 import io.featurehub.edge.strategies.ClientContext;
-import io.featurehub.sse.model.FeatureRolloutStrategy;
-import io.featurehub.sse.model.FeatureRolloutStrategyAttribute;
+import io.featurehub.edge.strategies.EvaluationInstant;
+import io.featurehub.edge.strategies.FeatureEvaluationPlan;
+import io.featurehub.edge.strategies.FeatureEvaluationPlanCache;
+import io.featurehub.sse.model.FeatureBatchContextResult;
 import io.featurehub.sse.model.FeatureState;
 import io.featurehub.strategies.matchers.MatcherRegistry;
 import io.featurehub.strategies.percentage.PercentageMumurCalculator;
@@ -15,19 +16,24 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.stream.Collectors;
 
 public class FeatureTransformerUtils implements FeatureTransformer {
   private static final Logger log = LoggerFactory.getLogger(FeatureTransformerUtils.class);
-  private final ApplyFeature applyFeature =
-      new ApplyFeature(new PercentageMumurCalculator(), new MatcherRegistry());
+  private final MatcherRegistry matcherRegistry = new MatcherRegistry();
+  private final ApplyFeature applyFeature = new ApplyFeature(new PercentageMumurCalculator(), matcherRegistry);
+  private final FeatureEvaluationPlanCache planCache = new FeatureEvaluationPlanCache(matcherRegistry);
 
   public List<FeatureState> transform(
       List<CacheEnvironmentFeature> features, ClientContext clientAttributes, boolean allowExtendedProperties) {
     try {
+      final EvaluationInstant now = new EvaluationInstant();
+
       return features.stream()
-          .map(f -> transform(f, clientAttributes, allowExtendedProperties))
+          .map(f -> transform(f, clientAttributes, allowExtendedProperties, now))
           .collect(Collectors.toList());
     } catch (Exception e) {
       log.error("Failed transform", e);
@@ -36,6 +42,11 @@ public class FeatureTransformerUtils implements FeatureTransformer {
   }
 
   public FeatureState transform(CacheEnvironmentFeature rf, ClientContext clientAttributes, boolean allowExtendedProperties) {
+    return transform(rf, clientAttributes, allowExtendedProperties, new EvaluationInstant());
+  }
+
+  private FeatureState transform(CacheEnvironmentFeature rf, ClientContext clientAttributes,
+                                 boolean allowExtendedProperties, EvaluationInstant now) {
     FeatureState fs =
         new FeatureState()
             .key(rf.getFeature().getKey())
@@ -54,23 +65,19 @@ public class FeatureTransformerUtils implements FeatureTransformer {
       fs.setL(rf.getValue().getLocked());
 
       if (clientAttributes != null) {
-        final List<FeatureRolloutStrategy> fsStrategies =
-            (rf.getValue().getRolloutStrategies() != null)
-                ? rf.getValue().getRolloutStrategies().stream()
-                    .map(this::toFeatureRolloutStrategy)
-                    .collect(Collectors.toList())
-                : new ArrayList<>();
+        final FeatureEvaluationPlan plan = planCache.plan(rf.getValue());
 
         if (clientAttributes.isClientEvaluation && rf.getValue() != null) {
-          fs.strategies(fsStrategies);
+          fs.strategies(plan.getStrategies());
           fs.value(rf.getValue().getValue());
         } else {
           Applied applied =
               applyFeature.applyFeature(
-                  fsStrategies,
+                  plan,
                   rf.getFeature().getKey(),
                   rf.getValue().getId().toString(),
-                  clientAttributes);
+                  clientAttributes,
+                  now);
           fs.value(
               applied.isMatched()
                   ? applied.getValue()
@@ -84,24 +91,52 @@ public class FeatureTransformerUtils implements FeatureTransformer {
     return fs;
   }
 
-  private FeatureRolloutStrategy toFeatureRolloutStrategy(CacheRolloutStrategy rs) {
-    return new FeatureRolloutStrategy()
-        .id(rs.getId())
-        .attributes(
-            rs.getAttributes().stream()
-                .map(this::toFeatureRolloutStrategyAttribute)
-                .collect(Collectors.toList()))
-        .percentage(rs.getPercentage())
-        .percentageAttributes(rs.getPercentageAttributes())
-        .value(rs.getValue());
+  public FeatureBatchContextResult evaluate(List<CacheEnvironmentFeature> features, ClientContext clientAttributes) {
+    final Map<String, Object> values = new HashMap<>(features.size() * 2);
+    Map<String, String> strategies = null;
+    final EvaluationInstant now = new EvaluationInstant();
+
+    for (CacheEnvironmentFeature rf : features) {
+      final String key = rf.getFeature().getKey();
+      final CacheFeatureValue value = rf.getValue();
+
+      if (value == null) {
+        values.put(key, null);
+        continue;
+      }
+
+      Applied applied =
+          applyFeature.applyFeature(planCache.plan(value), key, value.getId().toString(), clientAttributes, now);
+
+      if (applied.isMatched()) {
+        values.put(key, applied.getValue());
+
+        if (applied.getStrategyId() != null) {
+          if (strategies == null) {
+            strategies = new HashMap<>();
+          }
+
+          strategies.put(key, applied.getStrategyId());
+        }
+      } else {
+        values.put(key, value.getValue());
+      }
+    }
+
+    return new FeatureBatchContextResult().values(values).strategies(strategies);
   }
 
-  private FeatureRolloutStrategyAttribute toFeatureRolloutStrategyAttribute(
-      CacheRolloutStrategyAttribute rsa) {
-    return new FeatureRolloutStrategyAttribute()
-        .conditional(rsa.getConditional())
-        .type(rsa.getType())
-        .fieldName(rsa.getFieldName())
-        .values(rsa.getValues());
+  public boolean evaluatesAgainstNow(List<CacheEnvironmentFeature> features) {
+    if (features == null) {
+      return false;
+    }
+
+    for (CacheEnvironmentFeature rf : features) {
+      if (rf.getValue() != null && planCache.plan(rf.getValue()).evaluatesAgainstNow()) {
+        return true;
+      }
+    }
+
+    return false;
   }
 }
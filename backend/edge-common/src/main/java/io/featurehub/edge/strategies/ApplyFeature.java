@@ -4,6 +4,7 @@ import io.featurehub.mr.model.RolloutStrategyAttributeConditional;
 import io.featurehub.mr.model.RolloutStrategyFieldType;
 import io.featurehub.sse.model.FeatureRolloutStrategy;
 import io.featurehub.sse.model.FeatureRolloutStrategyAttribute;
+import io.featurehub.strategies.matchers.CompiledMatcher;
 import io.featurehub.strategies.matchers.MatcherRepository;
 import io.featurehub.strategies.percentage.PercentageCalculator;
 import jakarta.inject.Inject;
@@ -11,13 +12,10 @@ import org.jetbrains.annotations.NotNull;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
-import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.stream.Collectors;
+import java.util.StringJoiner;
 
 public class ApplyFeature {
   private static final Logger log = LoggerFactory.getLogger(ApplyFeature.class);
@@ -32,18 +30,33 @@ public class ApplyFeature {
 
   public Applied applyFeature(List<FeatureRolloutStrategy> strategies, String key, String featureValueId,
                               ClientContext cac) {
-    if (cac != null & strategies != null && !strategies.isEmpty()) {
+    return applyFeature(FeatureEvaluationPlan.compile(strategies, matcherRepository), key, featureValueId, cac);
+  }
+
+  public Applied applyFeature(FeatureEvaluationPlan plan, String key, String featureValueId, ClientContext cac) {
+    return applyFeature(plan, key, featureValueId, cac, new EvaluationInstant());
+  }
+
+  /**
+   * @param now - shared by all of the features evaluated for the same request
+   */
+  public Applied applyFeature(FeatureEvaluationPlan plan, String key, String featureValueId, ClientContext cac,
+                              EvaluationInstant now) {
+    if (cac != null && !plan.isEmpty()) {
       Integer percentage = null;
       String percentageKey = null;
-      Map<String, Integer> basePercentage = new HashMap<>();
+      // only needed if the strategies have different percentage attributes, otherwise we use the pre-calculated ones
+      Map<String, Integer> basePercentage = plan.singlePercentageGroup ? null : new HashMap<>();
       String defaultPercentageKey = cac.defaultPercentageKey();
 
-      for(FeatureRolloutStrategy rsi : strategies ) {
-        if (rsi.getPercentage() != null && (defaultPercentageKey != null || (rsi.getPercentageAttributes() != null && !rsi.getPercentageAttributes().isEmpty()))) {
+      for(FeatureEvaluationPlan.CompiledStrategy rsi : plan.compiled) {
+        if (rsi.percentage != null && (defaultPercentageKey != null || rsi.hasPercentageAttributes())) {
           // determine what the percentage key is
-          String newPercentageKey = determinePercentageKey(cac, rsi.getPercentageAttributes());
+          String newPercentageKey = rsi.hasPercentageAttributes() ?
+            determinePercentageKey(cac, rsi.percentageAttributes) : defaultPercentageKey;
 
-          int basePercentageVal = basePercentage.computeIfAbsent(newPercentageKey, (k) -> 0);
+          int basePercentageVal = basePercentage == null ? rsi.basePercentage :
+            basePercentage.computeIfAbsent(newPercentageKey, (k) -> 0);
           // if we have changed the key or we have never calculated it, calculate it and set the
           // base percentage to null
           if (percentage == null || !newPercentageKey.equals(percentageKey)) {
@@ -54,30 +67,29 @@ public class ApplyFeature {
             log.trace("percentage for {} on {} calculated at {}", defaultPercentageKey, key, percentage);
           }
 
-          log.trace("comparing actual {} vs required: {}", percentage, rsi.getPercentage());
-          int useBasePercentage = rsi.getAttributes().isEmpty() ? basePercentageVal : 0;
+          log.trace("comparing actual {} vs required: {}", percentage, rsi.percentage);
+          int useBasePercentage = rsi.hasAttributes() ? 0 : basePercentageVal;
             // if the percentage is lower than the user's key +
             // id of feature value then apply it
-          if (percentage <= (useBasePercentage + rsi.getPercentage())) {
-            if (!rsi.getAttributes().isEmpty()) {
-              if (matchAttributes(cac, rsi)) {
-                return new Applied(true, rsi.getId(), rsi.getValue());
+          if (percentage <= (useBasePercentage + rsi.percentage)) {
+            if (rsi.hasAttributes()) {
+              if (matchAttributes(cac, plan, rsi, now)) {
+                return new Applied(true, rsi.id, rsi.value);
               }
             } else {
-              return new Applied(true, rsi.getId(), rsi.getValue());
+              return new Applied(true, rsi.id, rsi.value);
             }
           }
 
           // this was only a percentage and had no other attributes
-          if (rsi.getAttributes().isEmpty()) {
-            basePercentage.put(percentageKey, basePercentage.get(percentageKey) + rsi.getPercentage());
+          if (basePercentage != null && !rsi.hasAttributes()) {
+            basePercentage.put(percentageKey, basePercentage.get(percentageKey) + rsi.percentage);
           }
         }
 
-        if ((rsi.getPercentage() == null || rsi.getPercentage() == 0) &&
-          !rsi.getAttributes().isEmpty()) {
-          if (matchAttributes(cac, rsi)) {
-            return new Applied(true, rsi.getId(), rsi.getValue());
+        if ((rsi.percentage == null || rsi.percentage == 0) && rsi.hasAttributes()) {
+          if (matchAttributes(cac, plan, rsi, now)) {
+            return new Applied(true, rsi.id, rsi.value);
           }
         }
       }
@@ -87,23 +99,20 @@ public class ApplyFeature {
   }
 
   // This applies the rules as an AND. If at any point it fails it jumps out.
-  private boolean matchAttributes(ClientContext cac, FeatureRolloutStrategy rsi) {
-    for(FeatureRolloutStrategyAttribute attr : rsi.getAttributes()) {
-      List<String> suppliedValues = cac.get(attr.getFieldName());
+  private boolean matchAttributes(ClientContext cac, FeatureEvaluationPlan plan,
+                                  FeatureEvaluationPlan.CompiledStrategy rsi, EvaluationInstant now) {
+    for(int count = rsi.attrStart; count < rsi.attrEnd; count++) {
+      FeatureEvaluationPlan.CompiledAttribute compiledAttribute = plan.attributes[count];
+      FeatureRolloutStrategyAttribute attr = compiledAttribute.attr;
+      List<String> suppliedValues = cac.get(compiledAttribute.fieldName);
 
       // "now" for dates and date-times are not passed by the client, so we create them in-situ
-      if (suppliedValues == null && "now".equalsIgnoreCase(attr.getFieldName())) {
-        if (attr.getType() == RolloutStrategyFieldType.DATE) {
-          suppliedValues = List.of(DateTimeFormatter.ISO_DATE.format(LocalDateTime.now()));
-        } else if (attr.getType() == RolloutStrategyFieldType.DATETIME) {
-          suppliedValues = List.of(DateTimeFormatter.ISO_DATE_TIME.format(LocalDateTime.now()));
-        }
+      if (suppliedValues == null && compiledAttribute.generatedNow) {
+        suppliedValues = attr.getType() == RolloutStrategyFieldType.DATE ? now.date() : now.dateTime();
       }
 
-      Object val = attr.getValues();
-
       // both are null, just check against equals
-      if (val == null && suppliedValues == null) {
+      if (compiledAttribute.valuesMissing && suppliedValues == null) {
         if (attr.getConditional() != RolloutStrategyAttributeConditional.EQUALS) {
           return false;
         }
@@ -112,12 +121,12 @@ public class ApplyFeature {
       }
 
       // either of them are null, check against not equals as we can't do anything else
-      if (val == null || suppliedValues == null) {
+      if (compiledAttribute.valuesMissing || suppliedValues == null) {
         return false;
       }
 
       // if none of the supplied values match against the associated matcher,
-      if (suppliedValues.stream().noneMatch(sv -> matcherRepository.findMatcher(attr).match(sv, attr) )) {
+      if (!anySuppliedValueMatches(suppliedValues, compiledAttribute)) {
         return false;
       }
     }
@@ -125,15 +134,30 @@ public class ApplyFeature {
     return true;
   }
 
-  private String determinePercentageKey(ClientContext cac, List<String> percentageAttributes) {
-    if (percentageAttributes == null || percentageAttributes.isEmpty()) {
-      return cac.defaultPercentageKey();
+  private boolean anySuppliedValueMatches(List<String> suppliedValues,
+                                          FeatureEvaluationPlan.CompiledAttribute compiledAttribute) {
+    CompiledMatcher matcher = compiledAttribute.matcher == null ?
+      matcherRepository.compile(compiledAttribute.attr) : compiledAttribute.matcher;
+
+    for (String sv : suppliedValues) {
+      if (matcher.match(sv)) {
+        return true;
+      }
+    }
+
+    return false;
+  }
+
+  private String determinePercentageKey(ClientContext cac, String[] percentageAttributes) {
+    StringJoiner joiner = new StringJoiner("$");
+
+    for (String pa : percentageAttributes) {
+      for (String val : cac.get(pa, "<none>")) {
+        joiner.add(val);
+      }
     }
 
-    return percentageAttributes.stream()
-      .map(pa -> cac.get(pa, "<none>"))
-      .flatMap(Collection::stream).collect(Collectors.joining(
-      "$"));
+    return joiner.toString();
   }
 
 
@@ -15,12 +15,19 @@ import java.util.Map;
 /**
  * The client attributes are expected to be in the format key=val where val is url-encoded. It can
  * have multiple values separated by commas and there can be multiple headers.
+ *
+ * This is decoded on every poll and every SSE connection, so the headers are walked once, only the parts that have
+ * escapes in them are url-decoded, and the etag of the context is worked out as the attributes are added.
  */
 public class ClientContext {
   public Map<String, List<String>> attributes = new HashMap<>();
   public static final String USERKEY = "userkey";
   public static final String SESSIONKEY = "sessionkey";
+  private static final String[] WELL_KNOWN_KEYS =
+    {USERKEY, SESSIONKEY, "session", "country", "device", "platform", "version"};
   public final boolean isClientEvaluation;
+  // calculated while decoding, a context that is built up by hand calculates it from the attributes
+  private String etag;
 
   public ClientContext(boolean isClientEvaluation) {
     this.isClientEvaluation = isClientEvaluation;
@@ -38,35 +45,100 @@ public class ClientContext {
 
   public static ClientContext decode(List<String> headers, List<KeyParts> apiKeys) {
     ClientContext strategy = new ClientContext(apiKeys.stream().anyMatch((k) -> k.getServiceKey().contains("*")));
+    // the hash of the attribute map, kept as we go - it is the same calculation as HashMap.hashCode
+    int attributesHash = 0;
 
     if (headers != null) {
+      headers:
       for (String header : headers) {
-        for (String part : header.split(",")) {
-          int pos = part.indexOf("=");
+        final int length = header.length();
+        int start = 0;
+
+        // each comma separated part, key=val
+        while (start <= length) {
+          int end = start;
+          int pos = -1;
+
+          for (; end < length; end++) {
+            char c = header.charAt(end);
+
+            if (c == ',') {
+              break;
+            } else if (c == '=' && pos == -1) {
+              pos = end;
+            }
+          }
+
           if (pos != -1) {
-            String key = URLDecoder.decode(part.substring(0, pos), StandardCharsets.UTF_8);
-            String val = URLDecoder.decode(part.substring(pos + 1), StandardCharsets.UTF_8);
+            String key = decodeKey(header, start, pos);
+            String val = decodeComponent(header, pos + 1, end);
             List<String> vals;
-            if (val.contains(",")) {
+            if (val.indexOf(',') != -1) {
               vals = Arrays.asList(val.split(","));
             } else {
               vals = Collections.singletonList(val);
             }
 
-            strategy.attributes.put(key, vals);
+            List<String> previous = strategy.attributes.put(key, vals);
+
+            if (previous != null) {
+              attributesHash -= key.hashCode() ^ previous.hashCode();
+            }
+
+            attributesHash += key.hashCode() ^ vals.hashCode();
 
             // max 30 attributes
             if (strategy.attributes.size() >= 30) {
-              return strategy;
+              break headers;
             }
           }
+
+          start = end + 1;
         }
       }
     }
 
+    strategy.etag = Integer.toHexString(attributesHash);
+
     return strategy;
   }
 
+  /**
+   * The keys are nearly always one of the names the SDKs use, so we use the same String for them rather than a
+   * new one per request.
+   */
+  private static String decodeKey(String header, int start, int end) {
+    if (!needsDecoding(header, start, end)) {
+      final int length = end - start;
+
+      for (String known : WELL_KNOWN_KEYS) {
+        if (known.length() == length && header.startsWith(known, start)) {
+          return known;
+        }
+      }
+    }
+
+    return decodeComponent(header, start, end);
+  }
+
+  private static String decodeComponent(String header, int start, int end) {
+    String component = header.substring(start, end);
+
+    return needsDecoding(header, start, end) ? URLDecoder.decode(component, StandardCharsets.UTF_8) : component;
+  }
+
+  private static boolean needsDecoding(String header, int start, int end) {
+    for (int pos = start; pos < end; pos++) {
+      char c = header.charAt(pos);
+
+      if (c == '%' || c == '+') {
+        return true;
+      }
+    }
+
+    return false;
+  }
+
   @Nullable
   public List<String> get(String key) {
     List<String> val = attributes.get(key);
@@ -90,6 +162,6 @@ public class ClientContext {
   }
 
   public String makeEtag() {
-    return Integer.toHexString(attributes.hashCode());
+    return etag == null ? Integer.toHexString(attributes.hashCode()) : etag;
   }
 }
@@ -0,0 +1,54 @@
+package io.featurehub.edge.strategies;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * "now" for DATE and DATETIME strategy attributes the client didn't supply a value for. The clock is read the first
+ * time it is needed and the formatted values are then shared by every feature evaluated for the same request, so
+ * they all agree on the time and it is formatted at most once. It is not thread safe, use one per request.
+ */
+public class EvaluationInstant {
+  private final Supplier<LocalDateTime> clock;
+  private LocalDateTime now;
+  private List<String> date;
+  private List<String> dateTime;
+
+  public EvaluationInstant() {
+    this(LocalDateTime::now);
+  }
+
+  public EvaluationInstant(@NotNull Supplier<LocalDateTime> clock) {
+    this.clock = clock;
+  }
+
+  private LocalDateTime now() {
+    if (now == null) {
+      now = clock.get();
+    }
+
+    return now;
+  }
+
+  @NotNull
+  public List<String> date() {
+    if (date == null) {
+      date = List.of(DateTimeFormatter.ISO_DATE.format(now()));
+    }
+
+    return date;
+  }
+
+  @NotNull
+  public List<String> dateTime() {
+    if (dateTime == null) {
+      dateTime = List.of(DateTimeFormatter.ISO_DATE_TIME.format(now()));
+    }
+
+    return dateTime;
+  }
+}
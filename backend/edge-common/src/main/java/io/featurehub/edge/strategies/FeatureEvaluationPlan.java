@@ -0,0 +1,279 @@
+package io.featurehub.edge.strategies;
+
+import io.featurehub.dacha.model.CacheFeatureValue;
+import io.featurehub.dacha.model.CacheRolloutStrategy;
+import io.featurehub.dacha.model.CacheRolloutStrategyAttribute;
+import io.featurehub.mr.model.RolloutStrategyAttributeConditional;
+import io.featurehub.mr.model.RolloutStrategyFieldType;
+import io.featurehub.sse.model.FeatureRolloutStrategy;
+import io.featurehub.sse.model.FeatureRolloutStrategyAttribute;
+import io.featurehub.strategies.matchers.CompiledMatcher;
+import io.featurehub.strategies.matchers.MatcherRepository;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * An immutable, pre-compiled form of the rollout strategies attached to a single feature value (identified by its
+ * id and version). It holds the SSE model representation (which is what client evaluated keys are sent) along with
+ * a flattened view of the strategies used for server side evaluation, so the conversion and analysis is done once
+ * per feature value version rather than once per request.
+ */
+public final class FeatureEvaluationPlan {
+  private static final Logger log = LoggerFactory.getLogger(FeatureEvaluationPlan.class);
+  public static final FeatureEvaluationPlan EMPTY = new FeatureEvaluationPlan(null, 0, new ArrayList<>(), null);
+
+  @Nullable private final UUID valueId;
+  private final long version;
+  @NotNull private final List<FeatureRolloutStrategy> strategies;
+  @NotNull final CompiledStrategy[] compiled;
+  @NotNull final CompiledAttribute[] attributes;
+  // true if every percentage strategy uses the same percentage attributes, which lets us use the pre-calculated
+  // cumulative percentage thresholds
+  final boolean singlePercentageGroup;
+  // true if any attribute matches on the current date or time, so the result can change without the value changing
+  private final boolean evaluatesAgainstNow;
+
+  private FeatureEvaluationPlan(@Nullable UUID valueId, long version, @NotNull List<FeatureRolloutStrategy> strategies,
+                                @Nullable MatcherRepository matcherRepository) {
+    this.valueId = valueId;
+    this.version = version;
+    this.strategies = Collections.unmodifiableList(strategies);
+
+    List<CompiledAttribute> flatAttributes = new ArrayList<>();
+    compiled = new CompiledStrategy[strategies.size()];
+
+    // the running percentage total for each distinct set of percentage attributes
+    Map<List<String>, Integer> basePercentages = new HashMap<>();
+
+    for (int count = 0; count < compiled.length; count++) {
+      FeatureRolloutStrategy rs = strategies.get(count);
+      int attrStart = flatAttributes.size();
+
+      if (rs.getAttributes() != null) {
+        rs.getAttributes().forEach(attr -> flatAttributes.add(new CompiledAttribute(attr, matcherRepository)));
+
+        // the attributes are ANDed, so check the cheap ones first and let them reject the request before the
+        // expensive ones run. The sort is stable, so equally cheap attributes keep the order they were declared in.
+        flatAttributes.subList(attrStart, flatAttributes.size()).sort(Comparator.comparingInt(a -> a.cost));
+      }
+
+      List<String> percentageAttributes =
+        rs.getPercentageAttributes() == null ? Collections.emptyList() : rs.getPercentageAttributes();
+
+      int basePercentage = 0;
+      if (rs.getPercentage() != null) {
+        basePercentage = basePercentages.computeIfAbsent(percentageAttributes, k -> 0);
+
+        if (attrStart == flatAttributes.size()) {
+          basePercentages.put(percentageAttributes, basePercentage + rs.getPercentage());
+        }
+      }
+
+      compiled[count] = new CompiledStrategy(rs, percentageAttributes.toArray(new String[0]), basePercentage,
+        attrStart, flatAttributes.size());
+    }
+
+    attributes = flatAttributes.toArray(new CompiledAttribute[0]);
+    singlePercentageGroup = basePercentages.size() <= 1;
+    evaluatesAgainstNow = flatAttributes.stream().anyMatch(a -> a.generatedNow);
+  }
+
+  /**
+   * Compiles the plan for a feature value as provided by Dacha, pre-parsing the attribute values with the matchers
+   * from the repository.
+   */
+  @NotNull
+  public static FeatureEvaluationPlan compile(@Nullable CacheFeatureValue value,
+                                              @NotNull MatcherRepository matcherRepository) {
+    if (value == null) {
+      return EMPTY;
+    }
+
+    List<FeatureRolloutStrategy> strategies = new ArrayList<>();
+
+    if (value.getRolloutStrategies() != null) {
+      value.getRolloutStrategies().forEach(rs -> strategies.add(toFeatureRolloutStrategy(rs)));
+    }
+
+    return new FeatureEvaluationPlan(value.getId(), value.getVersion(), strategies, matcherRepository);
+  }
+
+  /**
+   * Compiles a plan from strategies already in their SSE form (e.g. from the SDK)
+   */
+  @NotNull
+  public static FeatureEvaluationPlan compile(@Nullable List<FeatureRolloutStrategy> strategies,
+                                              @NotNull MatcherRepository matcherRepository) {
+    if (strategies == null || strategies.isEmpty()) {
+      return EMPTY;
+    }
+
+    return new FeatureEvaluationPlan(null, 0, new ArrayList<>(strategies), matcherRepository);
+  }
+
+  /**
+   * is this plan still representative of the feature value? Any change to its strategies, including to an
+   * application strategy it uses, bumps the version of the feature value, so the strategies themselves (which can be
+   * very long lists) don't need comparing.
+   */
+  public boolean isPlanFor(@NotNull CacheFeatureValue value) {
+    return version == value.getVersion() && value.getId().equals(valueId);
+  }
+
+  /**
+   * The strategies in the form they are sent to client evaluated SDKs. This list is shared and must not be
+   * modified.
+   */
+  @NotNull
+  public List<FeatureRolloutStrategy> getStrategies() {
+    return strategies;
+  }
+
+  public boolean isEmpty() {
+    return compiled.length == 0;
+  }
+
+  /**
+   * does any strategy match on "now"? If so, evaluating the same context can give a different answer later on.
+   */
+  public boolean evaluatesAgainstNow() {
+    return evaluatesAgainstNow;
+  }
+
+  private static FeatureRolloutStrategy toFeatureRolloutStrategy(CacheRolloutStrategy rs) {
+    List<FeatureRolloutStrategyAttribute> attributes = new ArrayList<>(rs.getAttributes().size());
+    rs.getAttributes().forEach(rsa -> attributes.add(toFeatureRolloutStrategyAttribute(rsa)));
+
+    return new FeatureRolloutStrategy()
+      .id(rs.getId())
+      .attributes(attributes)
+      .percentage(rs.getPercentage())
+      .percentageAttributes(rs.getPercentageAttributes())
+      .value(rs.getValue());
+  }
+
+  private static FeatureRolloutStrategyAttribute toFeatureRolloutStrategyAttribute(
+    CacheRolloutStrategyAttribute rsa) {
+    return new FeatureRolloutStrategyAttribute()
+      .conditional(rsa.getConditional())
+      .type(rsa.getType())
+      .fieldName(rsa.getFieldName())
+      .values(rsa.getValues());
+  }
+
+  static final class CompiledStrategy {
+    @Nullable final String id;
+    @Nullable final Object value;
+    @Nullable final Integer percentage;
+    @NotNull final String[] percentageAttributes;
+    // the sum of the percentages of the percentage-only strategies with the same percentage attributes that come
+    // before this one
+    final int basePercentage;
+    final int attrStart;
+    final int attrEnd;
+
+    CompiledStrategy(FeatureRolloutStrategy rs, @NotNull String[] percentageAttributes, int basePercentage,
+                     int attrStart, int attrEnd) {
+      this.id = rs.getId();
+      this.value = rs.getValue();
+      this.percentage = rs.getPercentage();
+      this.percentageAttributes = percentageAttributes;
+      this.basePercentage = basePercentage;
+      this.attrStart = attrStart;
+      this.attrEnd = attrEnd;
+    }
+
+    boolean hasAttributes() {
+      return attrEnd > attrStart;
+    }
+
+    boolean hasPercentageAttributes() {
+      return percentageAttributes.length > 0;
+    }
+  }
+
+  static final class CompiledAttribute {
+    @NotNull final FeatureRolloutStrategyAttribute attr;
+    final String fieldName;
+    final boolean valuesMissing;
+    // "now" is not passed by the client for dates and date-times, we generate it
+    final boolean generatedNow;
+    // the attribute values parsed ahead of time, null if there are no values to match against
+    @Nullable final CompiledMatcher matcher;
+    // a rough relative cost of matching this attribute, cheapest first
+    final int cost;
+
+    CompiledAttribute(@NotNull FeatureRolloutStrategyAttribute attr, @Nullable MatcherRepository matcherRepository) {
+      this.attr = attr;
+      this.fieldName = attr.getFieldName();
+      this.valuesMissing = attr.getValues() == null;
+      this.generatedNow = "now".equalsIgnoreCase(fieldName) &&
+        (attr.getType() == RolloutStrategyFieldType.DATE || attr.getType() == RolloutStrategyFieldType.DATETIME);
+      this.matcher = (valuesMissing || matcherRepository == null) ? null : compileMatcher(attr, matcherRepository);
+      this.cost = estimateCost(attr, valuesMissing);
+    }
+
+    /**
+     * Orders the checks by how much work the matcher does for a supplied value: a boolean or string comparison is
+     * cheaper than parsing a number, which is cheaper than parsing a version or date, then an IP address, and a
+     * regex (or a type we don't know) is the most expensive. Negative conditionals come after positive ones of the
+     * same type as they match most values and so rarely reject the request.
+     */
+    static int estimateCost(@NotNull FeatureRolloutStrategyAttribute attr, boolean valuesMissing) {
+      if (valuesMissing) {
+        return 0;
+      }
+
+      if (attr.getConditional() == RolloutStrategyAttributeConditional.REGEX || attr.getType() == null) {
+        return 12;
+      }
+
+      int cost;
+
+      switch (attr.getType()) {
+        case BOOLEAN:
+          cost = 2;
+          break;
+        case STRING:
+          cost = 4;
+          break;
+        case NUMBER:
+          cost = 6;
+          break;
+        case IP_ADDRESS:
+          cost = 10;
+          break;
+        default: // SEMANTIC_VERSION, DATE, DATETIME
+          cost = 8;
+      }
+
+      if (attr.getConditional() == RolloutStrategyAttributeConditional.NOT_EQUALS ||
+        attr.getConditional() == RolloutStrategyAttributeConditional.EXCLUDES) {
+        cost++;
+      }
+
+      return cost;
+    }
+
+    private static CompiledMatcher compileMatcher(FeatureRolloutStrategyAttribute attr,
+                                                  MatcherRepository matcherRepository) {
+      try {
+        return matcherRepository.compile(attr);
+      } catch (RuntimeException e) {
+        // badly formed values, leave it to the matcher to decide each time as it always has
+        log.debug("unable to compile matcher for attribute {}", attr, e);
+        return suppliedValue -> matcherRepository.findMatcher(attr).match(suppliedValue, attr);
+      }
+    }
+  }
+}
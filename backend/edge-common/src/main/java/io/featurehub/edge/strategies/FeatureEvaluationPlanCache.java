@@ -0,0 +1,53 @@
+package io.featurehub.edge.strategies;
+
+import cd.connect.app.config.ConfigKey;
+import cd.connect.app.config.DeclaredConfigResolver;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import io.featurehub.dacha.model.CacheFeatureValue;
+import io.featurehub.strategies.matchers.MatcherRepository;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.UUID;
+
+/**
+ * Holds the compiled evaluation plans for feature values so that each poll and SSE connection that evaluates the same
+ * feature value version shares the same plan. Plans are keyed by the feature value id and replaced when its
+ * version changes.
+ */
+public class FeatureEvaluationPlanCache {
+  @ConfigKey("edge.strategies.plan-cache-size")
+  protected Long maximumPlans = 20000L;
+
+  private final Cache<UUID, FeatureEvaluationPlan> plans;
+  private final MatcherRepository matcherRepository;
+
+  public FeatureEvaluationPlanCache(MatcherRepository matcherRepository) {
+    this.matcherRepository = matcherRepository;
+
+    DeclaredConfigResolver.resolve(this);
+
+    plans = CacheBuilder.newBuilder().maximumSize(maximumPlans).build();
+  }
+
+  @NotNull
+  public FeatureEvaluationPlan plan(@Nullable CacheFeatureValue value) {
+    if (value == null || value.getRolloutStrategies() == null || value.getRolloutStrategies().isEmpty()) {
+      return FeatureEvaluationPlan.EMPTY;
+    }
+
+    FeatureEvaluationPlan plan = plans.getIfPresent(value.getId());
+
+    if (plan == null || !plan.isPlanFor(value)) {
+      plan = FeatureEvaluationPlan.compile(value, matcherRepository);
+      plans.put(value.getId(), plan);
+    }
+
+    return plan;
+  }
+
+  public long size() {
+    return plans.size();
+  }
+}
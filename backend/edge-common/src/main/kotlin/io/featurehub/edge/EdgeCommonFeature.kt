@@ -1,8 +1,18 @@
 package io.featurehub.edge
 
+import io.featurehub.edge.features.DachaBulkKeyBatcher
 import io.featurehub.edge.features.DachaFeatureRequestSubmitter
+import io.featurehub.edge.features.DachaKeyBatcher
 import io.featurehub.edge.features.DachaRequestOrchestrator
 import io.featurehub.edge.features.EdgeConcurrentRequestPool
+import io.featurehub.edge.features.EncodedResponseCache
+import io.featurehub.edge.features.EvaluatedFeatureCache
+import io.featurehub.edge.features.IdlePollIntervalAdvisor
+import io.featurehub.edge.features.KeyDetailsCache
+import io.featurehub.edge.features.LruEncodedResponseCache
+import io.featurehub.edge.features.LruEvaluatedFeatureCache
+import io.featurehub.edge.features.NearKeyDetailsCache
+import io.featurehub.edge.features.PollIntervalAdvisor
 import io.featurehub.edge.rest.*
 import io.featurehub.edge.utils.*
 import jakarta.inject.Singleton
@@ -16,16 +26,36 @@ class EdgeCommonFeature : Feature {
       context.register(FastlySSEContainerResponseFilter::class.java)
     }
 
+    context.register(PreEncodedEntityWriterInterceptor::class.java)
+
     context.register(object: AbstractBinder() {
       override fun configure() {
         bind(FeatureGetProcessor::class.java).to(FeatureGet::class.java).`in`(Singleton::class.java)
         bind(FeatureUpdateProcessor::class.java).to(FeatureUpdate::class.java).`in`(Singleton::class.java)
+        bind(FeatureBatchProcessor::class.java).to(FeatureBatch::class.java).`in`(Singleton::class.java)
+        bind(AimdAdmissionControl::class.java).to(AdmissionControl::class.java).`in`(Singleton::class.java)
+        bind(TokenBucketRateLimiter::class.java).to(RateLimiter::class.java).`in`(Singleton::class.java)
         bind(FeatureTransformerUtils::class.java)
           .to(FeatureTransformer::class.java)
           .`in`(Singleton::class.java)
         bind(ConcurrentRequestPool::class.java)
           .to(EdgeConcurrentRequestPool::class.java)
           .`in`(Singleton::class.java)
+        bind(LruEvaluatedFeatureCache::class.java)
+          .to(EvaluatedFeatureCache::class.java)
+          .`in`(Singleton::class.java)
+        bind(LruEncodedResponseCache::class.java)
+          .to(EncodedResponseCache::class.java)
+          .`in`(Singleton::class.java)
+        bind(NearKeyDetailsCache::class.java)
+          .to(KeyDetailsCache::class.java)
+          .`in`(Singleton::class.java)
+        bind(IdlePollIntervalAdvisor::class.java)
+          .to(PollIntervalAdvisor::class.java)
+          .`in`(Singleton::class.java)
+        bind(DachaBulkKeyBatcher::class.java)
+          .to(DachaKeyBatcher::class.java)
+          .`in`(Singleton::class.java)
         bind(DachaRequestOrchestrator::class.java)
           .to(DachaFeatureRequestSubmitter::class.java)
           .`in`(Singleton::class.java)
@@ -2,6 +2,8 @@ package io.featurehub.edge.features
 
 import io.featurehub.edge.KeyParts
 import io.featurehub.edge.strategies.ClientContext
+import java.time.Duration
+import java.util.concurrent.CompletableFuture
 
 /**
  * This knows how to request for a bunch of keys from Dacha and returns a list of environments. If
@@ -10,11 +12,40 @@ import io.featurehub.edge.strategies.ClientContext
 interface DachaFeatureRequestSubmitter {
   /*
    * we have a result, don't use this request again. It is a callback used by the actual process for requesting.
+   * The etag is the one the request was made with, if any.
    */
-  fun requestForKeyComplete(key: KeyParts)
+  fun requestForKeyComplete(key: KeyParts, etag: String?)
 
   /*
    * Requests a bunch of environment details from Dacha in the most efficient way possible
    */
   fun request(keys: List<KeyParts>, context: ClientContext, etags: EtagStructureHolder): List<FeatureRequestResponse>
+
+  /*
+   * As request, but without waiting. The future completes once all of the keys have come back from Dacha, and if
+   * it is cancelled (or times out) before then, the features are not transformed for this request.
+   */
+  fun requestAsync(
+    keys: List<KeyParts>,
+    context: ClientContext,
+    etags: EtagStructureHolder
+  ): CompletableFuture<List<FeatureRequestResponse>>
+
+  /*
+   * As requestAsync, but a new request to Dacha is given no longer than the timeout to answer, as that is as long as
+   * the caller is going to wait for it.
+   */
+  fun requestAsync(
+    keys: List<KeyParts>,
+    context: ClientContext,
+    etags: EtagStructureHolder,
+    timeout: Duration?
+  ): CompletableFuture<List<FeatureRequestResponse>>
+
+  /*
+   * Requests the details of a single key from Dacha without waiting, sharing any request for the same key already in
+   * flight. The requester the future completes with holds the details or the failure, and a new request to Dacha is
+   * given no longer than the timeout to answer.
+   */
+  fun requestDetails(key: KeyParts, timeout: Duration?): CompletableFuture<FeatureRequester>
 }
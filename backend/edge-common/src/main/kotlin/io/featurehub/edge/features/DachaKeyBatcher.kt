@@ -0,0 +1,219 @@
+package io.featurehub.edge.features
+
+import cd.connect.app.config.ConfigKey
+import cd.connect.app.config.DeclaredConfigResolver
+import io.featurehub.dacha.api.DachaClientServiceRegistry
+import io.featurehub.dacha.model.DachaApiKey
+import io.featurehub.dacha.model.DachaKeyDetailsBulkRequest
+import io.featurehub.dacha.model.DachaKeyDetailsResponse
+import io.featurehub.edge.KeyParts
+import io.prometheus.client.Histogram
+import jakarta.inject.Inject
+import jakarta.ws.rs.WebApplicationException
+import jakarta.ws.rs.core.Response
+import org.slf4j.Logger
+import org.slf4j.LoggerFactory
+import java.util.*
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.Executors
+import java.util.concurrent.ScheduledExecutorService
+import java.util.concurrent.TimeUnit
+
+/**
+ * Called with the details from Dacha, or why we couldn't get them.
+ */
+typealias KeyDetailsArrived = (details: DachaKeyDetailsResponse?, failure: Exception?) -> Unit
+
+/**
+ * Gathers up the keys that have to go to Dacha over a short window so they can be asked for in one request.
+ */
+interface DachaKeyBatcher {
+  /**
+   * if false, keys should be asked for one at a time and not passed here
+   */
+  val batching: Boolean
+
+  /**
+   * if an etag is given and the key's features still have it, Dacha may answer with notModified and no features
+   */
+  fun request(key: KeyParts, etag: String?, arrived: KeyDetailsArrived)
+}
+
+/**
+ * Keys are held for edge.dacha.batch-window-ms (or until edge.dacha.batch-size of them turn up) and then asked for
+ * with a single bulk request for each named cache. A Dacha too old to have the bulk endpoint is asked for each key
+ * instead, until edge.dacha.bulk-retry-seconds have passed and it is tried again (it may have been upgraded).
+ * Batching is off unless the window is set.
+ */
+class DachaBulkKeyBatcher(
+  private val dachaApi: DachaClientServiceRegistry,
+  private val executor: EdgeConcurrentRequestPool,
+  private val clock: () -> Long
+) : DachaKeyBatcher {
+  @ConfigKey("edge.dacha.batch-window-ms")
+  var batchWindow: Long? = 0
+
+  @ConfigKey("edge.dacha.batch-size")
+  var batchSize: Int? = 100
+
+  @ConfigKey("edge.dacha.bulk-retry-seconds")
+  var bulkRetrySeconds: Long? = 300
+
+  private val pending = ConcurrentHashMap<String, Batch>()
+  // the named caches that don't have the bulk endpoint, and when to try it again
+  private val bulkUnsupported = ConcurrentHashMap<String, Long>()
+  private val timer: ScheduledExecutorService?
+
+  @Inject
+  constructor(dachaApi: DachaClientServiceRegistry, executor: EdgeConcurrentRequestPool) :
+    this(dachaApi, executor, System::currentTimeMillis)
+
+  init {
+    DeclaredConfigResolver.resolve(this)
+
+    timer = if (batchWindow!! > 0) Executors.newSingleThreadScheduledExecutor { r ->
+      Thread(r, "dacha-batch").apply { isDaemon = true }
+    } else null
+  }
+
+  override val batching: Boolean
+    get() = timer != null
+
+  override fun request(key: KeyParts, etag: String?, arrived: KeyDetailsArrived) {
+    bulkUnsupported[key.cacheName]?.let { retryAt ->
+      if (clock() < retryAt) {
+        executor.execute { requestOne(key, etag, arrived) }
+        return
+      }
+
+      bulkUnsupported.remove(key.cacheName, retryAt)
+    }
+
+    while (true) {
+      val batch = pending.computeIfAbsent(key.cacheName) { cacheName ->
+        val batch = Batch(cacheName)
+        timer!!.schedule({ send(batch) }, batchWindow!!, TimeUnit.MILLISECONDS)
+        batch
+      }
+
+      val size = batch.add(WaitingKey(key, etag, arrived))
+
+      if (size > 0) {
+        if (size >= batchSize!!) {
+          send(batch)
+        }
+
+        return
+      }
+
+      // it was sent as we were adding to it, so start another one
+      pending.remove(key.cacheName, batch)
+    }
+  }
+
+  private fun send(batch: Batch) {
+    val waiting = batch.close() ?: return
+
+    pending.remove(batch.cacheName, batch)
+
+    executor.execute { requestBatch(batch.cacheName, waiting) }
+  }
+
+  private fun requestBatch(cacheName: String, waiting: List<WaitingKey>) {
+    batchSizeHistogram.observe(waiting.size.toDouble())
+
+    // the same key with different etags can get different answers, so each waiting key is asked for
+    val response = try {
+      dachaApi.getApiKeyService(cacheName).getApiKeyDetailsBulk(
+        DachaKeyDetailsBulkRequest()
+          .excludeRetired(true)
+          .keys(waiting.map { DachaApiKey().eId(it.key.environmentId).serviceAccountKey(it.key.serviceKey).etag(it.etag) })
+      )
+    } catch (e: WebApplicationException) {
+      val status = e.response?.status
+
+      if (status == 404 || status == 405) {
+        log.info("cache {} does not support bulk requests, asking for each key instead", cacheName)
+        bulkUnsupported[cacheName] = clock() + TimeUnit.SECONDS.toMillis(bulkRetrySeconds!!)
+        waiting.forEach { executor.execute { requestOne(it.key, it.etag, it.arrived) } }
+      } else {
+        failed(waiting, e)
+      }
+
+      return
+    } catch (e: Exception) {
+      failed(waiting, e)
+      return
+    }
+
+    // results come back in the order the keys were asked for
+    if (response.results.size != waiting.size) {
+      failed(waiting, IllegalStateException("asked for ${waiting.size} keys but got ${response.results.size} results"))
+      return
+    }
+
+    waiting.forEachIndexed { index, waiter ->
+      val result = response.results[index]
+
+      if (result.status == 200 && result.details != null) {
+        waiter.arrived(result.details, null)
+      } else {
+        waiter.arrived(null, WebApplicationException(Response.status(result.status).build()))
+      }
+    }
+  }
+
+  private fun requestOne(key: KeyParts, etag: String?, arrived: KeyDetailsArrived) {
+    val details = try {
+      dachaApi.getApiKeyService(key.cacheName).getApiKeyDetails(key.environmentId, key.serviceKey, true, etag)
+    } catch (e: Exception) {
+      arrived(null, e)
+      return
+    }
+
+    arrived(details, null)
+  }
+
+  private fun failed(waiting: List<WaitingKey>, e: Exception) {
+    if (e is WebApplicationException) {
+      log.trace("failed to request details for {} keys", waiting.size, e)
+    } else {
+      log.warn("Failed to get request details for {} keys for more serious reason", waiting.size, e)
+    }
+
+    waiting.forEach { it.arrived(null, e) }
+  }
+
+  private class WaitingKey(val key: KeyParts, val etag: String?, val arrived: KeyDetailsArrived)
+
+  private class Batch(val cacheName: String) {
+    private var waiting: MutableList<WaitingKey>? = mutableListOf()
+
+    /**
+     * returns how many keys are now in the batch, or 0 if it has already been sent
+     */
+    @Synchronized
+    fun add(key: WaitingKey): Int {
+      val keys = waiting ?: return 0
+      keys.add(key)
+      return keys.size
+    }
+
+    /**
+     * returns the keys to send, or null if someone else is sending them
+     */
+    @Synchronized
+    fun close(): List<WaitingKey>? {
+      val keys = waiting
+      waiting = null
+      return keys
+    }
+  }
+
+  companion object {
+    private val log: Logger = LoggerFactory.getLogger(DachaBulkKeyBatcher::class.java)
+
+    val batchSizeHistogram: Histogram = Histogram.build("edge_dacha_batch_size", "The number of keys asked for " +
+      "in each bulk request to Dacha").buckets(1.0, 2.0, 5.0, 10.0, 20.0, 50.0, 100.0, 200.0).register()
+  }
+}
@@ -6,14 +6,17 @@ import io.featurehub.edge.KeyParts
 import io.featurehub.edge.strategies.ClientContext
 import io.prometheus.client.Gauge
 import jakarta.inject.Inject
+import java.time.Duration
 import java.util.concurrent.CompletableFuture
 import java.util.concurrent.ConcurrentHashMap
 
 open class DachaRequestOrchestrator @Inject constructor(
   private val featureTransformer: FeatureTransformer, private val dachaApi: DachaClientServiceRegistry,
-  private val executor: EdgeConcurrentRequestPool
+  private val executor: EdgeConcurrentRequestPool, private val evaluatedFeatureCache: EvaluatedFeatureCache,
+  private val encodedResponseCache: EncodedResponseCache, private val keyDetailsCache: KeyDetailsCache,
+  private val batcher: DachaKeyBatcher
 ) : DachaFeatureRequestSubmitter {
-  private val getMap = ConcurrentHashMap<KeyParts, FeatureRequester>()
+  private val getMap = ConcurrentHashMap<InflightKey, FeatureRequester>()
 
   companion object {
     val inflightGauge = Gauge.build("edge_get_inflight_requests", "Inflight GET request Counter").register()
@@ -24,20 +27,45 @@ open class DachaRequestOrchestrator @Inject constructor(
     context: ClientContext,
     etags: EtagStructureHolder
   ): List<FeatureRequestResponse> {
+    return try {
+      requestAsync(keys, context, etags).get()
+    } catch (e: Exception) {
+      listOf()
+    }
+  }
+
+  override fun requestAsync(
+    keys: List<KeyParts>,
+    context: ClientContext,
+    etags: EtagStructureHolder
+  ): CompletableFuture<List<FeatureRequestResponse>> {
+    return requestAsync(keys, context, etags, null)
+  }
 
+  override fun requestAsync(
+    keys: List<KeyParts>,
+    context: ClientContext,
+    etags: EtagStructureHolder,
+    timeout: Duration?
+  ): CompletableFuture<List<FeatureRequestResponse>> {
     // we need at least one for it to work
     if (keys.isEmpty()) {
-      return arrayListOf();
+      return CompletableFuture.completedFuture(listOf())
     }
 
     inflightGauge.inc()
 
     val future = CompletableFuture<List<FeatureRequestResponse>>()
+    future.whenComplete { _, _ -> inflightGauge.dec() }
+
+    // a single key with an etag can let Dacha tell us nothing has changed rather than sending all of the features.
+    // with more than one key, a change to any of them means sending all of them back, so they all need their features
+    val etag = if (keys.size == 1 && etags.validEtag) etags.environmentTags[keys[0]] else null
 
     // get an existing or create a new one for each of the sdk urls
     val getters = keys
       .map { key ->
-        getMap.computeIfAbsent(key) { createInflightRequest(key) }
+        getMap.computeIfAbsent(InflightKey(key, etag)) { createInflightRequest(key, etag, timeout) }
       }.toList()
 
     // now create a collector for the requests to notify
@@ -46,27 +74,42 @@ open class DachaRequestOrchestrator @Inject constructor(
     // and tell them to go get the data or add us to their list
     getters.forEach { getter -> getter.add(action) }
 
-    try {
-      return future.get()
-    } catch (e: Exception) {
-      return listOf()
-    } finally {
-      inflightGauge.dec()
-    }
+    return future
+  }
+
+  override fun requestDetails(key: KeyParts, timeout: Duration?): CompletableFuture<FeatureRequester> {
+    inflightGauge.inc()
+
+    val future = CompletableFuture<FeatureRequester>()
+    future.whenComplete { _, _ -> inflightGauge.dec() }
+
+    getMap.computeIfAbsent(InflightKey(key, null)) { createInflightRequest(key, null, timeout) }.add(object: FeatureRequestCompleteNotifier {
+      override fun complete(key: FeatureRequester) {
+        future.complete(key)
+      }
+    })
+
+    return future
   }
 
-  protected open fun createInflightRequest(key: KeyParts): FeatureRequester =
-    FeatureRequesterSource(dachaApi.getApiKeyService(key.cacheName), key, executor, this)
+  protected open fun createInflightRequest(key: KeyParts, etag: String?, timeout: Duration?): FeatureRequester =
+    FeatureRequesterSource(dachaApi.getApiKeyService(key.cacheName), key, etag, timeout, executor, this,
+      keyDetailsCache, batcher)
 
   protected open fun getRequestCollector(
     getters: List<FeatureRequester>,
     context: ClientContext,
     future: CompletableFuture<List<FeatureRequestResponse>>,
     etags: EtagStructureHolder
-  ): FeatureRequestCompleteNotifier = FeatureRequestCollection(getters.size, featureTransformer, context, future, etags)
+  ): FeatureRequestCompleteNotifier = FeatureRequestCollection(getters.size, featureTransformer, evaluatedFeatureCache, encodedResponseCache, context, future, etags)
 
 
-  override fun requestForKeyComplete(key: KeyParts) {
-    getMap.remove(key)
+  override fun requestForKeyComplete(key: KeyParts, etag: String?) {
+    getMap.remove(InflightKey(key, etag))
   }
+
+  /**
+   * requests for the same key are only shared if they are asking Dacha about the same etag
+   */
+  private data class InflightKey(val key: KeyParts, val etag: String?)
 }
@@ -0,0 +1,79 @@
+package io.featurehub.edge.features
+
+import cd.connect.app.config.ConfigKey
+import cd.connect.app.config.DeclaredConfigResolver
+import io.featurehub.edge.KeyParts
+import io.featurehub.jersey.config.CacheJsonMapper
+import io.featurehub.sse.model.FeatureEnvironmentCollection
+import io.prometheus.client.Counter
+import java.io.ByteArrayOutputStream
+import java.util.zip.GZIPOutputStream
+
+/**
+ * The features of an environment for a client evaluated API key along with the body of a GET response for just that
+ * environment, serialized and gzipped the first time they are asked for. The environment is shared and must not be
+ * modified.
+ */
+class EncodedFeatures(val environment: FeatureEnvironmentCollection) {
+  val identity: ByteArray by lazy { CacheJsonMapper.mapper.writeValueAsBytes(listOf(environment)) }
+
+  val gzip: ByteArray by lazy {
+    val baos = ByteArrayOutputStream(identity.size / 4)
+    GZIPOutputStream(baos).use { it.write(identity) }
+    baos.toByteArray()
+  }
+}
+
+/**
+ * Every client polling with a client evaluated API key gets exactly the same features back for a given version
+ * (Dacha etag) of an environment, so there is no need to transform and serialize them for each request.
+ */
+interface EncodedResponseCache {
+  /**
+   * returns the features for this key and version of the environment, using the transform if we don't have them.
+   */
+  fun features(
+    key: KeyParts,
+    etag: String?,
+    allowExtendedData: Boolean,
+    transform: () -> FeatureEnvironmentCollection
+  ): EncodedFeatures
+}
+
+/**
+ * A bounded cache keyed by the environment, API key and Dacha etag. A change to the environment gives it a new etag,
+ * so what was held for the old one is never asked for again and ages out. Set edge.encoded-cache.size to 0 to turn
+ * it off.
+ */
+class LruEncodedResponseCache : EncodedResponseCache {
+  @ConfigKey("edge.encoded-cache.size")
+  var maximumSize: Long? = 1000
+
+  private val cache: EtagKeyedCache<EncodedFeatures>
+
+  init {
+    DeclaredConfigResolver.resolve(this)
+
+    cache = EtagKeyedCache(maximumSize!!, hitCounter, missCounter)
+  }
+
+  override fun features(
+    key: KeyParts,
+    etag: String?,
+    allowExtendedData: Boolean,
+    transform: () -> FeatureEnvironmentCollection
+  ): EncodedFeatures {
+    if (etag == null) {
+      return EncodedFeatures(transform())
+    }
+
+    return cache.get(key, etag, allowExtendedData) { EncodedFeatures(transform()) }
+  }
+
+  fun size(): Long = cache.size()
+
+  companion object {
+    val hitCounter: Counter = Counter.build("edge_encoded_cache_hit", "Client evaluated requests served from the encoded response cache").register()
+    val missCounter: Counter = Counter.build("edge_encoded_cache_miss", "Client evaluated requests not in the encoded response cache").register()
+  }
+}
@@ -2,7 +2,17 @@ package io.featurehub.edge.features
 
 import io.featurehub.edge.KeyParts
 
-class EtagStructureHolder(val environmentTags: Map<KeyParts, String>, val contextTag: String, val validEtag: Boolean)
+/**
+ * acceptsDelta is set if the client has asked for just the features that have changed since its etag where possible
+ */
+class EtagStructureHolder @JvmOverloads constructor(
+  val environmentTags: Map<KeyParts, String>,
+  val contextTag: String,
+  val validEtag: Boolean,
+  val acceptsDelta: Boolean = false
+) {
+  fun acceptingDelta(): EtagStructureHolder = EtagStructureHolder(environmentTags, contextTag, validEtag, true)
+}
 
 class ETagSplitter {
   companion object {
@@ -0,0 +1,57 @@
+package io.featurehub.edge.features
+
+import com.google.common.cache.Cache
+import com.google.common.cache.CacheBuilder
+import io.featurehub.edge.KeyParts
+import io.prometheus.client.Counter
+import java.util.*
+
+/**
+ * A bounded (least recently used) cache of what Edge works out from a version of an environment as a service account
+ * sees it. Dacha's etag is per service account (it includes the account's filters), so the key is the environment,
+ * service key and etag along with whatever else the value depends on. When an environment changes nothing asks for
+ * the old etag again, so what was held for it ages out rather than being searched for and removed. Nothing is held
+ * if the maximum size is 0.
+ */
+class EtagKeyedCache<V : Any>(
+  maximumSize: Long,
+  private val hitCounter: Counter,
+  private val missCounter: Counter
+) {
+  private val cache: Cache<EtagKey, V>? =
+    if (maximumSize > 0) CacheBuilder.newBuilder().maximumSize(maximumSize).build() else null
+
+  val enabled: Boolean
+    get() = cache != null
+
+  /**
+   * returns what is held for this version of the environment, using the load if we don't have it. Two requests can
+   * race to load it, they produce the same thing so it doesn't matter which wins.
+   */
+  fun get(key: KeyParts, etag: String, variant: Any, load: () -> V): V {
+    if (cache == null) {
+      return load()
+    }
+
+    val cacheKey = EtagKey(key.environmentId, key.serviceKey, etag, variant)
+
+    cache.getIfPresent(cacheKey)?.let {
+      hitCounter.inc()
+      return it
+    }
+
+    missCounter.inc()
+
+    val value = load()
+    return cache.asMap().putIfAbsent(cacheKey, value) ?: value
+  }
+
+  fun size(): Long = cache?.size() ?: 0
+
+  private data class EtagKey(
+    val environmentId: UUID,
+    val serviceKey: String,
+    val etag: String,
+    val variant: Any
+  )
+}
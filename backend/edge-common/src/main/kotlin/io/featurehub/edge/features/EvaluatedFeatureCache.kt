@@ -0,0 +1,90 @@
+package io.featurehub.edge.features
+
+import cd.connect.app.config.ConfigKey
+import cd.connect.app.config.DeclaredConfigResolver
+import io.featurehub.edge.KeyParts
+import io.featurehub.edge.strategies.ClientContext
+import io.featurehub.sse.model.FeatureState
+import io.prometheus.client.Counter
+import java.util.*
+
+/**
+ * Many server evaluated clients send exactly the same attributes (country, platform and so on), and for the same
+ * version of an environment they get exactly the same features back. This holds the evaluated features so they
+ * don't need to be transformed again.
+ */
+interface EvaluatedFeatureCache {
+  /**
+   * returns the features evaluated for this context, using the transform if we don't have them. Features with
+   * strategies that match on the current date or time (evaluatesAgainstNow, only asked if they could be held) can
+   * evaluate differently from one request to the next, so they are never held.
+   */
+  fun features(
+    key: KeyParts,
+    etag: String?,
+    context: ClientContext,
+    allowExtendedData: Boolean,
+    evaluatesAgainstNow: () -> Boolean,
+    transform: () -> List<FeatureState>
+  ): List<FeatureState>
+}
+
+/**
+ * A bounded (least recently used) cache of evaluated features keyed by the environment, service key, its Dacha etag
+ * and the context. It is off unless edge.evaluated-cache.size is set. Contexts with a userkey or sessionkey are
+ * normally unique per user so they are not held unless edge.evaluated-cache.include-percentage-keys is true.
+ */
+class LruEvaluatedFeatureCache : EvaluatedFeatureCache {
+  @ConfigKey("edge.evaluated-cache.size")
+  var maximumSize: Long? = 0
+
+  @ConfigKey("edge.evaluated-cache.include-percentage-keys")
+  var includePercentageKeys: Boolean? = false
+
+  private val cache: EtagKeyedCache<List<FeatureState>>
+
+  init {
+    DeclaredConfigResolver.resolve(this)
+
+    cache = EtagKeyedCache(maximumSize!!, hitCounter, missCounter)
+  }
+
+  override fun features(
+    key: KeyParts,
+    etag: String?,
+    context: ClientContext,
+    allowExtendedData: Boolean,
+    evaluatesAgainstNow: () -> Boolean,
+    transform: () -> List<FeatureState>
+  ): List<FeatureState> {
+    if (!cache.enabled) {
+      return transform()
+    }
+
+    if (etag == null || context.isClientEvaluation ||
+      (!includePercentageKeys!! && (context.attributes.containsKey(ClientContext.USERKEY) ||
+        context.attributes.containsKey(ClientContext.SESSIONKEY))) || evaluatesAgainstNow()) {
+      skippedCounter.inc()
+      return transform()
+    }
+
+    return cache.get(key, etag, EvaluatedContext(context.makeEtag(), context.attributes, allowExtendedData)) {
+      Collections.unmodifiableList(transform())
+    }
+  }
+
+  fun size(): Long = cache.size()
+
+  // the context etag is only a 32 bit hash of the attributes, so the attributes themselves are part of the key
+  private data class EvaluatedContext(
+    val contextEtag: String,
+    val attributes: Map<String, List<String>>,
+    val allowExtendedData: Boolean
+  )
+
+  companion object {
+    val hitCounter: Counter = Counter.build("edge_evaluated_cache_hit", "Evaluated feature requests served from the cache").register()
+    val missCounter: Counter = Counter.build("edge_evaluated_cache_miss", "Evaluated feature requests not in the cache").register()
+    val skippedCounter: Counter = Counter.build("edge_evaluated_cache_skipped", "Evaluated feature requests that could not be cached").register()
+  }
+}
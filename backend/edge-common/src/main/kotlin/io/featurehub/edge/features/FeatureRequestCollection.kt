@@ -5,16 +5,20 @@ import io.featurehub.edge.FeatureTransformer
 import io.featurehub.edge.KeyParts
 import io.featurehub.edge.strategies.ClientContext
 import io.featurehub.sse.model.FeatureEnvironmentCollection
+import io.prometheus.client.Counter
 import jakarta.ws.rs.ProcessingException
 import jakarta.ws.rs.WebApplicationException
 import java.net.ConnectException
 import java.net.SocketTimeoutException
+import java.util.*
 import java.util.concurrent.CompletableFuture
 import java.util.concurrent.ConcurrentLinkedQueue
 
 class FeatureRequestCollection(
   private val requestCount: Int,
   private val featureTransformer: FeatureTransformer,
+  private val evaluatedFeatureCache: EvaluatedFeatureCache,
+  private val encodedResponseCache: EncodedResponseCache,
   private val clientContext: ClientContext,
   private val future: CompletableFuture<List<FeatureRequestResponse>>,
   private val etags: EtagStructureHolder
@@ -27,7 +31,8 @@ class FeatureRequestCollection(
   override fun complete(key: FeatureRequester) {
     completed.add(key)
 
-    if (completed.size == requestCount) {
+    // if the request was cancelled or timed out there is nobody to transform the features for
+    if (completed.size == requestCount && !future.isDone) {
       // determine first if any of the environments failed its etag match
       val sendFullResults =
         !etags.validEtag || completed.find { !etags.environmentTags[it.key].equals(it.details?.etag) } != null
@@ -36,15 +41,6 @@ class FeatureRequestCollection(
     }
   }
 
-  private fun decodeWebFailure(failure: WebApplicationException, key: KeyParts, env: FeatureEnvironmentCollection): FeatureRequestResponse? {
-    if (failure.response == null || failure.response.status == 412) {
-      return FeatureRequestResponse(env, FeatureRequestSuccess.DACHA_NOT_READY, key, "", null, false)
-    } else if (failure.response.status == 404) {
-      return FeatureRequestResponse(env, FeatureRequestSuccess.NO_SUCH_KEY_IN_CACHE, key, "", null, false)
-    }
-
-    return null
-  }
   private fun transformFeatures(
     details: DachaKeyDetailsResponse?,
     key: KeyParts,
@@ -53,42 +49,147 @@ class FeatureRequestCollection(
   ): FeatureRequestResponse {
     val env = FeatureEnvironmentCollection().id(key.environmentId)
 
-    if (failure != null) {
-      if (failure is WebApplicationException) {
-        val resp = decodeWebFailure(failure, key, env)
-        if (resp != null) {
-          return resp
-        }
-      } else if (failure is ProcessingException) {
-        failure.cause?.let { cause ->
-          if (cause is ConnectException || cause is SocketTimeoutException) {
-            return FeatureRequestResponse(env, FeatureRequestSuccess.DACHA_NOT_READY, key, "", null, false)
-          } else if (cause is WebApplicationException) {
-            val resp = decodeWebFailure(cause, key, env)
-            if (resp != null) {
-              return resp
-            }
-          }
-        }
-      }
+    decodeFailure(failure)?.let { success ->
+      return FeatureRequestResponse(env, success, key, "", null, false)
     }
 
     if (details == null) {
       return FeatureRequestResponse(env, FeatureRequestSuccess.NO_SUCH_KEY_IN_CACHE, key, "0", null, false)
     }
 
-    if (!sendFullResults) {
+    // Dacha only leaves the features out if we gave it the etag the client already has
+    if (!sendFullResults || details.notModified == true) {
       return FeatureRequestResponse(env, FeatureRequestSuccess.NO_CHANGE, key, "", details.environmentInfo, false)
     }
 
+    val allowExtendedData = details.extendedDataAllowed ?: false
+
+    changedSince(details, key)?.let { changed ->
+      return changedFeatures(env, details, key, changed, allowExtendedData)
+    }
+
+    // every client using a client evaluated key gets the same features, so they can be held ready to go
+    if (clientContext.isClientEvaluation) {
+      val encoded = encodedResponseCache.features(key, details.etag, allowExtendedData) {
+        env.features(featureTransformer.transform(details.features, clientContext, allowExtendedData))
+      }
+
+      return FeatureRequestResponse(
+        encoded.environment,
+        FeatureRequestSuccess.SUCCESS,
+        key,
+        details.etag,
+        details.environmentInfo,
+        allowExtendedData,
+        encoded
+      )
+    }
+
     return FeatureRequestResponse(
       env
-        .features(featureTransformer.transform(details.features, clientContext, details.extendedDataAllowed ?: false)),
+        .features(evaluatedFeatureCache.features(key, details.etag, clientContext, allowExtendedData,
+          { featureTransformer.evaluatesAgainstNow(details.features) }) {
+          featureTransformer.transform(details.features, clientContext, allowExtendedData)
+        }),
       FeatureRequestSuccess.SUCCESS,
       key,
       details.etag,
       details.environmentInfo,
-      details.extendedDataAllowed ?: false
+      allowExtendedData
     )
   }
+
+  /**
+   * the features that have changed since the etag the client has for this environment, or null if it hasn't asked
+   * for only the changes or Dacha's journal doesn't go back as far as its etag
+   */
+  private fun changedSince(details: DachaKeyDetailsResponse, key: KeyParts): Set<UUID>? {
+    if (!etags.acceptsDelta || !etags.validEtag) {
+      return null
+    }
+
+    val clientEtag = etags.environmentTags[key] ?: return null
+
+    // this one hasn't changed, but another environment in the same request has
+    if (clientEtag == details.etag) {
+      return setOf()
+    }
+
+    val journal = details.journal
+    val from = journal?.indexOfLast { it.etag == clientEtag } ?: -1
+
+    if (journal == null || from < 0) {
+      deltaFallbackCounter.inc()
+      return null
+    }
+
+    return journal.subList(from, journal.size).mapTo(HashSet()) { it.featureId }
+  }
+
+  /**
+   * these are different for every client etag, so they are always transformed and never cached
+   */
+  private fun changedFeatures(
+    env: FeatureEnvironmentCollection,
+    details: DachaKeyDetailsResponse,
+    key: KeyParts,
+    changed: Set<UUID>,
+    allowExtendedData: Boolean
+  ): FeatureRequestResponse {
+    deltaCounter.inc()
+
+    val features = details.features?.filter { changed.contains(it.feature.id) } ?: listOf()
+    val present = features.mapTo(HashSet()) { it.feature.id }
+
+    env
+      .delta(true)
+      .deletedFeatures(changed.filter { !present.contains(it) })
+      .features(if (features.isEmpty()) listOf() else featureTransformer.transform(features, clientContext, allowExtendedData))
+
+    return FeatureRequestResponse(
+      env,
+      FeatureRequestSuccess.SUCCESS,
+      key,
+      details.etag,
+      details.environmentInfo,
+      allowExtendedData
+    )
+  }
+
+  companion object {
+    val deltaCounter: Counter = Counter.build("edge_poll_delta", "Environments returned to a poll with only the " +
+      "features changed since the client's etag").register()
+    val deltaFallbackCounter: Counter = Counter.build("edge_poll_delta_fallback", "Environments returned to a poll " +
+      "asking for changes with all features, as the client's etag was too old").register()
+
+    /**
+     * Works out whether a failed request to Dacha means it isn't ready or the key isn't there. Returns null if the
+     * failure is neither, and the request should be treated as if there were no details.
+     */
+    fun decodeFailure(failure: Exception?): FeatureRequestSuccess? {
+      if (failure is WebApplicationException) {
+        return decodeWebFailure(failure)
+      } else if (failure is ProcessingException) {
+        failure.cause?.let { cause ->
+          if (cause is ConnectException || cause is SocketTimeoutException) {
+            return FeatureRequestSuccess.DACHA_NOT_READY
+          } else if (cause is WebApplicationException) {
+            return decodeWebFailure(cause)
+          }
+        }
+      }
+
+      return null
+    }
+
+    private fun decodeWebFailure(failure: WebApplicationException): FeatureRequestSuccess? {
+      if (failure.response == null || failure.response.status == 412) {
+        return FeatureRequestSuccess.DACHA_NOT_READY
+      } else if (failure.response.status == 404) {
+        return FeatureRequestSuccess.NO_SUCH_KEY_IN_CACHE
+      }
+
+      return null
+    }
+  }
 }
@@ -11,5 +11,6 @@ enum class FeatureRequestSuccess {
 /**
  * This holds the response per environment - it determines if we were successful in getting
  * this KeyPair or not. If Dacha does not know about it or it isn't up, success will be false.
+ * For a client evaluated key, encoded is the (shared) environment ready to be sent as is.
  */
-class FeatureRequestResponse(val environment: FeatureEnvironmentCollection, val success: FeatureRequestSuccess, val key: KeyParts, val etag: String, val envInfo: Map<String, String>?, val allowExtendedData: Boolean)
+class FeatureRequestResponse @JvmOverloads constructor(val environment: FeatureEnvironmentCollection, val success: FeatureRequestSuccess, val key: KeyParts, val etag: String, val envInfo: Map<String, String>?, val allowExtendedData: Boolean, val encoded: EncodedFeatures? = null)
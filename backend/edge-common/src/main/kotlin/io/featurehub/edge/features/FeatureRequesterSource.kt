@@ -1,14 +1,22 @@
 package io.featurehub.edge.features
 
+import io.featurehub.dacha.api.AsyncDachaApiKeyService
 import io.featurehub.dacha.api.DachaApiKeyService
+import io.featurehub.dacha.api.HttpDachaApiKeyService
 import io.featurehub.dacha.model.DachaKeyDetailsResponse
 import io.featurehub.edge.KeyParts
 import jakarta.ws.rs.WebApplicationException
 import org.slf4j.Logger
 import org.slf4j.LoggerFactory
+import java.time.Duration
 import java.util.concurrent.ConcurrentLinkedQueue
 
-class FeatureRequesterSource(private val api: DachaApiKeyService, override val key: KeyParts, private val executor: EdgeConcurrentRequestPool, private val submitter: DachaFeatureRequestSubmitter) :
+class FeatureRequesterSource(
+  private val api: DachaApiKeyService, override val key: KeyParts, private val etag: String?,
+  private val timeout: Duration?, private val executor: EdgeConcurrentRequestPool,
+  private val submitter: DachaFeatureRequestSubmitter, private val keyDetailsCache: KeyDetailsCache,
+  private val batcher: DachaKeyBatcher
+) :
   FeatureRequester {
   private val log: Logger = LoggerFactory.getLogger(FeatureRequesterSource::class.java)
 
@@ -27,35 +35,99 @@ class FeatureRequesterSource(private val api: DachaApiKeyService, override val k
 
     // if we sre the first one, trigger it off
     if (size == 1) {
-      executor.execute {
-        try {
-          details = api.getApiKeyDetails(key.environmentId, key.serviceKey, true)
-
-          if (details != null)
-            copyKeyDetails(key, details!!)
-        } catch (e : Throwable) {
-          if (e is Exception) {
-            failure = e
-          }
+      val cached = keyDetailsCache.get(key)
 
-          if (e is WebApplicationException) {
-            log.trace("failed to request details for key {}", key, e)
+      if (cached != null) {
+        // no need to go anywhere, so finish on this thread
+        details = cached
+        copyKeyDetails(key, cached)
+        completed()
+      } else if (batcher.batching) {
+        val generation = keyDetailsCache.generation(key.environmentId)
+
+        batcher.request(key, etag) { found, e ->
+          if (e != null) {
+            failure = e
           } else {
-            log.warn("Failed to get request details for more serious reason {}", key, e)
+            found(generation, found)
           }
 
+          completed()
+        }
+      } else if (api is AsyncDachaApiKeyService) {
+        requestDetailsAsync(api)
+      } else {
+        executor.execute {
+          requestDetails()
+          completed()
+        }
+      }
+    }
+  }
+
+  private fun requestDetails() {
+    try {
+      val generation = keyDetailsCache.generation(key.environmentId)
+
+      found(generation, api.getApiKeyDetails(key.environmentId, key.serviceKey, true, etag))
+    } catch (e : Throwable) {
+      failed(e)
+    }
+  }
+
+  /**
+   * nothing is held while Dacha answers, and the listeners are told on the edge pool so the client's own threads
+   * are left for talking to Dacha
+   */
+  private fun requestDetailsAsync(async: AsyncDachaApiKeyService) {
+    val generation = keyDetailsCache.generation(key.environmentId)
+
+    async.getApiKeyDetailsAsync(key.environmentId, key.serviceKey, true, etag, timeout)
+      .whenCompleteAsync({ found, e ->
+        if (e != null) {
+          failed(HttpDachaApiKeyService.unwrap(e))
+        } else {
+          found(generation, found)
         }
 
-        submitter.requestForKeyComplete(key)
+        completed()
+      }, executor::execute)
+  }
 
-        log.debug("concentrated {} requests", notifyListener.size)
+  private fun failed(e: Throwable) {
+    if (e is Exception) {
+      failure = e
+    }
+
+    if (e is WebApplicationException) {
+      log.trace("failed to request details for key {}", key, e)
+    } else {
+      log.warn("Failed to get request details for more serious reason {}", key, e)
+    }
+  }
 
-        notifyListener.forEach { nl -> nl.complete(this) }
-        notifyListener.clear()
+  private fun found(generation: Long, found: DachaKeyDetailsResponse?) {
+    details = found
+
+    if (found != null) {
+      copyKeyDetails(key, found)
+
+      // a not modified response has no features, so it is no use to anyone else
+      if (found.notModified != true) {
+        keyDetailsCache.put(key, generation, found)
       }
     }
   }
 
+  private fun completed() {
+    submitter.requestForKeyComplete(key, etag)
+
+    log.debug("concentrated {} requests", notifyListener.size)
+
+    notifyListener.forEach { nl -> nl.complete(this) }
+    notifyListener.clear()
+  }
+
   private fun copyKeyDetails(key: KeyParts, details: DachaKeyDetailsResponse) {
     key.organisationId = details.organizationId
     key.portfolioId = details.portfolioId
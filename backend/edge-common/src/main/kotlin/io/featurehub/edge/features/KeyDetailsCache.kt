@@ -0,0 +1,153 @@
+package io.featurehub.edge.features
+
+import cd.connect.app.config.ConfigKey
+import cd.connect.app.config.DeclaredConfigResolver
+import com.google.common.cache.Cache
+import com.google.common.cache.CacheBuilder
+import com.google.common.cache.RemovalCause
+import io.featurehub.dacha.model.DachaKeyDetailsResponse
+import io.featurehub.edge.KeyParts
+import io.prometheus.client.Counter
+import java.util.*
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicLongArray
+
+/**
+ * A near cache of what Dacha told us about an API key, so polls don't have to go back to Dacha each time. The
+ * responses are shared between requests and must not be modified.
+ */
+interface KeyDetailsCache {
+  /**
+   * the version of the environment's cached details, taken before asking Dacha so a response that raced with an
+   * update to the environment isn't cached.
+   */
+  fun generation(environmentId: UUID): Long
+
+  fun get(key: KeyParts): DachaKeyDetailsResponse?
+
+  fun put(key: KeyParts, generation: Long, details: DachaKeyDetailsResponse)
+
+  /**
+   * the environment's features have changed, so anything held for it is out of date
+   */
+  fun invalidate(environmentId: UUID)
+
+  /**
+   * there is now a stream of feature updates invalidating this cache, so entries can be held for longer
+   */
+  fun updateStreamAttached()
+}
+
+/**
+ * A bounded cache of Dacha responses keyed by the API key. Without an update stream (edge-rest) entries only live for
+ * edge.near-cache.ttl-seconds. With one (edge-full) they are dropped when their environment changes and otherwise
+ * live for edge.near-cache.streamed-ttl-seconds, as the stream does not carry changes to service accounts or deleted
+ * environments. It is off unless edge.near-cache.size is set.
+ */
+class NearKeyDetailsCache : KeyDetailsCache {
+  @ConfigKey("edge.near-cache.size")
+  var maximumSize: Long? = 0
+
+  @ConfigKey("edge.near-cache.ttl-seconds")
+  var ttlSeconds: Long? = 5
+
+  @ConfigKey("edge.near-cache.streamed-ttl-seconds")
+  var streamedTtlSeconds: Long? = 120
+
+  private val cache: Cache<KeyParts, HeldDetails>?
+  private val generations = AtomicLongArray(GENERATION_STRIPES)
+  // the keys held for each environment, so an update only touches its own. The sets are only changed inside the map's
+  // compute for their environment.
+  private val environmentKeys = ConcurrentHashMap<UUID, MutableSet<KeyParts>>()
+
+  @Volatile
+  private var streamed = false
+
+  init {
+    DeclaredConfigResolver.resolve(this)
+
+    cache = if (maximumSize!! > 0)
+      CacheBuilder.newBuilder()
+        .maximumSize(maximumSize!!)
+        .expireAfterWrite(maxOf(ttlSeconds!!, streamedTtlSeconds!!), TimeUnit.SECONDS)
+        .removalListener<KeyParts, HeldDetails> { if (it.cause != RemovalCause.REPLACED) unindex(it.key!!) }
+        .build()
+    else null
+  }
+
+  override fun generation(environmentId: UUID): Long = generations.get(stripe(environmentId))
+
+  override fun get(key: KeyParts): DachaKeyDetailsResponse? {
+    if (cache == null) {
+      return null
+    }
+
+    val held = cache.getIfPresent(key)
+    val ttl = TimeUnit.SECONDS.toNanos(if (streamed) streamedTtlSeconds!! else ttlSeconds!!)
+
+    if (held == null || System.nanoTime() - held.loaded > ttl) {
+      missCounter.inc()
+      return null
+    }
+
+    hitCounter.inc()
+    return held.details
+  }
+
+  override fun put(key: KeyParts, generation: Long, details: DachaKeyDetailsResponse) {
+    if (cache == null) {
+      return
+    }
+
+    // the environment changed while we were asking Dacha so this may already be out of date
+    if (generations.get(stripe(key.environmentId)) != generation) {
+      return
+    }
+
+    // a key is only stored using its identifying parts, the ids filled in from Dacha belong to the request
+    val heldKey = KeyParts(key.cacheName, key.environmentId, key.serviceKey)
+
+    // indexed after it is stored, as an index entry for something no longer held is harmless but the other way around
+    // would leave it out of date until it expired
+    cache.put(heldKey, HeldDetails(details, System.nanoTime()))
+    environmentKeys.compute(key.environmentId) { _, keys -> (keys ?: HashSet()).apply { add(heldKey) } }
+
+    // and the environment could have changed while we were storing it
+    if (generations.get(stripe(key.environmentId)) != generation) {
+      cache.invalidate(heldKey)
+    }
+  }
+
+  override fun invalidate(environmentId: UUID) {
+    generations.incrementAndGet(stripe(environmentId))
+
+    environmentKeys.remove(environmentId)?.let { keys -> cache?.invalidateAll(keys) }
+  }
+
+  private fun unindex(key: KeyParts) {
+    environmentKeys.computeIfPresent(key.environmentId) { _, keys -> keys.remove(key); keys.ifEmpty { null } }
+  }
+
+  override fun updateStreamAttached() {
+    streamed = true
+  }
+
+  fun size(): Long = cache?.size() ?: 0
+
+  /**
+   * how many environments have something held for them
+   */
+  fun environments(): Int = environmentKeys.size
+
+  private fun stripe(environmentId: UUID): Int = (environmentId.hashCode() and Int.MAX_VALUE) % GENERATION_STRIPES
+
+  private class HeldDetails(val details: DachaKeyDetailsResponse, val loaded: Long)
+
+  companion object {
+    private const val GENERATION_STRIPES = 64
+
+    val hitCounter: Counter = Counter.build("edge_near_cache_hit", "API key details served from the edge near cache").register()
+    val missCounter: Counter = Counter.build("edge_near_cache_miss", "API key details not in the edge near cache").register()
+  }
+}
@@ -0,0 +1,110 @@
+package io.featurehub.edge.features
+
+import cd.connect.app.config.ConfigKey
+import cd.connect.app.config.DeclaredConfigResolver
+import com.google.common.cache.Cache
+import com.google.common.cache.CacheBuilder
+import io.prometheus.client.Histogram
+import jakarta.inject.Inject
+import java.util.*
+import java.util.concurrent.TimeUnit
+
+/**
+ * Works out how long polling clients should wait before asking again, from how recently their environments changed.
+ */
+interface PollIntervalAdvisor {
+  /**
+   * the environment's features have changed
+   */
+  fun changed(environmentId: UUID)
+
+  /**
+   * the number of seconds clients polling for these environments should wait, or null if there is no advice. A
+   * change in the etag a service key gets for an environment since its last poll counts as a change, so edges without
+   * an update stream still notice them.
+   */
+  fun pollInterval(environments: List<FeatureRequestResponse>): Long?
+}
+
+/**
+ * The interval grows the longer an environment has gone without changing: it is the time since its last change
+ * divided by edge.poll-interval.idle-ratio, kept between edge.poll-interval.min-seconds and
+ * edge.poll-interval.max-seconds. An environment we haven't seen change is treated as idle since edge started. It
+ * is off unless edge.poll-interval.adaptive is set.
+ */
+class IdlePollIntervalAdvisor(private val clock: () -> Long) : PollIntervalAdvisor {
+  @ConfigKey("edge.poll-interval.adaptive")
+  var adaptive: Boolean? = false
+
+  @ConfigKey("edge.poll-interval.min-seconds")
+  var minSeconds: Long? = 5
+
+  @ConfigKey("edge.poll-interval.max-seconds")
+  var maxSeconds: Long? = 300
+
+  @ConfigKey("edge.poll-interval.idle-ratio")
+  var idleRatio: Long? = 10
+
+  @ConfigKey("edge.poll-interval.environments")
+  var maximumEnvironments: Long? = 10000
+
+  private val started: Long = clock()
+  private val environments: Cache<UUID, Activity>?
+
+  @Inject
+  constructor() : this(System::nanoTime)
+
+  init {
+    DeclaredConfigResolver.resolve(this)
+
+    environments = if (adaptive!!) CacheBuilder.newBuilder().maximumSize(maximumEnvironments!!).build() else null
+  }
+
+  override fun changed(environmentId: UUID) {
+    val now = clock()
+    environments?.get(environmentId) { Activity(now) }?.lastChange = now
+  }
+
+  override fun pollInterval(environments: List<FeatureRequestResponse>): Long? {
+    val held = this.environments ?: return null
+
+    val idleSince = environments
+      .filter { it.success == FeatureRequestSuccess.SUCCESS || it.success == FeatureRequestSuccess.NO_CHANGE }
+      .maxOfOrNull { resp ->
+        val activity = held.get(resp.key.environmentId) { Activity(started) }
+
+        // an unchanged response has no etag to compare
+        if (resp.success == FeatureRequestSuccess.SUCCESS) {
+          activity.observed(resp.key.serviceKey, resp.etag, clock())
+        }
+
+        activity.lastChange
+      } ?: return null
+
+    val idleSeconds = TimeUnit.NANOSECONDS.toSeconds(clock() - idleSince)
+    val interval = (idleSeconds / idleRatio!!).coerceIn(minSeconds!!, maxSeconds!!)
+
+    intervalHistogram.observe(interval.toDouble())
+
+    return interval
+  }
+
+  private class Activity(@Volatile var lastChange: Long) {
+    // Dacha's etag depends on what the service account can see, so each key is compared with its own last etag
+    private val etags = HashMap<String, String>(2)
+
+    @Synchronized
+    fun observed(serviceKey: String, etag: String, now: Long) {
+      val last = etags.put(serviceKey, etag)
+
+      if (last != null && last != etag) {
+        lastChange = now
+      }
+    }
+  }
+
+  companion object {
+    val intervalHistogram: Histogram = Histogram.build("edge_poll_interval_advised", "The number of seconds " +
+      "polling clients were told to wait").buckets(5.0, 10.0, 30.0, 60.0, 120.0, 300.0, 600.0).register()
+  }
+}
@@ -0,0 +1,217 @@
+package io.featurehub.edge.rest
+
+import cd.connect.app.config.ConfigKey
+import cd.connect.app.config.DeclaredConfigResolver
+import io.featurehub.edge.features.FeatureRequestResponse
+import io.featurehub.edge.features.FeatureRequestSuccess
+import io.prometheus.client.Counter
+import io.prometheus.client.Gauge
+import jakarta.inject.Inject
+import jakarta.ws.rs.core.Response
+import java.util.concurrent.ThreadLocalRandom
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicBoolean
+import java.util.concurrent.atomic.AtomicInteger
+
+/**
+ * Decides whether edge can take on another request that needs Dacha. When Dacha slows down requests are turned away
+ * straight away rather than queueing until the clients give up and all try again at once.
+ */
+interface AdmissionControl {
+  /**
+   * a permit to go ahead, which must be released once the request is done with Dacha, or null if the request
+   * should be turned away with the rejection(). The endpoint is only used to label the rejections.
+   */
+  fun tryAcquire(endpoint: String): AdmissionPermit?
+
+  /**
+   * a 503 telling the client when to try again, jittered so they don't all come back at the same time
+   */
+  fun rejection(): Response
+}
+
+interface AdmissionPermit {
+  /**
+   * Dacha answered, how long it took is used to adjust the limit
+   */
+  fun success()
+
+  /**
+   * the request failed, timed out waiting for Dacha or Dacha wasn't ready to answer it
+   */
+  fun dropped()
+
+  /**
+   * the request ended for a reason that says nothing about Dacha, e.g. the client went away
+   */
+  fun ignore()
+}
+
+/**
+ * releases the permit for what came back from Dacha: nothing at all (the request failed) or an environment Dacha
+ * wasn't ready to answer for is dropped, anything else is a success
+ */
+fun AdmissionPermit.answered(environments: List<FeatureRequestResponse>) {
+  if (environments.isEmpty() || environments.any { it.success == FeatureRequestSuccess.DACHA_NOT_READY }) {
+    dropped()
+  } else {
+    success()
+  }
+}
+
+/**
+ * An additive increase, multiplicative decrease limit on the number of requests waiting on Dacha. Each answer that
+ * comes back within edge.admission.latency-threshold-ms lets the limit grow by one (as long as we were using at
+ * least half of it), a slower answer, failure or timeout cuts it by edge.admission.backoff-ratio. Requests that were
+ * already waiting when the limit was cut don't cut it again, so a burst of slow answers backs off once rather than
+ * once for each of them. It is off unless edge.admission.enabled is set.
+ */
+class AimdAdmissionControl(private val clock: () -> Long) : AdmissionControl {
+  @ConfigKey("edge.admission.enabled")
+  var enabled: Boolean? = false
+
+  @ConfigKey("edge.admission.initial-limit")
+  var initialLimit: Int? = 200
+
+  @ConfigKey("edge.admission.min-limit")
+  var minLimit: Int? = 20
+
+  @ConfigKey("edge.admission.max-limit")
+  var maxLimit: Int? = 2000
+
+  @ConfigKey("edge.admission.latency-threshold-ms")
+  var latencyThreshold: Long? = 1000
+
+  @ConfigKey("edge.admission.backoff-ratio")
+  var backoffRatio: Double? = 0.9
+
+  @ConfigKey("edge.admission.retry-after-seconds")
+  var retryAfter: Int? = 5
+
+  private val inflight = AtomicInteger()
+  private val latencyThresholdNanos: Long
+
+  @Volatile
+  private var limit: Double
+
+  // when the limit was last cut, requests started before this were sent under the old limit
+  private var lastDecrease = Long.MIN_VALUE
+
+  @Inject
+  constructor() : this(System::nanoTime)
+
+  init {
+    DeclaredConfigResolver.resolve(this)
+
+    latencyThresholdNanos = TimeUnit.MILLISECONDS.toNanos(latencyThreshold!!)
+    limit = initialLimit!!.coerceIn(minLimit!!, maxLimit!!).toDouble()
+
+    if (enabled!!) {
+      limitGauge.set(limit)
+    }
+  }
+
+  val currentLimit: Int
+    get() = limit.toInt()
+
+  val inflightRequests: Int
+    get() = inflight.get()
+
+  override fun tryAcquire(endpoint: String): AdmissionPermit? {
+    if (!enabled!!) {
+      return unlimited
+    }
+
+    while (true) {
+      val current = inflight.get()
+
+      if (current >= limit.toInt()) {
+        rejectedCounter.labels(endpoint).inc()
+        return null
+      }
+
+      if (inflight.compareAndSet(current, current + 1)) {
+        inflightGauge.inc()
+        return Permit(clock(), current + 1)
+      }
+    }
+  }
+
+  override fun rejection(): Response {
+    val seconds = retryAfter!! + ThreadLocalRandom.current().nextInt(retryAfter!! + 1)
+
+    return Response.status(503)
+      .header("Retry-After", seconds.toString())
+      .entity("edge is too busy, try again shortly")
+      .build()
+  }
+
+  @Synchronized
+  private fun increase(inflightWhenStarted: Int) {
+    // a limit we aren't anywhere near says nothing about whether we could handle more
+    if (inflightWhenStarted * 2 >= limit) {
+      limit = (limit + 1).coerceAtMost(maxLimit!!.toDouble())
+      limitGauge.set(limit)
+    }
+  }
+
+  @Synchronized
+  private fun decrease(started: Long) {
+    if (started < lastDecrease) {
+      return
+    }
+
+    limit = (limit * backoffRatio!!).coerceAtLeast(minLimit!!.toDouble())
+    limitGauge.set(limit)
+    lastDecrease = clock()
+  }
+
+  private inner class Permit(private val started: Long, private val inflightWhenStarted: Int) : AdmissionPermit {
+    private val released = AtomicBoolean(false)
+
+    private fun release(): Boolean {
+      if (released.compareAndSet(false, true)) {
+        inflight.decrementAndGet()
+        inflightGauge.dec()
+        return true
+      }
+
+      return false
+    }
+
+    override fun success() {
+      if (release()) {
+        if (clock() - started > latencyThresholdNanos) {
+          decrease(started)
+        } else {
+          increase(inflightWhenStarted)
+        }
+      }
+    }
+
+    override fun dropped() {
+      if (release()) {
+        decrease(started)
+      }
+    }
+
+    override fun ignore() {
+      release()
+    }
+  }
+
+  companion object {
+    private val unlimited = object : AdmissionPermit {
+      override fun success() {}
+      override fun dropped() {}
+      override fun ignore() {}
+    }
+
+    val rejectedCounter: Counter = Counter.build("edge_admission_rejected", "Requests turned away because too " +
+      "many were already waiting on Dacha").labelNames("endpoint").register()
+    val limitGauge: Gauge = Gauge.build("edge_admission_limit", "How many requests can wait on Dacha at once")
+      .register()
+    val inflightGauge: Gauge = Gauge.build("edge_admission_inflight", "Requests admitted and waiting on Dacha")
+      .register()
+  }
+}
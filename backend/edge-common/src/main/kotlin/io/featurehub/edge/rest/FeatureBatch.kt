@@ -0,0 +1,186 @@
+package io.featurehub.edge.rest
+
+import cd.connect.app.config.ConfigKey
+import cd.connect.app.config.DeclaredConfigResolver
+import io.featurehub.edge.FeatureTransformer
+import io.featurehub.edge.KeyParts
+import io.featurehub.edge.features.DachaFeatureRequestSubmitter
+import io.featurehub.edge.features.FeatureRequestCollection
+import io.featurehub.edge.features.FeatureRequestSuccess
+import io.featurehub.edge.features.FeatureRequester
+import io.featurehub.edge.stats.StatRecorder
+import io.featurehub.edge.strategies.ClientContext
+import io.featurehub.sse.model.FeatureBatchContextResult
+import io.featurehub.sse.model.FeatureBatchRequest
+import io.featurehub.sse.model.FeatureBatchResponse
+import io.featurehub.sse.stats.model.EdgeHitResultType
+import io.featurehub.sse.stats.model.EdgeHitSourceType
+import io.opentelemetry.context.Context
+import io.prometheus.client.Histogram
+import jakarta.inject.Inject
+import jakarta.ws.rs.BadRequestException
+import jakarta.ws.rs.NotFoundException
+import jakarta.ws.rs.container.AsyncResponse
+import jakarta.ws.rs.core.Response
+import org.slf4j.Logger
+import org.slf4j.LoggerFactory
+import java.time.Duration
+import java.util.concurrent.ArrayBlockingQueue
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.ThreadPoolExecutor
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+
+/**
+ * Evaluates a single environment for many contexts at once - this is for backend jobs (e.g. mail outs) that would
+ * otherwise make a GET request per user. The environment is requested from Dacha once and each context is
+ * evaluated against the same features.
+ */
+interface FeatureBatch {
+  fun processBatch(
+    response: AsyncResponse,
+    apiKey: String?,
+    batch: FeatureBatchRequest?,
+    statRecorder: StatRecorder?
+  )
+}
+
+class FeatureBatchProcessor @Inject constructor(
+  private val getOrchestrator: DachaFeatureRequestSubmitter,
+  private val featureTransformer: FeatureTransformer,
+) : FeatureBatch {
+  private val log: Logger = LoggerFactory.getLogger(FeatureBatchProcessor::class.java)
+
+  @ConfigKey("edge.batch.max-contexts")
+  var maxContexts: Int? = 1000
+
+  // below this many contexts it isn't worth splitting the evaluation across threads
+  @ConfigKey("edge.batch.parallel-threshold")
+  var parallelThreshold: Int? = 64
+
+  // larger batches are split across these threads rather than the JVM wide common pool
+  @ConfigKey("edge.batch.threads")
+  var batchThreads: Int? = 4
+
+  // how many pieces of batches can wait for a thread before new batches are turned away
+  @ConfigKey("edge.batch.queue-size")
+  var batchQueueSize: Int? = 100
+
+  // how long a batch can wait for Dacha before it is told to try again
+  @ConfigKey("edge.batch.timeout-ms")
+  var batchTimeout: Long? = 10000
+
+  private val executor: ExecutorService
+
+  init {
+    DeclaredConfigResolver.resolve(this)
+
+    val threadCount = AtomicInteger()
+
+    executor = Context.taskWrapping(
+      ThreadPoolExecutor(batchThreads!!, batchThreads!!, 0L, TimeUnit.MILLISECONDS,
+        ArrayBlockingQueue(batchQueueSize!!)) { r ->
+        Thread(r, "edge-batch-${threadCount.incrementAndGet()}").apply { isDaemon = true }
+      })
+  }
+
+  override fun processBatch(
+    response: AsyncResponse,
+    apiKey: String?,
+    batch: FeatureBatchRequest?,
+    statRecorder: StatRecorder?
+  ) {
+    val contexts = batch?.contexts
+
+    if (contexts == null || contexts.isEmpty() || contexts.size > maxContexts!!) {
+      response.resume(BadRequestException())
+      return
+    }
+
+    val key = apiKey?.let { KeyParts.fromString(it) }
+
+    if (key == null) {
+      response.resume(NotFoundException())
+      return
+    }
+
+    // client evaluated keys get the strategies, not the values, so there is nothing to batch
+    if (key.serviceKey.contains("*")) {
+      response.resume(BadRequestException())
+      return
+    }
+
+    val timer: Histogram.Timer = batchSpeedHistogram.startTimer()
+
+    // nothing waits on this, the response is resumed by whichever thread finishes the evaluation
+    getOrchestrator.requestDetails(key, Duration.ofMillis(batchTimeout!!))
+      .orTimeout(batchTimeout!!, TimeUnit.MILLISECONDS)
+      .thenCompose { requester -> evaluate(key, requester, contexts, statRecorder) }
+      .whenComplete { result, failure ->
+        timer.observeDuration()
+
+        if (failure == null) {
+          response.resume(result)
+        } else {
+          log.debug("failed to evaluate batch for {}", key, failure)
+          response.resume(Response.status(503).entity("cache layer not ready, try again shortly").build())
+        }
+      }
+  }
+
+  private fun evaluate(
+    key: KeyParts,
+    requester: FeatureRequester,
+    contexts: List<String>,
+    statRecorder: StatRecorder?
+  ): CompletableFuture<Response> {
+    val details = requester.details
+
+    if (details == null) {
+      val failure = FeatureRequestCollection.decodeFailure(requester.failure)
+
+      statRecorder?.recordHit(key, EdgeHitResultType.MISSED, EdgeHitSourceType.POLL)
+
+      return CompletableFuture.completedFuture(
+        if (failure == FeatureRequestSuccess.DACHA_NOT_READY) {
+          Response.status(503).entity("cache layer not ready, try again shortly").build()
+        } else {
+          Response.status(404).build()
+        }
+      )
+    }
+
+    statRecorder?.recordHit(key, EdgeHitResultType.SUCCESS, EdgeHitSourceType.POLL)
+
+    val keys = listOf(key)
+    val features = details.features
+    val evaluate = { context: String ->
+      featureTransformer.evaluate(features, ClientContext.decode(listOf(context), keys))
+    }
+
+    if (contexts.size < parallelThreshold!!) {
+      return CompletableFuture.completedFuture(batchResponse(key, contexts.map(evaluate)))
+    }
+
+    // one piece per thread, a full queue fails the batch rather than leaving it waiting
+    val pieces = contexts.chunked((contexts.size + batchThreads!! - 1) / batchThreads!!).map { piece ->
+      CompletableFuture.supplyAsync({ piece.map(evaluate) }, executor)
+    }
+
+    return CompletableFuture.allOf(*pieces.toTypedArray())
+      .thenApply { batchResponse(key, pieces.flatMap { it.join() }) }
+  }
+
+  private fun batchResponse(key: KeyParts, results: List<FeatureBatchContextResult>): Response {
+    log.trace("batch evaluated {} contexts for {}", results.size, key)
+
+    return Response.status(200).entity(FeatureBatchResponse().id(key.environmentId).results(results)).build()
+  }
+
+  companion object {
+    val batchSpeedHistogram: Histogram = Histogram.build(
+      "edge_batch_eval", "The length of time taken to evaluate a batch request"
+    ).register()
+  }
+}
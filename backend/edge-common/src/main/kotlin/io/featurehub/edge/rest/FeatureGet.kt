@@ -1,12 +1,16 @@
 package io.featurehub.edge.rest
 
+import cd.connect.app.config.ConfigKey
+import cd.connect.app.config.DeclaredConfigResolver
 import io.featurehub.edge.KeyParts
 import io.featurehub.edge.features.DachaFeatureRequestSubmitter
 import io.featurehub.edge.features.ETagSplitter.Companion.makeEtags
 import io.featurehub.edge.features.ETagSplitter.Companion.splitTag
+import io.featurehub.edge.features.EtagStructureHolder
 import io.featurehub.edge.features.FeatureRequestResponse
 import io.featurehub.edge.features.FeatureRequestSuccess
 import io.featurehub.edge.stats.StatRecorder
+import io.featurehub.edge.utils.PreEncodedEntity
 import io.featurehub.edge.strategies.ClientContext
 import io.featurehub.sse.stats.model.EdgeHitResultType
 import io.featurehub.sse.stats.model.EdgeHitSourceType
@@ -17,10 +21,15 @@ import jakarta.inject.Inject
 import jakarta.ws.rs.BadRequestException
 import jakarta.ws.rs.NotFoundException
 import jakarta.ws.rs.container.AsyncResponse
+import jakarta.ws.rs.container.ConnectionCallback
+import jakarta.ws.rs.core.MediaType
 import jakarta.ws.rs.core.Response
 import org.glassfish.hk2.api.IterableProvider
 import org.slf4j.Logger
 import org.slf4j.LoggerFactory
+import java.time.Duration
+import java.util.concurrent.CancellationException
+import java.util.concurrent.TimeUnit
 import java.util.function.Consumer
 
 interface FeatureGet {
@@ -30,6 +39,10 @@ interface FeatureGet {
     apiKeys: List<String>?,
     featureHubAttrs: List<String>?,
     etagHeader: String?,
+    acceptEncoding: String?,
+    delta: Boolean?,
+    forwardedFor: String?,
+    remoteAddress: String?,
     statRecorder: StatRecorder?
   )
 }
@@ -42,11 +55,21 @@ interface EdgeGetResponseWrapper {
 class FeatureGetProcessor @Inject constructor(
   private val getOrchestrator: DachaFeatureRequestSubmitter,
   private val sourceResponseWrapper: IterableProvider<EdgeGetResponseWrapper>,
+  private val admissionControl: AdmissionControl,
+  private val rateLimiter: RateLimiter,
   ) : FeatureGet {
 
+  // how long a poll can wait for Dacha before it is told to try again
+  @ConfigKey("edge.poll.timeout-ms")
+  var pollTimeout: Long? = 10000
+
   private val log: Logger = LoggerFactory.getLogger(FeatureGetProcessor::class.java)
   private val responseWrappers = mutableListOf <EdgeGetResponseWrapper>()
 
+  init {
+    DeclaredConfigResolver.resolve(this)
+  }
+
   @PostConstruct
   fun postConstruct() {
     responseWrappers.addAll(sourceResponseWrapper.toList())
@@ -59,6 +82,10 @@ class FeatureGetProcessor @Inject constructor(
     apiKeys: List<String>?,
     featureHubAttrs: List<String>?,
     etagHeader: String?,
+    acceptEncoding: String?,
+    delta: Boolean?,
+    forwardedFor: String?,
+    remoteAddress: String?,
     statRecorder: StatRecorder?
   ) {
     if ((sdkUrls == null || sdkUrls.isEmpty()) && (apiKeys == null || apiKeys.isEmpty())) {
@@ -66,10 +93,6 @@ class FeatureGetProcessor @Inject constructor(
       return
     }
 
-    inout.inc()
-
-    val timer: Histogram.Timer = pollSpeedHistogram.startTimer()
-
     val realApiKeys = (if (sdkUrls == null || sdkUrls.isEmpty()) apiKeys else sdkUrls)!!
       .asSequence()
       .distinct() // we want unique ones
@@ -82,11 +105,85 @@ class FeatureGetProcessor @Inject constructor(
       return
     }
 
-    val clientContext = ClientContext.decode(featureHubAttrs, realApiKeys)
-    val etags = splitTag(etagHeader, realApiKeys, clientContext.makeEtag())
+    // the headers are the client's to get wrong, so they are decoded before anything is held for the request
+    val clientContext: ClientContext
+    val etags: EtagStructureHolder
+
+    try {
+      clientContext = ClientContext.decode(featureHubAttrs, realApiKeys)
+      etags = splitTag(etagHeader, realApiKeys, clientContext.makeEtag())
+        .let { if (delta == true) it.acceptingDelta() else it }
+    } catch (e: RuntimeException) {
+      log.debug("unable to decode the headers for {}", realApiKeys, e)
+      response.resume(BadRequestException())
+      return
+    }
+
+    if (!rateLimiter.allow(realApiKeys, forwardedFor, remoteAddress)) {
+      response.resume(rateLimiter.rejection(etagHeader))
+      return
+    }
+
+    // turned away now rather than left waiting behind everyone else on a Dacha that is struggling
+    val permit = admissionControl.tryAcquire("poll")
+
+    if (permit == null) {
+      response.resume(admissionControl.rejection())
+      return
+    }
+
+    inout.inc()
+
+    val timer: Histogram.Timer = pollSpeedHistogram.startTimer()
+
+    // nothing waits on this, the response is resumed by whichever thread completes the request
+    val request = try {
+      getOrchestrator.requestAsync(realApiKeys, clientContext, etags, Duration.ofMillis(pollTimeout!!))
+    } catch (e: Exception) {
+      timer.observeDuration()
+      inout.dec()
+      permit.ignore()
+      log.error("failed to ask for features for {}", realApiKeys, e)
+      response.resume(e)
+      return
+    }
+
+    // if the client goes away there is no need to transform the features for it
+    response.register(ConnectionCallback { request.cancel(false) })
+
+    request
+      .orTimeout(pollTimeout!!, TimeUnit.MILLISECONDS)
+      .whenComplete { environments, failure ->
+        timer.observeDuration()
+        inout.dec()
 
-    val environments = getOrchestrator.request(realApiKeys, clientContext, etags)
+        when (failure) {
+          null -> permit.answered(environments)
+          is CancellationException -> permit.ignore()
+          else -> permit.dropped()
+        }
 
+        try {
+          if (failure == null) {
+            respond(response, environments, etags, etagHeader, acceptEncoding, statRecorder)
+          } else if (failure !is CancellationException) {
+            log.debug("failed to get features for {}", realApiKeys, failure)
+            response.resume(Response.status(503).entity("cache layer not ready, try again shortly").build())
+          }
+        } catch (e: Exception) {
+          response.resume(e)
+        }
+      }
+  }
+
+  private fun respond(
+    response: AsyncResponse,
+    environments: List<FeatureRequestResponse>,
+    etags: EtagStructureHolder,
+    etagHeader: String?,
+    acceptEncoding: String?,
+    statRecorder: StatRecorder?
+  ) {
     if (statRecorder != null) {
       // record the result
       environments.forEach(Consumer { resp: FeatureRequestResponse ->
@@ -99,10 +196,6 @@ class FeatureGetProcessor @Inject constructor(
       })
     }
 
-    timer.observeDuration()
-
-    inout.dec()
-
     if (environments[0].success === FeatureRequestSuccess.NO_CHANGE && environments.size == 1) {
       response.resume(wrapResponse(environments, Response.status(304).header("etag", etagHeader), 304).build())
     } else if (environments.all { it.success == FeatureRequestSuccess.NO_SUCH_KEY_IN_CACHE }) {
@@ -115,15 +208,34 @@ class FeatureGetProcessor @Inject constructor(
         etags,
         environments.map(FeatureRequestResponse::etag))
 
-      response.resume(
-        wrapResponse(
-          environments,
-          Response.status(200)
-            .header("etag", "\"${newEtags}\"")
-            .entity(environments.map(FeatureRequestResponse::environment)), 200
-        )
-          .build()
-      )
+      val encoded = if (environments.size == 1) environments[0].encoded else null
+
+      if (encoded != null) {
+        val builder = Response.status(200)
+          .header("etag", "\"${newEtags}\"")
+          .header("Vary", "Accept-Encoding")
+          .type(MediaType.APPLICATION_JSON_TYPE)
+
+        if (acceptsGzip(acceptEncoding)) {
+          builder.header("Content-Encoding", "gzip").entity(PreEncodedEntity(encoded.gzip))
+        } else {
+          builder.entity(PreEncodedEntity(encoded.identity))
+        }
+
+        response.resume(wrapResponse(environments, builder, 200).build())
+        return
+      }
+
+      val builder = Response.status(200)
+        .header("etag", "\"${newEtags}\"")
+        .entity(environments.map(FeatureRequestResponse::environment))
+
+      // only the changes since the client's etag, so what is sent depends on it
+      if (environments.any { it.environment.delta == true }) {
+        builder.header("Vary", "If-None-Match")
+      }
+
+      response.resume(wrapResponse(environments, builder, 200).build())
     }
   }
 
@@ -136,6 +248,21 @@ class FeatureGetProcessor @Inject constructor(
     return builder
   }
 
+  // does the client accept gzip? (gzip;q=0 means it doesn't)
+  private fun acceptsGzip(acceptEncoding: String?): Boolean {
+    if (acceptEncoding == null) {
+      return false
+    }
+
+    return acceptEncoding.split(",").any { coding ->
+      val parts = coding.split(";")
+      val name = parts[0].trim()
+
+      (name.equals("gzip", ignoreCase = true) || name == "*") &&
+        parts.drop(1).none { param -> notAcceptable.matches(param.replace(" ", "")) }
+    }
+  }
+
   private fun mapSuccess(success: FeatureRequestSuccess): EdgeHitResultType {
     return when (success) {
       FeatureRequestSuccess.NO_SUCH_KEY_IN_CACHE -> EdgeHitResultType.MISSED
@@ -146,6 +273,7 @@ class FeatureGetProcessor @Inject constructor(
   }
 
   companion object {
+    private val notAcceptable = Regex("q=0(\\.0{0,3})?")
     val inout = Gauge.build("edge_get_req", "how many GET requests").register()
     val pollSpeedHistogram = Histogram.build(
       "edge_conn_length_poll", "The length of " +
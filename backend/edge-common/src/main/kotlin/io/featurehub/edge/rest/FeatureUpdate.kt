@@ -5,6 +5,7 @@ import io.featurehub.dacha.api.DachaApiKeyService
 import io.featurehub.dacha.api.DachaClientServiceRegistry
 import io.featurehub.dacha.model.DachaPermissionResponse
 import io.featurehub.edge.KeyParts
+import io.featurehub.edge.features.KeyDetailsCache
 import io.featurehub.edge.stats.StatRecorder
 import io.featurehub.edge.utils.UpdateMapper
 import io.featurehub.mr.messaging.StreamedFeatureUpdate
@@ -44,7 +45,8 @@ interface FeatureUpdatePublisher {
 class FeatureUpdateProcessor @Inject constructor(private val updateMapper: UpdateMapper,
                                                  private val dachaClientRegistry: DachaClientServiceRegistry,
                                                  private val featureUpdatePublisher: FeatureUpdatePublisher,
-                                                 private val sourceResponseInterceptors: IterableProvider<FeatureUpdateResponseInterceptor>
+                                                 private val sourceResponseInterceptors: IterableProvider<FeatureUpdateResponseInterceptor>,
+                                                 private val keyDetailsCache: KeyDetailsCache
 ) : FeatureUpdate {
   private val log: Logger = LoggerFactory.getLogger(FeatureUpdateProcessor::class.java)
   private val responseInterceptors = mutableListOf<FeatureUpdateResponseInterceptor>()
@@ -278,6 +280,10 @@ class FeatureUpdateProcessor @Inject constructor(private val updateMapper: Updat
 
       featureUpdatePublisher.publishFeatureChangeRequest(upd, namedCache)
 
+      // what we hold for this environment predates the change, the update stream (if there is one) will drop it
+      // again once the change has reached Dacha
+      keyDetailsCache.invalidate(envId)
+
       statRecorder?.recordHit(key, EdgeHitResultType.SUCCESS, EdgeHitSourceType.TESTSDK)
 
       response.resume(Response.ok().build())
@@ -0,0 +1,252 @@
+package io.featurehub.edge.rest
+
+import cd.connect.app.config.ConfigKey
+import cd.connect.app.config.DeclaredConfigResolver
+import io.featurehub.edge.KeyParts
+import io.prometheus.client.Counter
+import jakarta.inject.Inject
+import jakarta.ws.rs.core.Response
+import org.slf4j.Logger
+import org.slf4j.LoggerFactory
+import java.util.*
+import java.util.concurrent.atomic.AtomicLongArray
+import kotlin.math.ceil
+
+/**
+ * Stops any one API key or client address from making requests faster than it is allowed to.
+ */
+interface RateLimiter {
+  /**
+   * takes a request's worth of allowance from each of the keys and the client's address, returning false (and
+   * taking nothing) if any of them has run out. The client's address comes from X-Forwarded-For if there is one,
+   * otherwise it is the address the request came from.
+   */
+  fun allow(keys: List<KeyParts>, forwardedFor: String?, remoteAddress: String?): Boolean
+
+  /**
+   * a client that has the etag of what it last saw is told nothing has changed, as that is something every SDK
+   * copes with, otherwise it is a 429. Either way it is told when to try again.
+   */
+  fun rejection(etag: String?): Response
+}
+
+/**
+ * Token buckets refilled at edge.rate-limit.per-second for each API key (with a burst of edge.rate-limit.burst) and
+ * at edge.rate-limit.ip.per-second for each client address. Keys in an environment listed in
+ * edge.rate-limit.environments (as environmentId=perSecond or environmentId=perSecond/burst, comma separated) use
+ * that rate instead. The client address is the last one in X-Forwarded-For, the one added by our own load balancer,
+ * or the address the request came from if there is no X-Forwarded-For.
+ *
+ * So the cost doesn't grow with the number of keys, the buckets live in a fixed table of edge.rate-limit.slots
+ * longs that keys are hashed into, and keys that land in the same slot share it. Each is off unless its rate is set.
+ */
+class TokenBucketRateLimiter(private val clock: () -> Long) : RateLimiter {
+  @ConfigKey("edge.rate-limit.per-second")
+  var keyRate: Double? = 0.0
+
+  @ConfigKey("edge.rate-limit.burst")
+  var keyBurst: Int? = 20
+
+  @ConfigKey("edge.rate-limit.ip.per-second")
+  var ipRate: Double? = 0.0
+
+  @ConfigKey("edge.rate-limit.ip.burst")
+  var ipBurst: Int? = 100
+
+  @ConfigKey("edge.rate-limit.environments")
+  var environmentOverrides: String? = ""
+
+  @ConfigKey("edge.rate-limit.slots")
+  var slots: Int? = 262144
+
+  @ConfigKey("edge.rate-limit.retry-after-seconds")
+  var retryAfter: Int? = 0
+
+  private val keyLimit: Limit?
+  private val ipLimit: Limit?
+  private val overrides: Map<UUID, Limit>
+  private val keyBuckets: TokenBuckets?
+  private val ipBuckets: TokenBuckets?
+
+  @Inject
+  constructor() : this({ System.nanoTime() / 1_000_000 })
+
+  init {
+    DeclaredConfigResolver.resolve(this)
+
+    keyLimit = if (keyRate!! > 0) Limit(keyRate!!, keyBurst!!) else null
+    ipLimit = if (ipRate!! > 0) Limit(ipRate!!, ipBurst!!) else null
+    overrides = parseOverrides(environmentOverrides!!)
+
+    keyBuckets = if (keyLimit != null || overrides.isNotEmpty()) TokenBuckets(slots!!, clock) else null
+    ipBuckets = if (ipLimit != null) TokenBuckets(slots!!, clock) else null
+  }
+
+  override fun allow(keys: List<KeyParts>, forwardedFor: String?, remoteAddress: String?): Boolean {
+    if (keyBuckets != null) {
+      keys.forEachIndexed { index, key ->
+        val limit = keyLimit(key)
+
+        if (limit != null && !keyBuckets.tryTake(keyHash(key), limit)) {
+          limitedCounter.labels("key").inc()
+          refundKeys(keys, index)
+          return false
+        }
+      }
+    }
+
+    if (ipBuckets != null) {
+      val address = forwardedFor?.substringAfterLast(',')?.trim()?.takeIf { it.isNotEmpty() } ?: remoteAddress
+
+      if (address?.isNotEmpty() == true && !ipBuckets.tryTake(address.hashCode(), ipLimit!!)) {
+        limitedCounter.labels("ip").inc()
+        refundKeys(keys, keys.size)
+        return false
+      }
+    }
+
+    return true
+  }
+
+  // a rejected request shouldn't use up the allowance of the keys that did have some left
+  private fun refundKeys(keys: List<KeyParts>, taken: Int) {
+    if (keyBuckets == null) {
+      return
+    }
+
+    for (index in 0 until taken) {
+      val key = keys[index]
+      keyLimit(key)?.let { keyBuckets.refund(keyHash(key), it) }
+    }
+  }
+
+  private fun keyLimit(key: KeyParts): Limit? = overrides[key.environmentId] ?: keyLimit
+
+  private fun keyHash(key: KeyParts): Int = 31 * key.environmentId.hashCode() + key.serviceKey.hashCode()
+
+  override fun rejection(etag: String?): Response {
+    // by default, long enough to have earned another request at the slowest rate in use
+    val slowest = (listOfNotNull(keyLimit, ipLimit) + overrides.values).minOfOrNull { it.perSecond } ?: 1.0
+    val wait = if (retryAfter!! > 0) retryAfter!! else ceil(1.0 / slowest).toInt().coerceAtLeast(1)
+
+    return (if (etag != null) Response.status(304).header("etag", etag) else Response.status(429))
+      .header("Retry-After", wait.toString())
+      .build()
+  }
+
+  private fun parseOverrides(config: String): Map<UUID, Limit> {
+    return config.split(",").map { it.trim() }.filter { it.isNotEmpty() }.mapNotNull { entry ->
+      try {
+        val (envId, limit) = entry.split("=", limit = 2)
+        val parts = limit.split("/")
+
+        UUID.fromString(envId.trim()) to Limit(parts[0].trim().toDouble(), parts.getOrNull(1)?.trim()?.toInt() ?: keyBurst!!)
+      } catch (e: Exception) {
+        log.error("ignoring rate limit for environment `{}`, it should be environmentId=perSecond[/burst]", entry)
+        null
+      }
+    }.toMap()
+  }
+
+  class Limit(val perSecond: Double, burst: Int) {
+    val burst: Int = burst.coerceIn(1, TokenBuckets.MAX_TOKENS)
+  }
+
+  companion object {
+    private val log: Logger = LoggerFactory.getLogger(TokenBucketRateLimiter::class.java)
+
+    val limitedCounter: Counter = Counter.build("edge_rate_limited", "Requests turned away for going over the " +
+      "rate allowed for their API key or address").labelNames("by").register()
+  }
+}
+
+/**
+ * A fixed table of token buckets, each packed into a long as the last time it was refilled (in milliseconds since
+ * the table was created) and the number of tokens left (in 1/1024ths of a token).
+ */
+class TokenBuckets(slots: Int, private val clock: () -> Long) {
+  private val buckets: AtomicLongArray
+  private val mask: Int
+  private val started = clock() - 1 // so a used slot is never 0
+
+  init {
+    var size = 1
+    while (size < slots) size = size shl 1
+
+    buckets = AtomicLongArray(size)
+    mask = size - 1
+  }
+
+  fun tryTake(hash: Int, limit: TokenBucketRateLimiter.Limit): Boolean {
+    val slot = spread(hash) and mask
+    val full = limit.burst.toLong() shl FRACTION_BITS
+
+    while (true) {
+      val now = clock() - started
+      val current = buckets.get(slot)
+
+      var tokens: Long
+      var refilled: Long
+
+      if (current == 0L) {
+        tokens = full
+        refilled = now
+      } else {
+        tokens = current and TOKEN_MASK
+        refilled = current ushr TOKEN_BITS
+
+        // only move the time on when a whole 1/1024th has been earned, or slow rates would never refill
+        val earned = ((now - refilled).coerceIn(0, MAX_ELAPSED) * limit.perSecond * ONE / 1000).toLong()
+
+        if (earned > 0) {
+          tokens = (tokens + earned).coerceAtMost(full)
+          refilled = now
+        }
+      }
+
+      if (tokens < ONE) {
+        return false
+      }
+
+      if (buckets.compareAndSet(slot, current, (refilled shl TOKEN_BITS) or (tokens - ONE))) {
+        return true
+      }
+    }
+  }
+
+  /**
+   * gives back a token taken by tryTake, never filling the bucket past its burst
+   */
+  fun refund(hash: Int, limit: TokenBucketRateLimiter.Limit) {
+    val slot = spread(hash) and mask
+    val full = limit.burst.toLong() shl FRACTION_BITS
+
+    while (true) {
+      val current = buckets.get(slot)
+
+      if (current == 0L) {
+        return
+      }
+
+      val tokens = ((current and TOKEN_MASK) + ONE).coerceAtMost(full)
+
+      if (buckets.compareAndSet(slot, current, (current and TOKEN_MASK.inv()) or tokens)) {
+        return
+      }
+    }
+  }
+
+  companion object {
+    private const val FRACTION_BITS = 10
+    private const val TOKEN_BITS = 22
+    private const val ONE = 1L shl FRACTION_BITS
+    private const val TOKEN_MASK = (1L shl TOKEN_BITS) - 1
+    private const val MAX_ELAPSED = 3_600_000L
+    const val MAX_TOKENS = (1 shl (TOKEN_BITS - FRACTION_BITS)) - 1
+
+    private fun spread(hash: Int): Int {
+      val h = hash * -0x61c88647
+      return h xor (h ushr 16)
+    }
+  }
+}
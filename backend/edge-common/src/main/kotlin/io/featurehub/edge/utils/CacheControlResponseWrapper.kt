@@ -1,6 +1,7 @@
 package io.featurehub.edge.utils
 
 import io.featurehub.edge.features.FeatureRequestResponse
+import io.featurehub.edge.features.PollIntervalAdvisor
 import io.featurehub.edge.rest.EdgeGetResponseWrapper
 import io.featurehub.utils.FeatureHubConfig
 import jakarta.inject.Inject
@@ -8,6 +9,7 @@ import jakarta.ws.rs.core.Response
 
 class CacheControlResponseWrapper @Inject constructor(@FeatureHubConfig("edge.cache-control.header")
                                                         private val cacheControlHeader: String?,
+                                                        private val pollIntervalAdvisor: PollIntervalAdvisor,
 ) : EdgeGetResponseWrapper {
   override fun wrapResponse(
     environments: List<FeatureRequestResponse>,
@@ -17,7 +19,8 @@ class CacheControlResponseWrapper @Inject constructor(@FeatureHubConfig("edge.ca
     var bld = builder
 
     // check if the Ops team has set a header for this environment, then if they have set a generic one, and then
-    // if the team themselves have set one in the database
+    // if the team themselves have set one in the database. Failing all of those, we tell them how long to wait based
+    // on how recently their environments changed
     val managementCacheControl = environments.find { it.envInfo?.containsKey("mgmt.cacheControl") == true }
 
     if (managementCacheControl != null ) {
@@ -28,6 +31,10 @@ class CacheControlResponseWrapper @Inject constructor(@FeatureHubConfig("edge.ca
       val environmentCacheControlHeader = environments.find { it.envInfo?.containsKey("cacheControl") == true }
       if (environmentCacheControlHeader != null) {
         bld = bld.header("Cache-Control", environmentCacheControlHeader.envInfo!!["cacheControl"])
+      } else {
+        pollIntervalAdvisor.pollInterval(environments)?.let { interval ->
+          bld = bld.header("Cache-Control", "max-age=$interval")
+        }
       }
     }
 
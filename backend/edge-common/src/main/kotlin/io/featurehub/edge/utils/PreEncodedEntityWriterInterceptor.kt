@@ -0,0 +1,28 @@
+package io.featurehub.edge.utils
+
+import jakarta.annotation.Priority
+import jakarta.ws.rs.Priorities
+import jakarta.ws.rs.ext.WriterInterceptor
+import jakarta.ws.rs.ext.WriterInterceptorContext
+
+/**
+ * A response body that has already been serialized (and compressed if the response has a Content-Encoding).
+ */
+class PreEncodedEntity(val bytes: ByteArray)
+
+/**
+ * Writes pre-encoded bodies straight out. It runs ahead of the GZipEncoder, which would otherwise compress a body
+ * that is already gzipped a second time, and it doesn't pass the body on so nothing else touches it.
+ */
+@Priority(Priorities.ENTITY_CODER - 100)
+class PreEncodedEntityWriterInterceptor : WriterInterceptor {
+  override fun aroundWriteTo(context: WriterInterceptorContext) {
+    val entity = context.entity
+
+    if (entity is PreEncodedEntity) {
+      context.outputStream.write(entity.bytes)
+    } else {
+      context.proceed()
+    }
+  }
+}
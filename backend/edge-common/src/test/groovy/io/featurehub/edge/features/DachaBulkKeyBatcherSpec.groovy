@@ -0,0 +1,189 @@
+package io.featurehub.edge.features
+
+import cd.connect.app.config.ThreadLocalConfigurationSource
+import io.featurehub.dacha.api.DachaApiKeyService
+import io.featurehub.dacha.api.DachaClientServiceRegistry
+import io.featurehub.dacha.model.DachaKeyDetailsBulkRequest
+import io.featurehub.dacha.model.DachaKeyDetailsBulkResponse
+import io.featurehub.dacha.model.DachaKeyDetailsResponse
+import io.featurehub.dacha.model.DachaKeyDetailsResult
+import io.featurehub.edge.KeyParts
+import jakarta.ws.rs.InternalServerErrorException
+import jakarta.ws.rs.NotFoundException
+import jakarta.ws.rs.WebApplicationException
+import spock.lang.Specification
+
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+
+class DachaBulkKeyBatcherSpec extends Specification {
+  DachaClientServiceRegistry registry
+  DachaApiKeyService api
+  EdgeConcurrentRequestPool executor
+  Map<KeyParts, List> arrivals
+  int tasks
+  long now
+
+  def setup() {
+    api = Mock(DachaApiKeyService)
+    registry = Mock(DachaClientServiceRegistry) {
+      getApiKeyService(_) >> api
+    }
+    tasks = 0
+    now = 0
+    executor = { Runnable task -> tasks++; task.run() } as EdgeConcurrentRequestPool
+    arrivals = new ConcurrentHashMap<>()
+  }
+
+  def cleanup() {
+    ThreadLocalConfigurationSource.clearContext()
+  }
+
+  DachaBulkKeyBatcher newBatcher(Map<String, String> config) {
+    ThreadLocalConfigurationSource.createContext(config)
+    return new DachaBulkKeyBatcher(registry, executor, { -> now })
+  }
+
+  CountDownLatch requestAll(DachaBulkKeyBatcher batcher, List<KeyParts> keys) {
+    def latch = new CountDownLatch(keys.size())
+
+    keys.each { key ->
+      batcher.request(key, null, { DachaKeyDetailsResponse details, Exception failure ->
+        arrivals[key] = [details, failure]
+        latch.countDown()
+      })
+    }
+
+    return latch
+  }
+
+  static DachaKeyDetailsBulkResponse answer(DachaKeyDetailsBulkRequest request) {
+    return new DachaKeyDetailsBulkResponse().results(request.keys.collect { key ->
+      def result = new DachaKeyDetailsResult().eId(key.eId).serviceAccountKey(key.serviceAccountKey)
+      key.serviceAccountKey == "missing" ? result.status(404) : result.status(200).details(new DachaKeyDetailsResponse().etag(key.serviceAccountKey))
+    })
+  }
+
+  static KeyParts key(String serviceKey) {
+    return new KeyParts("default", UUID.randomUUID(), serviceKey)
+  }
+
+  def "batching is off unless there is a window"() {
+    expect:
+      !newBatcher([:]).batching
+      newBatcher(["edge.dacha.batch-window-ms": "5"]).batching
+  }
+
+  def "keys asked for within the window are sent in one request and each gets its own result"() {
+    given:
+      def batcher = newBatcher(["edge.dacha.batch-window-ms": "20"])
+      def keys = [key("a"), key("b"), key("missing")]
+    when:
+      def answered = requestAll(batcher, keys).await(5, TimeUnit.SECONDS)
+    then:
+      answered
+      1 * api.getApiKeyDetailsBulk({ DachaKeyDetailsBulkRequest r -> r.keys.size() == 3 && r.excludeRetired }) >> { DachaKeyDetailsBulkRequest r -> answer(r) }
+      0 * api.getApiKeyDetails(_, _, _, _)
+      arrivals[keys[0]][0].etag == "a"
+      arrivals[keys[1]][0].etag == "b"
+      arrivals[keys[2]][0] == null
+      (arrivals[keys[2]][1] as WebApplicationException).response.status == 404
+  }
+
+  def "a full batch is sent without waiting for the window"() {
+    given:
+      def batcher = newBatcher(["edge.dacha.batch-window-ms": "60000", "edge.dacha.batch-size": "2"])
+      def keys = [key("a"), key("b")]
+    when:
+      def answered = requestAll(batcher, keys).await(5, TimeUnit.SECONDS)
+    then:
+      answered
+      1 * api.getApiKeyDetailsBulk(_) >> { DachaKeyDetailsBulkRequest r -> answer(r) }
+      arrivals.size() == 2
+  }
+
+  def "a dacha without the bulk endpoint is asked for each key separately until it is time to try it again"() {
+    given:
+      def batcher = newBatcher(["edge.dacha.batch-window-ms": "60000", "edge.dacha.batch-size": "2",
+                                "edge.dacha.bulk-retry-seconds": "60"])
+      def keys = [key("a"), key("b")]
+      def later = key("c")
+    when:
+      requestAll(batcher, keys).await(5, TimeUnit.SECONDS)
+      requestAll(batcher, [later]).await(5, TimeUnit.SECONDS)
+    then:
+      1 * api.getApiKeyDetailsBulk(_) >> { throw new NotFoundException() }
+      3 * api.getApiKeyDetails(_, _, true, null) >> { UUID eId, String serviceKey, Boolean retired, String etag -> new DachaKeyDetailsResponse().etag(serviceKey) }
+      arrivals[keys[0]][0].etag == "a"
+      arrivals[keys[1]][0].etag == "b"
+      arrivals[later][0].etag == "c"
+      tasks == 4 // the batch, then each of the keys in it and the one after on their own
+    when: "dacha has had time to be upgraded"
+      now += 60_000
+      requestAll(batcher, [key("d"), key("e")]).await(5, TimeUnit.SECONDS)
+    then:
+      1 * api.getApiKeyDetailsBulk(_) >> { DachaKeyDetailsBulkRequest r -> answer(r) }
+      0 * api.getApiKeyDetails(_, _, _, _)
+  }
+
+  def "if the bulk request fails, every key is told why"() {
+    given:
+      def batcher = newBatcher(["edge.dacha.batch-window-ms": "60000", "edge.dacha.batch-size": "2"])
+      def keys = [key("a"), key("b")]
+      def failure = new InternalServerErrorException()
+    when:
+      requestAll(batcher, keys).await(5, TimeUnit.SECONDS)
+    then:
+      1 * api.getApiKeyDetailsBulk(_) >> { throw failure }
+      arrivals.values().every { it[0] == null && it[1].is(failure) }
+  }
+
+  def "keys asked for while another batch is on its way go in the next one"() {
+    given:
+      def batcher = newBatcher(["edge.dacha.batch-window-ms": "60000", "edge.dacha.batch-size": "2"])
+      def batches = []
+    when:
+      requestAll(batcher, [key("a"), key("b"), key("c"), key("d"), key("e")])
+    then:
+      2 * api.getApiKeyDetailsBulk(_) >> { DachaKeyDetailsBulkRequest r -> batches << r.keys.size(); answer(r) }
+      batches == [2, 2]
+      arrivals.size() == 4
+  }
+
+  def "each key is sent with its etag, and results are matched up in the order they were asked for"() {
+    given:
+      def batcher = newBatcher(["edge.dacha.batch-window-ms": "60000", "edge.dacha.batch-size": "2"])
+      def k = key("a")
+      def latch = new CountDownLatch(2)
+      def answers = new ConcurrentHashMap<String, DachaKeyDetailsResponse>()
+    when: "the same key is asked for by a client with the etag and one without"
+      ["e1", null].each { etag ->
+        batcher.request(k, etag, { DachaKeyDetailsResponse details, Exception failure ->
+          answers[etag ?: "none"] = details
+          latch.countDown()
+        })
+      }
+      latch.await(5, TimeUnit.SECONDS)
+    then:
+      1 * api.getApiKeyDetailsBulk({ DachaKeyDetailsBulkRequest r -> r.keys*.etag == ["e1", null] }) >> { DachaKeyDetailsBulkRequest r ->
+        new DachaKeyDetailsBulkResponse().results(r.keys.collect { dk ->
+          new DachaKeyDetailsResult().eId(dk.eId).serviceAccountKey(dk.serviceAccountKey).status(200)
+            .details(new DachaKeyDetailsResponse().etag("e1").notModified(dk.etag == "e1" ? true : null))
+        })
+      }
+      answers["e1"].notModified
+      answers["none"].notModified == null
+  }
+
+  def "results that don't line up with the keys asked for fail them all"() {
+    given:
+      def batcher = newBatcher(["edge.dacha.batch-window-ms": "60000", "edge.dacha.batch-size": "2"])
+      def keys = [key("a"), key("b")]
+    when:
+      requestAll(batcher, keys).await(5, TimeUnit.SECONDS)
+    then:
+      1 * api.getApiKeyDetailsBulk(_) >> new DachaKeyDetailsBulkResponse().results([])
+      arrivals.values().every { it[0] == null && it[1] instanceof IllegalStateException }
+  }
+}
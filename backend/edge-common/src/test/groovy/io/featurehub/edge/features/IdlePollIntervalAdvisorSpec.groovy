@@ -0,0 +1,135 @@
+package io.featurehub.edge.features
+
+import cd.connect.app.config.ThreadLocalConfigurationSource
+import io.featurehub.edge.KeyParts
+import io.featurehub.sse.model.FeatureEnvironmentCollection
+import spock.lang.Specification
+
+import java.util.concurrent.TimeUnit
+
+class IdlePollIntervalAdvisorSpec extends Specification {
+  long now
+  UUID envId
+
+  def setup() {
+    now = 0
+    envId = UUID.randomUUID()
+  }
+
+  def cleanup() {
+    ThreadLocalConfigurationSource.clearContext()
+  }
+
+  IdlePollIntervalAdvisor newAdvisor(Map<String, String> config = ["edge.poll-interval.adaptive": "true"]) {
+    ThreadLocalConfigurationSource.createContext(config)
+    return new IdlePollIntervalAdvisor({ -> now })
+  }
+
+  void advance(long seconds) {
+    now += TimeUnit.SECONDS.toNanos(seconds)
+  }
+
+  FeatureRequestResponse poll(UUID environmentId = envId, String etag = "e1",
+                              FeatureRequestSuccess success = FeatureRequestSuccess.SUCCESS, String serviceKey = "key") {
+    return new FeatureRequestResponse(new FeatureEnvironmentCollection().id(environmentId), success,
+      new KeyParts("default", environmentId, serviceKey), etag, null, false)
+  }
+
+  // as FeatureRequestCollection sends it, without an etag
+  FeatureRequestResponse unchanged(String serviceKey = "key") {
+    return new FeatureRequestResponse(new FeatureEnvironmentCollection().id(envId), FeatureRequestSuccess.NO_CHANGE,
+      new KeyParts("default", envId, serviceKey), "", null, false)
+  }
+
+  def "there is no advice unless it is turned on"() {
+    expect:
+      newAdvisor([:]).pollInterval([poll()]) == null
+  }
+
+  def "an idle environment is polled less often, up to the maximum"() {
+    given:
+      def advisor = newAdvisor()
+    expect:
+      advisor.pollInterval([poll()]) == 5
+    when:
+      advance(600)
+    then:
+      advisor.pollInterval([poll()]) == 60
+    when:
+      advance(6000)
+    then:
+      advisor.pollInterval([poll()]) == 300
+  }
+
+  def "a change brings the interval straight back down"() {
+    given:
+      def advisor = newAdvisor()
+      advance(6000)
+    when:
+      advisor.changed(envId)
+    then:
+      advisor.pollInterval([poll()]) == 5
+  }
+
+  def "a new etag seen by a poll counts as a change, but one for a key with other permissions doesn't"() {
+    given:
+      def advisor = newAdvisor()
+      advisor.pollInterval([poll(envId, "e11", FeatureRequestSuccess.SUCCESS, "key-1")])
+      advance(6000)
+    when:
+      def other = advisor.pollInterval([poll(envId, "e10", FeatureRequestSuccess.SUCCESS, "key-2")])
+      advisor.pollInterval([poll(envId, "e11", FeatureRequestSuccess.SUCCESS, "key-1")])
+    then:
+      other == 300
+      advisor.pollInterval([poll(envId, "e10", FeatureRequestSuccess.SUCCESS, "key-2")]) == 300
+    when:
+      def changed = advisor.pollInterval([poll(envId, "e21", FeatureRequestSuccess.SUCCESS, "key-1")])
+    then:
+      changed == 5
+  }
+
+  def "an unchanged response in between polls is not a change"() {
+    given:
+      def advisor = newAdvisor()
+      advisor.pollInterval([poll()])
+      advance(6000)
+    when:
+      def notModified = advisor.pollInterval([unchanged()])
+      def same = advisor.pollInterval([poll()])
+    then:
+      notModified == 300
+      same == 300
+  }
+
+  def "clients polling several environments are told the shortest interval of them"() {
+    given:
+      def advisor = newAdvisor()
+      def busy = UUID.randomUUID()
+      advance(6000)
+      advisor.changed(busy)
+      advance(100)
+    expect:
+      advisor.pollInterval([poll(), poll(busy)]) == 10
+  }
+
+  def "keys Dacha doesn't know about get no advice"() {
+    expect:
+      newAdvisor().pollInterval([poll(envId, "e1", FeatureRequestSuccess.NO_SUCH_KEY_IN_CACHE)]) == null
+  }
+
+  def "the bounds and ratio can be changed"() {
+    given:
+      def advisor = newAdvisor(["edge.poll-interval.adaptive": "true", "edge.poll-interval.min-seconds": "1",
+                                "edge.poll-interval.max-seconds": "30", "edge.poll-interval.idle-ratio": "2"])
+    expect:
+      advisor.pollInterval([poll()]) == 1
+    when:
+      advance(40)
+    then:
+      advisor.pollInterval([poll()]) == 20
+    when:
+      advance(40)
+    then:
+      advisor.pollInterval([poll()]) == 30
+  }
+}
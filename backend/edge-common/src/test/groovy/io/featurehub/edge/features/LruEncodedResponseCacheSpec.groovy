@@ -0,0 +1,96 @@
+package io.featurehub.edge.features
+
+import cd.connect.app.config.ThreadLocalConfigurationSource
+import io.featurehub.edge.KeyParts
+import io.featurehub.jersey.config.CacheJsonMapper
+import io.featurehub.sse.model.FeatureEnvironmentCollection
+import io.featurehub.sse.model.FeatureState
+import spock.lang.Specification
+
+import java.util.zip.GZIPInputStream
+
+class LruEncodedResponseCacheSpec extends Specification {
+  KeyParts key
+  int transforms
+
+  def setup() {
+    key = new KeyParts("default", UUID.randomUUID(), "client*key")
+    transforms = 0
+  }
+
+  def cleanup() {
+    ThreadLocalConfigurationSource.clearContext()
+  }
+
+  LruEncodedResponseCache newCache(Map<String, String> config = [:]) {
+    ThreadLocalConfigurationSource.createContext(config)
+    return new LruEncodedResponseCache()
+  }
+
+  EncodedFeatures features(LruEncodedResponseCache cache, String etag, KeyParts forKey = key) {
+    return cache.features(forKey, etag, false, {
+      transforms++
+      return new FeatureEnvironmentCollection().id(forKey.environmentId)
+        .features([new FeatureState().key("f${transforms}".toString()).version(1)])
+    })
+  }
+
+  def "the same version of an environment is only transformed and encoded once"() {
+    given:
+      def cache = newCache()
+    when:
+      def first = features(cache, "e1")
+      def second = features(cache, "e1")
+    then:
+      first.is(second)
+      first.identity.is(second.identity)
+      transforms == 1
+  }
+
+  def "the encoded body is the environment in a list, as it would otherwise be sent"() {
+    given:
+      def cache = newCache()
+    when:
+      def encoded = features(cache, "e1")
+    then:
+      encoded.identity == CacheJsonMapper.mapper.writeValueAsBytes([encoded.environment])
+      new GZIPInputStream(new ByteArrayInputStream(encoded.gzip)).readAllBytes() == encoded.identity
+  }
+
+  def "a new etag is encoded again and a key for the same environment is held separately"() {
+    given:
+      def cache = newCache()
+      def otherKey = new KeyParts("default", key.environmentId, "other*key")
+    when:
+      def first = features(cache, "e1")
+      def other = features(cache, "e1", otherKey)
+      def updated = features(cache, "e2")
+    then:
+      transforms == 3
+      !first.is(other)
+      updated.environment.features[0].key == "f3"
+      features(cache, "e1", otherKey).is(other)
+      features(cache, "e2").is(updated)
+  }
+
+  def "what was held for an old etag ages out"() {
+    given:
+      def cache = newCache(["edge.encoded-cache.size": "2"])
+    when:
+      (1..5).each { features(cache, "e${it}".toString()) }
+    then:
+      transforms == 5
+      cache.size() == 2
+  }
+
+  def "a size of 0 turns the cache off"() {
+    given:
+      def cache = newCache(["edge.encoded-cache.size": "0"])
+    when:
+      features(cache, "e1")
+      features(cache, "e1")
+    then:
+      transforms == 2
+      cache.size() == 0
+  }
+}
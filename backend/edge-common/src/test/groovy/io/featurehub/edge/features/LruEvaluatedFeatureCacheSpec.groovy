@@ -0,0 +1,122 @@
+package io.featurehub.edge.features
+
+import cd.connect.app.config.ThreadLocalConfigurationSource
+import io.featurehub.edge.KeyParts
+import io.featurehub.edge.strategies.ClientContext
+import io.featurehub.sse.model.FeatureState
+import spock.lang.Specification
+
+class LruEvaluatedFeatureCacheSpec extends Specification {
+  UUID envId
+  int transforms
+
+  def setup() {
+    envId = UUID.randomUUID()
+    transforms = 0
+  }
+
+  def cleanup() {
+    ThreadLocalConfigurationSource.clearContext()
+  }
+
+  LruEvaluatedFeatureCache newCache(Map<String, String> config = ["edge.evaluated-cache.size": "100"]) {
+    ThreadLocalConfigurationSource.createContext(config)
+    return new LruEvaluatedFeatureCache()
+  }
+
+  ClientContext context(String header, String serviceKey = "server-key") {
+    return ClientContext.decode([header], [new KeyParts("default", envId, serviceKey)])
+  }
+
+  List<FeatureState> features(LruEvaluatedFeatureCache cache, String etag, ClientContext context,
+                              String serviceKey = "server-key", boolean evaluatesAgainstNow = false) {
+    return cache.features(new KeyParts("default", envId, serviceKey), etag, context, false, { -> evaluatesAgainstNow }, {
+      transforms++
+      return [new FeatureState().key("f${transforms}".toString())]
+    })
+  }
+
+  def "the same attributes for the same environment etag are only evaluated once"() {
+    given:
+      def cache = newCache()
+    when:
+      def first = features(cache, "e1", context("country=nz,platform=ios"))
+      def second = features(cache, "e1", context("platform=ios,country=nz"))
+      def other = features(cache, "e1", context("country=au,platform=ios"))
+    then:
+      first.is(second)
+      !first.is(other)
+      transforms == 2
+  }
+
+  def "a new etag for the environment is evaluated again and what was held for the old one ages out"() {
+    given:
+      def cache = newCache(["edge.evaluated-cache.size": "2"])
+    when:
+      features(cache, "e1", context("country=nz"))
+      features(cache, "e1", context("country=au"))
+      def updated = features(cache, "e2", context("country=nz"))
+      features(cache, "e2", context("country=au"))
+    then:
+      transforms == 4
+      cache.size() == 2
+      updated[0].key == "f3"
+      features(cache, "e2", context("country=nz")).is(updated)
+  }
+
+  def "each service key is held separately as dacha gives each its own etag"() {
+    given:
+      def cache = newCache()
+    when:
+      def first = features(cache, "e1", context("country=nz"), "key-1")
+      def second = features(cache, "e1", context("country=nz"), "key-2")
+    then:
+      !first.is(second)
+      features(cache, "e1", context("country=nz"), "key-1").is(first)
+      features(cache, "e1", context("country=nz"), "key-2").is(second)
+      transforms == 2
+  }
+
+  def "features with strategies that match on the current time are never held"() {
+    given:
+      def cache = newCache()
+    when:
+      features(cache, "e1", context("country=nz"), "server-key", true)
+      features(cache, "e1", context("country=nz"), "server-key", true)
+    then:
+      transforms == 2
+      cache.size() == 0
+  }
+
+  def "contexts with user or session keys and client evaluated keys are not held unless percentage keys are allowed"() {
+    given:
+      def cache = newCache()
+    when:
+      features(cache, "e1", context("userkey=fred"))
+      features(cache, "e1", context("userkey=fred"))
+      features(cache, "e1", context("sessionkey=s1"))
+      features(cache, "e1", context("sessionkey=s1"))
+      features(cache, "e1", context("country=nz", "client*key"))
+      features(cache, "e1", context("country=nz", "client*key"))
+    then:
+      transforms == 6
+      cache.size() == 0
+    when:
+      def allowed = newCache(["edge.evaluated-cache.size": "100", "edge.evaluated-cache.include-percentage-keys": "true"])
+      features(allowed, "e1", context("userkey=fred"))
+      features(allowed, "e1", context("userkey=fred"))
+    then:
+      transforms == 7
+  }
+
+  def "the cache is off by default"() {
+    given:
+      def cache = newCache([:])
+    when:
+      features(cache, "e1", context("country=nz"))
+      features(cache, "e1", context("country=nz"))
+    then:
+      transforms == 2
+      cache.size() == 0
+  }
+}
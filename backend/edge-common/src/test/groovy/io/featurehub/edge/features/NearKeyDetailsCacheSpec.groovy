@@ -0,0 +1,124 @@
+package io.featurehub.edge.features
+
+import cd.connect.app.config.ThreadLocalConfigurationSource
+import io.featurehub.dacha.model.DachaKeyDetailsResponse
+import io.featurehub.edge.KeyParts
+import spock.lang.Specification
+
+class NearKeyDetailsCacheSpec extends Specification {
+  KeyParts key
+  DachaKeyDetailsResponse details
+
+  def setup() {
+    key = new KeyParts("default", UUID.randomUUID(), "server-key")
+    details = new DachaKeyDetailsResponse().etag("e1").features([])
+  }
+
+  def cleanup() {
+    ThreadLocalConfigurationSource.clearContext()
+  }
+
+  NearKeyDetailsCache newCache(Map<String, String> config = ["edge.near-cache.size": "100"]) {
+    ThreadLocalConfigurationSource.createContext(config)
+    return new NearKeyDetailsCache()
+  }
+
+  def "details are held for the key they were requested with"() {
+    given:
+      def cache = newCache()
+    when:
+      cache.put(key, cache.generation(key.environmentId), details)
+    then:
+      cache.get(new KeyParts("default", key.environmentId, "server-key")).is(details)
+      cache.get(new KeyParts("default", key.environmentId, "other-key")) == null
+      cache.get(new KeyParts("default", UUID.randomUUID(), "server-key")) == null
+  }
+
+  def "an update to the environment drops everything held for it"() {
+    given:
+      def cache = newCache()
+      def otherKey = new KeyParts("default", key.environmentId, "other-key")
+      def otherEnvironment = new KeyParts("default", UUID.randomUUID(), "server-key")
+    and:
+      [key, otherKey, otherEnvironment].each { cache.put(it, cache.generation(it.environmentId), details) }
+    when:
+      cache.invalidate(key.environmentId)
+    then:
+      cache.get(key) == null
+      cache.get(otherKey) == null
+      cache.get(otherEnvironment).is(details)
+      cache.size() == 1
+      cache.environments() == 1
+  }
+
+  def "the keys held for an environment are forgotten as they leave the cache"() {
+    given:
+      def cache = newCache(["edge.near-cache.size": "1"])
+      def otherEnvironment = new KeyParts("default", UUID.randomUUID(), "server-key")
+    when:
+      cache.put(key, cache.generation(key.environmentId), details)
+      cache.put(key, cache.generation(key.environmentId), details)
+    then:
+      cache.environments() == 1
+    when: "the first is pushed out by another environment"
+      cache.put(otherEnvironment, cache.generation(otherEnvironment.environmentId), details)
+    then:
+      cache.get(key) == null
+      cache.size() == 1
+      cache.environments() == 1
+    when:
+      cache.invalidate(otherEnvironment.environmentId)
+    then:
+      cache.size() == 0
+      cache.environments() == 0
+  }
+
+  def "details requested before an update to the environment are not held"() {
+    given:
+      def cache = newCache()
+      def generation = cache.generation(key.environmentId)
+    when: "the environment changes while we are waiting for dacha"
+      cache.invalidate(key.environmentId)
+      cache.put(key, generation, details)
+    then:
+      cache.get(key) == null
+    when: "asking again afterwards"
+      cache.put(key, cache.generation(key.environmentId), details)
+    then:
+      cache.get(key).is(details)
+  }
+
+  def "the ids filled in from dacha on a key don't keep the key alive"() {
+    given:
+      def cache = newCache()
+      key.applicationId = UUID.randomUUID()
+    when:
+      cache.put(key, cache.generation(key.environmentId), details)
+      key.applicationId = null
+    then:
+      cache.get(key).is(details)
+  }
+
+  def "without an update stream details only last for the short ttl"() {
+    given:
+      def cache = newCache(["edge.near-cache.size": "100", "edge.near-cache.ttl-seconds": "0"])
+    when:
+      cache.put(key, cache.generation(key.environmentId), details)
+    then:
+      cache.get(key) == null
+    when:
+      cache.updateStreamAttached()
+    then:
+      cache.get(key).is(details)
+  }
+
+  def "it is off unless given a size"() {
+    given:
+      def cache = newCache([:])
+    when:
+      cache.put(key, cache.generation(key.environmentId), details)
+    then:
+      cache.get(key) == null
+      cache.size() == 0
+  }
+}
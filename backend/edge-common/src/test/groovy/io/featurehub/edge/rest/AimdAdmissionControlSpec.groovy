@@ -0,0 +1,117 @@
+package io.featurehub.edge.rest
+
+import cd.connect.app.config.ThreadLocalConfigurationSource
+import spock.lang.Specification
+
+class AimdAdmissionControlSpec extends Specification {
+  def cleanup() {
+    ThreadLocalConfigurationSource.clearContext()
+  }
+
+  AimdAdmissionControl newControl(Map<String, String> config) {
+    ThreadLocalConfigurationSource.createContext(config)
+    return new AimdAdmissionControl()
+  }
+
+  def "everything is let in unless it is turned on"() {
+    given:
+      def control = newControl(["edge.admission.initial-limit": "1", "edge.admission.min-limit": "1"])
+    expect:
+      (1..10).every { control.tryAcquire("poll") != null }
+      control.inflightRequests == 0
+  }
+
+  def "requests over the limit are turned away until one finishes"() {
+    given:
+      def control = newControl(["edge.admission.enabled": "true", "edge.admission.initial-limit": "2",
+                                "edge.admission.min-limit": "1"])
+      def before = AimdAdmissionControl.rejectedCounter.labels("sse").get()
+    when:
+      def first = control.tryAcquire("sse")
+      def second = control.tryAcquire("sse")
+    then:
+      first != null
+      second != null
+      control.tryAcquire("sse") == null
+      AimdAdmissionControl.rejectedCounter.labels("sse").get() == before + 1
+    when:
+      first.ignore()
+      first.ignore()
+    then:
+      control.inflightRequests == 1
+      control.tryAcquire("sse") != null
+  }
+
+  def "quick answers grow the limit and failures shrink it, within its bounds"() {
+    given:
+      def control = newControl(["edge.admission.enabled": "true", "edge.admission.initial-limit": "10",
+                                "edge.admission.min-limit": "5", "edge.admission.max-limit": "11",
+                                "edge.admission.backoff-ratio": "0.5"])
+    when:
+      (1..10).collect { control.tryAcquire("poll") }.each { it.success() }
+    then:
+      control.currentLimit == 11
+    when:
+      control.tryAcquire("poll").dropped()
+    then:
+      control.currentLimit == 5
+    when:
+      control.tryAcquire("poll").dropped()
+    then:
+      control.currentLimit == 5
+  }
+
+  def "an answer slower than the threshold counts as a failure"() {
+    given:
+      def control = newControl(["edge.admission.enabled": "true", "edge.admission.initial-limit": "10",
+                                "edge.admission.min-limit": "1", "edge.admission.latency-threshold-ms": "0",
+                                "edge.admission.backoff-ratio": "0.5"])
+    when:
+      def permit = control.tryAcquire("poll")
+      Thread.sleep(2)
+      permit.success()
+    then:
+      control.currentLimit == 5
+  }
+
+  def "a burst of slow answers to requests that were all waiting at once backs off only once"() {
+    given:
+      long now = 0
+      ThreadLocalConfigurationSource.createContext(["edge.admission.enabled": "true", "edge.admission.initial-limit": "20",
+                                                    "edge.admission.min-limit": "1", "edge.admission.latency-threshold-ms": "100",
+                                                    "edge.admission.backoff-ratio": "0.5"])
+      def control = new AimdAdmissionControl({ -> now })
+    when:
+      def burst = (1..8).collect { control.tryAcquire("poll") }
+      now += 200_000_000
+      burst.each { it.success() }
+    then:
+      control.currentLimit == 10
+    when: "a request sent after the back off is slow as well"
+      def later = control.tryAcquire("poll")
+      now += 200_000_000
+      later.dropped()
+    then:
+      control.currentLimit == 5
+  }
+
+  def "a lightly used limit doesn't grow"() {
+    given:
+      def control = newControl(["edge.admission.enabled": "true", "edge.admission.initial-limit": "10",
+                                "edge.admission.min-limit": "1"])
+    when:
+      control.tryAcquire("poll").success()
+    then:
+      control.currentLimit == 10
+  }
+
+  def "clients are told to come back after a jittered wait"() {
+    given:
+      def control = newControl(["edge.admission.retry-after-seconds": "4"])
+    when:
+      def waits = (1..50).collect { control.rejection() }.collect { it.getHeaderString("Retry-After").toInteger() }
+    then:
+      waits.every { it >= 4 && it <= 8 }
+      waits.unique().size() > 1
+  }
+}
@@ -0,0 +1,149 @@
+package io.featurehub.edge.rest
+
+import io.featurehub.dacha.model.CacheEnvironmentFeature
+import io.featurehub.dacha.model.CacheFeature
+import io.featurehub.dacha.model.CacheFeatureValue
+import io.featurehub.dacha.model.CacheRolloutStrategy
+import io.featurehub.dacha.model.CacheRolloutStrategyAttribute
+import io.featurehub.dacha.model.DachaKeyDetailsResponse
+import io.featurehub.edge.FeatureTransformerUtils
+import io.featurehub.edge.KeyParts
+import io.featurehub.edge.features.DachaFeatureRequestSubmitter
+import io.featurehub.edge.features.FeatureRequester
+import io.featurehub.mr.model.FeatureValueType
+import io.featurehub.mr.model.RolloutStrategyAttributeConditional
+import io.featurehub.mr.model.RolloutStrategyFieldType
+import io.featurehub.sse.model.FeatureBatchRequest
+import io.featurehub.sse.model.FeatureBatchResponse
+import jakarta.ws.rs.BadRequestException
+import jakarta.ws.rs.NotFoundException
+import jakarta.ws.rs.WebApplicationException
+import jakarta.ws.rs.container.AsyncResponse
+import jakarta.ws.rs.core.Response
+import spock.lang.Specification
+import spock.util.concurrent.BlockingVariable
+
+import java.util.concurrent.CompletableFuture
+
+class FeatureBatchProcessorSpec extends Specification {
+  DachaFeatureRequestSubmitter submitter
+  AsyncResponse response
+  FeatureBatchProcessor processor
+  UUID envId
+  String apiKey
+  BlockingVariable<Object> resumed
+
+  def setup() {
+    submitter = Mock(DachaFeatureRequestSubmitter)
+    response = Mock(AsyncResponse)
+    resumed = new BlockingVariable<>(5)
+    response.resume(_) >> { args -> resumed.set(args[0]); true }
+    processor = new FeatureBatchProcessor(submitter, new FeatureTransformerUtils())
+    envId = UUID.randomUUID()
+    apiKey = "default/${envId}/server-key"
+  }
+
+  CompletableFuture<FeatureRequester> requester(DachaKeyDetailsResponse details, Exception failure = null) {
+    def requester = Mock(FeatureRequester)
+    requester.details >> details
+    requester.failure >> failure
+    return CompletableFuture.completedFuture(requester)
+  }
+
+  DachaKeyDetailsResponse details() {
+    return new DachaKeyDetailsResponse().features([
+      new CacheEnvironmentFeature()
+        .feature(new CacheFeature().id(UUID.randomUUID()).key("banner").valueType(FeatureValueType.STRING))
+        .value(new CacheFeatureValue().id(UUID.randomUUID()).key("banner").version(1).locked(false).value("grey")
+          .rolloutStrategies([
+            new CacheRolloutStrategy().id("nz-strategy").value("blue").attributes([
+              new CacheRolloutStrategyAttribute().fieldName("country").type(RolloutStrategyFieldType.STRING)
+                .conditional(RolloutStrategyAttributeConditional.EQUALS).values(["nz"])
+            ])
+          ])),
+      new CacheEnvironmentFeature()
+        .feature(new CacheFeature().id(UUID.randomUUID()).key("unset").valueType(FeatureValueType.BOOLEAN))
+    ])
+  }
+
+  def "each context is evaluated against the same environment, in order"() {
+    given:
+      processor.parallelThreshold = parallelThreshold
+    when:
+      processor.processBatch(response, apiKey,
+        new FeatureBatchRequest().contexts(["country=nz", "country=au,userkey=fred", "country=nz"]), null)
+    then:
+      1 * submitter.requestDetails(new KeyParts("default", envId, "server-key"), _) >> requester(details())
+      def result = resumed.get()
+      result instanceof Response
+      (result as Response).status == 200
+      def batch = (result as Response).entity as FeatureBatchResponse
+      batch.id == envId
+      batch.results*.values == [[banner: "blue", unset: null], [banner: "grey", unset: null], [banner: "blue", unset: null]]
+      batch.results*.strategies == [[banner: "nz-strategy"], null, [banner: "nz-strategy"]]
+    where:
+      parallelThreshold << [64, 1]
+  }
+
+  def "no contexts or too many contexts is a bad request"() {
+    given:
+      processor.maxContexts = 2
+    when:
+      processor.processBatch(response, apiKey, new FeatureBatchRequest().contexts(contexts), null)
+    then:
+      0 * submitter._
+      resumed.get() instanceof BadRequestException
+    where:
+      contexts << [null, [], ["a=1", "a=2", "a=3"]]
+  }
+
+  def "a client evaluated key is a bad request and an unparseable key is not found"() {
+    when:
+      processor.processBatch(response, "default/${envId}/client*key", new FeatureBatchRequest().contexts(["a=1"]), null)
+    then:
+      resumed.get() instanceof BadRequestException
+    when:
+      processor.processBatch(response, "rubbish", new FeatureBatchRequest().contexts(["a=1"]), null)
+    then:
+      resumed.get() instanceof NotFoundException
+      0 * submitter._
+  }
+
+  def "a key dacha doesn't know about is not found and a dacha that isn't ready is unavailable"() {
+    when:
+      processor.processBatch(response, apiKey, new FeatureBatchRequest().contexts(["a=1"]), null)
+    then:
+      1 * submitter.requestDetails(_, _) >> requester(null, failure)
+      (resumed.get() as Response).status == status
+    where:
+      failure                                || status
+      null                                   || 404
+      new WebApplicationException(404)       || 404
+      new WebApplicationException(412)       || 503
+  }
+
+  def "a dacha that doesn't answer in time is unavailable"() {
+    given:
+      processor.batchTimeout = 50
+    when:
+      processor.processBatch(response, apiKey, new FeatureBatchRequest().contexts(["a=1"]), null)
+    then:
+      1 * submitter.requestDetails(_, _) >> new CompletableFuture<FeatureRequester>()
+      (resumed.get() as Response).status == 503
+  }
+
+  def "a large batch is evaluated on the batch threads"() {
+    given:
+      def threads = Collections.synchronizedSet(new HashSet<String>())
+      def transformer = Spy(FeatureTransformerUtils)
+      transformer.evaluate(_, _) >> { args -> threads.add(Thread.currentThread().name); callRealMethod() }
+      processor = new FeatureBatchProcessor(submitter, transformer)
+      processor.parallelThreshold = 1
+    when:
+      processor.processBatch(response, apiKey, new FeatureBatchRequest().contexts((1..20).collect { "a=${it}".toString() }), null)
+    then:
+      1 * submitter.requestDetails(_, _) >> requester(details())
+      ((resumed.get() as Response).entity as FeatureBatchResponse).results.size() == 20
+      threads.every { it.startsWith("edge-batch-") }
+  }
+}
@@ -0,0 +1,240 @@
+package io.featurehub.edge.rest
+
+import cd.connect.app.config.ThreadLocalConfigurationSource
+import io.featurehub.edge.KeyParts
+import io.featurehub.edge.features.DachaFeatureRequestSubmitter
+import io.featurehub.edge.features.EncodedFeatures
+import io.featurehub.edge.features.EtagStructureHolder
+import io.featurehub.edge.features.FeatureRequestResponse
+import io.featurehub.edge.features.FeatureRequestSuccess
+import io.featurehub.edge.utils.PreEncodedEntity
+import io.featurehub.sse.model.FeatureEnvironmentCollection
+import io.featurehub.sse.model.FeatureState
+import jakarta.ws.rs.BadRequestException
+import jakarta.ws.rs.container.AsyncResponse
+import jakarta.ws.rs.container.ConnectionCallback
+import jakarta.ws.rs.core.Response
+import org.glassfish.hk2.api.IterableProvider
+import spock.lang.Specification
+
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+
+class FeatureGetProcessorSpec extends Specification {
+  DachaFeatureRequestSubmitter submitter
+  AsyncResponse response
+  FeatureGetProcessor processor
+  CompletableFuture<List<FeatureRequestResponse>> request
+  ConnectionCallback disconnected
+  CountDownLatch resumeLatch
+  Object resumed
+  UUID envId
+  String apiKey
+  AdmissionControl admission
+  RateLimiter limiter
+
+  def setup() {
+    submitter = Mock(DachaFeatureRequestSubmitter)
+    request = new CompletableFuture<List<FeatureRequestResponse>>()
+    submitter.requestAsync(_, _, _, _) >> request
+    resumeLatch = new CountDownLatch(1)
+    response = Mock(AsyncResponse)
+    response.resume(_) >> { args -> resumed = args[0]; resumeLatch.countDown(); true }
+    response.register(_ as ConnectionCallback) >> { args -> disconnected = args[0]; null }
+    envId = UUID.randomUUID()
+    apiKey = "default/${envId}/client*key".toString()
+  }
+
+  def cleanup() {
+    ThreadLocalConfigurationSource.clearContext()
+  }
+
+  FeatureGetProcessor newProcessor(Map<String, String> config = [:]) {
+    ThreadLocalConfigurationSource.createContext(config)
+    def wrappers = Mock(IterableProvider)
+    wrappers.iterator() >> [].iterator()
+    def processor = new FeatureGetProcessor(submitter, wrappers, admission ?: new AimdAdmissionControl(),
+      limiter ?: new TokenBucketRateLimiter())
+    processor.postConstruct()
+    return processor
+  }
+
+  FeatureRequestResponse success(EncodedFeatures encoded = null) {
+    def env = new FeatureEnvironmentCollection().id(envId).features([new FeatureState().key("banner").version(1)])
+    return new FeatureRequestResponse(encoded?.environment ?: env, FeatureRequestSuccess.SUCCESS,
+      new KeyParts("default", envId, "client*key"), "e1", null, false, encoded)
+  }
+
+  def "the poll returns before Dacha does and the response is resumed when it completes"() {
+    given:
+      def processor = newProcessor()
+    when:
+      processor.processGet(response, null, [apiKey], null, null, null, null, null, null, null)
+    then:
+      resumed == null
+    when:
+      request.complete([success()])
+    then:
+      resumed instanceof Response
+      ((Response)resumed).status == 200
+      ((Response)resumed).getHeaderString("etag") == '"e1"'
+  }
+
+  def "a client that goes away cancels the request and nothing is sent"() {
+    given:
+      def processor = newProcessor()
+    when:
+      processor.processGet(response, null, [apiKey], null, null, null, null, null, null, null)
+      disconnected.onDisconnect(response)
+    then:
+      request.isCancelled()
+      resumed == null
+  }
+
+  def "a request that takes too long is told to try again"() {
+    given:
+      def processor = newProcessor(["edge.poll.timeout-ms": "50"])
+    when:
+      processor.processGet(response, null, [apiKey], null, null, null, null, null, null, null)
+      resumeLatch.await(5, TimeUnit.SECONDS)
+    then:
+      ((Response)resumed).status == 503
+      request.isCompletedExceptionally()
+  }
+
+  def "a client evaluated response is sent pre-encoded in the encoding the client accepts"() {
+    given:
+      def processor = newProcessor()
+      def encoded = new EncodedFeatures(new FeatureEnvironmentCollection().id(envId).features([]))
+    when:
+      processor.processGet(response, null, [apiKey], null, null, acceptEncoding, null, null, null, null)
+      request.complete([success(encoded)])
+      def sent = (Response)resumed
+    then:
+      sent.status == 200
+      sent.getHeaderString("Content-Encoding") == (gzipped ? "gzip" : null)
+      ((PreEncodedEntity)sent.entity).bytes.is(gzipped ? encoded.gzip : encoded.identity)
+    where:
+      acceptEncoding          | gzipped
+      "gzip, deflate, br"     | true
+      "*"                     | true
+      null                    | false
+      "deflate"               | false
+      "gzip;q=0, deflate"     | false
+      "gzip; q=0.0"           | false
+      "gzip;q=0.5"            | true
+  }
+
+  def "a client asking for changes has that passed on, and a response with only changes varies by etag"() {
+    given:
+      def processor = newProcessor()
+      EtagStructureHolder etags = null
+      def env = new FeatureEnvironmentCollection().id(envId).features([]).delta(true).deletedFeatures([])
+    when:
+      processor.processGet(response, null, [apiKey], null, '"e0"', null, true, null, null, null)
+      request.complete([new FeatureRequestResponse(env, FeatureRequestSuccess.SUCCESS,
+        new KeyParts("default", envId, "client*key"), "e1", null, false)])
+    then:
+      1 * submitter.requestAsync(_, _, _, _) >> { args -> etags = args[2]; request }
+      etags.acceptsDelta
+      ((Response)resumed).status == 200
+      ((Response)resumed).getHeaderString("Vary") == "If-None-Match"
+  }
+
+  def "a poll over the admission limit is turned away without asking Dacha, and one that finishes lets the next in"() {
+    given:
+      admission = Mock(AdmissionControl)
+      def permit = Mock(AdmissionPermit)
+      def processor = newProcessor()
+    when:
+      processor.processGet(response, null, [apiKey], null, null, null, null, null, null, null)
+    then:
+      1 * admission.tryAcquire("poll") >> null
+      1 * admission.rejection() >> Response.status(503).header("Retry-After", "7").build()
+      0 * submitter.requestAsync(_, _, _, _)
+      ((Response)resumed).status == 503
+      ((Response)resumed).getHeaderString("Retry-After") == "7"
+    when:
+      processor.processGet(response, null, [apiKey], null, null, null, null, null, null, null)
+      request.complete([success()])
+    then:
+      1 * admission.tryAcquire("poll") >> permit
+      1 * permit.success()
+      0 * permit.dropped()
+  }
+
+  def "a poll that times out counts against the admission limit but one the client gave up on doesn't"() {
+    given:
+      admission = Mock(AdmissionControl)
+      def permit = Mock(AdmissionPermit)
+      admission.tryAcquire(_) >> permit
+      def processor = newProcessor(["edge.poll.timeout-ms": "50"])
+    when:
+      processor.processGet(response, null, [apiKey], null, null, null, null, null, null, null)
+      disconnected.onDisconnect(response)
+    then:
+      1 * permit.ignore()
+      0 * permit.dropped()
+    when:
+      request = new CompletableFuture<List<FeatureRequestResponse>>()
+      resumeLatch = new CountDownLatch(1)
+      processor.processGet(response, null, [apiKey], null, null, null, null, null, null, null)
+      resumeLatch.await(5, TimeUnit.SECONDS)
+    then:
+      1 * submitter.requestAsync(_, _, _, _) >> { request }
+      1 * permit.dropped()
+  }
+
+  def "a poll that Dacha wasn't ready for, or that got nothing back, counts against the admission limit"() {
+    given:
+      admission = Mock(AdmissionControl)
+      def permit = Mock(AdmissionPermit)
+      admission.tryAcquire(_) >> permit
+      def processor = newProcessor()
+    when:
+      processor.processGet(response, null, [apiKey], null, null, null, null, null, null, null)
+      request.complete(notReady ? [new FeatureRequestResponse(new FeatureEnvironmentCollection().id(envId),
+        FeatureRequestSuccess.DACHA_NOT_READY, new KeyParts("default", envId, "client*key"), "", null, false)] : [])
+    then:
+      1 * permit.dropped()
+      0 * permit.success()
+    where:
+      notReady << [true, false]
+  }
+
+  def "a client over its rate is told nothing has changed if it has an etag and to slow down if not"() {
+    given:
+      limiter = Mock(RateLimiter)
+      def processor = newProcessor()
+    when:
+      processor.processGet(response, null, [apiKey], null, etag, null, null, "10.0.0.1", "10.0.0.2", null)
+    then:
+      1 * limiter.allow({ List<KeyParts> keys -> keys*.environmentId == [envId] }, "10.0.0.1", "10.0.0.2") >> false
+      1 * limiter.rejection(etag) >> Response.status(status).build()
+      0 * submitter.requestAsync(_, _, _, _)
+      ((Response)resumed).status == status
+    where:
+      etag   | status
+      '"e1"' | 304
+      null   | 429
+  }
+
+  def "a poll with headers that can't be decoded is a bad request and holds no permit"() {
+    given:
+      admission = Mock(AdmissionControl)
+      def processor = newProcessor()
+      def inflight = FeatureGetProcessor.inout.get()
+    when:
+      processor.processGet(response, null, [apiKey], context, etag, null, null, null, null, null)
+    then:
+      0 * admission.tryAcquire(_)
+      0 * submitter.requestAsync(_, _, _, _)
+      resumed instanceof BadRequestException
+      FeatureGetProcessor.inout.get() == inflight
+    where:
+      context            | etag
+      ["userkey=%zz"]    | null
+      null               | '"'
+  }
+}
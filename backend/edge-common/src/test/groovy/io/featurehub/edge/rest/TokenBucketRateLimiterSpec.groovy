@@ -0,0 +1,130 @@
+package io.featurehub.edge.rest
+
+import cd.connect.app.config.ThreadLocalConfigurationSource
+import io.featurehub.edge.KeyParts
+import spock.lang.Specification
+
+class TokenBucketRateLimiterSpec extends Specification {
+  long now
+  KeyParts key
+
+  def setup() {
+    now = 1000
+    key = new KeyParts("default", UUID.randomUUID(), "server-key")
+  }
+
+  def cleanup() {
+    ThreadLocalConfigurationSource.clearContext()
+  }
+
+  TokenBucketRateLimiter newLimiter(Map<String, String> config) {
+    ThreadLocalConfigurationSource.createContext(config)
+    return new TokenBucketRateLimiter({ -> now })
+  }
+
+  int allowed(TokenBucketRateLimiter limiter, int requests, List<KeyParts> keys = [key], String ip = null,
+              String remote = null) {
+    return (1..requests).count { limiter.allow(keys, ip, remote) } as int
+  }
+
+  def "nothing is limited unless a rate is set"() {
+    expect:
+      allowed(newLimiter([:]), 1000, [key], "10.0.0.1") == 1000
+  }
+
+  def "a key gets its burst and then refills at its rate"() {
+    given:
+      def limiter = newLimiter(["edge.rate-limit.per-second": "2", "edge.rate-limit.burst": "5"])
+    expect:
+      allowed(limiter, 10) == 5
+    when:
+      now += 1000
+    then:
+      allowed(limiter, 10) == 2
+    when: "a long time passes it only refills up to the burst"
+      now += 3_600_000
+    then:
+      allowed(limiter, 10) == 5
+  }
+
+  def "slow rates still refill"() {
+    given:
+      def limiter = newLimiter(["edge.rate-limit.per-second": "0.1", "edge.rate-limit.burst": "1"])
+      allowed(limiter, 1)
+    when:
+      (1..9).each { now += 1000; limiter.allow([key], null, null) }
+      now += 1000
+    then:
+      limiter.allow([key], null, null)
+  }
+
+  def "keys are limited separately"() {
+    given:
+      def limiter = newLimiter(["edge.rate-limit.per-second": "1", "edge.rate-limit.burst": "1"])
+      def other = new KeyParts("default", UUID.randomUUID(), "server-key")
+    expect:
+      limiter.allow([key], null, null)
+      !limiter.allow([key], null, null)
+      limiter.allow([other], null, null)
+  }
+
+  def "an environment can have its own rate, and a bad override is ignored"() {
+    given:
+      def limiter = newLimiter(["edge.rate-limit.per-second": "1", "edge.rate-limit.burst": "1",
+                                "edge.rate-limit.environments": "${key.environmentId}=10/20, nonsense".toString()])
+      def other = new KeyParts("default", UUID.randomUUID(), "server-key")
+    expect:
+      allowed(limiter, 30) == 20
+      allowed(limiter, 30, [other]) == 1
+  }
+
+  def "the client's address is the one our load balancer added"() {
+    given:
+      def limiter = newLimiter(["edge.rate-limit.ip.per-second": "1", "edge.rate-limit.ip.burst": "2"])
+      def before = TokenBucketRateLimiter.limitedCounter.labels("ip").get()
+    expect:
+      allowed(limiter, 5, [key], "1.1.1.1, 10.0.0.1") == 2
+      allowed(limiter, 5, [key], "2.2.2.2,10.0.0.1") == 0
+      allowed(limiter, 5, [key], "10.0.0.2") == 2
+      TokenBucketRateLimiter.limitedCounter.labels("ip").get() == before + 11
+  }
+
+  def "without X-Forwarded-For the client's address is the one the request came from"() {
+    given:
+      def limiter = newLimiter(["edge.rate-limit.ip.per-second": "1", "edge.rate-limit.ip.burst": "2"])
+    expect:
+      allowed(limiter, 5, [key], null, "10.0.0.3") == 2
+      allowed(limiter, 5, [key], "", "10.0.0.3") == 0
+      allowed(limiter, 5, [key], "10.0.0.4", "10.0.0.3") == 2
+  }
+
+  def "a request that is turned away uses up none of its keys' allowance"() {
+    given:
+      def limiter = newLimiter(["edge.rate-limit.per-second": "1", "edge.rate-limit.burst": "2",
+                                "edge.rate-limit.ip.per-second": "1", "edge.rate-limit.ip.burst": "1"])
+      def other = new KeyParts("default", UUID.randomUUID(), "server-key")
+    when: "the second key has run out"
+      allowed(limiter, 2, [other])
+    then:
+      allowed(limiter, 3, [key, other]) == 0
+    when: "the address has run out"
+      allowed(limiter, 1, [new KeyParts("default", UUID.randomUUID(), "server-key")], "10.0.0.9")
+    then:
+      allowed(limiter, 3, [key], "10.0.0.9") == 0
+      allowed(limiter, 3, [key], "10.0.0.10") == 1
+      allowed(limiter, 3, [key], "10.0.0.11") == 1
+  }
+
+  def "the rejection is a 304 for a client with an etag, otherwise a 429, with a wait"() {
+    given:
+      def limiter = newLimiter(["edge.rate-limit.per-second": "0.25"])
+    when:
+      def withEtag = limiter.rejection('"e1"')
+      def without = limiter.rejection(null)
+    then:
+      withEtag.status == 304
+      withEtag.getHeaderString("etag") == '"e1"'
+      without.status == 429
+      [withEtag, without].every { it.getHeaderString("Retry-After") == "4" }
+  }
+}
@@ -0,0 +1,116 @@
+package io.featurehub.edge.strategies
+
+import io.featurehub.edge.KeyParts
+import spock.lang.Specification
+
+import java.nio.charset.StandardCharsets
+import java.time.LocalDateTime
+
+class ClientContextSpec extends Specification {
+  List<KeyParts> keys = [new KeyParts("default", UUID.randomUUID(), "server-key")]
+
+  // how the header used to be decoded, split and url-decode everything
+  static Map<String, List<String>> splitAndDecode(List<String> headers) {
+    def attributes = new HashMap<String, List<String>>()
+
+    for (String header : headers) {
+      for (String part : header.split(",")) {
+        int pos = part.indexOf("=")
+        if (pos != -1) {
+          String key = URLDecoder.decode(part.substring(0, pos), StandardCharsets.UTF_8)
+          String val = URLDecoder.decode(part.substring(pos + 1), StandardCharsets.UTF_8)
+          attributes.put(key, val.contains(",") ? Arrays.asList(val.split(",")) : Collections.singletonList(val))
+
+          if (attributes.size() >= 30) {
+            return attributes
+          }
+        }
+      }
+    }
+
+    return attributes
+  }
+
+  def "the header is decoded the same as splitting and url-decoding it and the etag matches the attributes"() {
+    when:
+      def context = ClientContext.decode(headers, keys)
+    then:
+      context.attributes == splitAndDecode(headers)
+      context.makeEtag() == Integer.toHexString(context.attributes.hashCode())
+    where:
+      headers << [
+        ["userkey=fred,country=nz"],
+        ["userkey=fred%40example.com,version=1.2.3", "platform=ios"],
+        ["country=nz,country=au"],
+        ["tags=a%2Cb%2Cc,empty=,=novalue,junk,,trailing="],
+        ["name=Fred+Bloggs,city=%C5%8Ctautahi,key%20space=x=y"],
+        [",leading=1,", ""],
+        ["only%2C=%2C"],
+        (0..40).collect { "a${it}=${it}".toString() },
+      ]
+  }
+
+  def "no headers has an empty context"() {
+    when:
+      def context = ClientContext.decode(null, keys)
+    then:
+      context.attributes.isEmpty()
+      context.makeEtag() == "0"
+      !context.isClientEvaluation
+      ClientContext.decode(null, [new KeyParts("default", UUID.randomUUID(), "client*key")]).isClientEvaluation
+  }
+
+  def "random headers decode the same as splitting and url-decoding them"() {
+    given:
+      def random = new Random(42)
+      def alphabet = "ab=,%2C+x".toCharArray()
+    expect:
+      (0..2000).every {
+        def header = new String((0..random.nextInt(20)).collect { alphabet[random.nextInt(alphabet.length)] } as char[])
+        def expected
+        try {
+          expected = splitAndDecode([header])
+        } catch (IllegalArgumentException ignored) {
+          expected = IllegalArgumentException
+        }
+
+        def actual
+        try {
+          def context = ClientContext.decode([header], keys)
+          assert context.makeEtag() == Integer.toHexString(context.attributes.hashCode())
+          actual = context.attributes
+        } catch (IllegalArgumentException ignored) {
+          actual = IllegalArgumentException
+        }
+
+        assert actual == expected : header
+        true
+      }
+  }
+
+  def "well known keys share the same string"() {
+    when:
+      def context = ClientContext.decode(["userkey=a,country=nz"], keys)
+    then:
+      context.attributes.keySet().find { it == "userkey" }.is(ClientContext.USERKEY)
+  }
+
+  def "a context built by hand works out its etag from its attributes"() {
+    given:
+      def context = new ClientContext(false)
+      context.attributes.put("country", ["nz"])
+    expect:
+      context.makeEtag() == ClientContext.decode(["country=nz"], keys).makeEtag()
+  }
+
+  def "an evaluation instant reads the clock once"() {
+    given:
+      def reads = 0
+      def instant = new EvaluationInstant({ -> reads++; LocalDateTime.of(2024, 2, 29, 13, 45, 10) })
+    expect:
+      instant.date() == ["2024-02-29"]
+      instant.dateTime() == ["2024-02-29T13:45:10"]
+      instant.date().is(instant.date())
+      reads == 1
+  }
+}
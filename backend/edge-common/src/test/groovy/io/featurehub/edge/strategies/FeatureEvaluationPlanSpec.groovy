@@ -0,0 +1,129 @@
+package io.featurehub.edge.strategies
+
+import io.featurehub.dacha.model.CacheFeatureValue
+import io.featurehub.dacha.model.CacheRolloutStrategy
+import io.featurehub.dacha.model.CacheRolloutStrategyAttribute
+import io.featurehub.mr.model.RolloutStrategyAttributeConditional
+import io.featurehub.mr.model.RolloutStrategyFieldType
+import io.featurehub.sse.model.FeatureRolloutStrategy
+import io.featurehub.strategies.matchers.MatcherRegistry
+import spock.lang.Specification
+
+class FeatureEvaluationPlanSpec extends Specification {
+  FeatureEvaluationPlanCache cache
+
+  def setup() {
+    cache = new FeatureEvaluationPlanCache(new MatcherRegistry())
+  }
+
+  CacheFeatureValue value(UUID id, long version, String country) {
+    return new CacheFeatureValue().id(id).version(version).key("fv").locked(false)
+      .rolloutStrategies([
+        new CacheRolloutStrategy().id("s1").value("blue").attributes([
+          new CacheRolloutStrategyAttribute().fieldName("country").type(RolloutStrategyFieldType.STRING)
+            .conditional(RolloutStrategyAttributeConditional.EQUALS).values([country])
+        ])
+      ])
+  }
+
+  def "a plan is reused for the same feature value version"() {
+    given:
+      def id = UUID.randomUUID()
+    when:
+      def plan1 = cache.plan(value(id, 1, "nz"))
+      def plan2 = cache.plan(value(id, 1, "nz"))
+    then:
+      plan1.is(plan2)
+      plan1.strategies.size() == 1
+      plan1.strategies[0].attributes[0].values == ["nz"]
+  }
+
+  def "a plan is recompiled when the version changes, and only then"() {
+    given:
+      def id = UUID.randomUUID()
+    when:
+      def plan1 = cache.plan(value(id, 1, "nz"))
+      def plan2 = cache.plan(value(id, 2, "au"))
+      def plan3 = cache.plan(value(id, 2, "au"))
+    then:
+      !plan1.is(plan2)
+      plan2.is(plan3)
+      plan2.strategies[0].attributes[0].values == ["au"]
+      cache.size() == 1
+  }
+
+  def "a feature value with no strategies has an empty plan"() {
+    expect:
+      cache.plan(null).is(FeatureEvaluationPlan.EMPTY)
+      cache.plan(new CacheFeatureValue().id(UUID.randomUUID()).version(1).key("x").locked(false)).empty
+  }
+
+  def "a plan knows whether it matches on the current date or time"() {
+    given:
+      def now = new CacheFeatureValue().id(UUID.randomUUID()).version(1).key("fv").locked(false)
+        .rolloutStrategies([
+          new CacheRolloutStrategy().id("s1").value("blue").attributes([
+            new CacheRolloutStrategyAttribute().fieldName("now").type(RolloutStrategyFieldType.DATETIME)
+              .conditional(RolloutStrategyAttributeConditional.GREATER).values(["2021-01-01T00:00:00Z"])
+          ])
+        ])
+    expect:
+      cache.plan(now).evaluatesAgainstNow()
+      !cache.plan(value(UUID.randomUUID(), 1, "nz")).evaluatesAgainstNow()
+      !FeatureEvaluationPlan.EMPTY.evaluatesAgainstNow()
+  }
+
+  def "percentage only strategies accumulate their percentages in order"() {
+    when:
+      def plan = FeatureEvaluationPlan.compile([
+        new FeatureRolloutStrategy().id("1").percentage(20).value("a"),
+        new FeatureRolloutStrategy().id("2").percentage(30).value("b"),
+        new FeatureRolloutStrategy().id("3").percentage(10).percentageAttributes(["company"]).value("c"),
+      ] as List<FeatureRolloutStrategy>, new MatcherRegistry())
+    then:
+      plan.compiled*.basePercentage == [0, 20, 0]
+      !plan.singlePercentageGroup
+  }
+
+  def "attributes are compiled into matchers when the plan is built"() {
+    when:
+      def plan = cache.plan(value(UUID.randomUUID(), 1, "nz"))
+    then:
+      plan.attributes.length == 1
+      plan.attributes[0].matcher.match("nz")
+      !plan.attributes[0].matcher.match("au")
+  }
+
+  CacheRolloutStrategyAttribute attribute(String fieldName, RolloutStrategyFieldType type,
+                                          RolloutStrategyAttributeConditional conditional, List values) {
+    return new CacheRolloutStrategyAttribute().fieldName(fieldName).type(type).conditional(conditional).values(values)
+  }
+
+  def "the attributes of each strategy are checked cheapest first while the strategies keep their order"() {
+    given:
+      def value = new CacheFeatureValue().id(UUID.randomUUID()).version(1).key("fv").locked(false)
+        .rolloutStrategies([
+          new CacheRolloutStrategy().id("s1").value("blue").attributes([
+            attribute("ip", RolloutStrategyFieldType.IP_ADDRESS, RolloutStrategyAttributeConditional.EQUALS, ["10.0.0.0/8"]),
+            attribute("name", RolloutStrategyFieldType.STRING, RolloutStrategyAttributeConditional.REGEX, ["fr.*"]),
+            attribute("platform", RolloutStrategyFieldType.STRING, RolloutStrategyAttributeConditional.NOT_EQUALS, ["ios"]),
+            attribute("country", RolloutStrategyFieldType.STRING, RolloutStrategyAttributeConditional.EQUALS, ["nz"]),
+            attribute("beta", RolloutStrategyFieldType.BOOLEAN, RolloutStrategyAttributeConditional.EQUALS, [true]),
+            attribute("version", RolloutStrategyFieldType.SEMANTIC_VERSION, RolloutStrategyAttributeConditional.GREATER, ["1.0.0"]),
+            attribute("device", RolloutStrategyFieldType.STRING, RolloutStrategyAttributeConditional.EQUALS, ["mobile"]),
+          ]),
+          new CacheRolloutStrategy().id("s2").value("red").attributes([
+            attribute("age", RolloutStrategyFieldType.NUMBER, RolloutStrategyAttributeConditional.GREATER, [21]),
+            attribute("beta", RolloutStrategyFieldType.BOOLEAN, RolloutStrategyAttributeConditional.EQUALS, [false]),
+          ])
+        ])
+    when:
+      def plan = cache.plan(value)
+    then:
+      plan.attributes*.fieldName == ["beta", "country", "device", "platform", "version", "ip", "name", "beta", "age"]
+      plan.compiled*.attrStart == [0, 7]
+      plan.compiled*.attrEnd == [7, 9]
+      plan.strategies*.id == ["s1", "s2"]
+      plan.strategies[0].attributes*.fieldName == ["ip", "name", "platform", "country", "beta", "version", "device"]
+  }
+}
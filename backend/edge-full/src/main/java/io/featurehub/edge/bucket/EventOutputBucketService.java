@@ -7,28 +7,29 @@ import jakarta.inject.Singleton;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Map;
-import java.util.Timer;
-import java.util.TimerTask;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * this service manages the allocation of incoming connections to a timeslot and the regular kicking
  * off of connections across that time period. It defaults to cycle clients every 30 seconds but
  * this can be configured in system properties.
+ *
+ * Each of kicking off, heartbeating and kicking off clients that Dacha couldn't answer for is a timing wheel
+ * turned by one thread of its own, edge.sse.ticks-per-second times a second, so the work is spread out in small
+ * pieces rather than all landing at the top of each second. What they do to the connections is done by a small pool
+ * of edge.sse.timer-threads threads, so a client that has stopped reading doesn't stop the wheels turning.
  */
 @Singleton
 public class EventOutputBucketService implements BucketService {
   private static final Logger log = LoggerFactory.getLogger(EventOutputBucketService.class);
-  private final Map<Integer, TimedBucket> discardTimerBuckets = new ConcurrentHashMap<>();
-  private final Map<Integer, TimedBucket> heartbeatTimerBuckets = new ConcurrentHashMap<>();
-  private final Map<Integer, List<ClientConnection>> dachaNotReadyConnections = new ConcurrentHashMap<>();
-  private int dropConnectionTimer;
-  private int heartbeatConnectionTimer;
-  private int delaySlotTimer;
+  private TimingWheel discardWheel;
+  private TimingWheel heartbeatWheel;
+  private TimingWheel dachaNotReadyWheel;
 
   @ConfigKey("maxSlots")
   protected Integer maxSlots = -1;
@@ -47,6 +48,12 @@ public class EventOutputBucketService implements BucketService {
   @ConfigKey("edge.dacha.response-timeout")
   protected Integer namedCacheTimeout = 2000; // milliseconds to wait for dacha to response
 
+  @ConfigKey("edge.sse.ticks-per-second")
+  protected Integer ticksPerSecond = 10;
+
+  @ConfigKey("edge.sse.timer-threads")
+  protected Integer timerThreads = 4;
+
   public EventOutputBucketService() {
     DeclaredConfigResolver.resolve(this);
 
@@ -60,116 +67,77 @@ public class EventOutputBucketService implements BucketService {
               + "edge.sse.drop-after-seconds or decrease your edge.dacha.response-timeout millisecond value.");
     }
 
+    if (ticksPerSecond < 1) {
+      ticksPerSecond = 1;
+    }
+
+    final Executor executor = timerExecutor();
+
     if (dropAfterSeconds > 0) {
-      dropConnectionTimer = dropAfterSeconds - 1;
+      discardWheel = new TimingWheel(dropAfterSeconds * ticksPerSecond, false, ClientConnection::close, executor);
     }
 
     if (heartbeatAfterSeconds > 0) {
-      heartbeatConnectionTimer = heartbeatAfterSeconds - 1;
+      heartbeatWheel = new TimingWheel(heartbeatAfterSeconds * ticksPerSecond, true, ClientConnection::heartbeat,
+        executor);
     }
 
-    delaySlotTimer = delaySlots - 1;
+    dachaNotReadyWheel = new TimingWheel(delaySlots * ticksPerSecond, false, ClientConnection::close, executor);
 
     startTimer();
   }
 
-  protected void startTimer() {
-    Timer secondTimer = new Timer("countdown-to-kickoff");
-    secondTimer.scheduleAtFixedRate(
-        new TimerTask() {
-          @Override
-          public void run() {
-            // we are kicking people off? if so, kick them off first
-            if (dropAfterSeconds > 0) {
-              kickout();
-            }
-
-            // are we heartbeating? if so, check them too
-            if (heartbeatAfterSeconds > 0) {
-              heartbeatRemainingConnections();
-            }
-
-            delaySlotKickout();
-          }
-        },
-        0,
-        1000);
-  }
+  protected Executor timerExecutor() {
+    final AtomicInteger count = new AtomicInteger();
 
-  /**
-   * every second, we check if there are connections who couldn't
-   */
-  void delaySlotKickout() {
-    final List<ClientConnection> conns = dachaNotReadyConnections.replace(delaySlotTimer, new ArrayList<>());
-
-    if (conns != null && !conns.isEmpty()) {
-      conns.parallelStream().forEach(ClientConnection::close);
-    }
-
-    delaySlotTimer --;
-
-    if (delaySlotTimer < 0) {
-      delaySlotTimer = delaySlots -1;
-    }
+    return Executors.newFixedThreadPool(Math.max(timerThreads, 1), r -> {
+      Thread t = new Thread(r, "sse-timer-" + count.incrementAndGet());
+      t.setDaemon(true);
+      return t;
+    });
   }
 
-  void heartbeatRemainingConnections() {
-    heartbeatConnectionTimer --;
-
-    if (heartbeatConnectionTimer < 0) {
-      heartbeatConnectionTimer = heartbeatAfterSeconds - 1;
-    }
-
-    // in this case, we are going to write something and see if they are still there
-    // if we get a connection error, it will automatically
-    TimedBucket bucketToCheck = heartbeatTimerBuckets.get(heartbeatConnectionTimer);
+  protected void startTimer() {
+    ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(r -> {
+      Thread t = new Thread(r, "countdown-to-kickoff");
+      t.setDaemon(true);
+      return t;
+    });
 
-    if (bucketToCheck != null) {
-      bucketToCheck.ensureConnectionsInBucketAreActive();
-    }
+    timer.scheduleAtFixedRate(this::tick, 0, 1000 / ticksPerSecond, TimeUnit.MILLISECONDS);
   }
 
-  // every second, we clear out the buckets going down the list
-  void kickout() {
-    dropConnectionTimer--;
-
-    if (dropConnectionTimer < 0) {
-      dropConnectionTimer = dropAfterSeconds - 1;
-    }
-
-    // traditional behaviour, kick them off
-    TimedBucket timedBucketClientConnections = discardTimerBuckets.remove(dropConnectionTimer);
-
-    if (timedBucketClientConnections != null) {
-      log.debug("expiring slice {} has {} connections", dropConnectionTimer,
-        timedBucketClientConnections.numConnections());
-      timedBucketClientConnections.expireConnections();
+  void tick() {
+    try {
+      // we are kicking people off? if so, kick them off first
+      if (discardWheel != null) {
+        discardWheel.tick();
+      }
+
+      // are we heartbeating? if so, check them too
+      if (heartbeatWheel != null) {
+        heartbeatWheel.tick();
+      }
+
+      dachaNotReadyWheel.tick();
+    } catch (Exception e) {
+      // an exception would stop the timer and nobody would ever be kicked off again
+      log.error("failed to process connection timers", e);
     }
   }
 
-  // adds the new connection to the bucket
+  // adds the new connection to the wheels
   public void putInBucket(ClientConnection b) {
-    if (dropAfterSeconds > 0) {
-      log.trace("Adding client connection at {}", dropConnectionTimer);
-      discardTimerBuckets
-        .computeIfAbsent(dropConnectionTimer, k -> new TimedBucket(TimerBucketPurpose.DROP_CONNECTIONS, dropConnectionTimer))
-        .addConnection(b);
+    if (discardWheel != null) {
+      discardWheel.add(b);
     }
 
-    if (heartbeatAfterSeconds > 0) {
-      log.trace("Adding to heartbeat timer {}", heartbeatConnectionTimer);
-      heartbeatTimerBuckets.computeIfAbsent(heartbeatConnectionTimer, k -> new TimedBucket(TimerBucketPurpose.HEARTBEAT,
-          heartbeatConnectionTimer))
-        .addConnection(b);
+    if (heartbeatWheel != null) {
+      heartbeatWheel.add(b);
     }
   }
 
   public void dachaIsUnavailable(ClientConnection b) {
-    int newSlot = (int) (Math.random() * delaySlots);
-
-    final List<ClientConnection> dachaDropConnections = dachaNotReadyConnections.computeIfAbsent(newSlot,
-      k -> new ArrayList<>());
-
-    dachaDropConnections.add(b);
+    dachaNotReadyWheel.addAfter(b, ThreadLocalRandom.current().nextInt(delaySlots * ticksPerSecond));
   }
 }
@@ -1,6 +0,0 @@
-package io.featurehub.edge.bucket;
-
-public enum TimerBucketPurpose {
-  DROP_CONNECTIONS,
-  HEARTBEAT
-}
@@ -0,0 +1,128 @@
+package io.featurehub.edge.bucket;
+
+import io.featurehub.edge.client.ClientConnection;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+
+/**
+ * A ring of slots that is stepped through one slot per tick by a single thread. A connection added now goes in the
+ * slot just behind the current one, so it comes up a full turn of the wheel later, and as connections arrive all
+ * through a turn the work of expiring (or heartbeating) them is spread across all of its ticks.
+ *
+ * Connections that close in the meantime are not looked for and removed, they are closed again (which only tells
+ * whoever is listening for them to close, if nobody has yet) and let go of when their slot comes up. Closing and
+ * heartbeating write to the client, so they are handed to the executor rather than done on the ticking thread where
+ * one client that has stopped reading would hold up all the others.
+ */
+public class TimingWheel {
+  private static final Logger log = LoggerFactory.getLogger(TimingWheel.class);
+  private final Queue<ClientConnection>[] slots;
+  private final boolean repeating;
+  private final Consumer<ClientConnection> action;
+  private final Executor executor;
+  // only the ticking thread moves it on
+  private volatile int position = 0;
+
+  /**
+   * @param ticks - the number of ticks in a turn of the wheel
+   * @param repeating - if true, connections stay in their slot and come up every turn, otherwise they come up once
+   * @param action - what to do with each open connection when its slot comes up
+   */
+  public TimingWheel(int ticks, boolean repeating, Consumer<ClientConnection> action) {
+    this(ticks, repeating, action, Runnable::run);
+  }
+
+  /**
+   * @param executor - where the action (or the close of a connection that has gone away) is run
+   */
+  @SuppressWarnings("unchecked")
+  public TimingWheel(int ticks, boolean repeating, Consumer<ClientConnection> action, Executor executor) {
+    this.repeating = repeating;
+    this.action = action;
+    this.executor = executor;
+
+    slots = new Queue[Math.max(ticks, 1)];
+
+    for (int count = 0; count < slots.length; count++) {
+      slots[count] = new ConcurrentLinkedQueue<>();
+    }
+  }
+
+  /**
+   * the connection comes up a full turn of the wheel from now
+   */
+  public void add(ClientConnection conn) {
+    addAfter(conn, slots.length - 1);
+  }
+
+  /**
+   * the connection comes up after this many ticks (less than a full turn)
+   */
+  public void addAfter(ClientConnection conn, int ticks) {
+    slots[(position + Math.min(Math.max(ticks, 0), slots.length - 1)) % slots.length].add(conn);
+  }
+
+  public int size() {
+    int size = 0;
+
+    for (Queue<ClientConnection> slot : slots) {
+      size += slot.size();
+    }
+
+    return size;
+  }
+
+  /**
+   * deal with the connections in the current slot and move on to the next. Only ever called by one thread.
+   */
+  public void tick() {
+    final Queue<ClientConnection> slot = slots[position];
+
+    if (repeating) {
+      for (Iterator<ClientConnection> it = slot.iterator(); it.hasNext(); ) {
+        ClientConnection conn = it.next();
+
+        if (conn.isClosed()) {
+          it.remove();
+          run(conn, this::closed);
+        } else {
+          run(conn, action);
+        }
+      }
+    } else {
+      ClientConnection conn;
+
+      while ((conn = slot.poll()) != null) {
+        run(conn, conn.isClosed() ? this::closed : action);
+      }
+    }
+
+    position = (position + 1) % slots.length;
+  }
+
+  // its output may have been closed underneath it, this makes sure it has let go of everything
+  private void closed(ClientConnection conn) {
+    conn.close(false);
+  }
+
+  private void run(ClientConnection conn, Consumer<ClientConnection> what) {
+    try {
+      executor.execute(() -> {
+        try {
+          what.accept(conn);
+        } catch (Exception e) {
+          log.trace("failed to process connection {}", conn.connectionId(), e);
+        }
+      });
+    } catch (Exception e) {
+      // we are shutting down
+      log.trace("unable to process connection {}", conn.connectionId(), e);
+    }
+  }
+}
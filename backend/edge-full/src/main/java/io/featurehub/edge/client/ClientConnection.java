@@ -1,16 +1,12 @@
 package io.featurehub.edge.client;
 
-import io.featurehub.dacha.model.PublishFeatureValue;
 import io.featurehub.edge.KeyParts;
-import io.featurehub.edge.bucket.TimedBucket;
-import io.featurehub.edge.bucket.TimedBucketSlot;
 import io.featurehub.edge.features.EtagStructureHolder;
 import io.featurehub.edge.features.FeatureRequestResponse;
 import io.featurehub.edge.strategies.ClientContext;
 import io.featurehub.sse.model.SSEResultState;
 
 import java.io.IOException;
-import java.util.List;
 import java.util.UUID;
 
 public interface ClientConnection {
@@ -37,6 +33,9 @@ public interface ClientConnection {
 
   void close();
 
+  // closed, or found to have gone away
+  boolean isClosed();
+
   String getNamedCache();
 
   void failed(String reason);
@@ -44,11 +43,7 @@ public interface ClientConnection {
   void initResponse(FeatureRequestResponse edgeResponse);
 
   // notify the client of a new feature (if they have received their features)
-  void notifyFeature(List<PublishFeatureValue> rf);
+  void notifyFeature(FeatureFrames features);
 
   EtagStructureHolder etags();
-
-  void setTimedBucketSlot(TimedBucket timedBucket);
-
-  TimedBucketSlot getTimedBucketSlot();
 }
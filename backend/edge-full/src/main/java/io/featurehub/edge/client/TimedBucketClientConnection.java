@@ -1,12 +1,8 @@
 package io.featurehub.edge.client;
 
-import io.featurehub.dacha.model.PublishAction;
-import io.featurehub.dacha.model.PublishFeatureValue;
 import io.featurehub.edge.FeatureTransformer;
 import io.featurehub.edge.KeyParts;
 import io.featurehub.edge.bucket.BucketService;
-import io.featurehub.edge.bucket.TimedBucket;
-import io.featurehub.edge.bucket.TimedBucketSlot;
 import io.featurehub.edge.features.ETagSplitter;
 import io.featurehub.edge.features.EtagStructureHolder;
 import io.featurehub.edge.features.FeatureRequestResponse;
@@ -22,30 +18,45 @@ import io.prometheus.client.Histogram;
 import jakarta.ws.rs.core.MediaType;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+/**
+ * There can be a great many of these open at once, most of them idle, so they hold as little as they can. The key
+ * and context are shared with other connections that have the same ones (see TimedBucketClientFactory), the id is
+ * a number, and the list of ejection handlers and of updates held until the features have been sent are only as big
+ * as they need to be.
+ */
 public class TimedBucketClientConnection implements ClientConnection {
   private static final Logger log = LoggerFactory.getLogger(TimedBucketClientConnection.class);
+  private static final AtomicLong connectionIds = new AtomicLong();
+  // never reused, so a handle that has been deregistered can't come back as someone else's
+  private static final AtomicLong ejectionHandles = new AtomicLong();
+  private static final Object[] NO_HANDLERS = new Object[0];
   @NotNull protected final EventOutputHolder output;
   @NotNull protected final KeyParts apiKey;
-  private final Map<UUID, EjectHandler> handlers = new HashMap<>();
+  // pairs of handler id and EjectHandler, nearly always just the one
+  private Object[] handlers = NO_HANDLERS;
   protected final String extraContext;
   protected boolean allowExtendedProperties = false;
   @NotNull protected final BucketService bucketService;
-  private List<PublishFeatureValue> heldFeatureUpdates = new ArrayList<>();
+  // updates that arrive before the features have been sent, only created if there are any
+  private List<FeatureFrames> heldFeatureUpdates;
+  private boolean featuresSent = false;
   @NotNull protected final FeatureTransformer featureTransformer;
   @NotNull protected final ClientContext attributesForStrategy;
   @NotNull protected final StatRecorder statRecorder;
   @NotNull protected final EtagStructureHolder etags;
-  @NotNull protected final UUID id;
+  protected final long id;
+  private final long openedAt;
 
   private static final Histogram connectionLengthHistogram =
       Histogram.build(
@@ -56,9 +67,6 @@ public class TimedBucketClientConnection implements ClientConnection {
   private static final Gauge sseGauge = Gauge.build("edge_sse_active_connections",
     "The number of active SSE connections").register();
 
-  private final Histogram.Timer timer;
-  private TimedBucket timedBucketSlot;
-
   public TimedBucketClientConnection(
       @NotNull EventOutputHolder output,
       @NotNull KeyParts apiKey,
@@ -68,28 +76,41 @@ public class TimedBucketClientConnection implements ClientConnection {
       @Nullable String etag,
       @Nullable String extraContext,
       @NotNull BucketService bucketService) {
+    this(output, apiKey, featureTransformer, statRecorder,
+        ClientContext.decode(featureHubAttributes, Collections.singletonList(apiKey)), etag, extraContext,
+        bucketService);
+  }
+
+  public TimedBucketClientConnection(
+      @NotNull EventOutputHolder output,
+      @NotNull KeyParts apiKey,
+      @NotNull FeatureTransformer featureTransformer,
+      @NotNull StatRecorder statRecorder,
+      @NotNull ClientContext clientContext,
+      @Nullable String etag,
+      @Nullable String extraContext,
+      @NotNull BucketService bucketService) {
     this.extraContext = extraContext;
     this.bucketService = bucketService;
-    id = UUID.randomUUID();
+    id = connectionIds.incrementAndGet();
 
     this.output = output;
     this.apiKey = apiKey;
     this.featureTransformer = featureTransformer;
     this.statRecorder = statRecorder;
 
-    attributesForStrategy =
-        ClientContext.decode(featureHubAttributes, Collections.singletonList(apiKey));
+    attributesForStrategy = clientContext;
 
     etags =
         ETagSplitter.Companion.splitTag(etag, List.of(apiKey), attributesForStrategy.makeEtag());
 
-    timer = connectionLengthHistogram.startTimer();
+    openedAt = System.nanoTime();
     sseGauge.inc();
   }
 
   @Override
   public UUID connectionId() {
-    return id;
+    return new UUID(0, id);
   }
 
   @Override
@@ -144,6 +165,9 @@ public class TimedBucketClientConnection implements ClientConnection {
     if (!output.isClosed()) {
       try {
         output.write(name.toString(), MediaType.TEXT_PLAIN_TYPE, etags, data);
+      } catch (SlowClientEvictedException e) {
+        log.debug("disconnected client {}: {}", apiKey, e.getMessage());
+        close(false);
       } catch (IOException e) {
         log.error("failed to write connection", e);
         close(false);
@@ -153,37 +177,56 @@ public class TimedBucketClientConnection implements ClientConnection {
     }
   }
 
-  private boolean notifiedClosed = false;
+  private volatile boolean notifiedClosed = false;
 
   private void notifyHandlersThatTheConnectionHasClosed() {
-    // tell them we are shutting down even if they told us to shut them down
-    if (!notifiedClosed) {
+    // the stall check, the timers and a writer can all find it closed at once, only one of them tells the handlers
+    synchronized (this) {
+      if (notifiedClosed) {
+        return;
+      }
+
       notifiedClosed = true;
+    }
 
-      handlers.values().parallelStream().forEach(e -> e.eject(this));
+    final Object[] current = handlers;
 
-      timer.observeDuration();
+    for (int pos = 1; pos < current.length; pos += 2) {
+      ((EjectHandler) current[pos]).eject(this);
     }
+
+    // only once, however it was found to be closed
+    connectionLengthHistogram.observe((System.nanoTime() - openedAt) / (double) TimeUnit.SECONDS.toNanos(1));
+    sseGauge.dec();
   }
 
   @Override
-  public UUID registerEjection(EjectHandler handler) {
-    UUID id = UUID.randomUUID();
-    this.handlers.put(id, handler);
-    return id;
+  public synchronized UUID registerEjection(EjectHandler handler) {
+    UUID handle = new UUID(id, ejectionHandles.incrementAndGet());
+
+    Object[] added = Arrays.copyOf(handlers, handlers.length + 2);
+    added[handlers.length] = handle;
+    added[handlers.length + 1] = handler;
+    handlers = added;
+
+    return handle;
   }
 
   @Override
-  public void deregisterEjection(UUID id) {
-    this.handlers.remove(id);
+  public synchronized void deregisterEjection(UUID handle) {
+    for (int pos = 0; pos < handlers.length; pos += 2) {
+      if (handlers[pos].equals(handle)) {
+        Object[] removed = new Object[handlers.length - 2];
+        System.arraycopy(handlers, 0, removed, 0, pos);
+        System.arraycopy(handlers, pos + 2, removed, pos, handlers.length - pos - 2);
+        handlers = removed.length == 0 ? NO_HANDLERS : removed;
+        return;
+      }
+    }
   }
 
   @Override
   public void close(boolean sayBye) {
-    if (timer != null) {
-      timer.observeDuration();
-      sseGauge.dec();
-    }
     // could have been closed by a failure earlier, it isn't ejected from the list
     if (!output.isClosed()) {
       if (sayBye) {
@@ -207,6 +250,11 @@ public class TimedBucketClientConnection implements ClientConnection {
     close(true);
   }
 
+  @Override
+  public boolean isClosed() {
+    return notifiedClosed || output.isClosed();
+  }
+
   @Override
   public String getNamedCache() {
     return apiKey.getCacheName();
@@ -272,40 +320,36 @@ public class TimedBucketClientConnection implements ClientConnection {
   }
 
   private void writeHeldFeatureChanges() {
-    List<PublishFeatureValue> heldUpdates = heldFeatureUpdates;
+    List<FeatureFrames> heldUpdates = heldFeatureUpdates;
 
+    featuresSent = true;
     heldFeatureUpdates = null;
 
     if (heldUpdates != null) {
-      notifyFeature(heldUpdates);
+      heldUpdates.forEach(this::notifyFeature);
     }
   }
 
   // notify the client of a new feature (if they have received their features)
   @Override
-  public void notifyFeature(List<PublishFeatureValue> features) {
-    for (PublishFeatureValue rf : features) {
-      if (heldFeatureUpdates != null) {
-        log.debug("holding feature update for client");
-        heldFeatureUpdates.add(rf);
-      } else {
-        try {
-          String data =
-              CacheJsonMapper.mapper.writeValueAsString(
-                  featureTransformer.transform(rf.getFeature(), attributesForStrategy, allowExtendedProperties));
-          // if it was a DELETE or it was being triggered as a retired feature
-          if (rf.getAction() == PublishAction.DELETE
-              || (rf.getFeature().getValue() != null
-                  && rf.getFeature().getValue().getRetired() == Boolean.TRUE)) {
-            writeMessage(SSEResultState.DELETE_FEATURE, data);
-          } else {
-            writeMessage(SSEResultState.FEATURE, data);
-          }
-        } catch (IOException e) {
-          log.debug("Failed to write feature", e);
-          close(false);
-        }
+  public void notifyFeature(FeatureFrames features) {
+    if (!featuresSent) {
+      log.debug("holding feature update for client");
+      if (heldFeatureUpdates == null) {
+        heldFeatureUpdates = new ArrayList<>(2);
       }
+      heldFeatureUpdates.add(features);
+      return;
+    }
+
+    try {
+      // the same frames are shared with every other connection that would be sent the same thing
+      for (FeatureFrame frame : features.frames(attributesForStrategy, allowExtendedProperties)) {
+        writeMessage(frame.getState(), frame.getData());
+      }
+    } catch (IOException e) {
+      log.debug("Failed to write feature", e);
+      close(false);
     }
   }
 
@@ -313,14 +357,4 @@ public class TimedBucketClientConnection implements ClientConnection {
   public EtagStructureHolder etags() {
     return etags;
   }
-
-  @Override
-  public void setTimedBucketSlot(TimedBucket timedBucket) {
-    this.timedBucketSlot = timedBucket;
-  }
-
-  @Override
-  public TimedBucketSlot getTimedBucketSlot() {
-    return this.timedBucketSlot;
-  }
 }
@@ -0,0 +1,116 @@
+package io.featurehub.edge
+
+import io.featurehub.dacha.model.PublishAction
+import io.featurehub.dacha.model.PublishFeatureValue
+import io.prometheus.client.Counter
+import org.slf4j.LoggerFactory
+import java.util.*
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.ScheduledExecutorService
+import java.util.concurrent.TimeUnit
+
+/**
+ * Holds on to the feature updates for an environment until none have arrived for windowMillis (but never for longer
+ * than maxMillis after the first), so a bulk change in the admin app reaches SSE clients as one update rather than
+ * hundreds. Where a feature changes more than once in that time, only its latest version is sent.
+ */
+class FeatureUpdateCoalescer(
+  private val windowMillis: Long,
+  private val maxMillis: Long,
+  private val scheduler: ScheduledExecutorService,
+  private val clock: () -> Long,
+  private val send: (UUID, List<PublishFeatureValue>) -> Unit
+) {
+  private val pending = ConcurrentHashMap<UUID, PendingUpdates>()
+
+  fun offer(environmentId: UUID, features: List<PublishFeatureValue>) {
+    val now = clock()
+
+    pending.compute(environmentId) { _, held ->
+      (held ?: PendingUpdates(now).also { schedule(environmentId, windowMillis) }).apply { add(features, now) }
+    }
+  }
+
+  /**
+   * the number of environments with updates waiting to go
+   */
+  val waiting: Int
+    get() = pending.size
+
+  private fun schedule(environmentId: UUID, delay: Long) {
+    scheduler.schedule({ flush(environmentId) }, delay, TimeUnit.MILLISECONDS)
+  }
+
+  internal fun flush(environmentId: UUID) {
+    var ready: PendingUpdates? = null
+
+    pending.computeIfPresent(environmentId) { _, held ->
+      val wait = held.wait(clock(), windowMillis, maxMillis)
+
+      if (wait > 0) {
+        schedule(environmentId, wait)
+        held
+      } else {
+        ready = held
+        null
+      }
+    }
+
+    ready?.let {
+      try {
+        send(environmentId, it.updates())
+      } catch (e: Exception) {
+        log.error("failed to send coalesced updates for environment {}", environmentId, e)
+      }
+    }
+  }
+
+  // only touched inside the map's compute for its environment
+  private class PendingUpdates(private val firstAt: Long) {
+    private val features = LinkedHashMap<UUID, PublishFeatureValue>()
+    private var lastAt = firstAt
+
+    fun add(updates: List<PublishFeatureValue>, now: Long) {
+      lastAt = now
+
+      updates.forEach { update ->
+        val id = update.feature.feature.id
+        val held = features[id]
+
+        if (held != null) {
+          coalescedCounter.inc()
+        }
+
+        if (held == null || !isOlder(update, held)) {
+          features[id] = update
+        }
+      }
+    }
+
+    // how much longer to wait for more, if anything
+    fun wait(now: Long, window: Long, max: Long): Long {
+      return minOf(window - (now - lastAt), max - (now - firstAt))
+    }
+
+    fun updates(): List<PublishFeatureValue> = features.values.toList()
+
+    // they arrive in order, but a value that was replaced by a later version should never come back
+    private fun isOlder(update: PublishFeatureValue, held: PublishFeatureValue): Boolean {
+      if (update.action == PublishAction.DELETE || held.action == PublishAction.DELETE) {
+        return false
+      }
+
+      val version = update.feature.value?.version ?: return false
+      val heldVersion = held.feature.value?.version ?: return false
+
+      return version < heldVersion
+    }
+  }
+
+  companion object {
+    private val log = LoggerFactory.getLogger(FeatureUpdateCoalescer::class.java)
+
+    val coalescedCounter: Counter = Counter.build("edge_sse_updates_coalesced", "Feature updates replaced by a " +
+      "later one for the same feature before being sent to SSE clients").register()
+  }
+}
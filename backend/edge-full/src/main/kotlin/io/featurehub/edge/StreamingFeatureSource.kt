@@ -7,7 +7,12 @@ import com.google.common.cache.CacheLoader
 import com.google.common.cache.RemovalListener
 import io.featurehub.dacha.model.PublishFeatureValues
 import io.featurehub.edge.client.ClientConnection
+import io.featurehub.edge.client.FeatureFrames
 import io.featurehub.edge.features.DachaFeatureRequestSubmitter
+import io.featurehub.edge.features.KeyDetailsCache
+import io.featurehub.edge.features.PollIntervalAdvisor
+import io.featurehub.edge.rest.AdmissionPermit
+import io.featurehub.edge.rest.answered
 import io.featurehub.lifecycle.ApplicationLifecycleManager
 import io.featurehub.lifecycle.LifecycleStatus
 import io.featurehub.lifecycle.LifecycleTransition
@@ -19,10 +24,14 @@ import java.util.*
 import java.util.concurrent.ConcurrentLinkedQueue
 import java.util.concurrent.ExecutorService
 import java.util.concurrent.Executors
+import java.util.concurrent.atomic.AtomicInteger
 
 interface StreamingFeatureController {
   fun clientRemoved(client: ClientConnection)
-  fun requestFeatures(client: ClientConnection)
+  /**
+   * the permit is released once the client has been sent its features (or we have given up on getting them)
+   */
+  fun requestFeatures(client: ClientConnection, permit: AdmissionPermit)
   fun updateFeatures(features: PublishFeatureValues)
 }
 
@@ -30,7 +39,9 @@ data class ConnectionHolder(val client: ClientConnection, val ejectHandler: UUID
 
 class StreamingFeatureSource @Inject constructor(
   private val dachaFeatureRequestSubmitter: DachaFeatureRequestSubmitter,
-
+  private val keyDetailsCache: KeyDetailsCache,
+  private val pollIntervalAdvisor: PollIntervalAdvisor,
+  private val featureTransformer: FeatureTransformer,
   ) : StreamingFeatureController {
   private val updateExecutor: ExecutorService
   private val listenExecutor: ExecutorService
@@ -44,10 +55,29 @@ class StreamingFeatureSource @Inject constructor(
   @ConfigKey("edge.cache.streamed-maximum-environments")
   var maximumEnvironments: Long? = 5000
 
+  // if more than zero, SSE clients are sent an environment's updates once none have arrived for this long, together
+  @ConfigKey("edge.sse.coalesce-ms")
+  var coalesceMillis: Long? = 0
+
+  // but never held for longer than this
+  @ConfigKey("edge.sse.coalesce-max-ms")
+  var coalesceMaxMillis: Long? = 250
+
   init {
     DeclaredConfigResolver.resolve(this)
   }
 
+  private val coalescer: FeatureUpdateCoalescer? = if (coalesceMillis!! > 0) {
+    val count = AtomicInteger()
+
+    FeatureUpdateCoalescer(coalesceMillis!!, maxOf(coalesceMaxMillis!!, coalesceMillis!!),
+      Executors.newSingleThreadScheduledExecutor { r ->
+        Thread(r, "sse-coalesce-${count.incrementAndGet()}").apply { isDaemon = true }
+      },
+      { System.nanoTime() / 1_000_000 }
+    ) { envId, updates -> notifyConnections(envId, FeatureFrames(updates, featureTransformer, true)) }
+  } else null
+
   private val notifyOnIncomingFeatureUpdate =
     CacheBuilder.newBuilder()
       .maximumSize(maximumEnvironments!!)
@@ -87,6 +117,9 @@ class StreamingFeatureSource @Inject constructor(
 
     log.info("connected to stream with cache pool size of `{}", updatePoolSize)
 
+    // we hear about every feature change, so what edge holds from Dacha is dropped when it goes out of date
+    keyDetailsCache.updateStreamAttached()
+
     ApplicationLifecycleManager.registerListener { trans: LifecycleTransition ->
       if (trans.next == LifecycleStatus.TERMINATING) {
         shutdown()
@@ -118,14 +151,29 @@ class StreamingFeatureSource @Inject constructor(
 
     val environmentId = features.features[0].environmentId
 
+    // what we have ready to send polling clients is now out of date
+    features.features.map { it.environmentId }.distinct().forEach { envId ->
+      keyDetailsCache.invalidate(envId)
+      pollIntervalAdvisor.changed(envId)
+    }
+
+    if (coalescer != null) {
+      coalescer.offer(environmentId, features.features)
+    } else {
+      notifyConnections(environmentId, FeatureFrames(features.features, featureTransformer))
+    }
+  }
+
+  // the frames are transformed and encoded once for each group of connections that would be sent the same thing
+  private fun notifyConnections(environmentId: UUID, frames: FeatureFrames) {
     notifyOnIncomingFeatureUpdate[environmentId].forEach { conn ->
-      updateExecutor.submit { conn.client.notifyFeature(features.features) }
+      updateExecutor.submit { conn.client.notifyFeature(frames) }
     }
   }
 
   // keep track of expired one so we can walk through periodically and delete them
   //  private Map<String, InflightSdkUrlRequest> expired
-  override fun requestFeatures(client: ClientConnection) {
+  override fun requestFeatures(client: ClientConnection, permit: AdmissionPermit) {
     var clientConnections = notifyOnIncomingFeatureUpdate[client.environmentId]
 //
     val key = client.key
@@ -137,6 +185,8 @@ class StreamingFeatureSource @Inject constructor(
           client.clientContext, client.etags()
         )
 
+        permit.answered(request)
+
         // ok now hold onto it and as updates come in, we can stream them
         // the order it happens here isn't too critical as we detect version changes on the client
         // so if the client gets an old feature it will reject it
@@ -150,6 +200,7 @@ class StreamingFeatureSource @Inject constructor(
           clientRemoved(client)
         }
       } catch (nfe: Exception) {
+        permit.dropped()
         client.failed("unable to communicate with named cache.")
         clientRemoved(client)
       }
@@ -1,11 +1,18 @@
 package io.featurehub.edge.client
 
+import io.prometheus.client.Counter
+import io.prometheus.client.Gauge
 import jakarta.ws.rs.core.MediaType
 import org.glassfish.jersey.media.sse.EventOutput
 import org.glassfish.jersey.media.sse.OutboundEvent
 import org.slf4j.Logger
 import org.slf4j.LoggerFactory
 import java.io.IOException
+import java.util.concurrent.ConcurrentLinkedQueue
+import java.util.concurrent.Executor
+import java.util.concurrent.RejectedExecutionException
+import java.util.concurrent.atomic.AtomicBoolean
+import java.util.concurrent.atomic.AtomicInteger
 import kotlin.jvm.Throws
 
 interface EventOutputHolder {
@@ -16,8 +23,6 @@ interface EventOutputHolder {
 }
 
 class InternalEventOutput(private val output: EventOutput) : EventOutputHolder {
-  private val log: Logger = LoggerFactory.getLogger(InternalEventOutput::class.java)
-
   override fun write(name: String, mediaType: MediaType, etags: String?, data: String) {
     val eventBuilder = OutboundEvent.Builder()
     log.trace("data is  etag `{}`: name: `{}` data `{}`", etags, name, data)
@@ -39,4 +44,191 @@ class InternalEventOutput(private val output: EventOutput) : EventOutputHolder {
     output.close()
   }
 
+  companion object {
+    private val log: Logger = LoggerFactory.getLogger(InternalEventOutput::class.java)
+  }
+}
+
+/**
+ * Thrown when a client is disconnected for not keeping up with its messages. It is an expected outcome rather than a
+ * failure of Edge, so it is only worth a debug message.
+ */
+class SlowClientEvictedException(reason: String) : IOException("client is too slow ($reason)")
+
+/**
+ * Holds up to maxQueued messages for a connection and writes them from the writer executor, so whoever sends a
+ * message never waits on the client. A client that lets its queue fill up, or that has taken longer than
+ * stallMillis over a write, is disconnected rather than left to hold everyone else up. A stuck write is noticed when
+ * the next message arrives or when closeIfStalled is called, whichever comes first. In the first case the writer is
+ * told by the exception, in the second onEvicted is.
+ */
+class QueuedEventOutput(
+  private val output: EventOutputHolder,
+  private val maxQueued: Int,
+  private val stallMillis: Long,
+  private val writer: Executor,
+  private val clock: () -> Long = System::currentTimeMillis
+) : EventOutputHolder {
+  private val queue = ConcurrentLinkedQueue<QueuedEvent>()
+  private val queued = AtomicInteger()
+  private val draining = AtomicBoolean(false)
+  @Volatile
+  private var writingSince = 0L
+  @Volatile
+  private var closing = false
+  @Volatile
+  private var outputClosed = false
+
+  /**
+   * called when closeIfStalled disconnects the client, so whoever owns this output can let go of it
+   */
+  @Volatile
+  var onEvicted: (() -> Unit)? = null
+
+  override fun write(name: String, mediaType: MediaType, etags: String?, data: String) {
+    if (closing || output.isClosed()) {
+      throw IOException("connection is closed")
+    }
+
+    if (isStalled()) {
+      evict("stalled")
+      throw SlowClientEvictedException("stalled")
+    }
+
+    if (queued.incrementAndGet() > maxQueued) {
+      queued.decrementAndGet()
+      evict("overflow")
+      throw SlowClientEvictedException("overflow")
+    }
+
+    queue.add(QueuedEvent(name, mediaType, etags, data))
+    queueDepthGauge.inc()
+
+    drain()
+
+    if (outputClosed) {
+      throw IOException("unable to write to client")
+    }
+  }
+
+  override fun isClosed(): Boolean {
+    return closing || output.isClosed()
+  }
+
+  /**
+   * anything already queued (such as a goodbye) is written first
+   */
+  override fun close() {
+    closing = true
+    drain()
+  }
+
+  /**
+   * disconnects the client if it has been stuck on a write for too long, closing the output so the writer thread
+   * waiting on it is let go. Returns true once this output is closed, so there is no need to check it again.
+   */
+  fun closeIfStalled(): Boolean {
+    if (!closing && isStalled()) {
+      evict("stalled")
+
+      try {
+        onEvicted?.invoke()
+      } catch (e: Exception) {
+        log.debug("failed to tell the owner of an evicted client", e)
+      }
+    }
+
+    return outputClosed || output.isClosed()
+  }
+
+  private fun isStalled(): Boolean {
+    val since = writingSince
+    return since > 0 && clock() - since > stallMillis
+  }
+
+  private fun evict(reason: String) {
+    log.debug("disconnecting slow client: {}", reason)
+    evictedCounter.labels(reason).inc()
+    closing = true
+    discard()
+    closeOutput()
+  }
+
+  private fun drain() {
+    if (!draining.compareAndSet(false, true)) {
+      return
+    }
+
+    try {
+      writer.execute(this::writeQueued)
+    } catch (e: RejectedExecutionException) {
+      // we are shutting down
+      draining.set(false)
+      closing = true
+      discard()
+      closeOutput()
+    }
+  }
+
+  private fun writeQueued() {
+    try {
+      while (true) {
+        val event = queue.poll() ?: break
+        queued.decrementAndGet()
+        queueDepthGauge.dec()
+
+        writingSince = clock()
+        try {
+          output.write(event.name, event.mediaType, event.etags, event.data)
+        } finally {
+          writingSince = 0
+        }
+      }
+
+      if (closing) {
+        closeOutput()
+      }
+    } catch (e: Exception) {
+      log.trace("failed to write to client", e)
+      closing = true
+      discard()
+      closeOutput()
+    } finally {
+      draining.set(false)
+    }
+
+    // something may have been added after we found the queue empty but before we stopped draining
+    if (!queue.isEmpty() || (closing && !outputClosed)) {
+      drain()
+    }
+  }
+
+  private fun closeOutput() {
+    if (!outputClosed) {
+      outputClosed = true
+
+      try {
+        output.close()
+      } catch (ignored: Exception) {
+      }
+    }
+  }
+
+  private fun discard() {
+    while (queue.poll() != null) {
+      queued.decrementAndGet()
+      queueDepthGauge.dec()
+    }
+  }
+
+  private class QueuedEvent(val name: String, val mediaType: MediaType, val etags: String?, val data: String)
+
+  companion object {
+    private val log: Logger = LoggerFactory.getLogger(QueuedEventOutput::class.java)
+
+    val queueDepthGauge: Gauge = Gauge.build("edge_sse_write_queue_depth", "Messages waiting to be written to SSE " +
+      "clients").register()
+    val evictedCounter: Counter = Counter.build("edge_sse_slow_client_evicted", "SSE clients disconnected for " +
+      "not keeping up with their messages").labelNames("reason").register()
+  }
 }
@@ -0,0 +1,116 @@
+package io.featurehub.edge.client
+
+import io.featurehub.dacha.model.PublishAction
+import io.featurehub.dacha.model.PublishFeatureValue
+import io.featurehub.edge.FeatureTransformer
+import io.featurehub.edge.strategies.ClientContext
+import io.featurehub.jersey.config.CacheJsonMapper
+import io.featurehub.sse.model.SSEResultState
+import io.prometheus.client.Counter
+import java.util.concurrent.ConcurrentHashMap
+
+/**
+ * A message ready to write down an SSE connection. It is shared between connections and must not be modified.
+ */
+class FeatureFrame(val state: SSEResultState, val data: String)
+
+/**
+ * The messages for one update to an environment's features. Connections that would be sent exactly the same thing
+ * are grouped together (all client evaluated ones, and server evaluated ones with the same context, in each case
+ * split by whether they can see extended data) and the update is transformed and encoded only once for each group,
+ * by whichever connection in it gets there first.
+ *
+ * A context with a userkey or sessionkey is normally one user's alone, so there is nothing to share and it is encoded
+ * for its connection and let go of rather than kept for as long as the update is. So that one update can't hold on to
+ * an encoding for every context there is, only the first MAX_GROUPS groups are kept, the rest are encoded each time.
+ *
+ * If batched, the features that are still there go in a single `features` message rather than a `feature` message
+ * each (deleted ones are still sent one at a time, as a `features` message can't say something has gone).
+ */
+class FeatureFrames @JvmOverloads constructor(
+  private val features: List<PublishFeatureValue>,
+  private val featureTransformer: FeatureTransformer,
+  private val batched: Boolean = false
+) {
+  private val groups = ConcurrentHashMap<FrameGroup, List<FeatureFrame>>()
+
+  fun frames(context: ClientContext, allowExtendedData: Boolean): List<FeatureFrame> {
+    if (!context.isClientEvaluation && (context.attributes.containsKey(ClientContext.USERKEY) ||
+        context.attributes.containsKey(ClientContext.SESSIONKEY))) {
+      encodedCounter.inc()
+      return encode(context, allowExtendedData)
+    }
+
+    val group = if (context.isClientEvaluation) FrameGroup(true, allowExtendedData, null, null)
+      else FrameGroup(false, allowExtendedData, context.makeEtag(), context.attributes)
+
+    groups[group]?.let {
+      sharedCounter.inc()
+      return it
+    }
+
+    // another connection may add a group in between, so there can be a few more than this, never many
+    if (groups.size >= MAX_GROUPS) {
+      encodedCounter.inc()
+      return encode(context, allowExtendedData)
+    }
+
+    return groups.computeIfAbsent(group) {
+      encodedCounter.inc()
+      encode(context, allowExtendedData)
+    }
+  }
+
+  /**
+   * how many different encodings of the update there have been
+   */
+  val encodings: Int
+    get() = groups.size
+
+  private fun encode(context: ClientContext, allowExtendedData: Boolean): List<FeatureFrame> {
+    if (batched) {
+      val (deleted, present) = features.partition { isDeleted(it) }
+
+      if (present.size > 1) {
+        val batch = FeatureFrame(SSEResultState.FEATURES, CacheJsonMapper.mapper.writeValueAsString(
+          featureTransformer.transform(present.map { it.feature }, context, allowExtendedData)))
+
+        return listOf(batch) + deleted.map { rf -> encode(rf, context, allowExtendedData) }
+      }
+    }
+
+    return features.map { rf -> encode(rf, context, allowExtendedData) }
+  }
+
+  private fun encode(rf: PublishFeatureValue, context: ClientContext, allowExtendedData: Boolean): FeatureFrame {
+    val data = CacheJsonMapper.mapper.writeValueAsString(
+      featureTransformer.transform(rf.feature, context, allowExtendedData))
+
+    return if (isDeleted(rf)) {
+      FeatureFrame(SSEResultState.DELETE_FEATURE, data)
+    } else {
+      FeatureFrame(SSEResultState.FEATURE, data)
+    }
+  }
+
+  // if it was a DELETE or it was being triggered as a retired feature
+  private fun isDeleted(rf: PublishFeatureValue) =
+    rf.action == PublishAction.DELETE || rf.feature.value?.retired == true
+
+  // the context's etag is a hash of its attributes, so they are kept to tell apart contexts that collide
+  private data class FrameGroup(
+    val clientEvaluation: Boolean,
+    val allowExtendedData: Boolean,
+    val contextEtag: String?,
+    val attributes: Map<String, List<String>>?
+  )
+
+  companion object {
+    const val MAX_GROUPS = 32
+
+    val encodedCounter: Counter = Counter.build("edge_sse_update_encoded", "Feature updates transformed and " +
+      "encoded for an SSE connection or a group of them").register()
+    val sharedCounter: Counter = Counter.build("edge_sse_update_shared", "Feature updates sent to an SSE " +
+      "connection already encoded for another in its group").register()
+  }
+}
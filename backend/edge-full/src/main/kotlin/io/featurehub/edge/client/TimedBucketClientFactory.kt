@@ -1,29 +1,133 @@
 package io.featurehub.edge.client
 
+import cd.connect.app.config.ConfigKey
+import cd.connect.app.config.DeclaredConfigResolver
+import com.google.common.cache.Cache
+import com.google.common.cache.CacheBuilder
+import com.google.common.collect.Interner
+import com.google.common.collect.Interners
 import io.featurehub.edge.FeatureTransformer
 import io.featurehub.edge.KeyParts
 import io.featurehub.edge.bucket.BucketService
 import io.featurehub.edge.stats.StatRecorder
+import io.featurehub.edge.strategies.ClientContext
 import jakarta.inject.Inject
 import org.glassfish.jersey.media.sse.EventOutput
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+import java.util.concurrent.ScheduledExecutorService
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
 
 interface TimedBucketClientFactory {
   fun createBucket(output: EventOutput, apiKey: KeyParts,
                    featureHubAttributes: List<String>?,
                    etag: String?,
                    extraContext: String?): TimedBucketClientConnection
+
+  fun createBucket(output: EventOutputHolder, apiKey: KeyParts,
+                   featureHubAttributes: List<String>?,
+                   etag: String?,
+                   extraContext: String?): TimedBucketClientConnection
 }
 
+/**
+ * Connections with the same API key, or with the same key and context, share a single copy of it rather than each
+ * holding their own. Only connections that are still open keep them.
+ */
+
 class TimedBucketClientFactoryImpl @Inject constructor(
   private val featureTransformer: FeatureTransformer, private val bucketService: BucketService, private val statRecorder: StatRecorder
 ) : TimedBucketClientFactory {
+  // if more than zero, messages to each client are queued (up to this many) and written by the writer threads
+  @ConfigKey("edge.sse.write-queue-size")
+  var writeQueueSize: Int? = 0
+
+  @ConfigKey("edge.sse.write-stall-ms")
+  var writeStallMillis: Long? = 5000
+
+  @ConfigKey("edge.sse.writer-threads")
+  var writerThreads: Int? = 8
+
+  private val writer: ExecutorService?
+
+  // the queued outputs still open, so a write that never finishes is noticed even if nothing else is sent
+  private val queuedOutputs: MutableSet<QueuedEventOutput> = ConcurrentHashMap.newKeySet()
+  private val stallChecker: ScheduledExecutorService?
+
+  private val keys: Interner<KeyParts> = Interners.newWeakInterner()
+
+  // the context is only ever read once decoded, so it can be shared
+  private val contexts: Cache<String, ClientContext> = CacheBuilder.newBuilder().weakValues().build()
+
+  init {
+    DeclaredConfigResolver.resolve(this)
+
+    val count = AtomicInteger()
+    writer = if (writeQueueSize!! > 0) Executors.newFixedThreadPool(writerThreads!!) { r ->
+      Thread(r, "sse-writer-${count.incrementAndGet()}").apply { isDaemon = true }
+    } else null
+
+    stallChecker = if (writer != null) Executors.newSingleThreadScheduledExecutor { r ->
+      Thread(r, "sse-stall-check").apply { isDaemon = true }
+    }.apply {
+      val period = (writeStallMillis!! / 2).coerceAtLeast(1)
+      scheduleWithFixedDelay(this@TimedBucketClientFactoryImpl::closeStalledOutputs, period, period,
+        TimeUnit.MILLISECONDS)
+    } else null
+  }
+
+  private fun closeStalledOutputs() {
+    queuedOutputs.removeIf { it.closeIfStalled() }
+  }
+
   override fun createBucket(
     output: EventOutput,
     apiKey: KeyParts,
     featureHubAttributes: List<String>?,
     etag: String?,
     extraContext: String?
-  ): TimedBucketClientConnection =
-    TimedBucketClientConnection(InternalEventOutput(output), apiKey, featureTransformer,
-      statRecorder, featureHubAttributes, etag, extraContext, bucketService)
+  ): TimedBucketClientConnection {
+    val holder = eventOutput(output)
+    val connection = createBucket(holder, apiKey, featureHubAttributes, etag, extraContext)
+
+    if (holder is QueuedEventOutput) {
+      // the stall check disconnects a client without writing to it, so the connection has to be told to let go
+      holder.onEvicted = { connection.close(false) }
+    }
+
+    return connection
+  }
+
+  override fun createBucket(
+    output: EventOutputHolder,
+    apiKey: KeyParts,
+    featureHubAttributes: List<String>?,
+    etag: String?,
+    extraContext: String?
+  ): TimedBucketClientConnection {
+    val key = keys.intern(apiKey)
+
+    return TimedBucketClientConnection(output, key, featureTransformer, statRecorder,
+      clientContext(key, featureHubAttributes), etag, extraContext, bucketService)
+  }
+
+  private fun clientContext(key: KeyParts, featureHubAttributes: List<String>?): ClientContext {
+    // client evaluated keys (with a * in them) are decoded differently, that is all the key changes
+    val id = (if (key.serviceKey.contains("*")) "c" else "s") +
+      (featureHubAttributes?.joinToString(separator = "\n", prefix = "\n") ?: "")
+
+    return contexts.get(id) { ClientContext.decode(featureHubAttributes, listOf(key)) }
+  }
+
+  private fun eventOutput(output: EventOutput): EventOutputHolder {
+    val internal = InternalEventOutput(output)
+
+    if (writer == null) {
+      return internal
+    }
+
+    return QueuedEventOutput(internal, writeQueueSize!!, writeStallMillis!!, writer).also { queuedOutputs.add(it) }
+  }
 }
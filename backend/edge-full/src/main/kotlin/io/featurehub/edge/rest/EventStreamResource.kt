@@ -3,12 +3,15 @@ package io.featurehub.edge.rest
 import cd.connect.jersey.prometheus.Prometheus
 import io.featurehub.edge.stats.StatRecorder
 import io.featurehub.edge.utils.FastlyResponseWrapper
+import io.featurehub.sse.model.FeatureBatchRequest
 import io.featurehub.sse.model.FeatureStateUpdate
 import jakarta.inject.Inject
 import jakarta.ws.rs.*
 import jakarta.ws.rs.container.AsyncResponse
 import jakarta.ws.rs.container.Suspended
+import jakarta.ws.rs.core.Context
 import jakarta.ws.rs.core.Response
+import org.glassfish.grizzly.http.server.Request
 import org.glassfish.hk2.api.Immediate
 import org.glassfish.jersey.media.sse.EventOutput
 import org.glassfish.jersey.media.sse.SseFeature
@@ -21,7 +24,8 @@ class EventStreamResource @Inject constructor(
   private val statRecorder: StatRecorder,
   private val featureSse: FeatureSse,
   private val featureGetProcessor: FeatureGet,
-  private val featureUpdateProcessor: FeatureUpdate
+  private val featureUpdateProcessor: FeatureUpdate,
+  private val featureBatchProcessor: FeatureBatch
 ) {
   private val fastlyConfigured: Boolean
 
@@ -36,14 +40,17 @@ class EventStreamResource @Inject constructor(
   @Path("/")
   @Produces("application/json")
   @Prometheus(name = "edge_poll_api", help = "Number of requests for the poll API")
-  @ManagedAsync
   fun getFeatureStates(
     @Suspended response: AsyncResponse?,
     @QueryParam("sdkUrl") sdkUrls: List<String>?,
     @QueryParam("apiKey") apiKeys: List<String>?,
     @QueryParam("contextSha") contextSha: String?,
     @HeaderParam("x-featurehub") featureHubAttrs: List<String>?,
-    @HeaderParam("if-none-match") etagHeader: String?
+    @HeaderParam("if-none-match") etagHeader: String?,
+    @HeaderParam("accept-encoding") acceptEncoding: String?,
+    @QueryParam("delta") delta: Boolean?,
+    @HeaderParam("x-forwarded-for") forwardedFor: String?,
+    @Context request: Request?
   ) {
     if (fastlyConfigured && contextSha == null) {
       throw WebApplicationException(
@@ -54,10 +61,25 @@ class EventStreamResource @Inject constructor(
       )
     }
     featureGetProcessor.processGet(
-      response!!, sdkUrls, apiKeys, featureHubAttrs, etagHeader, statRecorder
+      response!!, sdkUrls, apiKeys, featureHubAttrs, etagHeader, acceptEncoding, delta, forwardedFor,
+      request?.remoteAddr, statRecorder
     )
   }
 
+  @POST
+  @Path("batch")
+  @Consumes("application/json")
+  @Produces("application/json")
+  @Prometheus(name = "edge_batch_api", help = "Number of requests for the batch evaluation API")
+  @ManagedAsync
+  fun evaluateFeatureBatch(
+    @Suspended response: AsyncResponse,
+    @QueryParam("apiKey") apiKey: String?,
+    batch: FeatureBatchRequest?
+  ) {
+    featureBatchProcessor.processBatch(response, apiKey, batch, statRecorder)
+  }
+
   @GET
   @Path("{namedCache}/{environmentId}/{apiKey}")
   @Prometheus(name = "edge_sse_api", help = "Number of requests for the SSE API")
@@ -69,9 +91,12 @@ class EventStreamResource @Inject constructor(
     @HeaderParam("x-featurehub") featureHubAttrs: List<String>?,  // non browsers can set headers
     @HeaderParam("x-fh-extraconfig") extraConfig: String?,
     @QueryParam("xfeaturehub") browserHubAttrs: String?,  // browsers can't set headers,
-    @HeaderParam("Last-Event-ID") etag: String?
+    @HeaderParam("Last-Event-ID") etag: String?,
+    @HeaderParam("x-forwarded-for") forwardedFor: String?,
+    @Context request: Request?
   ): EventOutput {
-    return featureSse.process(namedCache, envId!!, apiKey!!, featureHubAttrs, browserHubAttrs, etag, extraConfig)
+    return featureSse.process(namedCache, envId!!, apiKey!!, featureHubAttrs, browserHubAttrs, etag, extraConfig,
+      forwardedFor, request?.remoteAddr)
   }
 
   @GET
@@ -84,9 +109,12 @@ class EventStreamResource @Inject constructor(
     @HeaderParam("x-featurehub") featureHubAttrs: List<String>?,  // non browsers can set headers
     @HeaderParam("x-fh-extraconfig") extraConfig: String?,
     @QueryParam("xfeaturehub") browserHubAttrs: String?,  // browsers can't set headers,
-    @HeaderParam("Last-Event-ID") etag: String?
+    @HeaderParam("Last-Event-ID") etag: String?,
+    @HeaderParam("x-forwarded-for") forwardedFor: String?,
+    @Context request: Request?
   ): EventOutput {
-    return featureSse.process(null, envId!!, apiKey!!, featureHubAttrs, browserHubAttrs, etag, extraConfig)
+    return featureSse.process(null, envId!!, apiKey!!, featureHubAttrs, browserHubAttrs, etag, extraConfig,
+      forwardedFor, request?.remoteAddr)
   }
 
   /**
@@ -9,6 +9,7 @@ import io.featurehub.sse.stats.model.EdgeHitResultType
 import io.featurehub.sse.stats.model.EdgeHitSourceType
 import jakarta.inject.Inject
 import jakarta.ws.rs.InternalServerErrorException
+import jakarta.ws.rs.WebApplicationException
 import org.glassfish.jersey.media.sse.EventOutput
 import org.slf4j.Logger
 import org.slf4j.LoggerFactory
@@ -22,13 +23,16 @@ interface FeatureSse {
     featureHubAttrs: List<String>?,
     browserHubAttrs: String?,
     etag: String?,
-    extraContext: String?
+    extraContext: String?,
+    forwardedFor: String?,
+    remoteAddress: String?
   ): EventOutput
 }
 
 class FeatureSseProcessor @Inject constructor(
   private val bucketService: BucketService, private val serverConfig: StreamingFeatureController,
-  private val statRecorder: StatRecorder, private val timedBucketFactory: TimedBucketClientFactory
+  private val statRecorder: StatRecorder, private val timedBucketFactory: TimedBucketClientFactory,
+  private val admissionControl: AdmissionControl, private val rateLimiter: RateLimiter
 ) : FeatureSse {
   private val log: Logger = LoggerFactory.getLogger(FeatureSseProcessor::class.java)
 
@@ -39,24 +43,36 @@ class FeatureSseProcessor @Inject constructor(
     featureHubAttrs: List<String>?,
     browserHubAttrs: String?,
     etag: String?,
-    extraContext: String?
+    extraContext: String?,
+    forwardedFor: String?,
+    remoteAddress: String?
   ): EventOutput {
-    val outputStream = EventOutput()
-
     val apiKey = KeyParts("default", envId, apiKey)
 
+    if (!rateLimiter.allow(listOf(apiKey), forwardedFor, remoteAddress)) {
+      throw WebApplicationException(rateLimiter.rejection(null))
+    }
+
+    // only the initial features need Dacha, so the permit is held until they are sent
+    val permit = admissionControl.tryAcquire("sse")
+      ?: throw WebApplicationException(admissionControl.rejection())
+
+    val outputStream = EventOutput()
+
     try {
       val bucket = timedBucketFactory.createBucket(
         outputStream, apiKey, browserHubAttrs?.let { listOf(it) } ?: featureHubAttrs,
         etag, extraContext,
       )
       if (bucket.discovery()) {
-        serverConfig.requestFeatures(bucket)
+        serverConfig.requestFeatures(bucket, permit)
         bucketService.putInBucket(bucket)
       } else {
+        permit.ignore()
         statRecorder.recordHit(apiKey, EdgeHitResultType.FAILED_TO_WRITE_ON_INIT, EdgeHitSourceType.EVENTSOURCE)
       }
     } catch (e: Exception) {
+      permit.ignore()
       statRecorder.recordHit(apiKey, EdgeHitResultType.FAILED_TO_PROCESS_REQUEST, EdgeHitSourceType.EVENTSOURCE)
       log.error("failed to write feature states")
       throw InternalServerErrorException(e)
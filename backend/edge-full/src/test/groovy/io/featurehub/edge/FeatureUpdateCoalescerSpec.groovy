@@ -0,0 +1,121 @@
+package io.featurehub.edge
+
+import io.featurehub.dacha.model.CacheEnvironmentFeature
+import io.featurehub.dacha.model.CacheFeature
+import io.featurehub.dacha.model.CacheFeatureValue
+import io.featurehub.dacha.model.PublishAction
+import io.featurehub.dacha.model.PublishFeatureValue
+import spock.lang.Specification
+
+import java.util.concurrent.ScheduledExecutorService
+import java.util.concurrent.TimeUnit
+
+class FeatureUpdateCoalescerSpec extends Specification {
+  ScheduledExecutorService scheduler
+  List<Long> delays
+  List<Runnable> scheduled
+  Map<UUID, List<List<PublishFeatureValue>>> sent
+  long now
+  UUID envId
+  FeatureUpdateCoalescer coalescer
+
+  def setup() {
+    delays = []
+    scheduled = []
+    sent = [:].withDefault { [] }
+    now = 0
+    envId = UUID.randomUUID()
+    scheduler = Mock(ScheduledExecutorService) {
+      schedule(_ as Runnable, _, TimeUnit.MILLISECONDS) >> { Runnable r, long delay, TimeUnit unit ->
+        scheduled << r
+        delays << delay
+        null
+      }
+    }
+    coalescer = new FeatureUpdateCoalescer(10, 50, scheduler, { -> now }, { UUID id, List updates ->
+      sent[id] << updates
+      kotlin.Unit.INSTANCE
+    })
+  }
+
+  PublishFeatureValue feature(UUID id, Long version, PublishAction action = PublishAction.UPDATE) {
+    return new PublishFeatureValue().action(action).environmentId(envId)
+      .feature(new CacheEnvironmentFeature().feature(new CacheFeature().id(id).key("f-${id}"))
+        .value(version == null ? null : new CacheFeatureValue().version(version)))
+  }
+
+  void runScheduled() {
+    def run = new ArrayList<Runnable>(scheduled)
+    scheduled.clear()
+    run.each { it.run() }
+  }
+
+  def "updates that arrive together are sent together once things go quiet"() {
+    given:
+      def a = feature(UUID.randomUUID(), 1)
+      def b = feature(UUID.randomUUID(), 1)
+    when:
+      coalescer.offer(envId, [a])
+      now += 5
+      coalescer.offer(envId, [b])
+    then:
+      delays == [10]
+      sent.isEmpty()
+    when: "the first wait is up but the last update was only 5ms ago"
+      now += 5
+      runScheduled()
+    then:
+      delays == [10, 5]
+      sent.isEmpty()
+    when:
+      now += 5
+      runScheduled()
+    then:
+      sent[envId] == [[a, b]]
+      coalescer.waiting == 0
+  }
+
+  def "the latest version of each feature wins"() {
+    given:
+      def id = UUID.randomUUID()
+      def v2 = feature(id, 2)
+      def deleted = feature(id, null, PublishAction.DELETE)
+    when:
+      coalescer.offer(envId, [v2])
+      coalescer.offer(envId, [feature(id, 1)])
+      now += 10
+      runScheduled()
+    then:
+      sent[envId] == [[v2]]
+    when:
+      coalescer.offer(envId, [v2, deleted])
+      now += 10
+      runScheduled()
+    then:
+      sent[envId][1] == [deleted]
+  }
+
+  def "a steady stream of updates is still sent once the maximum wait is reached"() {
+    when:
+      6.times {
+        coalescer.offer(envId, [feature(UUID.randomUUID(), 1)])
+        now += 9
+        runScheduled()
+      }
+    then:
+      sent[envId].size() == 1
+      sent[envId][0].size() == 6
+  }
+
+  def "environments are held separately"() {
+    given:
+      def other = UUID.randomUUID()
+    when:
+      coalescer.offer(envId, [feature(UUID.randomUUID(), 1)])
+      coalescer.offer(other, [feature(UUID.randomUUID(), 1)])
+      now += 10
+      runScheduled()
+    then:
+      sent.keySet() == [envId, other] as Set
+  }
+}
@@ -1,8 +1,17 @@
 package io.featurehub.edge.bucket
 
 import cd.connect.app.config.ThreadLocalConfigurationSource
+import io.featurehub.edge.FeatureTransformer
+import io.featurehub.edge.KeyParts
+import io.featurehub.edge.client.ClientConnection
+import io.featurehub.edge.client.EjectHandler
+import io.featurehub.edge.client.EventOutputHolder
+import io.featurehub.edge.client.TimedBucketClientConnection
+import io.featurehub.edge.stats.StatRecorder
 import spock.lang.Specification
 
+import java.util.concurrent.Executor
+
 class EventOutputBucketServiceSpec extends Specification {
   def cleanup() {
     ThreadLocalConfigurationSource.clearContext()
@@ -36,4 +45,81 @@ class EventOutputBucketServiceSpec extends Specification {
    then:
        timerStarted
   }
+
+  EventOutputBucketService newService(Map<String, String> config) {
+    ThreadLocalConfigurationSource.createContext(config)
+    return new EventOutputBucketService() {
+      @Override
+      protected Executor timerExecutor() {
+        return { Runnable r -> r.run() } as Executor
+      }
+
+      @Override
+      protected void startTimer() {
+      }
+    }
+  }
+
+  def "connections are dropped after the configured time and heartbeated in between"() {
+    given:
+      def service = newService(["edge.sse.drop-after-seconds": "2", "edge.sse.heartbeat-period": "1",
+                                "edge.sse.ticks-per-second": "2"])
+      def conn = Mock(ClientConnection)
+    when:
+      service.putInBucket(conn)
+      3.times { service.tick() }
+    then:
+      (1.._) * conn.isClosed() >> false
+      1 * conn.heartbeat()
+      0 * conn.close()
+    when:
+      service.tick()
+    then:
+      (1.._) * conn.isClosed() >> false
+      1 * conn.close()
+  }
+
+  def "a connection that has already gone away isn't said goodbye to, but is told to let go"() {
+    given:
+      def service = newService(["edge.sse.drop-after-seconds": "2", "edge.sse.ticks-per-second": "1"])
+      def conn = Mock(ClientConnection) {
+        isClosed() >> true
+      }
+    when:
+      service.putInBucket(conn)
+      2.times { service.tick() }
+    then:
+      0 * conn.close()
+      1 * conn.close(false)
+  }
+
+  def "a connection whose output was closed underneath it tells its handlers when its time is up"() {
+    given:
+      def service = newService(["edge.sse.drop-after-seconds": "2", "edge.sse.ticks-per-second": "1"])
+      def output = Mock(EventOutputHolder)
+      def conn = new TimedBucketClientConnection(output, new KeyParts("default", UUID.randomUUID(), "key"),
+        Mock(FeatureTransformer), Mock(StatRecorder), null, null, null, service)
+      def handler = Mock(EjectHandler)
+      conn.registerEjection(handler)
+      service.putInBucket(conn)
+    when: "the client goes away without us writing to it"
+      output.isClosed() >> true
+      2.times { service.tick() }
+    then:
+      1 * handler.eject(conn)
+      0 * output.write(_, _, _, _)
+  }
+
+  def "connections Dacha couldn't answer for are dropped within the delay"() {
+    given:
+      def service = newService(["edge.dacha.delay-slots": "2", "edge.sse.ticks-per-second": "2"])
+      def conn = Mock(ClientConnection) {
+        isClosed() >> false
+      }
+    when:
+      service.dachaIsUnavailable(conn)
+      4.times { service.tick() }
+    then:
+      1 * conn.close()
+  }
 }
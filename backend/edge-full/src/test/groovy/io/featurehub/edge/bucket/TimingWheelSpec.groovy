@@ -0,0 +1,123 @@
+package io.featurehub.edge.bucket
+
+import io.featurehub.edge.client.ClientConnection
+import spock.lang.Specification
+
+import java.util.concurrent.Executor
+
+class TimingWheelSpec extends Specification {
+  List<ClientConnection> actedOn
+
+  def setup() {
+    actedOn = []
+  }
+
+  ClientConnection conn(boolean closed = false) {
+    return Mock(ClientConnection) {
+      isClosed() >> closed
+      connectionId() >> UUID.randomUUID()
+    }
+  }
+
+  def "a connection comes up a full turn after it was added, and only once"() {
+    given:
+      def wheel = new TimingWheel(3, false, { actedOn << it })
+      def first = conn()
+    when:
+      wheel.add(first)
+      2.times { wheel.tick() }
+    then:
+      actedOn.isEmpty()
+    when:
+      wheel.tick()
+    then:
+      actedOn == [first]
+      wheel.size() == 0
+    when:
+      3.times { wheel.tick() }
+    then:
+      actedOn == [first]
+  }
+
+  def "connections added through a turn come up on different ticks"() {
+    given:
+      def wheel = new TimingWheel(4, false, { actedOn << it })
+      def conns = (1..4).collect { conn() }
+    when:
+      conns.each { wheel.add(it); wheel.tick() }
+    then:
+      actedOn == [conns[0]]
+    when:
+      wheel.tick()
+    then:
+      actedOn == conns[0..1]
+  }
+
+  def "a repeating wheel comes back to its connections every turn until they close"() {
+    given:
+      def wheel = new TimingWheel(2, true, { actedOn << it })
+      boolean closed = false
+      def c = Mock(ClientConnection) {
+        isClosed() >> { closed }
+      }
+    when:
+      wheel.add(c)
+      4.times { wheel.tick() }
+    then:
+      actedOn == [c, c]
+    when:
+      closed = true
+      2.times { wheel.tick() }
+    then:
+      1 * c.close(false)
+      actedOn == [c, c]
+      wheel.size() == 0
+  }
+
+  def "closed connections are only told to let go and one that fails doesn't stop the rest"() {
+    given:
+      def wheel = new TimingWheel(1, false, { ClientConnection c -> actedOn << c; throw new RuntimeException("gone") })
+      def open = [conn(), conn()]
+      def closed = conn(true)
+    when:
+      wheel.add(open[0])
+      wheel.add(closed)
+      wheel.add(open[1])
+      wheel.tick()
+    then:
+      actedOn == open
+      1 * closed.close(false)
+  }
+
+  def "the ticking thread hands the connections to the executor rather than waiting on them"() {
+    given:
+      List<Runnable> pending = []
+      def wheel = new TimingWheel(1, false, { actedOn << it }, { Runnable r -> pending << r } as Executor)
+      def c = conn()
+    when:
+      wheel.add(c)
+      wheel.tick()
+    then:
+      actedOn.isEmpty()
+      pending.size() == 1
+    when:
+      pending[0].run()
+    then:
+      actedOn == [c]
+  }
+
+  def "a connection can be brought up sooner than a full turn"() {
+    given:
+      def wheel = new TimingWheel(10, false, { actedOn << it })
+      def c = conn()
+    when:
+      wheel.addAfter(c, 2)
+      2.times { wheel.tick() }
+    then:
+      actedOn.isEmpty()
+    when:
+      wheel.tick()
+    then:
+      actedOn == [c]
+  }
+}
@@ -0,0 +1,133 @@
+package io.featurehub.edge.client
+
+import io.featurehub.dacha.model.CacheEnvironmentFeature
+import io.featurehub.dacha.model.CacheFeature
+import io.featurehub.dacha.model.CacheFeatureValue
+import io.featurehub.dacha.model.PublishAction
+import io.featurehub.dacha.model.PublishFeatureValue
+import io.featurehub.edge.FeatureTransformer
+import io.featurehub.edge.KeyParts
+import io.featurehub.edge.strategies.ClientContext
+import io.featurehub.sse.model.FeatureState
+import io.featurehub.sse.model.SSEResultState
+import spock.lang.Specification
+
+class FeatureFramesSpec extends Specification {
+  FeatureTransformer transformer
+  PublishFeatureValue update
+  UUID envId
+
+  def setup() {
+    transformer = Mock(FeatureTransformer)
+    envId = UUID.randomUUID()
+    update = new PublishFeatureValue().action(PublishAction.UPDATE).environmentId(envId)
+      .feature(new CacheEnvironmentFeature().feature(new CacheFeature().id(UUID.randomUUID()).key("banner"))
+        .value(new CacheFeatureValue().id(UUID.randomUUID()).version(2).retired(false)))
+  }
+
+  ClientContext context(String header, String key = "server-key") {
+    return ClientContext.decode(header == null ? null : [header], [new KeyParts("default", envId, key)])
+  }
+
+  def "connections with the same context share one encoding of the update"() {
+    given:
+      def frames = new FeatureFrames([update], transformer)
+    when:
+      def first = frames.frames(context("country=nz"), false)
+      def second = frames.frames(context("country=nz"), false)
+    then:
+      1 * transformer.transform(update.feature, _, false) >> new FeatureState().key("banner").version(2)
+      first.is(second)
+      first*.state == [SSEResultState.FEATURE]
+      first[0].data.contains('"banner"')
+      frames.encodings == 1
+  }
+
+  def "different contexts and different extended data permissions are each encoded for"() {
+    given:
+      def frames = new FeatureFrames([update], transformer)
+    when:
+      frames.frames(context("country=nz"), false)
+      frames.frames(context("country=au"), false)
+      frames.frames(context("country=nz"), true)
+    then:
+      3 * transformer.transform(_, _, _) >> new FeatureState().key("banner")
+      frames.encodings == 3
+  }
+
+  def "contexts with a userkey or sessionkey are encoded for each connection and not kept"() {
+    given:
+      def frames = new FeatureFrames([update], transformer)
+    when:
+      def first = frames.frames(context(header), false)
+      def second = frames.frames(context(header), false)
+    then:
+      2 * transformer.transform(update.feature, _, false) >> new FeatureState().key("banner")
+      !first.is(second)
+      first*.data == second*.data
+      frames.encodings == 0
+    where:
+      header << ["userkey=fred,country=nz", "sessionkey=abc"]
+  }
+
+  def "only so many groups are kept for an update, the rest are encoded each time"() {
+    given:
+      def frames = new FeatureFrames([update], transformer)
+      transformer.transform(_, _, _) >> new FeatureState().key("banner")
+      (1..FeatureFrames.MAX_GROUPS).each { frames.frames(context("version=${it}"), false) }
+    when:
+      def first = frames.frames(context("version=0"), false)
+      def second = frames.frames(context("version=0"), false)
+      def kept = frames.frames(context("version=1"), false)
+    then:
+      frames.encodings == FeatureFrames.MAX_GROUPS
+      !first.is(second)
+      kept.is(frames.frames(context("version=1"), false))
+  }
+
+  def "client evaluated connections share an encoding whatever their context"() {
+    given:
+      def frames = new FeatureFrames([update], transformer)
+    when:
+      frames.frames(context("country=nz", "client*key"), false)
+      frames.frames(context(null, "client*key"), false)
+    then:
+      1 * transformer.transform(_, _, _) >> new FeatureState().key("banner")
+      frames.encodings == 1
+  }
+
+  def "deleted and retired features are sent as deletes"() {
+    given:
+      def deleted = new PublishFeatureValue().action(PublishAction.DELETE).environmentId(envId).feature(update.feature)
+      def retired = new PublishFeatureValue().action(PublishAction.UPDATE).environmentId(envId)
+        .feature(new CacheEnvironmentFeature().feature(update.feature.feature).value(new CacheFeatureValue().retired(true)))
+      transformer.transform(_, _, _) >> new FeatureState().key("banner")
+    expect:
+      new FeatureFrames([update, deleted, retired], transformer).frames(context(null), false)*.state ==
+        [SSEResultState.FEATURE, SSEResultState.DELETE_FEATURE, SSEResultState.DELETE_FEATURE]
+  }
+
+  def "a batched update sends the features that are still there in one features message"() {
+    given:
+      def other = new PublishFeatureValue().action(PublishAction.CREATE).environmentId(envId)
+        .feature(new CacheEnvironmentFeature().feature(new CacheFeature().id(UUID.randomUUID()).key("menu")))
+      def deleted = new PublishFeatureValue().action(PublishAction.DELETE).environmentId(envId)
+        .feature(new CacheEnvironmentFeature().feature(new CacheFeature().id(UUID.randomUUID()).key("old")))
+    when:
+      def frames = new FeatureFrames([update, other, deleted], transformer, true).frames(context(null), false)
+    then:
+      1 * transformer.transform([update.feature, other.feature], _, false) >>
+        [new FeatureState().key("banner"), new FeatureState().key("menu")]
+      1 * transformer.transform(deleted.feature, _, false) >> new FeatureState().key("old")
+      frames*.state == [SSEResultState.FEATURES, SSEResultState.DELETE_FEATURE]
+      frames[0].data.startsWith('[')
+      frames[0].data.contains('"menu"')
+  }
+
+  def "a batch of one is sent as a plain feature message"() {
+    given:
+      transformer.transform(_, _, _) >> new FeatureState().key("banner")
+    expect:
+      new FeatureFrames([update], transformer, true).frames(context(null), false)*.state == [SSEResultState.FEATURE]
+  }
+}
@@ -0,0 +1,166 @@
+package io.featurehub.edge.client
+
+import jakarta.ws.rs.core.MediaType
+import spock.lang.Specification
+
+import java.util.concurrent.Executor
+
+class QueuedEventOutputSpec extends Specification {
+  EventOutputHolder output
+  List<Runnable> pending
+  Executor writer
+  long now
+
+  def setup() {
+    output = Mock(EventOutputHolder)
+    pending = []
+    // the writes only happen when we say so
+    writer = { Runnable r -> pending << r } as Executor
+    now = 1000
+  }
+
+  QueuedEventOutput queued(int size = 3, long stall = 100) {
+    return new QueuedEventOutput(output, size, stall, writer, { -> now })
+  }
+
+  void runWriter() {
+    while (!pending.isEmpty()) {
+      pending.remove(0).run()
+    }
+  }
+
+  def "messages are written in order by the writer, not the caller"() {
+    given:
+      def out = queued()
+    when:
+      out.write("feature", MediaType.TEXT_PLAIN_TYPE, null, "1")
+      out.write("feature", MediaType.TEXT_PLAIN_TYPE, "e1", "2")
+    then:
+      0 * output.write(_, _, _, _)
+      pending.size() == 1
+    when:
+      runWriter()
+    then:
+      1 * output.write("feature", _, null, "1")
+    then:
+      1 * output.write("feature", _, "e1", "2")
+  }
+
+  def "a client that lets its queue fill up is disconnected"() {
+    given:
+      def out = queued(2)
+      def before = QueuedEventOutput.evictedCounter.labels("overflow").get()
+    when:
+      3.times { out.write("feature", MediaType.TEXT_PLAIN_TYPE, null, "x") }
+    then:
+      thrown(SlowClientEvictedException)
+      1 * output.close()
+      out.isClosed()
+      QueuedEventOutput.evictedCounter.labels("overflow").get() == before + 1
+    when:
+      runWriter()
+    then:
+      0 * output.write(_, _, _, _)
+  }
+
+  def "a failed write closes the connection"() {
+    given:
+      def out = queued()
+      output.write(_, _, _, _) >> { throw new IOException("gone") }
+    when:
+      out.write("feature", MediaType.TEXT_PLAIN_TYPE, null, "x")
+      runWriter()
+    then:
+      out.isClosed()
+  }
+
+  def "a client still stuck on a write when the next message turns up is disconnected"() {
+    given:
+      boolean stalled = false
+      def out = new QueuedEventOutput(output, 10, 100, { Runnable r -> r.run() } as Executor, { -> now })
+      output.write(_, _, _, _) >> {
+        // while this write is in progress, someone else sends a message
+        now += 500
+        try {
+          out.write("feature", MediaType.TEXT_PLAIN_TYPE, null, "second")
+        } catch (IOException ignored) {
+          stalled = true
+        }
+      }
+    when:
+      out.write("feature", MediaType.TEXT_PLAIN_TYPE, null, "first")
+    then:
+      thrown(IOException)
+      stalled
+      out.isClosed()
+  }
+
+  def "a client stuck on a write is disconnected by the stall check without waiting for another message"() {
+    given:
+      Boolean checked = null
+      int evicted = 0
+      def before = QueuedEventOutput.evictedCounter.labels("stalled").get()
+      def out = queued()
+      out.onEvicted = { -> evicted++ }
+      out.write("feature", MediaType.TEXT_PLAIN_TYPE, null, "x")
+    when:
+      runWriter()
+    then:
+      1 * output.write(_, _, _, _) >> {
+        // the check runs on its own thread while the write is stuck
+        now += 500
+        checked = out.closeIfStalled()
+      }
+      1 * output.close()
+      checked
+      evicted == 1
+      out.isClosed()
+      QueuedEventOutput.evictedCounter.labels("stalled").get() == before + 1
+  }
+
+  def "the stall check leaves a client that is keeping up alone"() {
+    given:
+      def out = queued()
+      out.write("feature", MediaType.TEXT_PLAIN_TYPE, null, "x")
+    when:
+      now += 500
+      def idle = out.closeIfStalled()
+      runWriter()
+      def writing = false
+      output.write(_, _, _, _) >> { writing = out.closeIfStalled() }
+      out.write("feature", MediaType.TEXT_PLAIN_TYPE, null, "y")
+      runWriter()
+    then:
+      !idle
+      !writing
+      !out.isClosed()
+      0 * output.close()
+  }
+
+  def "closing writes what is already queued first"() {
+    given:
+      def out = queued()
+    when:
+      out.write("bye", MediaType.TEXT_PLAIN_TYPE, null, "closed")
+      out.close()
+    then:
+      out.isClosed()
+      0 * output.close()
+    when:
+      runWriter()
+    then:
+      1 * output.write("bye", _, null, "closed")
+    then:
+      1 * output.close()
+  }
+
+  def "nothing can be sent once it is closed"() {
+    given:
+      def out = queued()
+      out.close()
+    when:
+      out.write("feature", MediaType.TEXT_PLAIN_TYPE, null, "x")
+    then:
+      thrown(IOException)
+  }
+}
@@ -14,6 +14,7 @@ import io.featurehub.edge.stats.StatRecorder
 import io.featurehub.mr.model.FeatureValueType
 import io.featurehub.sse.model.FeatureEnvironmentCollection
 import io.featurehub.sse.model.FeatureState
+import io.featurehub.sse.model.SSEResultState
 import spock.lang.Specification
 
 class TimedBucketClientConnectionSpec extends Specification {
@@ -79,4 +80,74 @@ class TimedBucketClientConnectionSpec extends Specification {
 //    then: "i do NOT get an update"
 //      0 * output.write(_, _, _, _)
 //  }
+
+  def "ejection handlers are told once when the connection closes, unless they have been deregistered"() {
+    given:
+      def first = Mock(EjectHandler)
+      def second = Mock(EjectHandler)
+      def third = Mock(EjectHandler)
+      conn.registerEjection(first)
+      def handle = conn.registerEjection(second)
+      conn.registerEjection(third)
+    when:
+      conn.deregisterEjection(handle)
+      conn.close(false)
+      conn.close(false)
+    then:
+      1 * first.eject(conn)
+      0 * second.eject(_)
+      1 * third.eject(conn)
+      conn.isClosed()
+  }
+
+  def "a handler registered after another is deregistered gets a handle of its own"() {
+    given:
+      def first = Mock(EjectHandler)
+      def second = Mock(EjectHandler)
+      def third = Mock(EjectHandler)
+      def firstHandle = conn.registerEjection(first)
+      def secondHandle = conn.registerEjection(second)
+    when:
+      conn.deregisterEjection(firstHandle)
+      def thirdHandle = conn.registerEjection(third)
+      conn.deregisterEjection(thirdHandle)
+      conn.close(false)
+    then:
+      thirdHandle != secondHandle
+      0 * first.eject(_)
+      1 * second.eject(conn)
+      0 * third.eject(_)
+  }
+
+  def "a client evicted for being too slow is closed and its ejection handlers told"() {
+    given:
+      def handler = Mock(EjectHandler)
+      conn.registerEjection(handler)
+      output.write(_, _, _, _) >> { throw new SlowClientEvictedException("overflow") }
+    when:
+      conn.writeMessage(SSEResultState.FEATURE, "{}")
+    then:
+      noExceptionThrown()
+      1 * handler.eject(conn)
+  }
+
+  def "updates that arrive before the features have been sent are held and then sent after them"() {
+    given:
+      def update = new PublishFeatureValue().action(PublishAction.UPDATE).environmentId(apiKey.environmentId)
+        .feature(new CacheEnvironmentFeature().feature(new CacheFeature().id(UUID.randomUUID()).key("banner")))
+      def frames = new FeatureFrames([update], featureTransformer)
+      def response = new FeatureRequestResponse(new FeatureEnvironmentCollection().id(apiKey.environmentId).features([]),
+        FeatureRequestSuccess.SUCCESS, apiKey, "etag", null, false)
+    when:
+      conn.notifyFeature(frames)
+    then:
+      0 * output.write(_, _, _, _)
+    when:
+      conn.initResponse(response)
+    then:
+      1 * output.write(SSEResultState.FEATURES.toString(), _, "etag", "[]")
+    then:
+      1 * featureTransformer.transform(update.feature, _, false) >> new FeatureState().key("banner")
+      1 * output.write(SSEResultState.FEATURE.toString(), _, null, { it.contains('"banner"') })
+  }
 }
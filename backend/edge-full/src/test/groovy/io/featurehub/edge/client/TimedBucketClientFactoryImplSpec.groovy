@@ -0,0 +1,73 @@
+package io.featurehub.edge.client
+
+import cd.connect.app.config.ThreadLocalConfigurationSource
+import io.featurehub.edge.FeatureTransformer
+import io.featurehub.edge.KeyParts
+import io.featurehub.edge.bucket.BucketService
+import io.featurehub.edge.stats.StatRecorder
+import org.glassfish.jersey.media.sse.EventOutput
+import spock.lang.Specification
+
+class TimedBucketClientFactoryImplSpec extends Specification {
+  TimedBucketClientFactoryImpl factory
+  UUID envId
+
+  def setup() {
+    factory = new TimedBucketClientFactoryImpl(Mock(FeatureTransformer), Mock(BucketService), Mock(StatRecorder))
+    envId = UUID.randomUUID()
+  }
+
+  def cleanup() {
+    ThreadLocalConfigurationSource.clearContext()
+  }
+
+  TimedBucketClientConnection connect(String serviceKey, String header) {
+    return factory.createBucket(Mock(EventOutputHolder), new KeyParts("default", envId, new String(serviceKey)),
+      header == null ? null : [new String(header)], null, null)
+  }
+
+  def "connections with the same key and context share them"() {
+    when:
+      def first = connect("key", "userkey=fred,country=nz")
+      def second = connect("key", "userkey=fred,country=nz")
+    then:
+      first.key.is(second.key)
+      first.clientContext.is(second.clientContext)
+      first.connectionId() != second.connectionId()
+  }
+
+  def "a different context or key is not shared"() {
+    when:
+      def first = connect("key", "userkey=fred")
+      def second = connect("key", "userkey=mary")
+      def third = connect("other", "userkey=fred")
+    then:
+      !first.clientContext.is(second.clientContext)
+      first.clientContext.get("userkey") == ["fred"]
+      second.clientContext.get("userkey") == ["mary"]
+      !first.key.is(third.key)
+  }
+
+  def "client evaluated keys decode the same header differently, so they are kept apart"() {
+    when:
+      def server = connect("key", "userkey=fred")
+      def client = connect("key*client", "userkey=fred")
+    then:
+      !server.clientContext.isClientEvaluation
+      client.clientContext.isClientEvaluation
+  }
+
+  def "a connection whose queued output is evicted by the stall check lets go of its handlers"() {
+    given:
+      ThreadLocalConfigurationSource.createContext(["edge.sse.write-queue-size": "10"])
+      factory = new TimedBucketClientFactoryImpl(Mock(FeatureTransformer), Mock(BucketService), Mock(StatRecorder))
+      def conn = factory.createBucket(new EventOutput(), new KeyParts("default", envId, "key"), null, null, null)
+      def handler = Mock(EjectHandler)
+      conn.registerEjection(handler)
+    when:
+      ((QueuedEventOutput) conn.output).onEvicted.invoke()
+    then:
+      1 * handler.eject(conn)
+      conn.isClosed()
+  }
+}
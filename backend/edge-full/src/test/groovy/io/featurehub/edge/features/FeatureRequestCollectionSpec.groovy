@@ -3,7 +3,11 @@ package io.featurehub.edge.features
 import io.featurehub.edge.FeatureTransformer
 import io.featurehub.edge.KeyParts
 import io.featurehub.edge.strategies.ClientContext
+import io.featurehub.dacha.model.CacheEnvironmentFeature
+import io.featurehub.dacha.model.CacheFeature
+import io.featurehub.dacha.model.DachaFeatureChange
 import io.featurehub.dacha.model.DachaKeyDetailsResponse
+import io.featurehub.sse.model.FeatureState
 import spock.lang.Specification
 
 import java.util.concurrent.CompletableFuture
@@ -30,7 +34,7 @@ class FeatureRequestCollectionSpec extends Specification {
     given: "we have an invalid etag holder"
       def holder = new EtagStructureHolder(Map.of(kp1, "x", kp2, "y"), "0", false)
     and: "we have created our collection"
-      def coll = new FeatureRequestCollection(2, transformer, context, future, holder)
+      def coll = new FeatureRequestCollection(2, transformer, new LruEvaluatedFeatureCache(), new LruEncodedResponseCache(), context, future, holder)
     when: "we drop our requests in"
       def r1 = Mock(FeatureRequester)
       r1.key >> kp1
@@ -50,7 +54,7 @@ class FeatureRequestCollectionSpec extends Specification {
     given: "we have an valid etag holder"
       def holder = new EtagStructureHolder(Map.of(kp1, "x", kp2, "y"), "0", true)
     and: "we have created our collection"
-      def coll = new FeatureRequestCollection(2, transformer, context, future, holder)
+      def coll = new FeatureRequestCollection(2, transformer, new LruEvaluatedFeatureCache(), new LruEncodedResponseCache(), context, future, holder)
     when: "we drop our requests in"
       def r1 = Mock(FeatureRequester)
       def details1 = new DachaKeyDetailsResponse().etag("x")
@@ -74,7 +78,7 @@ class FeatureRequestCollectionSpec extends Specification {
     given: "we have an valid etag holder"
       def holder = new EtagStructureHolder(Map.of(kp1, "x", kp2, "y"), "0", true)
     and: "we have created our collection"
-      def coll = new FeatureRequestCollection(2, transformer, context, future, holder)
+      def coll = new FeatureRequestCollection(2, transformer, new LruEvaluatedFeatureCache(), new LruEncodedResponseCache(), context, future, holder)
     when: "we drop our requests in"
       def r1 = Mock(FeatureRequester)
       def details1 = new DachaKeyDetailsResponse().etag("x").features([])
@@ -101,7 +105,7 @@ class FeatureRequestCollectionSpec extends Specification {
     given: "we have an valid etag holder"
       def holder = new EtagStructureHolder(Map.of(kp1, "x", kp2, "y"), "0", true)
     and: "we have created our collection"
-      def coll = new FeatureRequestCollection(2, transformer, context, future, holder)
+      def coll = new FeatureRequestCollection(2, transformer, new LruEvaluatedFeatureCache(), new LruEncodedResponseCache(), context, future, holder)
     when: "we drop our requests in"
       def r1 = Mock(FeatureRequester)
       def details1 = new DachaKeyDetailsResponse().etag("x").features([])
@@ -123,4 +127,117 @@ class FeatureRequestCollectionSpec extends Specification {
       responses[1].etag == 'z'
       1 * transformer.transform([], context, false) >> []
   }
+
+  def "client evaluated keys share the features transformed for the same version of the environment"() {
+    given: "a client evaluated context and a cache to hold the results"
+      def clientContext = new ClientContext(true)
+      def encodedCache = new LruEncodedResponseCache()
+      def holder = new EtagStructureHolder([:], "0", false)
+      def requester = Mock(FeatureRequester)
+      requester.key >> kp1
+      requester.details >> new DachaKeyDetailsResponse().etag("x").features([])
+    when: "two requests complete for the same etag"
+      def futures = (1..2).collect {
+        def f = new CompletableFuture<List<FeatureRequestResponse>>()
+        new FeatureRequestCollection(1, transformer, new LruEvaluatedFeatureCache(), encodedCache, clientContext, f, holder)
+          .complete(requester)
+        f.get()[0]
+      }
+    then: "the features were transformed once and both got the same encoded environment"
+      1 * transformer.transform([], clientContext, false) >> []
+      futures[0].success == FeatureRequestSuccess.SUCCESS
+      futures[0].encoded != null
+      futures[0].encoded.is(futures[1].encoded)
+      futures[0].environment.is(futures[1].environment)
+      futures[0].environment.id == kp1.environmentId
+  }
+
+  def "a not modified answer from dacha is a NO_CHANGE response that still has the environment info"() {
+    given: "we have an valid etag holder"
+      def holder = new EtagStructureHolder(Map.of(kp1, "x"), "0", true)
+    and: "we have created our collection"
+      def coll = new FeatureRequestCollection(1, transformer, new LruEvaluatedFeatureCache(), new LruEncodedResponseCache(), context, future, holder)
+    when: "dacha tells us the features haven't changed"
+      def r1 = Mock(FeatureRequester)
+      r1.key >> kp1
+      r1.details >> new DachaKeyDetailsResponse().etag("x").notModified(true).environmentInfo(["mgmt.publish": "true"])
+      coll.complete(r1)
+    and: "we wait for the future"
+      def responses = future.get()
+    then:
+      responses.size() == 1
+      responses[0].success == FeatureRequestSuccess.NO_CHANGE
+      responses[0].envInfo == ["mgmt.publish": "true"]
+      0 * transformer._
+  }
+
+  def "a client asking for changes gets only the features changed or deleted since its etag"() {
+    given: "the client has etag e1 and wants just the changes"
+      def holder = new EtagStructureHolder(Map.of(kp1, "e1"), "0", true, true)
+      def coll = new FeatureRequestCollection(1, transformer, new LruEvaluatedFeatureCache(), new LruEncodedResponseCache(), context, future, holder)
+    and: "since e1 one feature has changed and another was deleted"
+      def changed = new CacheEnvironmentFeature().feature(new CacheFeature().id(UUID.randomUUID()))
+      def unchanged = new CacheEnvironmentFeature().feature(new CacheFeature().id(UUID.randomUUID()))
+      def deleted = UUID.randomUUID()
+      def r1 = Mock(FeatureRequester)
+      r1.key >> kp1
+      r1.details >> new DachaKeyDetailsResponse().etag("e3").features([changed, unchanged]).journal([
+        new DachaFeatureChange().etag("e0").featureId(unchanged.feature.id),
+        new DachaFeatureChange().etag("e1").featureId(changed.feature.id),
+        new DachaFeatureChange().etag("e2").featureId(deleted),
+      ])
+    when:
+      coll.complete(r1)
+      def responses = future.get()
+    then:
+      1 * transformer.transform([changed], context, false) >> [new FeatureState().key("changed")]
+      responses[0].success == FeatureRequestSuccess.SUCCESS
+      responses[0].etag == "e3"
+      responses[0].environment.delta
+      responses[0].environment.features*.key == ["changed"]
+      responses[0].environment.deletedFeatures == [deleted]
+  }
+
+  def "a client whose etag is older than the journal, or that didn't ask for changes, gets everything"() {
+    given:
+      def holder = new EtagStructureHolder(Map.of(kp1, "old"), "0", true, acceptsDelta)
+      def coll = new FeatureRequestCollection(1, transformer, new LruEvaluatedFeatureCache(), new LruEncodedResponseCache(), context, future, holder)
+      def r1 = Mock(FeatureRequester)
+      r1.key >> kp1
+      r1.details >> new DachaKeyDetailsResponse().etag("e3").features([]).journal([
+        new DachaFeatureChange().etag(journalEtag).featureId(UUID.randomUUID())])
+    when:
+      coll.complete(r1)
+      def responses = future.get()
+    then:
+      1 * transformer.transform([], context, false) >> []
+      responses[0].success == FeatureRequestSuccess.SUCCESS
+      responses[0].environment.delta == null
+    where:
+      acceptsDelta | journalEtag
+      true         | "e2"
+      false        | "old"
+  }
+
+  def "an unchanged environment asked for alongside a changed one is an empty set of changes"() {
+    given:
+      def holder = new EtagStructureHolder(Map.of(kp1, "x", kp2, "y"), "0", true, true)
+      def coll = new FeatureRequestCollection(2, transformer, new LruEvaluatedFeatureCache(), new LruEncodedResponseCache(), context, future, holder)
+      def r1 = Mock(FeatureRequester)
+      r1.key >> kp1
+      r1.details >> new DachaKeyDetailsResponse().etag("x").features([])
+      def r2 = Mock(FeatureRequester)
+      r2.key >> kp2
+      r2.details >> new DachaKeyDetailsResponse().etag("z").features([]).journal([])
+    when:
+      coll.complete(r1)
+      coll.complete(r2)
+      def responses = future.get()
+    then: "only the changed one had its features transformed"
+      1 * transformer.transform([], context, false) >> []
+      responses[0].environment.delta
+      responses[0].environment.features == []
+      responses[0].environment.deletedFeatures == []
+      responses[1].environment.delta == null
+  }
 }
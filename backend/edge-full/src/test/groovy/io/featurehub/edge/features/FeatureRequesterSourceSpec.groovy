@@ -1,26 +1,36 @@
 package io.featurehub.edge.features
 
+import io.featurehub.dacha.api.AsyncDachaApiKeyService
 import io.featurehub.dacha.api.DachaApiKeyService
 import io.featurehub.edge.KeyParts
 import io.featurehub.dacha.model.DachaKeyDetailsResponse
+import jakarta.ws.rs.NotFoundException
 import spock.lang.Specification
 
+import java.time.Duration
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.CompletionException
+
 class FeatureRequesterSourceSpec extends Specification {
   DachaApiKeyService api
   EdgeConcurrentRequestPool executor
   DachaFeatureRequestSubmitter submitter
+  KeyDetailsCache keyDetailsCache
+  DachaKeyBatcher batcher
 
   def setup() {
     api = Mock(DachaApiKeyService)
     executor = Mock(EdgeConcurrentRequestPool)
     submitter = Mock(DachaFeatureRequestSubmitter)
+    keyDetailsCache = Mock(KeyDetailsCache)
+    batcher = Mock(DachaKeyBatcher)
   }
 
   def "I should be able to submit a bunch of notifiers and after the first one, it should trigger an execution event"() {
     given: "i have a key"
       def key = new KeyParts("default", UUID.randomUUID(), "1234")
     and: "a service"
-      def service = new FeatureRequesterSource(api, key, executor, submitter)
+      def service = new FeatureRequesterSource(api, key, null, null, executor, submitter, keyDetailsCache, batcher)
     when:
       service.add(Mock(FeatureRequestCompleteNotifier))
     then:
@@ -31,7 +41,7 @@ class FeatureRequesterSourceSpec extends Specification {
     given: "i have a key"
       def key = new KeyParts("default", UUID.randomUUID(), "1234")
     and: "a service"
-      def service = new FeatureRequesterSource(api, key, executor, submitter)
+      def service = new FeatureRequesterSource(api, key, null, null, executor, submitter, keyDetailsCache, batcher)
       def notifier = Mock(FeatureRequestCompleteNotifier)
     when:
       List<Thread> threads = []
@@ -54,7 +64,7 @@ class FeatureRequesterSourceSpec extends Specification {
     given: "i have a key"
       def key = new KeyParts("default", UUID.randomUUID(), "1234")
     and: "a service"
-      def service = new FeatureRequesterSource(api, key, executor, submitter)
+      def service = new FeatureRequesterSource(api, key, null, null, executor, submitter, keyDetailsCache, batcher)
       def notifier = Mock(FeatureRequestCompleteNotifier)
     and:
       def org = UUID.randomUUID()
@@ -67,9 +77,9 @@ class FeatureRequesterSourceSpec extends Specification {
       1 * executor.execute({ Runnable task ->
         task.run()
       })
-      1 * api.getApiKeyDetails(key.environmentId, key.serviceKey, _) >>
+      1 * api.getApiKeyDetails(key.environmentId, key.serviceKey, _, null) >>
         new DachaKeyDetailsResponse().portfolioId(port).organizationId(org).applicationId(app).serviceKeyId(sid)
-      1 * submitter.requestForKeyComplete(key)
+      1 * submitter.requestForKeyComplete(key, null)
       1 * notifier.complete(service)
       key.organisationId == org
       key.portfolioId == port
@@ -82,7 +92,7 @@ class FeatureRequesterSourceSpec extends Specification {
     given: "i have a key"
       def key = new KeyParts("default", UUID.randomUUID(), "1234")
     and: "a service"
-      def service = new FeatureRequesterSource(api, key, executor, submitter)
+      def service = new FeatureRequesterSource(api, key, null, null, executor, submitter, keyDetailsCache, batcher)
       def notifier = Mock(FeatureRequestCompleteNotifier)
     when:
       service.add(notifier)
@@ -90,9 +100,9 @@ class FeatureRequesterSourceSpec extends Specification {
       1 * executor.execute({ Runnable task ->
         task.run()
       })
-      1 * api.getApiKeyDetails(key.environmentId, key.serviceKey, _) >>
+      1 * api.getApiKeyDetails(key.environmentId, key.serviceKey, _, null) >>
         { -> throw new RuntimeException() }
-      1 * submitter.requestForKeyComplete(key)
+      1 * submitter.requestForKeyComplete(key, null)
       1 * notifier.complete(service)
       key.organisationId == null
       key.portfolioId == null
@@ -101,4 +111,173 @@ class FeatureRequesterSourceSpec extends Specification {
       service.notifyListener.size() == 0
 
   }
+
+  def "details the near cache already has are used straight away without going to dacha"() {
+    given: "i have a key"
+      def key = new KeyParts("default", UUID.randomUUID(), "1234")
+    and: "a service"
+      def service = new FeatureRequesterSource(api, key, null, null, executor, submitter, keyDetailsCache, batcher)
+      def notifier = Mock(FeatureRequestCompleteNotifier)
+    and:
+      def app = UUID.randomUUID()
+      def details = new DachaKeyDetailsResponse().applicationId(app).etag("e1")
+    when:
+      service.add(notifier)
+    then:
+      1 * keyDetailsCache.get(key) >> details
+      0 * executor.execute(_)
+      0 * api.getApiKeyDetails(_, _, _, _)
+      1 * submitter.requestForKeyComplete(key, null)
+      1 * notifier.complete(service)
+      service.details.is(details)
+      key.applicationId == app
+  }
+
+  def "details from dacha are put in the near cache along with the generation from before the request"() {
+    given: "i have a key"
+      def key = new KeyParts("default", UUID.randomUUID(), "1234")
+    and: "a service"
+      def service = new FeatureRequesterSource(api, key, null, null, executor, submitter, keyDetailsCache, batcher)
+      def details = new DachaKeyDetailsResponse().etag("e1")
+      def calls = []
+    when:
+      service.add(Mock(FeatureRequestCompleteNotifier))
+    then:
+      1 * keyDetailsCache.get(key) >> null
+      1 * executor.execute({ Runnable task ->
+        task.run()
+      })
+      1 * keyDetailsCache.generation(key.environmentId) >> { calls << "generation"; 7L }
+      1 * api.getApiKeyDetails(key.environmentId, key.serviceKey, _, null) >> { calls << "dacha"; details }
+      1 * keyDetailsCache.put(key, 7L, details)
+      calls == ["generation", "dacha"]
+  }
+
+  def "a failure to get the details from dacha is not cached"() {
+    given: "i have a key"
+      def key = new KeyParts("default", UUID.randomUUID(), "1234")
+    and: "a service"
+      def service = new FeatureRequesterSource(api, key, null, null, executor, submitter, keyDetailsCache, batcher)
+    when:
+      service.add(Mock(FeatureRequestCompleteNotifier))
+    then:
+      1 * executor.execute({ Runnable task ->
+        task.run()
+      })
+      1 * api.getApiKeyDetails(key.environmentId, key.serviceKey, _, null) >> { -> throw new RuntimeException() }
+      0 * keyDetailsCache.put(_, _, _)
+  }
+
+  def "when batching, the details come back from the batcher rather than a request of our own"() {
+    given: "i have a key"
+      def key = new KeyParts("default", UUID.randomUUID(), "1234")
+    and: "a service"
+      def service = new FeatureRequesterSource(api, key, null, null, executor, submitter, keyDetailsCache, batcher)
+      def notifier = Mock(FeatureRequestCompleteNotifier)
+      def details = new DachaKeyDetailsResponse().etag("e1").applicationId(UUID.randomUUID())
+    when:
+      service.add(notifier)
+    then:
+      1 * batcher.getBatching() >> true
+      1 * keyDetailsCache.generation(key.environmentId) >> 3L
+      1 * batcher.request(key, null, _) >> { KeyParts k, String etag, arrived -> arrived.invoke(details, null) }
+      0 * executor.execute(_)
+      0 * api.getApiKeyDetails(_, _, _, _)
+      1 * keyDetailsCache.put(key, 3L, details)
+      1 * submitter.requestForKeyComplete(key, null)
+      1 * notifier.complete(service)
+      service.details.is(details)
+      key.applicationId == details.applicationId
+  }
+
+  def "when batching, a failure for the key is passed on"() {
+    given: "i have a key"
+      def key = new KeyParts("default", UUID.randomUUID(), "1234")
+    and: "a service"
+      def service = new FeatureRequesterSource(api, key, null, null, executor, submitter, keyDetailsCache, batcher)
+      def notifier = Mock(FeatureRequestCompleteNotifier)
+      def failure = new NotFoundException()
+    when:
+      service.add(notifier)
+    then:
+      1 * batcher.getBatching() >> true
+      1 * batcher.request(key, null, _) >> { KeyParts k, String etag, arrived -> arrived.invoke(null, failure) }
+      0 * keyDetailsCache.put(_, _, _)
+      1 * notifier.complete(service)
+      service.failure.is(failure)
+      service.details == null
+  }
+
+  def "the etag the client has is passed to dacha and a not modified answer is not cached"() {
+    given: "i have a key"
+      def key = new KeyParts("default", UUID.randomUUID(), "1234")
+    and: "a service asking with the client's etag"
+      def service = new FeatureRequesterSource(api, key, "e1", null, executor, submitter, keyDetailsCache, batcher)
+      def notifier = Mock(FeatureRequestCompleteNotifier)
+      def details = new DachaKeyDetailsResponse().etag("e1").notModified(true).applicationId(UUID.randomUUID())
+    when:
+      service.add(notifier)
+    then:
+      1 * executor.execute({ Runnable task ->
+        task.run()
+      })
+      1 * api.getApiKeyDetails(key.environmentId, key.serviceKey, true, "e1") >> details
+      0 * keyDetailsCache.put(_, _, _)
+      1 * submitter.requestForKeyComplete(key, "e1")
+      1 * notifier.complete(service)
+      service.details.is(details)
+      key.applicationId == details.applicationId
+  }
+
+  def "an async dacha client is asked with the timeout and the listeners are told on the edge pool"() {
+    given: "i have a key"
+      def key = new KeyParts("default", UUID.randomUUID(), "1234")
+    and: "a dacha client that answers asynchronously"
+      def async = Mock(AsyncApi)
+      def answer = new CompletableFuture<DachaKeyDetailsResponse>()
+      def timeout = Duration.ofSeconds(3)
+    and: "a service"
+      def service = new FeatureRequesterSource(async, key, "e1", timeout, executor, submitter, keyDetailsCache, batcher)
+      def notifier = Mock(FeatureRequestCompleteNotifier)
+      def details = new DachaKeyDetailsResponse().etag("e2").applicationId(UUID.randomUUID())
+    when: "the request is made"
+      service.add(notifier)
+    then: "nothing waits for dacha"
+      1 * keyDetailsCache.generation(key.environmentId) >> 4L
+      1 * async.getApiKeyDetailsAsync(key.environmentId, key.serviceKey, true, "e1", timeout) >> answer
+      0 * executor.execute(_)
+      0 * notifier.complete(_)
+    when: "dacha answers"
+      answer.complete(details)
+    then:
+      1 * executor.execute({ Runnable task ->
+        task.run()
+      })
+      1 * keyDetailsCache.put(key, 4L, details)
+      1 * submitter.requestForKeyComplete(key, "e1")
+      1 * notifier.complete(service)
+      service.details.is(details)
+  }
+
+  def "a failure from an async dacha client is passed on without its wrapping"() {
+    given: "i have a key"
+      def key = new KeyParts("default", UUID.randomUUID(), "1234")
+      def async = Mock(AsyncApi)
+      def failure = new NotFoundException()
+    and: "a service"
+      def service = new FeatureRequesterSource(async, key, null, null, executor, submitter, keyDetailsCache, batcher)
+    when:
+      service.add(Mock(FeatureRequestCompleteNotifier))
+    then:
+      1 * async.getApiKeyDetailsAsync(key.environmentId, key.serviceKey, true, null, null) >>
+        CompletableFuture.failedFuture(new CompletionException(failure))
+      1 * executor.execute({ Runnable task ->
+        task.run()
+      })
+      0 * keyDetailsCache.put(_, _, _)
+      service.failure.is(failure)
+  }
+}
+
+interface AsyncApi extends DachaApiKeyService, AsyncDachaApiKeyService {
 }
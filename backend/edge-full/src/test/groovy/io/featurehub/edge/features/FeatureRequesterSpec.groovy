@@ -7,8 +7,10 @@ import io.featurehub.edge.KeyParts
 import io.featurehub.edge.strategies.ClientContext
 import io.featurehub.sse.model.FeatureEnvironmentCollection
 import org.jetbrains.annotations.NotNull
+import org.jetbrains.annotations.Nullable
 import spock.lang.Specification
 
+import java.time.Duration
 import java.util.concurrent.CompletableFuture
 
 class FeatureRequesterSpec extends Specification {
@@ -22,7 +24,7 @@ class FeatureRequesterSpec extends Specification {
 
   def "when i pass no keys, i get no responses"() {
     given: "i have an orchestrator"
-      def orch = new DachaRequestOrchestrator(Mock(FeatureTransformer), Mock(DachaClientServiceRegistry), Mock(EdgeConcurrentRequestPool))
+      def orch = new DachaRequestOrchestrator(Mock(FeatureTransformer), Mock(DachaClientServiceRegistry), Mock(EdgeConcurrentRequestPool), Mock(EvaluatedFeatureCache), Mock(EncodedResponseCache), Mock(KeyDetailsCache), Mock(DachaKeyBatcher))
     and: "i have no etags"
       def etags = new EtagStructureHolder([:], "", false)
     when: "i pass in no keys"
@@ -40,9 +42,9 @@ class FeatureRequesterSpec extends Specification {
       def dacha = Mock(DachaClientServiceRegistry)
     and: "a mocked inflight request"
     and: "i have an overridden orchestrator"
-      def orch = new DachaRequestOrchestrator(Mock(FeatureTransformer), dacha, Mock(EdgeConcurrentRequestPool)) {
+      def orch = new DachaRequestOrchestrator(Mock(FeatureTransformer), dacha, Mock(EdgeConcurrentRequestPool), Mock(EvaluatedFeatureCache), Mock(EncodedResponseCache), Mock(KeyDetailsCache), Mock(DachaKeyBatcher)) {
         @Override
-        protected FeatureRequester createInflightRequest(@NotNull KeyParts key) {
+        protected FeatureRequester createInflightRequest(@NotNull KeyParts key, @Nullable String etag, @Nullable Duration timeout) {
           dacha.getApiKeyService(key.cacheName)
           inflightRequestCounter ++
           return inflightRequest
@@ -73,4 +75,25 @@ class FeatureRequesterSpec extends Specification {
       result.collect({ it.environment }) == envs
 
   }
+
+  def "a single key with a valid etag asks dacha with that etag, and isn't shared with requests without one"() {
+    given: "an orchestrator that remembers the etags it was asked to create requests for"
+      def etagsAskedFor = []
+      def orch = new DachaRequestOrchestrator(Mock(FeatureTransformer), Mock(DachaClientServiceRegistry), Mock(EdgeConcurrentRequestPool), Mock(EvaluatedFeatureCache), Mock(EncodedResponseCache), Mock(KeyDetailsCache), Mock(DachaKeyBatcher)) {
+        @Override
+        protected FeatureRequester createInflightRequest(@NotNull KeyParts key, @Nullable String etag, @Nullable Duration timeout) {
+          etagsAskedFor << etag
+          return inflightRequest
+        }
+      }
+    and: "a key"
+      def key = new KeyParts("default", UUID.randomUUID(), "x")
+      def other = new KeyParts("default", UUID.randomUUID(), "y")
+    when:
+      orch.requestAsync([key], new ClientContext(false), new EtagStructureHolder([(key): "e1"], "0", true))
+      orch.requestAsync([key], new ClientContext(false), new EtagStructureHolder([:], "0", false))
+      orch.requestAsync([key, other], new ClientContext(false), new EtagStructureHolder([(key): "e1", (other): "e2"], "0", true))
+    then:
+      etagsAskedFor == ["e1", null, null]
+  }
 }
@@ -2,11 +2,14 @@ package io.featurehub.edge.db.sql
 
 import io.ebean.annotation.Transactional
 import io.featurehub.dacha.api.DachaApiKeyService
+import io.featurehub.dacha.api.keyDetailsOneAtATime
 import io.featurehub.dacha.model.CacheEnvironmentFeature
 import io.featurehub.dacha.model.CacheFeature
 import io.featurehub.dacha.model.CacheFeatureValue
 import io.featurehub.dacha.model.CacheRolloutStrategy
 import io.featurehub.dacha.model.CacheRolloutStrategyAttribute
+import io.featurehub.dacha.model.DachaKeyDetailsBulkRequest
+import io.featurehub.dacha.model.DachaKeyDetailsBulkResponse
 import io.featurehub.dacha.model.DachaKeyDetailsResponse
 import io.featurehub.dacha.model.DachaPermissionResponse
 import io.featurehub.db.model.DbApplicationFeature
@@ -40,8 +43,9 @@ class DbDachaSqlApi(private val cacheSourceFeatureGroup: CacheSourceFeatureGroup
   private val fakePortfolioId = UUID.randomUUID()
   private val fakeOrganisationId = UUID.randomUUID()
 
+  // the etag is ignored, the features are built in this process so there is nothing to be saved by leaving them out
   @Transactional(readOnly = true)
-  override fun getApiKeyDetails(eId: UUID, serviceAccountKey: String, excludeRetired: Boolean?): DachaKeyDetailsResponse? {
+  override fun getApiKeyDetails(eId: UUID, serviceAccountKey: String, excludeRetired: Boolean?, etag: String?): DachaKeyDetailsResponse? {
     val saEnv = findMatch(
       eId,
       serviceAccountKey
@@ -241,6 +245,12 @@ class DbDachaSqlApi(private val cacheSourceFeatureGroup: CacheSourceFeatureGroup
       .type(rsa.type)
   }
 
+  // the keys are all looked up in the one transaction
+  @Transactional(readOnly = true)
+  override fun getApiKeyDetailsBulk(dachaKeyDetailsBulkRequest: DachaKeyDetailsBulkRequest): DachaKeyDetailsBulkResponse {
+    return keyDetailsOneAtATime(dachaKeyDetailsBulkRequest)
+  }
+
   @Transactional(readOnly = true)
   override fun getApiKeyPermissions(
     eId: UUID,
@@ -1,13 +1,17 @@
 package io.featurehub.edge.resources
 
 import cd.connect.jersey.prometheus.Prometheus
+import io.featurehub.edge.rest.FeatureBatch
 import io.featurehub.edge.rest.FeatureGet
 import io.featurehub.edge.rest.FeatureUpdate
+import io.featurehub.sse.model.FeatureBatchRequest
 import io.featurehub.sse.model.FeatureStateUpdate
 import jakarta.inject.Inject
 import jakarta.ws.rs.*
 import jakarta.ws.rs.container.AsyncResponse
 import jakarta.ws.rs.container.Suspended
+import jakarta.ws.rs.core.Context
+import org.glassfish.grizzly.http.server.Request
 import org.glassfish.hk2.api.Immediate
 import org.glassfish.jersey.media.sse.EventOutput
 import org.glassfish.jersey.media.sse.SseFeature
@@ -16,19 +20,41 @@ import java.util.*
 
 @Path("/features")
 @Immediate
-class EdgeResource @Inject constructor(private val featureGetProcessor: FeatureGet, private val featureUpdateProcessor: FeatureUpdate) {
+class EdgeResource @Inject constructor(
+  private val featureGetProcessor: FeatureGet,
+  private val featureUpdateProcessor: FeatureUpdate,
+  private val featureBatchProcessor: FeatureBatch
+) {
   @GET
   @Path("/")
   @Produces("application/json")
   @Prometheus(name = "edge_poll_api", help = "Number of requests for the poll API")
-  @ManagedAsync
   fun getFeatureStates(
     @Suspended response: AsyncResponse, @QueryParam("sdkUrl") sdkUrls: List<String>?,
     @QueryParam("apiKey") apiKeys: List<String>?,
     @HeaderParam("x-featurehub") featureHubAttrs: List<String>?,
-    @HeaderParam("if-none-match") etagHeader: String?
+    @HeaderParam("if-none-match") etagHeader: String?,
+    @HeaderParam("accept-encoding") acceptEncoding: String?,
+    @QueryParam("delta") delta: Boolean?,
+    @HeaderParam("x-forwarded-for") forwardedFor: String?,
+    @Context request: Request?
+  ) {
+    featureGetProcessor.processGet(response, sdkUrls, apiKeys, featureHubAttrs, etagHeader, acceptEncoding, delta,
+      forwardedFor, request?.remoteAddr, null)
+  }
+
+  @POST
+  @Path("batch")
+  @Consumes("application/json")
+  @Produces("application/json")
+  @Prometheus(name = "edge_batch_api", help = "Number of requests for the batch evaluation API")
+  @ManagedAsync
+  fun evaluateFeatureBatch(
+    @Suspended response: AsyncResponse,
+    @QueryParam("apiKey") apiKey: String?,
+    batch: FeatureBatchRequest?
   ) {
-    featureGetProcessor.processGet(response, sdkUrls, apiKeys, featureHubAttrs, etagHeader, null)
+    featureBatchProcessor.processBatch(response, apiKey, batch, null)
   }
 
   @GET
@@ -146,6 +146,13 @@ class RolloutStrategyValidationUtils : RolloutStrategyValidator {
             }
           }
         }
+
+        unmatchableAttribute(rs.attributes!!)?.let { attr ->
+          failures.add(
+            RolloutStrategyViolation().violation(RolloutStrategyViolationType.ATTR_UNMATCHABLE)
+              .id(attr.id), rs
+          )
+        }
       }
     }
 
@@ -161,6 +168,145 @@ class RolloutStrategyValidationUtils : RolloutStrategyValidator {
     return failures
   }
 
+  /**
+   * The attributes of a strategy are ANDed, so two attributes on the same field can rule each other out (e.g.
+   * version > 3.0.0 and version < 2.0.0) and the strategy can never match, it just costs time on every evaluation.
+   * Only the well known fields are checked as the client can give a custom field several values, and each attribute
+   * could then match a different one. Returns the attribute that made the strategy unmatchable.
+   */
+  private fun unmatchableAttribute(attributes: List<RolloutStrategyAttribute>): RolloutStrategyAttribute? {
+    attributes
+      .filter { a -> a.fieldName in singleValuedFields && a.type != null && a.conditional != null && a.values?.isNotEmpty() == true }
+      .groupBy { a -> Pair(a.fieldName, a.type) }
+      .values
+      .forEach { group ->
+        val unmatchable = try {
+          when (group[0].type) {
+            RolloutStrategyFieldType.STRING -> firstUnmatchable(group, true) { v -> v.toString() }
+            RolloutStrategyFieldType.BOOLEAN -> firstUnmatchable(group, false) { v -> v.toString() }
+            RolloutStrategyFieldType.NUMBER -> firstUnmatchable(group, true) { v -> BigDecimal(v.toString()) }
+            RolloutStrategyFieldType.SEMANTIC_VERSION -> firstUnmatchable(group, true) { v -> plainVersion(v) }
+            RolloutStrategyFieldType.DATE ->
+              firstUnmatchable(group, true) { v -> LocalDate.from(DateTimeFormatter.ISO_DATE.parse(v.toString())) }
+            RolloutStrategyFieldType.DATETIME ->
+              firstUnmatchable(group, true) { v ->
+                OffsetDateTime.from(DateTimeFormatter.ISO_OFFSET_DATE_TIME.parse(v.toString()))
+              }
+            else -> null
+          }
+        } catch (ignored: Exception) {
+          null // values that don't parse are reported by the checks above
+        }
+
+        if (unmatchable != null) {
+          return unmatchable
+        }
+      }
+
+    return null
+  }
+
+  private fun <T : Comparable<T>> firstUnmatchable(
+    group: List<RolloutStrategyAttribute>,
+    ordered: Boolean,
+    parser: (Any) -> T
+  ): RolloutStrategyAttribute? {
+    val range = ValueRange<T>(ordered)
+
+    for (attr in group) {
+      if (!range.narrow(attr.conditional!!, attr.values.map { v -> parser(v!!) })) {
+        return attr
+      }
+    }
+
+    return null
+  }
+
+  // semantic versions only compare simply when they have no pre-release or build parts, anything else is skipped
+  private fun plainVersion(v: Any): PlainVersion {
+    val m = plainSemanticVersion.matcher(v.toString())
+
+    if (!m.matches()) {
+      throw IllegalArgumentException("not a plain version")
+    }
+
+    return PlainVersion(BigInteger(m.group(1)), BigInteger(m.group(2)), BigInteger(m.group(3)))
+  }
+
+  private data class PlainVersion(val major: BigInteger, val minor: BigInteger, val patch: BigInteger) :
+    Comparable<PlainVersion> {
+    override fun compareTo(other: PlainVersion): Int =
+      compareValuesBy(this, other, PlainVersion::major, PlainVersion::minor, PlainVersion::patch)
+  }
+
+  /**
+   * The values a single supplied value could still have and match every attribute seen so far. It mirrors the
+   * matchers: EQUALS matches any of its values, GREATER any value above the lowest, LESS any value below the highest.
+   * NOT_EQUALS is only used with a single value (strings match if they differ from any of several values), and the
+   * substring and regex conditionals are ignored.
+   */
+  private class ValueRange<T : Comparable<T>>(private val ordered: Boolean) {
+    private var allowed: List<T>? = null
+    private val excluded = mutableListOf<T>()
+    private var lower: T? = null
+    private var lowerInclusive = true
+    private var upper: T? = null
+    private var upperInclusive = true
+
+    fun narrow(conditional: RolloutStrategyAttributeConditional, values: List<T>): Boolean {
+      when (conditional) {
+        RolloutStrategyAttributeConditional.EQUALS ->
+          allowed = allowed?.filter { a -> values.any { v -> v.compareTo(a) == 0 } } ?: values
+        RolloutStrategyAttributeConditional.NOT_EQUALS -> if (values.size == 1) excluded.add(values[0])
+        RolloutStrategyAttributeConditional.GREATER, RolloutStrategyAttributeConditional.GREATER_EQUALS ->
+          if (ordered) {
+            val bound = values.minOrNull()!!
+            val inclusive = conditional == RolloutStrategyAttributeConditional.GREATER_EQUALS
+            val current = lower
+            if (current == null || bound > current || (bound.compareTo(current) == 0 && !inclusive)) {
+              lower = bound
+              lowerInclusive = inclusive
+            }
+          }
+        RolloutStrategyAttributeConditional.LESS, RolloutStrategyAttributeConditional.LESS_EQUALS ->
+          if (ordered) {
+            val bound = values.maxOrNull()!!
+            val inclusive = conditional == RolloutStrategyAttributeConditional.LESS_EQUALS
+            val current = upper
+            if (current == null || bound < current || (bound.compareTo(current) == 0 && !inclusive)) {
+              upper = bound
+              upperInclusive = inclusive
+            }
+          }
+        else -> {}
+      }
+
+      return matchable()
+    }
+
+    private fun matchable(): Boolean {
+      val low = lower
+      val high = upper
+
+      if (low != null && high != null) {
+        val compared = low.compareTo(high)
+        if (compared > 0 || (compared == 0 && !(lowerInclusive && upperInclusive))) {
+          return false
+        }
+      }
+
+      return allowed?.any { v -> inRange(v) && excluded.none { e -> e.compareTo(v) == 0 } } ?: true
+    }
+
+    private fun inRange(v: T): Boolean {
+      val low = lower
+      val high = upper
+
+      return (low == null || (if (lowerInclusive) v >= low else v > low)) &&
+        (high == null || (if (upperInclusive) v <= high else v < high))
+    }
+  }
+
   private fun notIpAddress(n: Any): Boolean {
     return try {
       var input = n.toString()
@@ -207,6 +353,9 @@ class RolloutStrategyValidationUtils : RolloutStrategyValidator {
   companion object {
     private val log = LoggerFactory.getLogger(RolloutStrategyValidationUtils::class.java)
     private const val MAX_PERCENTAGE = 1000000 // four decimal points
+    // the well known fields the SDKs only ever give a single value
+    private val singleValuedFields = setOf("userkey", "sessionkey", "session", "country", "device", "platform", "version", "now")
+    private val plainSemanticVersion = Pattern.compile("^(0|[1-9]\\d*)\\.(0|[1-9]\\d*)\\.(0|[1-9]\\d*)$")
     private val semanticVersion = Pattern.compile(
       "^(0|[1-9]\\d*)\\.(0|[1-9]\\d*)\\.(0|[1-9]\\d*)" +
         "(?:-(" +
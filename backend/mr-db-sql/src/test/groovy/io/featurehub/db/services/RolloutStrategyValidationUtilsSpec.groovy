@@ -209,4 +209,55 @@ class RolloutStrategyValidationUtilsSpec extends Specification {
       RolloutStrategyFieldType.DATETIME         | ['1984-12-12T14:32:26+03:00']
       RolloutStrategyFieldType.DATETIME         | ['1984-12-11T11:32:26Z']
   }
+
+  private RolloutStrategyAttribute attr(String id, String fieldName, RolloutStrategyFieldType type,
+                                        RolloutStrategyAttributeConditional conditional, List values) {
+    return new RolloutStrategyAttribute().id(id).fieldName(fieldName).type(type).conditional(conditional).values(values)
+  }
+
+  def "attributes on the same well known field that can never all match are picked up"() {
+    given:
+      def fv = [new RolloutStrategy().name("never").attributes([
+        attr('a1', field, type, first, firstValues),
+        attr('a2', field, type, second, secondValues),
+      ])]
+    when:
+      def validations = validator.validateStrategies(FeatureValueType.STRING, fv, [])
+    then:
+      validations.isInvalid()
+      validations.customStrategyViolations[fv[0]]*.violation == [RolloutStrategyViolationType.ATTR_UNMATCHABLE]
+      validations.customStrategyViolations[fv[0]]*.id == ['a2']
+    where:
+      field      | type                                      | first                                           | firstValues             | second                                          | secondValues
+      'version'  | RolloutStrategyFieldType.SEMANTIC_VERSION | RolloutStrategyAttributeConditional.GREATER     | ['3.0.0']               | RolloutStrategyAttributeConditional.LESS        | ['2.0.0']
+      'version'  | RolloutStrategyFieldType.SEMANTIC_VERSION | RolloutStrategyAttributeConditional.GREATER     | ['2.0.0']               | RolloutStrategyAttributeConditional.LESS_EQUALS | ['2.0.0']
+      'version'  | RolloutStrategyFieldType.NUMBER           | RolloutStrategyAttributeConditional.GREATER     | [10, 12]                | RolloutStrategyAttributeConditional.LESS        | [new BigDecimal('9.5')]
+      'country'  | RolloutStrategyFieldType.STRING           | RolloutStrategyAttributeConditional.EQUALS      | ['new_zealand']         | RolloutStrategyAttributeConditional.EQUALS      | ['australia']
+      'platform' | RolloutStrategyFieldType.STRING           | RolloutStrategyAttributeConditional.EQUALS      | ['ios']                 | RolloutStrategyAttributeConditional.NOT_EQUALS  | ['ios']
+      'userkey'  | RolloutStrategyFieldType.BOOLEAN          | RolloutStrategyAttributeConditional.EQUALS      | [true]                  | RolloutStrategyAttributeConditional.EQUALS      | [false]
+      'now'      | RolloutStrategyFieldType.DATE             | RolloutStrategyAttributeConditional.GREATER_EQUALS | ['2024-02-01']       | RolloutStrategyAttributeConditional.LESS        | ['2024-02-01']
+      'now'      | RolloutStrategyFieldType.DATETIME         | RolloutStrategyAttributeConditional.LESS        | ['2024-01-01T10:00:00Z'] | RolloutStrategyAttributeConditional.EQUALS     | ['2024-01-01T11:00:00Z']
+  }
+
+  def "attributes that could all match, or that a client could give several values for, are fine"() {
+    given:
+      def fv = [new RolloutStrategy().name("sometimes").attributes([
+        attr('a1', field, type, first, firstValues),
+        attr('a2', field, type, second, secondValues),
+      ])]
+    when:
+      def validations = validator.validateStrategies(FeatureValueType.STRING, fv, [])
+    then:
+      !validations.isInvalid()
+    where:
+      field      | type                                      | first                                           | firstValues             | second                                          | secondValues
+      'version'  | RolloutStrategyFieldType.SEMANTIC_VERSION | RolloutStrategyAttributeConditional.GREATER     | ['2.0.0']               | RolloutStrategyAttributeConditional.LESS        | ['3.0.0']
+      'version'  | RolloutStrategyFieldType.SEMANTIC_VERSION | RolloutStrategyAttributeConditional.GREATER_EQUALS | ['2.0.0']            | RolloutStrategyAttributeConditional.LESS_EQUALS | ['2.0.0']
+      'version'  | RolloutStrategyFieldType.SEMANTIC_VERSION | RolloutStrategyAttributeConditional.GREATER     | ['3.0.0-beta']          | RolloutStrategyAttributeConditional.LESS        | ['2.0.0']
+      'version'  | RolloutStrategyFieldType.NUMBER           | RolloutStrategyAttributeConditional.GREATER     | [1, 10]                 | RolloutStrategyAttributeConditional.LESS        | [5]
+      'country'  | RolloutStrategyFieldType.STRING           | RolloutStrategyAttributeConditional.EQUALS      | ['new_zealand', 'fiji'] | RolloutStrategyAttributeConditional.EQUALS      | ['fiji']
+      'platform' | RolloutStrategyFieldType.STRING           | RolloutStrategyAttributeConditional.EQUALS      | ['ios']                 | RolloutStrategyAttributeConditional.NOT_EQUALS  | ['ios', 'android']
+      'platform' | RolloutStrategyFieldType.STRING           | RolloutStrategyAttributeConditional.EQUALS      | ['ios']                 | RolloutStrategyAttributeConditional.EXCLUDES    | ['ios']
+      'age'      | RolloutStrategyFieldType.NUMBER           | RolloutStrategyAttributeConditional.GREATER     | [30]                    | RolloutStrategyAttributeConditional.LESS        | [20]
+  }
 }
@@ -6,16 +6,21 @@ import io.featurehub.sse.model.FeatureRolloutStrategyAttribute;
 public class BooleanArrayMatcher implements StrategyMatcher {
   @Override
   public boolean match(String suppliedValue, FeatureRolloutStrategyAttribute attr) {
-    boolean val = "true".equals(suppliedValue);
+    return compile(attr).match(suppliedValue);
+  }
 
+  @Override
+  public CompiledMatcher compile(FeatureRolloutStrategyAttribute attr) {
     if (attr.getConditional() == RolloutStrategyAttributeConditional.EQUALS) {
-      return val == (Boolean)attr.getValues().get(0);
+      final boolean expected = (Boolean)attr.getValues().get(0);
+      return suppliedValue -> "true".equals(suppliedValue) == expected;
     }
 
     if (attr.getConditional() == RolloutStrategyAttributeConditional.NOT_EQUALS) {
-      return val == !(Boolean)attr.getValues().get(0);
+      final boolean expected = (Boolean)attr.getValues().get(0);
+      return suppliedValue -> "true".equals(suppliedValue) == !expected;
     }
 
-    return false;
+    return suppliedValue -> false;
   }
 }
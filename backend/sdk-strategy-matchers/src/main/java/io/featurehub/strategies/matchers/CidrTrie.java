@@ -0,0 +1,181 @@
+package io.featurehub.strategies.matchers;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A binary prefix trie of the addresses and CIDR ranges in an IP_ADDRESS strategy attribute, one for IPv4 and one
+ * for IPv6. A lookup walks at most 32 (or 128) nodes (and for IPv4 allocates nothing), so the cost of checking an
+ * address does not depend on how many ranges the strategy lists. Once built it is immutable.
+ */
+final class CidrTrie {
+  static final int MATCHED = 1;
+  static final int NOT_MATCHED = 0;
+  static final int NOT_AN_ADDRESS = -1;
+
+  private final Tree ipv4 = new Tree();
+  private final Tree ipv6 = new Tree();
+
+  private CidrTrie() {}
+
+  /**
+   * Builds the trie from the values of the attribute. Values that are not address literals (optionally with a
+   * /mask) are ignored, they could never match.
+   */
+  @NotNull
+  static CidrTrie compile(@NotNull List<Object> values) {
+    CidrTrie trie = new CidrTrie();
+
+    for (Object value : values) {
+      if (value != null) {
+        trie.add(value.toString().trim());
+      }
+    }
+
+    return trie;
+  }
+
+  private void add(String value) {
+    int maskBits = -1;
+    int slash = value.indexOf('/');
+
+    if (slash > 0) {
+      try {
+        maskBits = Integer.parseInt(value.substring(slash + 1));
+      } catch (NumberFormatException e) {
+        return;
+      }
+
+      value = value.substring(0, slash);
+
+      if (maskBits < 0) {
+        return;
+      }
+    }
+
+    long ipv4Address = IpAddressParser.parseIpv4(value);
+
+    if (ipv4Address == IpAddressParser.NOT_IPV4) {
+      long[] ipv6Address = IpAddressParser.parseIpv6(value);
+
+      if (ipv6Address == null) {
+        return;
+      }
+
+      if (!IpAddressParser.isIpv4Mapped(ipv6Address)) {
+        if (maskBits <= 128) {
+          ipv6.insert(ipv6Address[0], ipv6Address[1], maskBits < 0 ? 128 : maskBits);
+        }
+
+        return;
+      }
+
+      ipv4Address = ipv6Address[1] & 0xffffffffL;
+    }
+
+    if (maskBits <= 32) {
+      ipv4.insert(ipv4Address << 32, 0, maskBits < 0 ? 32 : maskBits);
+    }
+  }
+
+  /**
+   * @return MATCHED if the address literal is one of (or inside one of the ranges of) the configured values,
+   * NOT_MATCHED if it isn't and NOT_AN_ADDRESS if it isn't an address literal at all.
+   */
+  int lookup(@NotNull String address) {
+    long ipv4Address = IpAddressParser.parseIpv4(address);
+
+    if (ipv4Address != IpAddressParser.NOT_IPV4) {
+      return result(ipv4.contains(ipv4Address << 32, 0, 32));
+    }
+
+    long[] ipv6Address = IpAddressParser.parseIpv6(address);
+
+    if (ipv6Address == null) {
+      return NOT_AN_ADDRESS;
+    }
+
+    if (IpAddressParser.isIpv4Mapped(ipv6Address)) {
+      return result(ipv4.contains(ipv6Address[1] << 32, 0, 32));
+    }
+
+    return result(ipv6.contains(ipv6Address[0], ipv6Address[1], 128));
+  }
+
+  private static int result(boolean matched) {
+    return matched ? MATCHED : NOT_MATCHED;
+  }
+
+  /**
+   * The nodes are held in parallel arrays rather than as objects to keep large range lists compact. Node 0 is the
+   * root, a child index of 0 means there is no child.
+   */
+  private static final class Tree {
+    private int[] zero = new int[16];
+    private int[] one = new int[16];
+    private boolean[] terminal = new boolean[16];
+    private int size = 1;
+
+    private static int bit(long high, long low, int index) {
+      return (int) (index < 64 ? (high >>> (63 - index)) & 1 : (low >>> (127 - index)) & 1);
+    }
+
+    void insert(long high, long low, int prefixLength) {
+      int node = 0;
+
+      for (int index = 0; index < prefixLength; index++) {
+        if (terminal[node]) {
+          return; // a wider range already covers this one
+        }
+
+        boolean isZero = bit(high, low, index) == 0;
+        int child = isZero ? zero[node] : one[node];
+
+        if (child == 0) {
+          child = newNode(); // may grow the arrays, so only write to them afterwards
+
+          if (isZero) {
+            zero[node] = child;
+          } else {
+            one[node] = child;
+          }
+        }
+
+        node = child;
+      }
+
+      terminal[node] = true;
+    }
+
+    boolean contains(long high, long low, int length) {
+      int node = 0;
+
+      for (int index = 0; index < length; index++) {
+        if (terminal[node]) {
+          return true;
+        }
+
+        node = bit(high, low, index) == 0 ? zero[node] : one[node];
+
+        if (node == 0) {
+          return false;
+        }
+      }
+
+      return terminal[node];
+    }
+
+    private int newNode() {
+      if (size == terminal.length) {
+        int capacity = size * 2;
+        zero = Arrays.copyOf(zero, capacity);
+        one = Arrays.copyOf(one, capacity);
+        terminal = Arrays.copyOf(terminal, capacity);
+      }
+
+      return size++;
+    }
+  }
+}
@@ -0,0 +1,9 @@
+package io.featurehub.strategies.matchers;
+
+/**
+ * A matcher for a single strategy attribute whose values have already been parsed, so matching only has to deal with
+ * the value supplied by the client. These are immutable and can be shared across threads.
+ */
+public interface CompiledMatcher {
+  boolean match(String suppliedValue);
+}
@@ -1,57 +1,54 @@
 package io.featurehub.strategies.matchers;
 
 import io.featurehub.sse.model.FeatureRolloutStrategyAttribute;
+import io.featurehub.strategies.matchers.ParsedValuesMatcher.Comparison;
 
 import java.time.OffsetDateTime;
 import java.time.format.DateTimeFormatter;
-import java.util.function.Supplier;
+import java.util.List;
+import java.util.function.Function;
 
 public class DateTimeArrayMatcher implements StrategyMatcher {
-  private OffsetDateTime supplied = null;
+  private static final Function<String, OffsetDateTime> parser =
+    (v) -> OffsetDateTime.from(DateTimeFormatter.ISO_DATE_TIME.parse(v));
 
   @Override
   public boolean match(String suppliedValue, FeatureRolloutStrategyAttribute attr) {
-    DateTimeFormatter formatter = DateTimeFormatter.ISO_DATE_TIME;
-
-    try {
-      Supplier<OffsetDateTime> suppliedDate = () -> {
-        if (supplied == null) {
-          supplied = OffsetDateTime.from(formatter.parse(suppliedValue));
-        }
-        return supplied;
-      };
-
-      switch (attr.getConditional()) {
-        case EQUALS: // all match makes no sense
-        case INCLUDES: // same as equals
-          return attr.getValues().stream()
-            .anyMatch(v -> suppliedDate.get().equals(OffsetDateTime.from(formatter.parse(v.toString()))));
-        case ENDS_WITH:
-          return attr.getValues().stream().anyMatch(v -> suppliedValue.endsWith(v.toString()));
-        case STARTS_WITH:
-          return attr.getValues().stream().anyMatch(v -> suppliedValue.startsWith(v.toString()));
-        case GREATER:
-          return attr.getValues().stream()
-            .anyMatch(v -> suppliedDate.get().compareTo(OffsetDateTime.from(formatter.parse(v.toString()))) > 0);
-        case GREATER_EQUALS:
-          return attr.getValues().stream()
-            .anyMatch(v -> suppliedDate.get().compareTo(OffsetDateTime.from(formatter.parse(v.toString()))) >= 0);
-        case LESS:
-          return attr.getValues().stream()
-            .anyMatch(v -> suppliedDate.get().compareTo(OffsetDateTime.from(formatter.parse(v.toString()))) < 0);
-        case LESS_EQUALS:
-          return attr.getValues().stream()
-            .anyMatch(v -> suppliedDate.get().compareTo(OffsetDateTime.from(formatter.parse(v.toString()))) <= 0);
-        case NOT_EQUALS:
-        case EXCLUDES: // same as not_equals
-          return attr.getValues().stream()
-            .noneMatch(v -> suppliedDate.get().equals(OffsetDateTime.from(formatter.parse(v.toString()))));
-        case REGEX:
-          return attr.getValues().stream().anyMatch(v -> suppliedValue.matches(v.toString()));
-      }
-    } catch (Exception ignored) {
+    return compile(attr).match(suppliedValue);
+  }
+
+  @Override
+  public CompiledMatcher compile(FeatureRolloutStrategyAttribute attr) {
+    final String[] vals = StringValueMatchers.values(attr);
+
+    switch (attr.getConditional()) {
+      case EQUALS: // all match makes no sense
+      case INCLUDES: // same as equals
+        return dates(vals, Comparison.EQUALS);
+      case ENDS_WITH:
+        return StringValueMatchers.endsWith(vals);
+      case STARTS_WITH:
+        return StringValueMatchers.startsWith(vals);
+      case GREATER:
+        return dates(vals, Comparison.GREATER);
+      case GREATER_EQUALS:
+        return dates(vals, Comparison.GREATER_EQUALS);
+      case LESS:
+        return dates(vals, Comparison.LESS);
+      case LESS_EQUALS:
+        return dates(vals, Comparison.LESS_EQUALS);
+      case NOT_EQUALS:
+      case EXCLUDES: // same as not_equals
+        return dates(vals, Comparison.NOT_EQUALS);
+      case REGEX:
+        return StringValueMatchers.regex(vals);
     }
 
-    return false;
+    return suppliedValue -> false;
+  }
+
+  private CompiledMatcher dates(String[] vals, Comparison comparison) {
+    List<OffsetDateTime> dates = ParsedValuesMatcher.parseAll(vals, parser);
+    return new ParsedValuesMatcher<>(dates, parser, comparison);
   }
 }
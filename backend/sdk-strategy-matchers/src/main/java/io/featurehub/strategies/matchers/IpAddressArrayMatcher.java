@@ -3,39 +3,43 @@ package io.featurehub.strategies.matchers;
 
 import io.featurehub.sse.model.FeatureRolloutStrategyAttribute;
 
-import java.net.InetAddress;
-
 public class IpAddressArrayMatcher implements StrategyMatcher {
   @Override
   public boolean match(String suppliedValue, FeatureRolloutStrategyAttribute attr) {
-    try {
-      InetAddress suppliedAddress = CIDRMatch.suppliedAddress(suppliedValue);
+    return compile(attr).match(suppliedValue);
+  }
 
-      switch(attr.getConditional()) {
-        case EQUALS:
-        case INCLUDES:
-          return attr.getValues().stream().anyMatch(val -> CIDRMatch.cidrMatch(val.toString(), suppliedAddress));
-        case ENDS_WITH:
-          break;
-        case STARTS_WITH:
-          break;
-        case GREATER:
-          break;
-        case GREATER_EQUALS:
-          break;
-        case LESS:
-          break;
-        case LESS_EQUALS:
-          break;
-        case NOT_EQUALS:
-        case EXCLUDES:
-          return attr.getValues().stream().noneMatch(val -> CIDRMatch.cidrMatch(val.toString(), suppliedAddress));
-        case REGEX:
-          break;
-      }
+  /**
+   * The addresses and ranges are compiled into a prefix trie, and supplied values must be IP address literals -
+   * they are never resolved.
+   */
+  @Override
+  public CompiledMatcher compile(FeatureRolloutStrategyAttribute attr) {
+    if (attr.getValues().contains(null)) {
+      return StringValueMatchers.NO_MATCH;
+    }
 
-    } catch (Exception ignored) {
+    switch(attr.getConditional()) {
+      case EQUALS:
+      case INCLUDES: {
+        final CidrTrie trie = CidrTrie.compile(attr.getValues());
+        return suppliedValue -> suppliedValue != null && trie.lookup(suppliedValue) == CidrTrie.MATCHED;
+      }
+      case NOT_EQUALS:
+      case EXCLUDES: {
+        final CidrTrie trie = CidrTrie.compile(attr.getValues());
+        return suppliedValue -> suppliedValue != null && trie.lookup(suppliedValue) == CidrTrie.NOT_MATCHED;
+      }
+      case ENDS_WITH:
+      case STARTS_WITH:
+      case GREATER:
+      case GREATER_EQUALS:
+      case LESS:
+      case LESS_EQUALS:
+      case REGEX:
+        break;
     }
-    return false;
+
+    return suppliedValue -> false;
   }
 }
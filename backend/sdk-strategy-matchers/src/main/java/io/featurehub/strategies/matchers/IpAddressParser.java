@@ -0,0 +1,186 @@
+package io.featurehub.strategies.matchers;
+
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Parses IP address literals only - unlike InetAddress.getByName this never goes near DNS, so a malformed or
+ * malicious supplied value can't cause a lookup. IPv4 addresses must be in dotted quad form (each part is
+ * decimal, leading zeros are allowed), IPv6 addresses may be compressed, have an embedded IPv4 tail, be wrapped
+ * in [] and have a zone, which is ignored. IPv4 mapped IPv6 addresses are treated as IPv4, as InetAddress does.
+ */
+final class IpAddressParser {
+  static final long NOT_IPV4 = -1;
+
+  private IpAddressParser() {}
+
+  /**
+   * @return the address as an unsigned 32 bit value or NOT_IPV4 if this isn't a valid dotted quad
+   */
+  static long parseIpv4(String address) {
+    return parseIpv4(address, 0, address.length());
+  }
+
+  static long parseIpv4(String address, int start, int end) {
+    long result = 0;
+    int parts = 0;
+    int pos = start;
+
+    while (parts < 4) {
+      int digits = 0;
+      int part = 0;
+
+      while (pos < end && digits < 4) {
+        char c = address.charAt(pos);
+
+        if (c < '0' || c > '9') {
+          break;
+        }
+
+        part = part * 10 + (c - '0');
+        digits++;
+        pos++;
+      }
+
+      if (digits == 0 || digits > 3 || part > 255) {
+        return NOT_IPV4;
+      }
+
+      result = (result << 8) | part;
+      parts++;
+
+      if (parts < 4) {
+        if (pos >= end || address.charAt(pos) != '.') {
+          return NOT_IPV4;
+        }
+
+        pos++;
+      }
+    }
+
+    return pos == end ? result : NOT_IPV4;
+  }
+
+  /**
+   * @return the address as two longs (high and low 64 bits), or null if this isn't a valid IPv6 literal
+   */
+  @Nullable
+  static long[] parseIpv6(String address) {
+    int start = 0;
+    int end = address.length();
+
+    if (end > 1 && address.charAt(0) == '[' && address.charAt(end - 1) == ']') {
+      start++;
+      end--;
+    }
+
+    int zone = address.indexOf('%', start);
+    if (zone >= 0 && zone < end) {
+      end = zone;
+    }
+
+    if (end - start < 2) {
+      return null;
+    }
+
+    int[] groups = new int[8];
+    int count = 0;
+    int compressAt = -1;
+    int pos = start;
+
+    if (address.charAt(pos) == ':') {
+      if (address.charAt(pos + 1) != ':') {
+        return null;
+      }
+
+      compressAt = 0;
+      pos += 2;
+    }
+
+    while (pos < end) {
+      if (count == 8) {
+        return null;
+      }
+
+      int groupStart = pos;
+      int group = 0;
+
+      while (pos < end && pos - groupStart < 5) {
+        int hex = Character.digit(address.charAt(pos), 16);
+
+        if (hex < 0) {
+          break;
+        }
+
+        group = (group << 4) | hex;
+        pos++;
+      }
+
+      if (pos < end && address.charAt(pos) == '.') {
+        // an embedded IPv4 address, which must be the last 32 bits
+        long ipv4 = parseIpv4(address, groupStart, end);
+
+        if (ipv4 == NOT_IPV4 || count > 6) {
+          return null;
+        }
+
+        groups[count++] = (int) (ipv4 >>> 16);
+        groups[count++] = (int) (ipv4 & 0xffff);
+        pos = end;
+        break;
+      }
+
+      if (pos == groupStart || pos - groupStart > 4) {
+        return null;
+      }
+
+      groups[count++] = group;
+
+      if (pos < end) {
+        if (address.charAt(pos) != ':' || pos + 1 == end) {
+          return null;
+        }
+
+        pos++;
+
+        if (address.charAt(pos) == ':') {
+          if (compressAt >= 0) {
+            return null;
+          }
+
+          compressAt = count;
+          pos++;
+        }
+      }
+    }
+
+    if (compressAt >= 0) {
+      if (count == 8) {
+        return null;
+      }
+
+      int shift = 8 - count;
+      for (int i = count - 1; i >= compressAt; i--) {
+        groups[i + shift] = groups[i];
+        groups[i] = 0;
+      }
+    } else if (count != 8) {
+      return null;
+    }
+
+    long high = 0;
+    long low = 0;
+    for (int i = 0; i < 4; i++) {
+      high = (high << 16) | groups[i];
+      low = (low << 16) | groups[i + 4];
+    }
+
+    return new long[] { high, low };
+  }
+
+  /**
+   * InetAddress treats ::ffff:a.b.c.d as the IPv4 address a.b.c.d, so do we.
+   */
+  static boolean isIpv4Mapped(long[] ipv6) {
+    return ipv6[0] == 0 && (ipv6[1] >>> 32) == 0xffffL;
+  }
+}
@@ -2,27 +2,40 @@ package io.featurehub.strategies.matchers;
 
 import io.featurehub.sse.model.FeatureRolloutStrategyAttribute;
 
+/**
+ * The matchers hold no state (all parsed values live in the CompiledMatcher they create) so we share a single
+ * instance of each.
+ */
 public class MatcherRegistry implements MatcherRepository {
+  private static final StrategyMatcher stringMatcher = new StringArrayMatcher();
+  private static final StrategyMatcher semanticVersionMatcher = new SemanticVersionArrayMatcher();
+  private static final StrategyMatcher numberMatcher = new NumberArrayMatcher();
+  private static final StrategyMatcher dateMatcher = new DateArrayMatcher();
+  private static final StrategyMatcher dateTimeMatcher = new DateTimeArrayMatcher();
+  private static final StrategyMatcher booleanMatcher = new BooleanArrayMatcher();
+  private static final StrategyMatcher ipAddressMatcher = new IpAddressArrayMatcher();
+  private static final StrategyMatcher fallthroughMatcher = new FallthroughMatcher();
+
   @Override
   public StrategyMatcher findMatcher(FeatureRolloutStrategyAttribute attr) {
     switch (attr.getType()) {
       case STRING:
-        return new StringArrayMatcher();
+        return stringMatcher;
       case SEMANTIC_VERSION:
-        return new SemanticVersionArrayMatcher();
+        return semanticVersionMatcher;
       case NUMBER:
-        return new NumberArrayMatcher();
+        return numberMatcher;
       case DATE:
-        return new DateArrayMatcher();
+        return dateMatcher;
       case DATETIME:
-        return new DateTimeArrayMatcher();
+        return dateTimeMatcher;
       case BOOLEAN: // can't have arrays, that would be silly
-        return new BooleanArrayMatcher();
+        return booleanMatcher;
       case IP_ADDRESS:
-        return new IpAddressArrayMatcher();
+        return ipAddressMatcher;
     }
 
-    return new FallthroughMatcher();
+    return fallthroughMatcher;
   }
 
   static class FallthroughMatcher implements StrategyMatcher {
@@ -30,5 +43,10 @@ public class MatcherRegistry implements MatcherRepository {
     public boolean match(String suppliedValue, FeatureRolloutStrategyAttribute attr) {
       return false;
     }
+
+    @Override
+    public CompiledMatcher compile(FeatureRolloutStrategyAttribute attr) {
+      return suppliedValue -> false;
+    }
   }
 }
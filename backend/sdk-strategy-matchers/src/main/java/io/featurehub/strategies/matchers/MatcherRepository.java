@@ -5,4 +5,8 @@ import io.featurehub.sse.model.FeatureRolloutStrategyAttribute;
 
 public interface MatcherRepository {
   StrategyMatcher findMatcher(FeatureRolloutStrategyAttribute attr);
+
+  default CompiledMatcher compile(FeatureRolloutStrategyAttribute attr) {
+    return findMatcher(attr).compile(attr);
+  }
 }
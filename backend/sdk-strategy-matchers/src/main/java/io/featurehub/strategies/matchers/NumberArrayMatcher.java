@@ -1,71 +1,80 @@
 package io.featurehub.strategies.matchers;
 
 import io.featurehub.sse.model.FeatureRolloutStrategyAttribute;
+import io.featurehub.strategies.matchers.ParsedValuesMatcher.Comparison;
 
 import java.math.BigDecimal;
 import java.math.BigInteger;
 import java.util.List;
 import java.util.Objects;
-import java.util.function.Supplier;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 public class NumberArrayMatcher implements StrategyMatcher {
-  private BigDecimal supplied = null;
+  private static final Function<String, BigDecimal> parser = BigDecimal::new;
 
   @Override
   public boolean match(String suppliedValue, FeatureRolloutStrategyAttribute attr) {
-    try {
-      Supplier<BigDecimal> bd = () -> {
-        if (supplied == null) {
-          supplied = new BigDecimal(suppliedValue);
-        }
-
-        return supplied;
-      };
+    return compile(attr).match(suppliedValue);
+  }
 
-      Supplier<List<BigDecimal>> vals = () -> attr.getValues().stream()
-        .map(v -> {
-          if (v instanceof Integer) {
-            return new BigDecimal((Integer)v);
-          }
-          if (v instanceof Double) {
-            return new BigDecimal((Double)v);
-          }
-          if (v instanceof BigDecimal) {
-            return (BigDecimal)v;
-          }
-          if (v instanceof BigInteger) {
-            return new BigDecimal((BigInteger)v);
+  @Override
+  public CompiledMatcher compile(FeatureRolloutStrategyAttribute attr) {
+    switch (attr.getConditional()) {
+      case EQUALS:
+      case INCLUDES:
+        return numbers(attr, Comparison.EQUALS);
+      case ENDS_WITH:
+        return StringValueMatchers.endsWith(StringValueMatchers.values(attr));
+      case STARTS_WITH:
+        return StringValueMatchers.startsWith(StringValueMatchers.values(attr));
+      case GREATER:
+        return numbers(attr, Comparison.GREATER);
+      case GREATER_EQUALS:
+        return numbers(attr, Comparison.GREATER_EQUALS);
+      case LESS:
+        return numbers(attr, Comparison.LESS);
+      case LESS_EQUALS:
+        return numbers(attr, Comparison.LESS_EQUALS);
+      case NOT_EQUALS:
+      case EXCLUDES:
+        return numbers(attr, Comparison.NOT_EQUALS);
+      case REGEX:
+        // the supplied value is the regex here, so there is nothing we can compile ahead of time
+        final String[] vals = StringValueMatchers.values(attr);
+        return suppliedValue -> {
+          try {
+            for (String v : vals) {
+              if (v.matches(suppliedValue)) return true;
+            }
+          } catch (Exception ignored) {
           }
-          return null;
-        }).filter(Objects::nonNull).collect(Collectors.toList());
+          return false;
+        };
+    }
 
-      switch (attr.getConditional()) {
-        case EQUALS:
-        case INCLUDES:
-          return vals.get().stream().anyMatch(v -> v.equals(bd.get()));
-        case ENDS_WITH:
-          return attr.getValues().stream().anyMatch(v -> suppliedValue.endsWith(v.toString()));
-        case STARTS_WITH:
-          return attr.getValues().stream().anyMatch(v -> suppliedValue.startsWith(v.toString()));
-        case GREATER:
-          return vals.get().stream().anyMatch(v -> bd.get().compareTo(v) > 0 );
-        case GREATER_EQUALS:
-          return vals.get().stream().anyMatch(v -> bd.get().compareTo(v) >= 0 );
-        case LESS:
-          return vals.get().stream().anyMatch(v -> bd.get().compareTo(v) < 0 );
-        case LESS_EQUALS:
-          return vals.get().stream().anyMatch(v -> bd.get().compareTo(v) <= 0 );
-        case NOT_EQUALS:
-        case EXCLUDES:
-          return vals.get().stream().noneMatch(v -> v.equals(bd.get()));
-        case REGEX:
-          return attr.getValues().stream().anyMatch(v -> v.toString().matches(suppliedValue));
-      }
-    } catch (Exception ignored) {
+    return suppliedValue -> false;
+  }
 
-    }
+  // values that are not numbers are ignored
+  private CompiledMatcher numbers(FeatureRolloutStrategyAttribute attr, Comparison comparison) {
+    List<BigDecimal> vals = attr.getValues().stream()
+      .map(v -> {
+        if (v instanceof Integer) {
+          return new BigDecimal((Integer)v);
+        }
+        if (v instanceof Double) {
+          return new BigDecimal((Double)v);
+        }
+        if (v instanceof BigDecimal) {
+          return (BigDecimal)v;
+        }
+        if (v instanceof BigInteger) {
+          return new BigDecimal((BigInteger)v);
+        }
+        return null;
+      }).filter(Objects::nonNull).collect(Collectors.toList());
 
-    return false;
+    return new ParsedValuesMatcher<>(vals, parser, comparison);
   }
 }
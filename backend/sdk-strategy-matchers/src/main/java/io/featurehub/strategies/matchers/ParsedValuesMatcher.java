@@ -0,0 +1,92 @@
+package io.featurehub.strategies.matchers;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Matches a supplied value against strategy values that have been parsed once up front (dates, numbers, versions).
+ * A strategy value that could not be parsed is held as a null and stops the match (as it would have failed when
+ * parsed during matching), as does a supplied value that cannot be parsed.
+ */
+class ParsedValuesMatcher<T extends Comparable<? super T>> implements CompiledMatcher {
+  enum Comparison {
+    EQUALS, NOT_EQUALS, GREATER, GREATER_EQUALS, LESS, LESS_EQUALS
+  }
+
+  private final Object[] values;
+  private final Function<String, T> parser;
+  private final Comparison comparison;
+
+  ParsedValuesMatcher(List<T> values, Function<String, T> parser, Comparison comparison) {
+    this.values = values.toArray();
+    this.parser = parser;
+    this.comparison = comparison;
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public boolean match(String suppliedValue) {
+    final boolean none = comparison == Comparison.NOT_EQUALS;
+
+    if (values.length == 0) {
+      return none;
+    }
+
+    final T supplied;
+
+    try {
+      supplied = parser.apply(suppliedValue);
+    } catch (Exception ignored) {
+      return false;
+    }
+
+    for (Object val : values) {
+      if (val == null) {
+        return false;
+      }
+
+      if (matches(supplied, (T)val)) {
+        return !none;
+      }
+    }
+
+    return none;
+  }
+
+  private boolean matches(T supplied, T val) {
+    switch (comparison) {
+      case EQUALS:
+      case NOT_EQUALS:
+        return supplied.equals(val);
+      case GREATER:
+        return supplied.compareTo(val) > 0;
+      case GREATER_EQUALS:
+        return supplied.compareTo(val) >= 0;
+      case LESS:
+        return supplied.compareTo(val) < 0;
+      case LESS_EQUALS:
+        return supplied.compareTo(val) <= 0;
+    }
+
+    return false;
+  }
+
+  /**
+   * parses each of the strategy values, holding a null for any that fail
+   */
+  static <T> List<T> parseAll(String[] vals, Function<String, T> parser) {
+    List<T> parsed = new ArrayList<>(vals.length);
+
+    for (String val : vals) {
+      T item = null;
+      try {
+        item = parser.apply(val);
+      } catch (Exception ignored) {
+      }
+      parsed.add(item);
+    }
+
+    return parsed;
+  }
+}
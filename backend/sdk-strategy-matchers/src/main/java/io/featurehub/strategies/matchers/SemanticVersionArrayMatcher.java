@@ -1,35 +1,48 @@
 package io.featurehub.strategies.matchers;
 
 import io.featurehub.sse.model.FeatureRolloutStrategyAttribute;
+import io.featurehub.strategies.matchers.ParsedValuesMatcher.Comparison;
+
+import java.util.List;
+import java.util.function.Function;
 
 public class SemanticVersionArrayMatcher implements StrategyMatcher {
+  private static final Function<String, SemanticVersionComparable> parser = SemanticVersionComparable::new;
+
   @Override
   public boolean match(String suppliedValue, FeatureRolloutStrategyAttribute attr) {
-    final SemanticVersionComparable suppliedVersion = new SemanticVersionComparable(suppliedValue);
+    return compile(attr).match(suppliedValue);
+  }
 
+  @Override
+  public CompiledMatcher compile(FeatureRolloutStrategyAttribute attr) {
     switch (attr.getConditional()) {
       case EQUALS:
       case INCLUDES:
-        return attr.getValues().stream().anyMatch(v -> suppliedVersion.equals(new SemanticVersionComparable(v.toString())));
-      case ENDS_WITH:
-        break;
-      case STARTS_WITH:
-        break;
+        return versions(attr, Comparison.EQUALS);
       case GREATER:
-        return attr.getValues().stream().anyMatch(v -> suppliedVersion.compareTo(new SemanticVersionComparable(v.toString())) > 0);
+        return versions(attr, Comparison.GREATER);
       case GREATER_EQUALS:
-        return attr.getValues().stream().anyMatch(v -> suppliedVersion.compareTo(new SemanticVersionComparable(v.toString())) >= 0);
+        return versions(attr, Comparison.GREATER_EQUALS);
       case LESS:
-        return attr.getValues().stream().anyMatch(v -> suppliedVersion.compareTo(new SemanticVersionComparable(v.toString())) < 0);
+        return versions(attr, Comparison.LESS);
       case LESS_EQUALS:
-        return attr.getValues().stream().anyMatch(v -> suppliedVersion.compareTo(new SemanticVersionComparable(v.toString())) <= 0);
+        return versions(attr, Comparison.LESS_EQUALS);
       case NOT_EQUALS:
       case EXCLUDES:
-        return attr.getValues().stream().noneMatch(v -> suppliedVersion.equals(new SemanticVersionComparable(v.toString())));
+        return versions(attr, Comparison.NOT_EQUALS);
+      case ENDS_WITH:
+      case STARTS_WITH:
       case REGEX:
         break;
     }
 
-    return false;
+    return suppliedValue -> false;
+  }
+
+  private CompiledMatcher versions(FeatureRolloutStrategyAttribute attr, Comparison comparison) {
+    List<SemanticVersionComparable> versions =
+      ParsedValuesMatcher.parseAll(StringValueMatchers.values(attr), parser);
+    return new ParsedValuesMatcher<>(versions, parser, comparison);
   }
 }
@@ -4,4 +4,12 @@ import io.featurehub.sse.model.FeatureRolloutStrategyAttribute;
 
 public interface StrategyMatcher {
   boolean match(String suppliedValue, FeatureRolloutStrategyAttribute attr);
+
+  /**
+   * Parses the values of the attribute once so they can be used for many supplied values. Matchers with nothing
+   * worth parsing just match against the attribute each time.
+   */
+  default CompiledMatcher compile(FeatureRolloutStrategyAttribute attr) {
+    return suppliedValue -> match(suppliedValue, attr);
+  }
 }
@@ -2,40 +2,100 @@ package io.featurehub.strategies.matchers;
 
 import io.featurehub.sse.model.FeatureRolloutStrategyAttribute;
 
-import java.util.List;
-import java.util.stream.Collectors;
-
 public class StringArrayMatcher implements StrategyMatcher {
   @Override
   public boolean match(String suppliedValue, FeatureRolloutStrategyAttribute attr) {
-    List<String> vals = attr.getValues().stream()
-      .map(Object::toString).collect(Collectors.toList());
+    return compile(attr).match(suppliedValue);
+  }
+
+  @Override
+  public CompiledMatcher compile(FeatureRolloutStrategyAttribute attr) {
+    final String[] vals = StringValueMatchers.values(attr);
+
+    if (StringValueMatchers.anyNull(vals)) {
+      return StringValueMatchers.NO_MATCH;
+    }
 
     switch(attr.getConditional()) {
       case EQUALS:
-        return vals.stream().anyMatch(v -> v.equals(suppliedValue));
+        if (StringValueMatchers.indexed(vals)) {
+          final StringValueIndex index = new StringValueIndex(vals);
+          return index::contains;
+        }
+
+        return suppliedValue -> {
+          for (String v : vals) {
+            if (v.equals(suppliedValue)) return true;
+          }
+          return false;
+        };
       case ENDS_WITH:
-        return vals.stream().anyMatch(suppliedValue::endsWith);
+        return StringValueMatchers.endsWith(vals);
       case STARTS_WITH:
-        return vals.stream().anyMatch(suppliedValue::startsWith);
+        return StringValueMatchers.startsWith(vals);
       case GREATER:
-        return vals.stream().anyMatch(v -> suppliedValue.compareTo(v) > 0);
+        return suppliedValue -> {
+          for (String v : vals) {
+            if (suppliedValue.compareTo(v) > 0) return true;
+          }
+          return false;
+        };
       case GREATER_EQUALS:
-        return vals.stream().anyMatch(v -> suppliedValue.compareTo(v) >= 0);
+        return suppliedValue -> {
+          for (String v : vals) {
+            if (suppliedValue.compareTo(v) >= 0) return true;
+          }
+          return false;
+        };
       case LESS:
-        return vals.stream().anyMatch(v -> suppliedValue.compareTo(v) < 0);
+        return suppliedValue -> {
+          for (String v : vals) {
+            if (suppliedValue.compareTo(v) < 0) return true;
+          }
+          return false;
+        };
       case LESS_EQUALS:
-        return vals.stream().anyMatch(v -> suppliedValue.compareTo(v) <= 0);
+        return suppliedValue -> {
+          for (String v : vals) {
+            if (suppliedValue.compareTo(v) <= 0) return true;
+          }
+          return false;
+        };
       case NOT_EQUALS:
-        return vals.stream().anyMatch(v -> suppliedValue.compareTo(v) != 0);
+        return suppliedValue -> {
+          for (String v : vals) {
+            if (suppliedValue.compareTo(v) != 0) return true;
+          }
+          return false;
+        };
       case INCLUDES:
-        return vals.stream().anyMatch(suppliedValue::contains);
+        if (StringValueMatchers.indexed(vals)) {
+          final StringValueIndex index = new StringValueIndex(vals);
+          return index::containsSubstringOf;
+        }
+
+        return suppliedValue -> {
+          for (String v : vals) {
+            if (suppliedValue.contains(v)) return true;
+          }
+          return false;
+        };
       case EXCLUDES:
-        return vals.stream().noneMatch(suppliedValue::contains);
+        if (StringValueMatchers.indexed(vals)) {
+          final StringValueIndex index = new StringValueIndex(vals);
+          return suppliedValue -> !index.containsSubstringOf(suppliedValue);
+        }
+
+        return suppliedValue -> {
+          for (String v : vals) {
+            if (suppliedValue.contains(v)) return false;
+          }
+          return true;
+        };
       case REGEX:
-        return vals.stream().anyMatch(suppliedValue::matches);
+        return StringValueMatchers.regex(vals);
     }
 
-    return false;
+    return suppliedValue -> false;
   }
 }
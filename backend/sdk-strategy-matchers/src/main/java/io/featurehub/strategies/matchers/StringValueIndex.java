@@ -0,0 +1,164 @@
+package io.featurehub.strategies.matchers;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.TreeSet;
+
+/**
+ * An open addressing hash set of the values of a strategy attribute, used once the value list is large (user ids,
+ * tenant keys and so forth). As well as exact lookups it answers "is any value a prefix / suffix / substring of
+ * this supplied value" by probing with the regions of the supplied value that have the same length as one of the
+ * values - there are usually very few distinct lengths in these lists. The hash of each region is calculated
+ * incrementally (it is the same polynomial as String.hashCode) and compared in place, so lookups do not allocate.
+ * Once built it is immutable.
+ */
+final class StringValueIndex {
+  private final String[] table;
+  private final int[] hashes;
+  private final int mask;
+  // the distinct lengths of the values, ascending
+  private final int[] lengths;
+
+  StringValueIndex(@NotNull String[] values) {
+    int capacity = Integer.highestOneBit(Math.max(values.length, 1) * 2 - 1) << 1; // load factor <= 0.5
+    table = new String[capacity];
+    hashes = new int[capacity];
+    mask = capacity - 1;
+
+    TreeSet<Integer> distinctLengths = new TreeSet<>();
+
+    for (String value : values) {
+      distinctLengths.add(value.length());
+      add(value);
+    }
+
+    lengths = distinctLengths.stream().mapToInt(Integer::intValue).toArray();
+  }
+
+  private void add(String value) {
+    int hash = value.hashCode();
+    int slot = spread(hash) & mask;
+
+    while (table[slot] != null) {
+      if (hashes[slot] == hash && table[slot].equals(value)) {
+        return;
+      }
+
+      slot = (slot + 1) & mask;
+    }
+
+    table[slot] = value;
+    hashes[slot] = hash;
+  }
+
+  private static int spread(int hash) {
+    return hash ^ (hash >>> 16);
+  }
+
+  private boolean contains(String s, int start, int length, int hash) {
+    int slot = spread(hash) & mask;
+    String candidate;
+
+    while ((candidate = table[slot]) != null) {
+      if (hashes[slot] == hash && candidate.length() == length && s.regionMatches(start, candidate, 0, length)) {
+        return true;
+      }
+
+      slot = (slot + 1) & mask;
+    }
+
+    return false;
+  }
+
+  boolean contains(@NotNull String s) {
+    return contains(s, 0, s.length(), s.hashCode());
+  }
+
+  /**
+   * is any value a prefix of s?
+   */
+  boolean containsPrefixOf(@NotNull String s) {
+    int hash = 0;
+    int pos = 0;
+
+    for (int length : lengths) {
+      if (length > s.length()) {
+        break;
+      }
+
+      while (pos < length) {
+        hash = 31 * hash + s.charAt(pos++);
+      }
+
+      if (contains(s, 0, length, hash)) {
+        return true;
+      }
+    }
+
+    return false;
+  }
+
+  /**
+   * is any value a suffix of s?
+   */
+  boolean containsSuffixOf(@NotNull String s) {
+    int end = s.length();
+    int hash = 0;
+    int power = 1; // 31 ^ the length of the suffix hashed so far
+    int pos = end;
+
+    for (int length : lengths) {
+      if (length > end) {
+        break;
+      }
+
+      while (end - pos < length) {
+        hash += s.charAt(--pos) * power;
+        power *= 31;
+      }
+
+      if (contains(s, pos, length, hash)) {
+        return true;
+      }
+    }
+
+    return false;
+  }
+
+  /**
+   * is any value contained anywhere within s?
+   */
+  boolean containsSubstringOf(@NotNull String s) {
+    int end = s.length();
+
+    for (int length : lengths) {
+      if (length > end) {
+        break;
+      }
+
+      int hash = 0;
+      int leading = 1; // 31 ^ (length - 1), the weight of the character leaving the window
+      for (int pos = 0; pos < length; pos++) {
+        hash = 31 * hash + s.charAt(pos);
+
+        if (pos > 0) {
+          leading *= 31;
+        }
+      }
+
+      for (int start = 0; ; start++) {
+        if (contains(s, start, length, hash)) {
+          return true;
+        }
+
+        if (start + length >= end) {
+          break;
+        }
+
+        hash = 31 * (hash - s.charAt(start) * leading) + s.charAt(start + length);
+      }
+    }
+
+    return false;
+  }
+}
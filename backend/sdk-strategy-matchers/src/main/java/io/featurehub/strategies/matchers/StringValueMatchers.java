@@ -0,0 +1,104 @@
+package io.featurehub.strategies.matchers;
+
+import io.featurehub.sse.model.FeatureRolloutStrategyAttribute;
+
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Compiled matchers for the conditionals that treat the strategy values as plain strings regardless of the type of
+ * the attribute.
+ */
+class StringValueMatchers {
+  /**
+   * Value lists at least this long are indexed rather than scanned.
+   */
+  static final int INDEX_THRESHOLD = 16;
+
+  static final CompiledMatcher NO_MATCH = suppliedValue -> false;
+
+  /**
+   * The values as strings. A null value is kept as a null, it is up to the matcher to decide what that means (the
+   * parsed matchers treat it as a value that can't be parsed).
+   */
+  static String[] values(FeatureRolloutStrategyAttribute attr) {
+    return attr.getValues().stream().map(v -> v == null ? null : v.toString()).toArray(String[]::new);
+  }
+
+  /**
+   * a null strategy value has never matched anything, and it stops the match rather than being skipped
+   */
+  static boolean anyNull(String[] vals) {
+    for (String v : vals) {
+      if (v == null) return true;
+    }
+    return false;
+  }
+
+  static boolean indexed(String[] vals) {
+    return vals.length >= INDEX_THRESHOLD;
+  }
+
+  static CompiledMatcher startsWith(String[] vals) {
+    if (anyNull(vals)) {
+      return NO_MATCH;
+    }
+
+    if (indexed(vals)) {
+      final StringValueIndex index = new StringValueIndex(vals);
+      return index::containsPrefixOf;
+    }
+
+    return suppliedValue -> {
+      for (String v : vals) {
+        if (suppliedValue.startsWith(v)) return true;
+      }
+      return false;
+    };
+  }
+
+  static CompiledMatcher endsWith(String[] vals) {
+    if (anyNull(vals)) {
+      return NO_MATCH;
+    }
+
+    if (indexed(vals)) {
+      final StringValueIndex index = new StringValueIndex(vals);
+      return index::containsSuffixOf;
+    }
+
+    return suppliedValue -> {
+      for (String v : vals) {
+        if (suppliedValue.endsWith(v)) return true;
+      }
+      return false;
+    };
+  }
+
+  /**
+   * The regular expressions are compiled once. One that does not compile never matches.
+   */
+  static CompiledMatcher regex(String[] vals) {
+    if (anyNull(vals)) {
+      return NO_MATCH;
+    }
+
+    final Pattern[] patterns = new Pattern[vals.length];
+
+    for (int count = 0; count < vals.length; count++) {
+      try {
+        patterns[count] = Pattern.compile(vals[count]);
+      } catch (PatternSyntaxException ignored) {
+      }
+    }
+
+    return suppliedValue -> {
+      for (Pattern pattern : patterns) {
+        if (pattern != null && pattern.matcher(suppliedValue).matches()) {
+          return true;
+        }
+      }
+      return false;
+    };
+  }
+}
@@ -214,6 +214,66 @@ final class Murmur3_32HashFunction implements Serializable {
     }
   }
 
+  /**
+   * Hashes the UTF-8 encoding of first followed by second - exactly the same result as
+   * hashString(first + second, UTF_8) but without creating the concatenated string or any byte arrays.
+   * <p>
+   * Note that like hashString (and the Guava version it came from) four byte code points do not advance the shift,
+   * so strings with characters outside the BMP do not hash the same as hashBytes of their UTF-8 encoding. This is
+   * kept deliberately as changing it would move users between percentage buckets.
+   */
+  public int hashUtf8(CharSequence first, CharSequence second) {
+    final int firstLength = first.length();
+    final int utf16Length = firstLength + second.length();
+    int h1 = seed;
+    int len = 0;
+    long buffer = 0;
+    int shift = 0;
+
+    for (int i = 0; i < utf16Length; i++) {
+      char c = i < firstLength ? first.charAt(i) : second.charAt(i - firstLength);
+
+      if (c < 0x80) {
+        buffer |= (long) c << shift;
+        shift += 8;
+        len++;
+      } else if (c < 0x800) {
+        buffer |= charToTwoUtf8Bytes(c) << shift;
+        shift += 16;
+        len += 2;
+      } else if (c < Character.MIN_SURROGATE || c > Character.MAX_SURROGATE) {
+        buffer |= charToThreeUtf8Bytes(c) << shift;
+        shift += 24;
+        len += 3;
+      } else {
+        // a surrogate pair may straddle the two parts
+        char low = i + 1 < utf16Length ?
+          (i + 1 < firstLength ? first.charAt(i + 1) : second.charAt(i + 1 - firstLength)) : 0;
+
+        if (!Character.isHighSurrogate(c) || !Character.isLowSurrogate(low)) {
+          // not a valid code point; let the JDK handle invalid Unicode
+          final byte[] bytes = (first.toString() + second).getBytes(StandardCharsets.UTF_8);
+          return hashBytes(bytes, 0, bytes.length);
+        }
+
+        i++;
+        buffer |= codePointToFourUtf8Bytes(Character.toCodePoint(c, low)) << shift;
+        len += 4;
+      }
+
+      if (shift >= 32) {
+        int k1 = mixK1((int) buffer);
+        h1 = mixH1(h1, k1);
+        buffer = buffer >>> 32;
+        shift -= 32;
+      }
+    }
+
+    int k1 = mixK1((int) buffer);
+    h1 ^= k1;
+    return fmix(h1, len);
+  }
+
   public int hashBytes(byte[] input, int off, int len) {
     int h1 = seed;
     int i;
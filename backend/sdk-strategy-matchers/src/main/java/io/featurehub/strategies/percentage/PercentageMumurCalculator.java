@@ -1,7 +1,5 @@
 package io.featurehub.strategies.percentage;
 
-import java.nio.charset.StandardCharsets;
-
 public class PercentageMumurCalculator implements PercentageCalculator {
   private final Murmur3_32HashFunction hashFunction;
   public static final int MAX_PERCENTAGE = 1000000;
@@ -14,12 +12,14 @@ public class PercentageMumurCalculator implements PercentageCalculator {
     this.hashFunction = new Murmur3_32HashFunction(0);
   }
 
+  /**
+   * The hash of the key followed by the feature id, as an unsigned 32 bit ratio of MAX_PERCENTAGE. This is
+   * floor(MAX_PERCENTAGE * hash / 2^32), which is exact in integer arithmetic (the product fits in 52 bits) so it is
+   * identical to the floating point calculation the SDKs do.
+   */
   public int determineClientPercentage(String percentageKey, String featureId) {
-    int hashCode = hashFunction.hashString(
-      (percentageKey + featureId), StandardCharsets.UTF_8
-    );
+    int hashCode = hashFunction.hashUtf8(String.valueOf(percentageKey), String.valueOf(featureId));
 
-    double ratio = (double) (hashCode & 0xFFFFFFFFL) / Math.pow(2, 32);
-    return (int) Math.floor(MAX_PERCENTAGE * ratio);
+    return (int) (((hashCode & 0xFFFFFFFFL) * MAX_PERCENTAGE) >>> 32);
   }
 }
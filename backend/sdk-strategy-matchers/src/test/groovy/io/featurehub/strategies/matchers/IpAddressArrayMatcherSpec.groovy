@@ -44,4 +44,41 @@ class IpAddressArrayMatcherSpec extends Specification {
       '202.14.217.1'  | RolloutStrategyAttributeConditional.NOT_EQUALS | ['10.7.4.8', '192.168.86.75']     || true
       '202.14.217.1'  | RolloutStrategyAttributeConditional.EXCLUDES   | ['10.7.4.8', '192.168.86.75']     || true
   }
+
+  def "ipv6 addresses and ranges are matched and never cross over with ipv4"() {
+    given:
+      def rsi = new FeatureRolloutStrategyAttribute().conditional(conditional).values(val)
+    when:
+      def theResult = matcher.match(suppliedValue, rsi)
+    then:
+      theResult == result
+    where:
+      suppliedValue          | conditional                                    | val                                || result
+      '2001:db8::1'          | RolloutStrategyAttributeConditional.EQUALS     | ['2001:db8::/32']                  || true
+      '2001:0db8:0:0:0:0:0:1'| RolloutStrategyAttributeConditional.EQUALS     | ['2001:db8::1']                    || true
+      '[fe80::1%eth0]'       | RolloutStrategyAttributeConditional.EQUALS     | ['fe80::/10']                      || true
+      '2001:db9::1'          | RolloutStrategyAttributeConditional.EQUALS     | ['2001:db8::/32']                  || false
+      '::ffff:192.168.86.75' | RolloutStrategyAttributeConditional.EQUALS     | ['192.168.0.0/16']                 || true
+      '192.168.86.75'        | RolloutStrategyAttributeConditional.EQUALS     | ['::/0']                           || false
+      '192.168.86.75'        | RolloutStrategyAttributeConditional.EQUALS     | ['0.0.0.0/0']                      || true
+      '2001:db9::1'          | RolloutStrategyAttributeConditional.NOT_EQUALS | ['2001:db8::/32', '10.0.0.0/8']    || true
+  }
+
+  def "values that are not address literals are never resolved and never match"() {
+    given:
+      def rsi = new FeatureRolloutStrategyAttribute().conditional(conditional).values(val)
+    when:
+      def theResult = matcher.match(suppliedValue, rsi)
+    then:
+      theResult == result
+    where:
+      suppliedValue   | conditional                                    | val                             || result
+      'localhost'     | RolloutStrategyAttributeConditional.EQUALS     | ['127.0.0.1']                   || false
+      'localhost'     | RolloutStrategyAttributeConditional.NOT_EQUALS | ['127.0.0.1']                   || false
+      '192.168.86'    | RolloutStrategyAttributeConditional.EQUALS     | ['192.168.0.0/16']              || false
+      '192.168.86.256'| RolloutStrategyAttributeConditional.EQUALS     | ['192.168.0.0/16']              || false
+      '1:2:3:4:5:6:7' | RolloutStrategyAttributeConditional.EQUALS     | ['::/0']                        || false
+      '127.0.0.1'     | RolloutStrategyAttributeConditional.EQUALS     | ['localhost', '127.0.0.1/x']    || false
+      '127.0.0.1'     | RolloutStrategyAttributeConditional.NOT_EQUALS | ['localhost', '10.0.0.0/40']    || true
+  }
 }
@@ -0,0 +1,66 @@
+package io.featurehub.strategies.matchers
+
+import io.featurehub.mr.model.RolloutStrategyAttributeConditional
+import io.featurehub.mr.model.RolloutStrategyFieldType
+import io.featurehub.sse.model.FeatureRolloutStrategyAttribute
+import spock.lang.Specification
+import spock.lang.Unroll
+
+class MatcherRegistrySpec extends Specification {
+  MatcherRegistry registry
+
+  def setup() {
+    registry = new MatcherRegistry()
+  }
+
+  def "matchers are shared rather than created for each attribute"() {
+    given:
+      def attr = new FeatureRolloutStrategyAttribute().type(RolloutStrategyFieldType.STRING)
+    expect:
+      registry.findMatcher(attr).is(registry.findMatcher(attr))
+  }
+
+  @Unroll
+  def "a compiled matcher matches the same as the matcher for #type #conditional"() {
+    given:
+      def attr = new FeatureRolloutStrategyAttribute().type(type).conditional(conditional).values(vals)
+    when:
+      def compiled = registry.compile(attr)
+    then:
+      compiled.match(suppliedValue) == result
+      registry.findMatcher(attr).match(suppliedValue, attr) == result
+    where:
+      type                                      | conditional                                        | vals                       | suppliedValue || result
+      RolloutStrategyFieldType.STRING           | RolloutStrategyAttributeConditional.REGEX          | ['(.*)gold(.*)', '[bad']   | 'goldfish'    || true
+      RolloutStrategyFieldType.STRING           | RolloutStrategyAttributeConditional.REGEX          | ['[bad']                   | '[bad'        || false
+      RolloutStrategyFieldType.SEMANTIC_VERSION | RolloutStrategyAttributeConditional.GREATER_EQUALS | ['2.0.0', '1.5.0']         | '1.6.1'       || true
+      RolloutStrategyFieldType.SEMANTIC_VERSION | RolloutStrategyAttributeConditional.NOT_EQUALS     | ['2.0.0', '1.5.0']         | '1.5.0'       || false
+      RolloutStrategyFieldType.NUMBER           | RolloutStrategyAttributeConditional.LESS           | [10, 20.5]                 | '15'          || true
+      RolloutStrategyFieldType.DATE             | RolloutStrategyAttributeConditional.GREATER        | ['2021-01-01', 'not-date'] | '2021-02-01'  || true
+      RolloutStrategyFieldType.DATE             | RolloutStrategyAttributeConditional.EQUALS         | ['2021-01-01']             | 'not-date'    || false
+      RolloutStrategyFieldType.DATETIME         | RolloutStrategyAttributeConditional.LESS_EQUALS    | ['2021-01-01T10:00:00Z']   | '2021-01-01T09:00:00Z' || true
+      RolloutStrategyFieldType.BOOLEAN          | RolloutStrategyAttributeConditional.EQUALS         | [false]                    | 'false'       || true
+  }
+
+  @Unroll
+  def "a null strategy value for #type #conditional is no match rather than an error"() {
+    given:
+      def attr = new FeatureRolloutStrategyAttribute().type(type).conditional(conditional).values([null] + vals)
+    when:
+      def compiled = registry.compile(attr)
+    then:
+      !compiled.match(suppliedValue)
+      !registry.findMatcher(attr).match(suppliedValue, attr)
+    where:
+      type                                      | conditional                                     | vals                     | suppliedValue
+      RolloutStrategyFieldType.STRING           | RolloutStrategyAttributeConditional.EQUALS      | ['fred']                 | 'fred'
+      RolloutStrategyFieldType.STRING           | RolloutStrategyAttributeConditional.STARTS_WITH | ['fr']                   | 'fred'
+      RolloutStrategyFieldType.STRING           | RolloutStrategyAttributeConditional.REGEX       | ['fr.*']                 | 'fred'
+      RolloutStrategyFieldType.NUMBER           | RolloutStrategyAttributeConditional.ENDS_WITH   | ['5']                    | '15'
+      RolloutStrategyFieldType.DATE             | RolloutStrategyAttributeConditional.EQUALS      | ['2021-01-01']           | '2021-01-01'
+      RolloutStrategyFieldType.DATE             | RolloutStrategyAttributeConditional.STARTS_WITH | ['2021']                 | '2021-01-01'
+      RolloutStrategyFieldType.DATETIME         | RolloutStrategyAttributeConditional.GREATER     | ['2021-01-01T10:00:00Z'] | '2021-02-01T10:00:00Z'
+      RolloutStrategyFieldType.SEMANTIC_VERSION | RolloutStrategyAttributeConditional.EQUALS      | ['1.0.0']                | '1.0.0'
+      RolloutStrategyFieldType.IP_ADDRESS       | RolloutStrategyAttributeConditional.EQUALS      | ['10.0.0.1']             | '10.0.0.1'
+  }
+}
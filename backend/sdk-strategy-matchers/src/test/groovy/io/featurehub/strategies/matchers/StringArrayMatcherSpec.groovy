@@ -46,4 +46,29 @@ class StringArrayMatcherSpec extends Specification {
         'actapus (gold)' | RolloutStrategyAttributeConditional.REGEX          | ['(.*)gold(.*)']              | true
         'actapus (gold)' | RolloutStrategyAttributeConditional.REGEX          | ['(.*)purple(.*)']            | false
   }
+
+  @Unroll
+  def 'large value lists are indexed and match the same as small ones for #conditional'() {
+    given: 'a strategy with thousands of user ids'
+      def ids = (1..5000).collect { "user-${it}-id".toString() }
+      def rsi = new FeatureRolloutStrategyAttribute().conditional(conditional).values(ids + extra)
+    when:
+      def compiled = matcher.compile(rsi)
+    then:
+      compiled.match(suppliedValue) == result
+    where:
+      suppliedValue             | conditional                                     | extra        || result
+      'user-4321-id'            | RolloutStrategyAttributeConditional.EQUALS      | []           || true
+      'user-4321-idx'           | RolloutStrategyAttributeConditional.EQUALS      | []           || false
+      'user-4321-id-and-more'   | RolloutStrategyAttributeConditional.STARTS_WITH | []           || true
+      'user-99999'              | RolloutStrategyAttributeConditional.STARTS_WITH | ['user-999'] || true
+      'user-99999'              | RolloutStrategyAttributeConditional.STARTS_WITH | []           || false
+      'prefix:user-12-id'       | RolloutStrategyAttributeConditional.ENDS_WITH   | []           || true
+      'prefix:user-12-i'        | RolloutStrategyAttributeConditional.ENDS_WITH   | []           || false
+      'a user-77-id here'       | RolloutStrategyAttributeConditional.INCLUDES    | []           || true
+      'a user-77-i here'        | RolloutStrategyAttributeConditional.INCLUDES    | []           || false
+      'a user-77-id here'       | RolloutStrategyAttributeConditional.EXCLUDES    | []           || false
+      'a user-77-i here'        | RolloutStrategyAttributeConditional.EXCLUDES    | []           || true
+      'anything'                | RolloutStrategyAttributeConditional.INCLUDES    | ['']         || true
+  }
 }
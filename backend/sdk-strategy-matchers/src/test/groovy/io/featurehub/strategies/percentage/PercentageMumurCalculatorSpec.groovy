@@ -3,6 +3,8 @@ package io.featurehub.strategies.percentage
 import spock.lang.Specification
 import spock.lang.Unroll
 
+import java.nio.charset.StandardCharsets
+
 class PercentageMumurCalculatorSpec extends Specification {
   @Unroll
   def "murmur-hash-comparisons"() {
@@ -15,4 +17,20 @@ class PercentageMumurCalculatorSpec extends Specification {
     "fred"       | "abcde"                 || 212628
     "zappo-food" | "172765e02-2-1-1-2-2-1" || 931882
   }
+
+  @Unroll
+  def "hashing the key and feature id separately is the same as hashing them joined: #pKey"() {
+    given:
+      def hash = Murmur3_32HashFunction.MURMUR3_32
+    expect:
+      hash.hashUtf8(pKey, featureId) == hash.hashString(pKey + featureId, StandardCharsets.UTF_8)
+    where:
+      pKey                 | featureId
+      ""                   | ""
+      "fred"               | "abcde"
+      "caf\u00e9"          | "\u20ac100"
+      "smile \ud83d\ude00" | "x"
+      "split \ud83d"        | "\ude00 pair"
+      "lone \ude00"         | "surrogate"
+  }
 }